@@ -4,7 +4,10 @@ import com.gmalandrakis.mnemosyne.cache.AbstractGenericCache;
 import com.gmalandrakis.mnemosyne.cache.AbstractMnemosyneCache;
 import com.gmalandrakis.mnemosyne.cache.FIFOCache;
 import com.gmalandrakis.mnemosyne.core.MnemoProxy;
+import com.gmalandrakis.mnemosyne.memory.DeepSizeWeigher;
+import com.gmalandrakis.mnemosyne.memory.Weigher;
 import com.gmalandrakis.mnemosyne.structures.AddMode;
+import com.gmalandrakis.mnemosyne.structures.ReferenceMode;
 import com.gmalandrakis.mnemosyne.structures.RemoveMode;
 
 import java.lang.annotation.Documented;
@@ -45,6 +48,7 @@ public @interface Cached {
     /**
      * Defines the cache algorithm.
      */
+    @SuppressWarnings("rawtypes") //the class literals of the generic caches are raw
     Class<? extends AbstractMnemosyneCache> cacheType() default FIFOCache.class;
 
     /**
@@ -63,6 +67,79 @@ public @interface Cached {
      */
     long timeToLive() default 0;
 
+    /**
+     * The time in milliseconds after which a value is reloaded ahead of its' expiration. The first read of the key after the time has passed
+     * still returns the cached value immediately, and triggers a reload through the underlying method on the internal thread service of the cache.
+     * The reloaded value replaces the old one in the ValuePool, and the countdown of both the refresh and the timeToLive starts over.
+     * <p>
+     * Meant for frequently read keys, so that they are kept fresh without any caller waiting for the underlying method.
+     * Keys not read after the time has passed are not reloaded, and expire as usual. If the reload fails, the cached value is kept, and the next read retries.
+     * <p>
+     * Must be shorter than the timeToLive, if any. Not supported by caches with separate handling of key collections. Zero (the default) disables refreshing.
+     */
+    long refreshAfter() default 0;
+
+    /**
+     * The time in milliseconds after the expiration of an entry during which a miss of its' key still returns the last known values immediately,
+     * and reloads the key through the underlying method on the internal thread service. Only one reload of a key runs at a time.
+     * <p>
+     * The expired entries are kept in the cache for that time, and take up capacity, unless evicted. Invalidated entries are never served.
+     * Not supported by caches with separate handling of key collections, nor by custom caches. Zero (the default) disables it.
+     */
+    long staleWhileRevalidate() default 0;
+
+    /**
+     * The time in milliseconds after the expiration of an entry during which a miss of its' key returns the last known values if the underlying method throws,
+     * or takes longer than the {@link #loadTimeout()}. The exception is thrown only if there are no such values.
+     * <p>
+     * The expired entries are kept in the cache like for the {@link #staleWhileRevalidate()}, which takes precedence within its' own period.
+     * Zero (the default) disables it.
+     */
+    long staleIfError() default 0;
+
+    /**
+     * The time in milliseconds after which a load is considered failed, if stale values may be served instead (see {@link #staleIfError()}).
+     * The load goes on in the background, and updates the cache once it completes. Without stale values, the caller waits for the load regardless.
+     * Zero (the default) waits for as long as the load takes.
+     */
+    long loadTimeout() default 0;
+
+    /**
+     * The time in milliseconds for which a key is remembered as missing after the underlying method returned null or an empty collection for it.
+     * Misses of the key return nothing during that time, without invoking the underlying method. An update that adds values to the key
+     * (or, for {@link UpdatesValuePool UpdatesValuePool}, to any key of the ValuePool) forgets it immediately.
+     * <p>
+     * Should be short, since removals from the underlying data source are not noticed before it passes. Not supported by caches with separate handling of key collections.
+     * Zero (the default) disables negative caching.
+     */
+    long negativeTimeToLive() default 0;
+
+    /**
+     * The maximum number of keys remembered as missing (see {@link #negativeTimeToLive()}). The oldest ones are forgotten first.
+     */
+    int negativeCapacity() default 1000;
+
+    /**
+     * The name of a bulk method of the same bean that loads the values of many keys at once, e.g. {@code getTransactionsByIds(Set<UUID> ids)}
+     * for {@code getTransactionById(UUID id)}. Misses arriving within the {@link #batchWindow()} are then loaded with a single invocation of it,
+     * instead of one invocation of the cached method each.
+     * <p>
+     * The bulk method takes a single Set, List or Collection of keys, and returns either a Map of the values by key, or a Collection of values whose IDs are the keys.
+     * Only for single-value caches whose method takes a single argument. Empty (the default) disables batching.
+     */
+    String batchLoader() default "";
+
+    /**
+     * The time in milliseconds the first miss of a batch waits for others to join it, if a {@link #batchLoader()} is set.
+     * It delays every miss by up to that much, and should therefore be short.
+     */
+    long batchWindow() default 5;
+
+    /**
+     * The maximum number of keys in a batch (see {@link #batchLoader()}). A full batch is loaded without waiting for the rest of the window.
+     */
+    int maxBatchSize() default 100;
+
     /**
      * Time interval between evictions in milliseconds.
      * Recommended if neither capacity(), nor timeToLive(), are set.
@@ -86,6 +163,76 @@ public @interface Cached {
      */
     int capacity() default 0;
 
+    /**
+     * The maximum total weight of the values in the cache, as calculated by the {@link #weigher()}. With the built-in weighers, this is a limit in bytes.
+     * <p>
+     * Unlike the capacity, the weight reflects how much memory the values actually take: a collection key with thousands of IDs weighs as much as its' values,
+     * and a value referred to by many keys is weighed only once.
+     * <p>
+     * In implementations of {@link AbstractGenericCache AbstractGenericCache}, a positive value takes the place of the capacity, i.e. the
+     * watermarks of {@link #preemptiveEvictionPercentage()} and {@link #evictionStepPercentage()} become percentages of the maxWeight. Zero and negative values are ignored.
+     */
+    long maxWeight() default 0;
+
+    /**
+     * The {@link Weigher Weigher} used when a {@link #maxWeight()} is set. Ignored otherwise.
+     * <p>
+     * Caches returning the same type of values share a ValuePool that weighs every value once, so they must use the same weigher.
+     */
+    Class<? extends Weigher<?>> weigher() default DeepSizeWeigher.class;
+
+    /**
+     * The percentage of the application-wide {@link com.gmalandrakis.mnemosyne.memory.MemoryBudget MemoryBudget} the cache may always keep,
+     * i.e. below which the budget never evicts it. Ignored if no MemoryBudget is set.
+     */
+    short minBudgetShare() default 0;
+
+    /**
+     * The percentage of the application-wide {@link com.gmalandrakis.mnemosyne.memory.MemoryBudget MemoryBudget} the cache may never exceed,
+     * regardless of how many hits it gets. Ignored if no MemoryBudget is set.
+     */
+    short maxBudgetShare() default 100;
+
+    /**
+     * Determines the order in which the caches are shrunk by the {@link com.gmalandrakis.mnemosyne.memory.HeapPressureMonitor HeapPressureMonitor}
+     * while the heap is under pressure: caches with lower priority are shrunk first and grown back last. Ignored if no HeapPressureMonitor is set.
+     */
+    int shrinkPriority() default 0;
+
+    /**
+     * Determines how the values are held in memory. Refer to {@link ReferenceMode} for further details.
+     * <p>
+     * The mode applies to the ValuePool of the returned type, i.e. to all the caches returning the same type. Caches that keep the default
+     * adopt the mode set by another cache of the same type, and two caches of the same type may not set different non-default modes.
+     */
+    ReferenceMode valueReferences() default ReferenceMode.STRONG;
+
+    /**
+     * Keeps the values off-heap, in an {@link com.gmalandrakis.mnemosyne.core.OffHeapValuePool OffHeapValuePool}, converted via the codec registered
+     * for their type in the {@link com.gmalandrakis.mnemosyne.core.MnemoService MnemoService}, or else a generated one, or else via Java serialization.
+     * <p>
+     * Like the reference mode, it applies to the ValuePool of the returned type, i.e. to all the caches returning the same type.
+     * Hence the first cache of the type generated has to set it, and the caches that do not set it share the off-heap ValuePool anyway.
+     */
+    boolean offHeap() default false;
+
+    /**
+     * The size in bytes of a second-level tier, kept in a memory-mapped file, for the entries evicted from the cache to make room.
+     * On a miss, the tier is checked before the underlying method is invoked, and a hit moves the entry back to the cache.
+     * <p>
+     * The values are converted via the codec registered for their type in the {@link com.gmalandrakis.mnemosyne.core.MnemoService MnemoService},
+     * or via Java serialization if no codec is registered and the type is Serializable. Zero (the default) disables the tier.
+     */
+    long secondLevelTierSize() default 0;
+
+    /**
+     * The size in bytes of a tier kept in a plain file on disk, below the second-level tier if any, or right below the cache otherwise.
+     * Meant for more entries than fit in memory: the entries evicted from the tier above are demoted to it, and a hit promotes the entry straight back to the cache.
+     * <p>
+     * The values are converted like in the second-level tier. Zero (the default) disables the tier.
+     */
+    long diskTierSize() default 0;
+
 
     /**
      * Defines the number of available threads in the internal ThreadPool of the cache.
@@ -105,9 +252,10 @@ public @interface Cached {
      * <p>
      * The use of this value is up to the implementation of the AbstractMnemosyneCache.
      * <p>
-     * In implementations of {@link AbstractGenericCache AbstractGenericCache}, values over 100 or negative are switched to 100. An internal thread periodically checks
-     * the current size of the cache and starts evicting once the percentage of the size compared to total capacity is equal or larger than this.
-     * A value of 0 or 100 means that only the total capacity is taken into account.
+     * In implementations of {@link AbstractGenericCache AbstractGenericCache}, values over 100 or negative are switched to 100. This is the high watermark:
+     * once the size of the cache compared to total capacity is equal or larger than this percentage, an internal thread starts evicting asynchronously,
+     * in steps of {@link #evictionStepPercentage()}, until the size drops one step below it. The writers themselves evict only if the total capacity is reached.
+     * A value of 0 or 100 places the high watermark one eviction step below the total capacity.
      */
     short preemptiveEvictionPercentage() default 0;
 
@@ -115,8 +263,9 @@ public @interface Cached {
     /**
      * The percentage of non-expired entries to be removed when the cache is full.
      * <p>
-     * In implementations of {@link AbstractGenericCache AbstractGenericCache}, a zero value (not recommended) means that exactly one non-expired entry is removed
-     * on every eviction. Values over 100 and negative are regarded as zero.
+     * In implementations of {@link AbstractGenericCache AbstractGenericCache}, this is the percentage of the total capacity removed on every step of the
+     * asynchronous eviction, as well as the distance between the high and the low watermark (see {@link #preemptiveEvictionPercentage()}).
+     * A zero value (not recommended) means that exactly one non-expired entry is removed on every step. Values over 100 and negative are regarded as zero.
      */
     short evictionStepPercentage() default 5;
 
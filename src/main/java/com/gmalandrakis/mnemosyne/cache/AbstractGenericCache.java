@@ -1,13 +1,35 @@
 package com.gmalandrakis.mnemosyne.cache;
 
+import com.gmalandrakis.mnemosyne.structures.AbstractSingleIdWrapper;
 import com.gmalandrakis.mnemosyne.structures.CacheParameters;
+import com.gmalandrakis.mnemosyne.structures.CollectionIdWrapper;
+import com.gmalandrakis.mnemosyne.structures.IdMap;
 import com.gmalandrakis.mnemosyne.structures.IdWrapper;
 import com.gmalandrakis.mnemosyne.core.ValuePool;
+import com.gmalandrakis.mnemosyne.memory.MemoryBudget;
+import com.gmalandrakis.mnemosyne.memory.Weigher;
+import com.gmalandrakis.mnemosyne.utils.Tickers;
 
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 import static com.gmalandrakis.mnemosyne.utils.GeneralUtils.sleepUninterrupted;
 
@@ -19,7 +41,14 @@ public abstract class AbstractGenericCache<K, ID, V> extends AbstractMnemosyneCa
     final long timeToLive;
     final long invalidationInterval;
     final int totalCapacity;
+    final long maxWeight;
+    /**
+     * The limit the usage is compared against: the maxWeight if set, the totalCapacity otherwise.
+     */
+    final long maxUsage;
     final float actualCapacity;
+    final float highWatermark;
+    final float lowWatermark;
     final short preemptiveEvictionPercentage;
     final short evictionStepPercentage;
     final boolean handleCollectionKeysSeparately;
@@ -27,6 +56,86 @@ public abstract class AbstractGenericCache<K, ID, V> extends AbstractMnemosyneCa
 
     static final int MAX_MAP_SIZE = 1 << 30 - 1;
 
+    private static final Logger LOGGER = Logger.getLogger(AbstractGenericCache.class.getName());
+
+    /**
+     * Expired entries are filtered out on every read, so the periodic eviction only has to reclaim memory
+     * and may run a few TTLs apart instead of on every single one.
+     */
+    static final int EXPIRED_SWEEP_INTERVAL_MULTIPLIER = 4;
+
+    /**
+     * Keys whose expired entries have already been handed over to the internal thread service for removal.
+     * Prevents a hot expired key from flooding the thread service with identical removal tasks.
+     */
+    final Set<K> pendingExpiredRemovals = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Ensures that at most one asynchronous eviction runs at a time.
+     */
+    final AtomicBoolean evictionInProgress = new AtomicBoolean(false);
+
+    /**
+     * The current generation of the cache. Every IdWrapper is stamped with the generation it was created in, and the wrappers
+     * of older generations are invisible to the readers.
+     */
+    final AtomicInteger generation = new AtomicInteger(0);
+
+    /**
+     * Ensures that at most one reclaim of invalidated entries runs at a time.
+     */
+    final AtomicBoolean reclaimInProgress = new AtomicBoolean(false);
+
+    /**
+     * The weight charged for every ID in the cache, kept in line with the ValuePool whenever a value is updated to one of a different weight,
+     * so that exactly the charged weight is released on removal. Null if the cache neither has a maxWeight, nor takes part in a MemoryBudget.
+     * Modified only under its' own lock.
+     */
+    volatile IdMap<ID, Long> weightById;
+
+    final Class<?> idType;
+
+    /**
+     * The keys referring to every ID, so that the keys of an ID are found without scanning the whole cache.
+     * Only accessed under its' own lock. It may briefly contain keys that no longer refer to the ID, hence the wrappers of the keys are checked anyway.
+     */
+    final IdMap<ID, Set<K>> keysById;
+
+    final AtomicLong currentWeight = new AtomicLong(0);
+
+    final Class<? extends Weigher<?>> weigherType;
+
+    /**
+     * The application-wide budget the cache draws its' weight from, if any.
+     */
+    volatile MemoryBudget memoryBudget;
+
+    /**
+     * The number of reads that found a value, used by the MemoryBudget to tell which caches are worth their memory.
+     */
+    final LongAdder hitCount = new LongAdder();
+
+    /**
+     * The fraction of the limits of the cache currently in effect. Lowered by the HeapPressureMonitor while the heap is under pressure.
+     */
+    volatile float capacityFactor = 1f;
+
+    /**
+     * Notified about the entries evicted to make room, if set.
+     */
+    volatile EvictionListener<K, ID, V> evictionListener;
+
+    /**
+     * The time in milliseconds the expired entries are kept after their expiration, so that their values may still be served as stale.
+     */
+    volatile long expiredRetention;
+
+    /**
+     * The number of evictions, reclaims and removals of expired entries handed over to the internal thread service and not completed yet.
+     * Also the monitor {@link #awaitMaintenance(long)} waits on.
+     */
+    final AtomicInteger pendingMaintenance = new AtomicInteger(0);
+
     public AbstractGenericCache(CacheParameters parameters, ValuePool<ID, V> valuePool) {
         super(parameters, valuePool, new ConcurrentHashMap<K, IdWrapper<ID>>());
         this.valuePool = valuePool;
@@ -37,7 +146,27 @@ public abstract class AbstractGenericCache<K, ID, V> extends AbstractMnemosyneCa
         this.countdownFromCreation = parameters.isCountdownFromCreation();
         this.preemptiveEvictionPercentage = (parameters.getPreemptiveEvictionPercentage() <= 0 || parameters.getPreemptiveEvictionPercentage() >= 100 ? 100 : parameters.getPreemptiveEvictionPercentage());
         this.evictionStepPercentage = (parameters.getEvictionStepPercentage() < 0 || parameters.getEvictionStepPercentage() > 100) ? 0 : parameters.getEvictionStepPercentage();
-        this.actualCapacity = (totalCapacity * (preemptiveEvictionPercentage / 100f));
+        this.maxWeight = Math.max(0, parameters.getMaxWeight());
+        this.maxUsage = maxWeight > 0 ? maxWeight : totalCapacity;
+        this.weigherType = parameters.getWeigher();
+        this.idType = parameters.getIdType();
+        this.keysById = IdMap.forIdType(idType);
+        if (maxWeight > 0) {
+            enableWeightTracking();
+        }
+        valuePool.useReferences(parameters.getValueReferences());
+        valuePool.addRemovalListener(this::removeKeysOf); //values reclaimed by the GC
+        this.actualCapacity = (maxUsage * (preemptiveEvictionPercentage / 100f));
+        /*
+            Writers only hand the eviction over to the internal threads once the usage reaches the high watermark, and the internal threads
+            evict in steps of evictionStepPercentage until the usage is at the low watermark. If no preemptive eviction percentage is set,
+            the high watermark is one step below the total capacity, so that the asynchronous eviction gets a head start.
+            Reaching the total capacity itself means the writers were faster than the eviction: only then do they evict inline.
+            With a maxWeight, the same applies to the weight instead of the number of entries.
+         */
+        var evictionStep = Math.max(1f, maxUsage * (evictionStepPercentage / 100f));
+        this.highWatermark = preemptiveEvictionPercentage < 100 ? actualCapacity : Math.max(1f, maxUsage - evictionStep);
+        this.lowWatermark = Math.max(0f, highWatermark - evictionStep);
         if (parameters.getThreadPoolSize() > 5) {
             internalThreadService = Executors.newFixedThreadPool(parameters.getThreadPoolSize());
         } else {
@@ -86,18 +215,621 @@ public abstract class AbstractGenericCache<K, ID, V> extends AbstractMnemosyneCa
      * The results depend on the particular implementation of the evict() function.
      */
     protected void periodicallyEvict() {
+        var sweepInterval = timeToLive > Long.MAX_VALUE / EXPIRED_SWEEP_INTERVAL_MULTIPLIER ? timeToLive : timeToLive * EXPIRED_SWEEP_INTERVAL_MULTIPLIER;
         while (true) {
-            sleepUninterrupted(timeToLive);
+            sleepUninterrupted(sweepInterval);
             evict();
         }
     }
 
+    /**
+     * Removes all the expired entries, and evicts down to the low watermark if the usage has reached the high watermark.
+     */
+    @Override
+    public void evict() {
+        if (timeToLive != Long.MAX_VALUE) {
+            evictExpired();
+        }
+        if (getUsage() >= getHighWatermark()) {
+            evictDownTo(getLowWatermark());
+        }
+    }
+
+    /**
+     * Called by the implementations before adding new entries.
+     * <p>
+     * Crossing the high watermark starts an asynchronous eviction. The writer evicts inline only if the cache is
+     * already at its' total capacity, and then only as much as needed to make room for one more entry.
+     */
+    protected void evictIfNecessary() {
+        var usage = getUsage();
+        if (usage < getHighWatermark()) {
+            return;
+        }
+        var currentMaxUsage = maxUsage * capacityFactor;
+        if (usage >= currentMaxUsage) { //safety net
+            evictDownTo(currentMaxUsage - 1, 1);
+        }
+        scheduleEviction();
+    }
+
+    /**
+     * Hands the eviction over to the internal thread service, unless an eviction is already in progress.
+     */
+    protected void scheduleEviction() {
+        if (!evictionInProgress.compareAndSet(false, true)) {
+            return;
+        }
+        executeMaintenance(() -> {
+            try {
+                evictDownTo(getLowWatermark());
+            } finally {
+                evictionInProgress.set(false);
+            }
+        });
+    }
+
+    /**
+     * Runs a one-off maintenance task on the internal thread service, keeping track of it for {@link #awaitMaintenance(long)}.
+     */
+    protected void executeMaintenance(Runnable task) {
+        pendingMaintenance.incrementAndGet();
+        try {
+            internalThreadService.execute(() -> {
+                try {
+                    task.run();
+                } finally {
+                    maintenanceDone();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            maintenanceDone();
+            throw e;
+        }
+    }
+
+    private void maintenanceDone() {
+        if (pendingMaintenance.decrementAndGet() == 0) {
+            synchronized (pendingMaintenance) {
+                pendingMaintenance.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Waits until every eviction, reclaim and removal of expired entries handed over to the internal thread service so far has completed,
+     * including the ones they hand over themselves. The periodic evictions and invalidations are not waited for.
+     *
+     * @return False if the timeout passed first.
+     */
+    public boolean awaitMaintenance(long timeoutMillis) throws InterruptedException {
+        var deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        synchronized (pendingMaintenance) {
+            while (pendingMaintenance.get() > 0) {
+                var remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                if (remaining <= 0) {
+                    return false;
+                }
+                pendingMaintenance.wait(remaining);
+            }
+        }
+        return true;
+    }
+
+    protected float getHighWatermark() {
+        return highWatermark * capacityFactor;
+    }
+
+    protected float getLowWatermark() {
+        return lowWatermark * capacityFactor;
+    }
+
+    /**
+     * Shrinks or grows all the limits of the cache (capacity, maxWeight and watermarks) to the given fraction of their configured values.
+     * Shrinking starts an asynchronous eviction down to the new low watermark.
+     *
+     * @param factor A value between 0 (exclusive) and 1. Values out of range are clamped.
+     */
+    public void setCapacityFactor(float factor) {
+        var previous = capacityFactor;
+        capacityFactor = Math.min(1f, Math.max(0.01f, factor));
+        if (capacityFactor < previous && getUsage() > getLowWatermark()) {
+            scheduleEviction();
+        }
+    }
+
+    public float getCapacityFactor() {
+        return capacityFactor;
+    }
+
+    /**
+     * Evicts in steps of evictionStepPercentage until the usage is at or below the target.
+     */
+    protected void evictDownTo(float target) {
+        evictDownTo(target, getEvictionBatchSize());
+    }
+
+    protected void evictDownTo(float target, int batchSize) {
+        while (getUsage() > target) {
+            if (evictEntries(batchSize) == 0) {
+                break; //nothing left to evict
+            }
+        }
+    }
+
+    /**
+     * @return The number of entries removed on every eviction step. At least one.
+     */
+    protected int getEvictionBatchSize() {
+        var entries = maxWeight > 0 ? keyIdMapper.size() : totalCapacity; //the weight of the entries is unknown until they are removed
+        return Math.max(1, (int) (entries * (evictionStepPercentage / 100f)));
+    }
+
+    /**
+     * @return The current usage of the cache: the total weight of its' IDs if a maxWeight is set, the number of entries otherwise.
+     */
+    protected long getUsage() {
+        return maxWeight > 0 ? currentWeight.get() : getNumberOfEntries();
+    }
+
+    /**
+     * @return The number of entries, in the same unit as the capacity.
+     */
+    protected abstract long getNumberOfEntries();
+
+    /**
+     * @return True if the eviction algorithm reads the hits of the IdWrappers. The caches that do not can use a smaller wrapper for every entry.
+     */
+    protected boolean countsHits() {
+        return true;
+    }
+
+    /**
+     * @return A wrapper of the ID in the current generation, with the smallest layout the cache can use.
+     */
+    protected AbstractSingleIdWrapper<ID> newSingleIdWrapper(ID id) {
+        return AbstractSingleIdWrapper.of(id, generation.get(), countsHits());
+    }
+
+    /**
+     * Called by the implementations whenever an ID is added to the wrapper of a key.
+     */
+    protected void linkKey(K key, ID id) {
+        synchronized (keysById) {
+            var keys = keysById.get(id);
+            if (keys == null) {
+                keys = new HashSet<>(2);
+                keysById.put(id, keys);
+            }
+            keys.add(key);
+        }
+    }
+
+    /**
+     * Called by the implementations whenever an ID is removed from the wrapper of a key, or the key itself is removed.
+     */
+    protected void unlinkKey(K key, ID id) {
+        synchronized (keysById) {
+            var keys = keysById.get(id);
+            if (keys != null && keys.remove(key) && keys.isEmpty()) {
+                keysById.remove(id);
+            }
+        }
+    }
+
+    /**
+     * @return A copy of the keys referring to the ID.
+     */
+    protected Collection<K> getKeysOf(ID id) {
+        synchronized (keysById) {
+            var keys = keysById.get(id);
+            return keys == null ? List.of() : new ArrayList<>(keys);
+        }
+    }
+
+    /**
+     * Removes every key referring to any of the IDs. Called by the ValuePool for the values it removed on its' own, e.g. the ones reclaimed by the GC:
+     * unlike {@link #removeById(Collection)}, the whole collections are removed instead of just the IDs, since they would be incomplete otherwise.
+     */
+    protected void removeKeysOf(Collection<ID> ids) {
+        for (ID id : ids) {
+            getKeysOf(id).forEach(this::remove);
+        }
+    }
+
+    /**
+     * Called on the read path when the value of a key, or some of the values of a collection, are missing from the ValuePool, e.g. reclaimed by the GC before
+     * the ValuePool got to notify the cache. The caller treats the key as a miss, so that an incomplete collection is never returned,
+     * and the key is removed asynchronously unless it is updated in the meantime.
+     */
+    protected void scheduleIncompleteRemoval(K key, IdWrapper<ID> idWrapper) {
+        executeMaintenance(() -> {
+            synchronized (keyIdMapper) { //the map of the LRUCache is not concurrent
+                if (keyIdMapper.get(key) == idWrapper) {
+                    remove(key);
+                }
+            }
+        });
+    }
+
+    /**
+     * Called by the implementations when an ID is added to the cache for the first time.
+     * The weight is calculated by the ValuePool, hence the value has to be in the ValuePool already.
+     */
+    protected void chargeWeight(ID id) {
+        var weights = weightById;
+        if (weights == null) {
+            return;
+        }
+        long delta;
+        synchronized (weights) {
+            var weight = valuePool.getWeight(id);
+            var previous = weights.put(id, weight);
+            delta = previous == null ? weight : weight - previous;
+            currentWeight.addAndGet(delta);
+        }
+        checkBudgetShare(delta);
+    }
+
+    /**
+     * Called by the ValuePool whenever the weight of a value changes. Charges the current weight of the value instead of the one charged so far,
+     * if the cache uses the ID. The weight is read again from the ValuePool, so that concurrent updates of the same value are never applied out of order.
+     */
+    private void reweigh(ID id, long previousWeight, long weight) {
+        var weights = weightById;
+        long delta;
+        synchronized (weights) {
+            var charged = weights.get(id);
+            if (charged == null) {
+                return;
+            }
+            var current = valuePool.getWeight(id);
+            delta = current - charged;
+            if (delta == 0) {
+                return;
+            }
+            weights.put(id, current);
+            currentWeight.addAndGet(delta);
+        }
+        checkBudgetShare(delta);
+    }
+
+    /**
+     * The budget is charged by the ValuePool, once per value; the cache only has to stay within its' share.
+     */
+    private void checkBudgetShare(long delta) {
+        var budget = memoryBudget;
+        if (budget != null && delta > 0) {
+            budget.checkShare(this);
+        }
+    }
+
+    /**
+     * Called by the implementations when the last use of an ID in the cache is removed.
+     */
+    protected void releaseWeight(ID id) {
+        var weights = weightById;
+        if (weights == null) {
+            return;
+        }
+        synchronized (weights) {
+            var weight = weights.remove(id);
+            if (weight != null) {
+                currentWeight.addAndGet(-weight);
+            }
+        }
+    }
+
+    /**
+     * Called by the implementations whenever a read finds a value.
+     */
+    protected void recordHit() {
+        hitCount.increment();
+    }
+
+    /**
+     * Makes the cache draw its' weight from the given budget. Called by the {@link MemoryBudget#register MemoryBudget}
+     * before the cache is used.
+     */
+    public void joinBudget(MemoryBudget budget) {
+        enableWeightTracking();
+        this.memoryBudget = budget;
+    }
+
+    /**
+     * Evicts, in the order of the eviction algorithm, until the weight of the cache is at or below the target.
+     * Used by the MemoryBudget, regardless of the maxWeight of the cache.
+     */
+    public void evictWeightDownTo(long targetWeight) {
+        while (currentWeight.get() > targetWeight) {
+            if (evictEntries(Math.max(1, (int) (keyIdMapper.size() * (evictionStepPercentage / 100f)))) == 0) {
+                break;
+            }
+        }
+    }
+
+    public void setEvictionListener(EvictionListener<K, ID, V> evictionListener) {
+        this.evictionListener = evictionListener;
+    }
+
+    /**
+     * Keeps the expired entries for the given time after their expiration instead of removing them right away. The reads still treat them as misses,
+     * but their values remain available through the keyIdMapper and the ValuePool, e.g. to be served as stale while reloading. Invalidated entries are not kept.
+     */
+    public void retainExpiredFor(long expiredRetention) {
+        this.expiredRetention = Math.max(0, expiredRetention);
+    }
+
+    /**
+     * @return The time in milliseconds since the wrapper expired, a negative number if it has not expired yet, or Long.MAX_VALUE if it was invalidated.
+     */
+    public long getTimeSinceExpiration(IdWrapper<ID> idWrapper) {
+        if (isInvalidated(idWrapper)) {
+            return Long.MAX_VALUE;
+        }
+        var expiresAt = getExpirationTime(idWrapper);
+        return expiresAt == Long.MAX_VALUE ? -1 : Tickers.now() - expiresAt;
+    }
+
+    private long getExpirationTime(IdWrapper<ID> idWrapper) {
+        return timeToLive == Long.MAX_VALUE ? Long.MAX_VALUE : (countdownFromCreation ? idWrapper.getCreatedOn() : idWrapper.getLastAccessed()) + timeToLive;
+    }
+
+    /**
+     * Called by the implementations for every entry they are about to evict in order to make room.
+     * A failing listener is logged and otherwise ignored, so that the entry is evicted anyway.
+     */
+    @SuppressWarnings("unchecked")
+    protected void notifyEviction(K key, IdWrapper<ID> idWrapper) {
+        var listener = evictionListener;
+        if (listener == null || idWrapper == null || isExpired(idWrapper)) {
+            return;
+        }
+        var expiresAt = getExpirationTime(idWrapper);
+        Collection<ID> ids = idWrapper instanceof CollectionIdWrapper ? new ArrayList<>(((CollectionIdWrapper<ID>) idWrapper).getIds()) : List.of(((AbstractSingleIdWrapper<ID>) idWrapper).getId());
+        var values = new HashMap<ID, V>();
+        for (ID id : ids) {
+            var value = valuePool.getValue(id);
+            if (value != null) {
+                values.put(id, value);
+            }
+        }
+        if (values.isEmpty()) {
+            return;
+        }
+        try {
+            listener.onEviction(key, values, expiresAt);
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.WARNING, "The eviction listener of cache " + name + " failed", e);
+        }
+    }
+
+    public long getCurrentWeight() {
+        return currentWeight.get();
+    }
+
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    private synchronized void enableWeightTracking() {
+        if (weightById == null) {
+            valuePool.enableWeighing(weigherType);
+            weightById = IdMap.forIdType(idType);
+            valuePool.addWeightListener(this::reweigh);
+        }
+    }
+
+    /**
+     * Removes all the expired entries.
+     */
+    protected abstract void evictExpired();
+
+    /**
+     * Removes up to the given number of non-expired entries, as chosen by the eviction algorithm.
+     *
+     * @return The number of entries actually removed.
+     */
+    protected abstract int evictEntries(int numberOfEntries);
+
     /**
      * Checks if the particular entry is expired.
      */
     protected boolean isExpired(Map.Entry<K, IdWrapper<ID>> entry) {
-        long creationOrAccessTime = countdownFromCreation ? entry.getValue().getCreatedOn() : entry.getValue().getLastAccessed();
-        return (System.currentTimeMillis() - creationOrAccessTime) > this.timeToLive;    //System.currentTimeMillis() is very slow on Linux though very fast on Windows, but System.nanoTime() the opposite.
+        return isExpired(entry.getValue());
+    }
+
+    /**
+     * Checks if the particular IdWrapper is expired. Wrappers of an invalidated generation count as expired.
+     * <p>
+     * Must be called before the IDs are retrieved from the wrapper, since retrieving them updates the access timestamp.
+     */
+    protected boolean isExpired(IdWrapper<ID> idWrapper) {
+        if (isInvalidated(idWrapper)) {
+            return true;
+        }
+        if (timeToLive == Long.MAX_VALUE) {
+            return false;
+        }
+        long creationOrAccessTime = countdownFromCreation ? idWrapper.getCreatedOn() : idWrapper.getLastAccessed();
+        return (Tickers.now() - creationOrAccessTime) > this.timeToLive;    //System.currentTimeMillis() is very slow on Linux, hence the coarse-grained shared Ticker.
+    }
+
+    /**
+     * Checks if the particular entry may be removed, i.e. if it was invalidated, or has been expired for longer than the retention of the expired entries.
+     */
+    protected boolean isReclaimable(Map.Entry<K, IdWrapper<ID>> entry) {
+        return isReclaimable(entry.getValue());
+    }
+
+    protected boolean isReclaimable(IdWrapper<ID> idWrapper) {
+        if (!isExpired(idWrapper)) {
+            return false;
+        }
+        var retention = expiredRetention;
+        return retention == 0 || isInvalidated(idWrapper) || Tickers.now() - getExpirationTime(idWrapper) > retention;
+    }
+
+    /**
+     * Called on the read path when an expired entry is found. The entry is treated as a miss by the caller,
+     * and its' removal happens asynchronously so that the reader does not pay for the bookkeeping.
+     */
+    protected void scheduleExpiredRemoval(K key) {
+        if (reclaimInProgress.get() || !pendingExpiredRemovals.add(key)) { //a running reclaim checks every key anyway
+            return;
+        }
+        executeMaintenance(() -> {
+            try {
+                removeIfExpired(key);
+            } finally {
+                pendingExpiredRemovals.remove(key);
+            }
+        });
+    }
+
+    /**
+     * Removes the key only if it is still expired and {@link #isReclaimable(IdWrapper) reclaimable}: it may have been updated with a fresh ID in the meantime.
+     */
+    protected void removeIfExpired(K key) {
+        var idWrapper = keyIdMapper.get(key);
+        if (idWrapper != null && isReclaimable(idWrapper)) {
+            remove(key);
+        }
+    }
+
+    /**
+     * Checks if the IdWrapper was created before the last invalidation of the cache.
+     */
+    protected boolean isInvalidated(IdWrapper<ID> idWrapper) {
+        return idWrapper.getGeneration() != generation.get();
+    }
+
+    /**
+     * Invalidates the cache in constant time: increasing the generation makes every existing entry invisible at once,
+     * and the entries along with their uses in the ValuePool are reclaimed asynchronously.
+     */
+    @Override
+    public void invalidateCache() {
+        generation.incrementAndGet();
+        var listener = evictionListener;
+        if (listener != null) {
+            listener.onInvalidation();
+        }
+        scheduleReclaim();
+    }
+
+    /**
+     * Hands the reclaim of the invalidated entries over to the internal thread service, unless a reclaim is already in progress.
+     * If the cache is invalidated again while reclaiming, the reclaim starts over.
+     */
+    protected void scheduleReclaim() {
+        if (!reclaimInProgress.compareAndSet(false, true)) {
+            return;
+        }
+        executeMaintenance(() -> {
+            var reclaimedGeneration = generation.get();
+            try {
+                for (K key : getKeySnapshot()) {
+                    removeIfExpired(key); //one key at a time, so that the readers and writers are never blocked for long
+                }
+            } finally {
+                reclaimInProgress.set(false);
+            }
+            if (reclaimedGeneration != generation.get()) {
+                scheduleReclaim();
+            }
+        });
+    }
+
+    /**
+     * Looks the wrapper of the key up for the callers outside the cache, e.g. the refresh of the proxy, without checking its' expiration.
+     * The IDs have to be read via {@link IdWrapper#peekIds()}, so that they do not count as accesses.
+     *
+     * @return The wrapper of the key, or null if absent.
+     */
+    public IdWrapper<ID> peekWrapper(K key) {
+        return keyIdMapper.get(key);
+    }
+
+    /**
+     * @return A copy of the current keys, safe to iterate while the cache is modified.
+     */
+    protected Collection<K> getKeySnapshot() {
+        return new ArrayList<>(keyIdMapper.keySet());
+    }
+
+    /**
+     * @return A copy of the current entries, safe to iterate while the cache is modified.
+     */
+    protected Collection<Map.Entry<K, IdWrapper<ID>>> getEntrySnapshot() {
+        var entries = new ArrayList<Map.Entry<K, IdWrapper<ID>>>(keyIdMapper.size());
+        keyIdMapper.forEach((key, idWrapper) -> entries.add(new AbstractMap.SimpleImmutableEntry<>(key, idWrapper)));
+        return entries;
+    }
+
+    /**
+     * @return The entries that are neither expired nor invalidated, in the order of the eviction algorithm where it keeps one. Used for snapshots:
+     * the IDs have to be read via {@link IdWrapper#peekIds()}, so that they do not count as accesses.
+     */
+    public List<Map.Entry<K, IdWrapper<ID>>> getLiveEntries() {
+        var liveEntries = new ArrayList<Map.Entry<K, IdWrapper<ID>>>();
+        for (Map.Entry<K, IdWrapper<ID>> entry : getEntrySnapshot()) {
+            if (!isExpired(entry)) {
+                liveEntries.add(entry);
+            }
+        }
+        return liveEntries;
+    }
+
+    /**
+     * Adds an entry from a snapshot along with its' original timestamps, unless its' time to live has run out in the meantime.
+     * The values of the IDs have to be in the ValuePool already.
+     *
+     * @return True if the entry was added.
+     */
+    public boolean restoreEntry(K key, Collection<ID> ids, long createdOn, long lastAccessed) {
+        if (key == null || ids.isEmpty() || timeToLive != Long.MAX_VALUE && Tickers.now() - (countdownFromCreation ? createdOn : lastAccessed) > timeToLive) {
+            return false;
+        }
+        if (returnsCollection) {
+            putAll(key, ids);
+        } else {
+            put(key, ids.iterator().next());
+        }
+        synchronized (keyIdMapper) { //the map of the LRUCache is not concurrent
+            var idWrapper = keyIdMapper.get(key);
+            if (idWrapper != null) {
+                idWrapper.restoreTimestamps(createdOn, lastAccessed);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Adds an entry promoted from a lower tier, so that it expires when it would have if it had never been evicted.
+     * In caches counting down from the last access, the promotion counts as an access. The values of the IDs have to be in the ValuePool already.
+     *
+     * @param expiresAt The expiration of the entry in the tier, or Long.MAX_VALUE if never.
+     * @return True if the entry was added, i.e. it had not expired.
+     */
+    public boolean restoreEntry(K key, Collection<ID> ids, long expiresAt) {
+        var now = Tickers.now();
+        if (expiresAt < now) {
+            return false;
+        }
+        var createdOn = timeToLive == Long.MAX_VALUE || expiresAt == Long.MAX_VALUE ? now : expiresAt - timeToLive;
+        return restoreEntry(key, ids, createdOn, countdownFromCreation ? createdOn : now);
+    }
+
+    /**
+     * Runs the tasks like {@link #executeMaintenance(Runnable)}, so that {@link #awaitMaintenance(long)} waits for them too.
+     */
+    public Executor getMaintenanceExecutor() {
+        return this::executeMaintenance;
     }
 
     /**
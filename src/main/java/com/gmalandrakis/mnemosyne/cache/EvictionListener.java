@@ -0,0 +1,25 @@
+package com.gmalandrakis.mnemosyne.cache;
+
+import java.util.Map;
+
+/**
+ * Notified by the {@link AbstractGenericCache caches} about the entries they evict to make room, e.g. in order to keep them in a lower tier.
+ * Entries removed because they expired or were invalidated are not reported.
+ * <p>
+ * The listener is also notified whenever the whole cache is invalidated, so that it can discard whatever it kept of it.
+ *
+ * @author George Malandrakis (malandrakisgeo@gmail.com)
+ */
+public interface EvictionListener<K, ID, V> {
+
+    /**
+     * Called on the evicting thread, before the entry is removed.
+     *
+     * @param values    The values of the key by ID, in no particular order. Values already missing from the ValuePool are left out.
+     * @param expiresAt The time at which the entry would have expired, or Long.MAX_VALUE if the cache has no timeToLive.
+     */
+    void onEviction(K key, Map<ID, V> values, long expiresAt);
+
+    default void onInvalidation() {
+    }
+}
@@ -2,13 +2,13 @@ package com.gmalandrakis.mnemosyne.cache;
 
 import com.gmalandrakis.mnemosyne.core.ValuePool;
 import com.gmalandrakis.mnemosyne.exception.MnemosyneRetrievalException;
+import com.gmalandrakis.mnemosyne.structures.AbstractSingleIdWrapper;
 import com.gmalandrakis.mnemosyne.structures.CacheParameters;
 import com.gmalandrakis.mnemosyne.structures.CollectionIdWrapper;
+import com.gmalandrakis.mnemosyne.structures.IdMap;
 import com.gmalandrakis.mnemosyne.structures.IdWrapper;
-import com.gmalandrakis.mnemosyne.structures.SingleIdWrapper;
 
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
 
 /**
@@ -39,10 +39,11 @@ public class FIFOCache<K, ID, T> extends AbstractGenericCache<K, ID, T> {
         By keeping track of how many keys are using an ID, we can accurately inform the ValuePool that it may be time to get rid of an ID and its' corresponding
         object.
      */
-    final ConcurrentHashMap<ID, Integer> numberOfUsesById = new ConcurrentHashMap<ID, Integer>();
+    final IdMap<ID, Integer> numberOfUsesById;
 
     public FIFOCache(CacheParameters parameters, ValuePool poolService) {
         super(parameters, poolService);
+        this.numberOfUsesById = IdMap.forIdType(parameters.getIdType());
     }
 
     @Override
@@ -51,14 +52,12 @@ public class FIFOCache<K, ID, T> extends AbstractGenericCache<K, ID, T> {
             return;
         }
 
-        if (concurrentFIFOQueue.size() >= this.actualCapacity) {
-            this.evict();
-        }
+        evictIfNecessary();
         //We avoid iterative calls to put(), to avoid checking the keyIdMapper and concurrentFIFOQueue multiple times. One time suffices.
-        var possibleValue = (CollectionIdWrapper<ID>) keyIdMapper.computeIfAbsent(key, k -> new CollectionIdWrapper<>());
+        var possibleValue = getOrCreateCollectionWrapper(key);
         possibleValue.addAllToCollectionOrUpdate(map);
 
-        map.forEach(this::addOrUpdateIdAndValue);
+        map.forEach(id -> addOrUpdateIdAndValue(key, id));
 
         if (!concurrentFIFOQueue.contains(key)) {
             concurrentFIFOQueue.add(key);
@@ -70,27 +69,31 @@ public class FIFOCache<K, ID, T> extends AbstractGenericCache<K, ID, T> {
         if (key == null || id == null) {
             return;
         }
-        if (concurrentFIFOQueue.size() >= this.actualCapacity) {
-            this.evict();
-        }
+        evictIfNecessary();
 
+        var newUse = true;
         if (returnsCollection) {
-            var idWrapper = (CollectionIdWrapper) keyIdMapper.computeIfAbsent(key, k -> new CollectionIdWrapper());
+            var idWrapper = getOrCreateCollectionWrapper(key);
             idWrapper.addToCollectionOrUpdate(id); //Unlike single-value caches, removing an old ID from a collection cache is not as simple as just replacing it a newer one. Only a manual call to removeOneFromCollection() or expiration can remove it.
         } else {
             var idWrapper = keyIdMapper.get(key);
-            if (idWrapper != null) {
-                var oldId = (ID) ((SingleIdWrapper) idWrapper).getId();
-                if (oldId.equals(id)) {
-                    valuePool.put(id, false); //just update the current value
-                    return;
+            if (idWrapper != null && !isExpired(idWrapper) && ((AbstractSingleIdWrapper) idWrapper).getId().equals(id)) { //an expired wrapper is replaced, since it would stay expired
+                valuePool.put(id, false); //just update the current value
+                return;
+            }
+            var previous = keyIdMapper.put(key, newSingleIdWrapper(id)); //if we used putIfAbsent, we would prevent the key from being updated with a brand new ID/value
+            if (previous != null) {
+                if (((AbstractSingleIdWrapper) previous).getId().equals(id)) { //an expired wrapper of the same ID: the key keeps its' use, since releasing it first would drop the value if the key were its' only user
+                    newUse = false;
+                } else {
+                    removeOrDecreaseIdUses(key, previous); //the wrapper returned by put() cannot be released by a concurrent reclaim too
                 }
-                removeOrDecreaseIdUses(oldId);
             }
-            keyIdMapper.put(key, new SingleIdWrapper<ID>(id)); //if we used putIfAbsent, we would prevent the key from being updated with a brand new ID/value
         }
 
-        addOrUpdateIdAndValue(id);
+        if (newUse) {
+            addOrUpdateIdAndValue(key, id);
+        }
 
         if (!concurrentFIFOQueue.contains(key)) {
             concurrentFIFOQueue.add(key); //reminder that updates are not synonymous to accesses, and this is why we do not change the position in the queue on updating.
@@ -104,14 +107,22 @@ public class FIFOCache<K, ID, T> extends AbstractGenericCache<K, ID, T> {
         }
         var in = numberOfUsesById.get(id);
         var initialNumOfUses = in == null ? 0 : in;
-        int i = initialNumOfUses;
+        int added = 0;
         for (K k : keyIdMapper.keySet()) {
             var idWrapper = ((CollectionIdWrapper) keyIdMapper.get(k));
+            if (idWrapper == null || isInvalidated(idWrapper)) {
+                continue;
+            }
             if (idWrapper.addToCollectionOrUpdate(id)) {
-                numberOfUsesById.put(id, ++i);
+                increaseIdUses(id);
+                added++;
+                linkKey(k, id);
             }
         }
         valuePool.put(id, initialNumOfUses == 0);
+        if (initialNumOfUses == 0 && added > 0) {
+            chargeWeight(id);
+        }
     }
 
     @Override
@@ -121,13 +132,24 @@ public class FIFOCache<K, ID, T> extends AbstractGenericCache<K, ID, T> {
         }
         var cachedIdData = keyIdMapper.get(key);
         if (cachedIdData == null) {
+            if (!concurrentFIFOQueue.contains(key) || keyIdMapper.containsKey(key)) {
+                return null; //evicted concurrently, and possibly put again: remove() takes the key out of the queue before the keyIdMapper, put() adds it to the keyIdMapper first
+            }
             concurrentFIFOQueue.remove(key);
             throw new MnemosyneRetrievalException("Key is present in concurrent FIFO queue, buy not in keyIdMap: " + key.toString());
         }
+        if (isExpired(cachedIdData)) {
+            scheduleExpiredRemoval(key);
+            return null;
+        }
         //TODO: Perhaps a cacheIdData with single Id could be used when handleCollectionKeysSeparately.
-        ID id = (ID) (handleCollectionKeysSeparately ? ((CollectionIdWrapper) cachedIdData).getIds().toArray()[0] : ((SingleIdWrapper) cachedIdData).getId());
+        ID id = (ID) (handleCollectionKeysSeparately ? ((CollectionIdWrapper) cachedIdData).getIds().toArray()[0] : ((AbstractSingleIdWrapper) cachedIdData).getId());
 
-        return valuePool.getValue(id);
+        var value = valuePool.getValue(id);
+        if (value != null) {
+            recordHit();
+        }
+        return value;
     }
 
     @Override
@@ -137,10 +159,26 @@ public class FIFOCache<K, ID, T> extends AbstractGenericCache<K, ID, T> {
         }
         var id = (CollectionIdWrapper) keyIdMapper.get(key);
         if (id == null) {
+            if (!concurrentFIFOQueue.contains(key) || keyIdMapper.containsKey(key)) {
+                return Collections.emptyList(); //evicted concurrently, and possibly put again
+            }
             concurrentFIFOQueue.remove(key);
             throw new MnemosyneRetrievalException("Key was present in concurrent FIFO queue, buy not in keyIdMap: " + key.toString());
         }
-        return valuePool.getAll(id.getIds());
+        if (isExpired(id)) {
+            scheduleExpiredRemoval(key);
+            return Collections.emptyList();
+        }
+        var ids = id.getIds();
+        var values = valuePool.getAll(ids);
+        if (values.size() < ids.size()) { //some values were removed by the ValuePool
+            scheduleIncompleteRemoval(key, id);
+            return Collections.emptyList();
+        }
+        if (!values.isEmpty()) {
+            recordHit();
+        }
+        return values;
     }
 
     @Override
@@ -164,13 +202,14 @@ public class FIFOCache<K, ID, T> extends AbstractGenericCache<K, ID, T> {
         }
         concurrentFIFOQueue.remove(key);
         keyIdMapper.remove(key);
+        removeOrDecreaseIdUses(key, cacheData);
+    }
 
-        if (returnsCollection) {
-            Collection<ID> ids = ((CollectionIdWrapper) cacheData).getIds();
-            ids.forEach(this::removeOrDecreaseIdUses);
-        } else {
-            var id = (ID) ((SingleIdWrapper) cacheData).getId();
-            removeOrDecreaseIdUses(id);
+    @Override
+    protected void removeIfExpired(K key) {
+        var idWrapper = keyIdMapper.get(key);
+        if (idWrapper != null && isReclaimable(idWrapper)) {
+            removeWrapper(key, idWrapper);
         }
     }
 
@@ -186,11 +225,11 @@ public class FIFOCache<K, ID, T> extends AbstractGenericCache<K, ID, T> {
             if (cacheData == null) {
                 return;
             }
-            if (cacheData.getIds().remove(id)) {
-                removeOrDecreaseIdUses(id);
-                if(cacheData.getIds().isEmpty()){
-                    keyIdMapper.remove(key);
+            if (cacheData.removeFromCollection(id)) {
+                removeOrDecreaseIdUses(key, id);
+                if(cacheData.isEmpty()){
                     concurrentFIFOQueue.remove(key);
+                    keyIdMapper.remove(key);
                 }
             }
         }
@@ -201,22 +240,24 @@ public class FIFOCache<K, ID, T> extends AbstractGenericCache<K, ID, T> {
         var relatedKeys = new HashSet<K>();
 
         for (ID id : ids) {
-            if (!returnsCollection) {
-                for (K k : keyIdMapper.keySet()) {
-                    if (((SingleIdWrapper) keyIdMapper.get(k)).getId().equals(id)) {
+            for (K k : getKeysOf(id)) {
+                var idWrapper = keyIdMapper.get(k);
+                if (idWrapper == null) {
+                    continue;
+                }
+                if (!returnsCollection) {
+                    if (((AbstractSingleIdWrapper) idWrapper).getId().equals(id)) {
                         relatedKeys.add(k);
-                        removeOrDecreaseIdUses(id);
+                        removeOrDecreaseIdUses(k, id);
                     }
-                }
-            } else {
-                for (K k : keyIdMapper.keySet()) {
-                    var savedIds = ((CollectionIdWrapper) keyIdMapper.get(k)).getIds();
-                    var deleted = savedIds.remove(id);
+                } else {
+                    var savedIds = (CollectionIdWrapper<ID>) idWrapper;
+                    var deleted = savedIds.removeFromCollection(id);
                     if (deleted) {
                         if (savedIds.isEmpty()) {
                             relatedKeys.add(k);
                         }
-                        removeOrDecreaseIdUses(id);
+                        removeOrDecreaseIdUses(k, id);
                     }
                 }
             }
@@ -224,8 +265,8 @@ public class FIFOCache<K, ID, T> extends AbstractGenericCache<K, ID, T> {
 
         if (handleCollectionKeysSeparately || !returnsCollection) { //on special collection handling, a key corresponds to at most one ID
             relatedKeys.forEach(k -> {
-                keyIdMapper.remove(k);
                 concurrentFIFOQueue.remove(k);
+                keyIdMapper.remove(k);
             });
         }
     }
@@ -241,36 +282,34 @@ public class FIFOCache<K, ID, T> extends AbstractGenericCache<K, ID, T> {
     }
 
     @Override
-    public void evict() {
-        if (timeToLive != Long.MAX_VALUE && timeToLive > 0) {
-            var expiredValues = keyIdMapper.entrySet().stream().filter(this::isExpired).map(Map.Entry::getKey); //Filtrarisma prwtistws se aparxaiwmenes times, pou tha einai kai lathos an epistrafoun. TODO: Isws kana expiration check ston getter()?
-            expiredValues.forEach(this::remove);
-        }
+    protected long getNumberOfEntries() {
+        return numberOfUsesById.size();
+    }
 
-        while (numberOfUsesById.size() >= this.actualCapacity) {
+    @Override
+    protected boolean countsHits() {
+        return false;
+    }
+
+    @Override
+    protected void evictExpired() {
+        var expiredValues = keyIdMapper.entrySet().stream().filter(this::isReclaimable).map(Map.Entry::getKey); //The getters already filter the expired values out. This only reclaims the memory.
+        expiredValues.forEach(this::remove);
+    }
+
+    @Override
+    protected int evictEntries(int numberOfEntries) {
+        int evicted = 0;
+        while (evicted < numberOfEntries) {
             var oldestElement = concurrentFIFOQueue.poll(); //Gibt das erste Element zuruck und entfernt es aus der Queue
-            if (oldestElement != null) {
-                remove(oldestElement);
-            } else { //Om queue:n är tom då finns det (nog) inget att ta bort.
+            if (oldestElement == null) { //Om queue:n är tom då finns det (nog) inget att ta bort.
                 break; //Io sono una anatra
             }
+            notifyEviction(oldestElement, keyIdMapper.get(oldestElement));
+            remove(oldestElement);
+            evicted++;
         }
-        //qifsha ropt
-    }
-
-    @Override
-    public void invalidateCache() {
-        while (!concurrentFIFOQueue.isEmpty()) {
-            var k = concurrentFIFOQueue.poll();
-            remove(k);
-        }
-        /*
-            When we preemptively added values in collection-caches without filtering out the ones already fetched,
-            we ended up with a memory leak: the IDs were removed from concurrentFIFOQueue but were still referenced to
-            by numberOfUsesById. We keep it as it is to help us find other mistakes in a while.
-            TODO: Replace it manually after everything is tested thoroughly.
-         */
-        //numberOfUsesById = new ConcurrentHashMap<ID, Integer>();
+        return evicted;
     }
 
     @Override
@@ -280,21 +319,83 @@ public class FIFOCache<K, ID, T> extends AbstractGenericCache<K, ID, T> {
     }
 
 
-    private void removeOrDecreaseIdUses(ID id) {
-        var numOfCollectionsUsingId = numberOfUsesById.getOrDefault(id, 0) - 1;
-        if (numOfCollectionsUsingId <= 0) {
-            numberOfUsesById.remove(id);
-            valuePool.removeOrDecreaseNumberOfUsesForId(id);
+    /**
+     * Returns the collection wrapper of the key, replacing it first if it belongs to an invalidated generation that is not reclaimed yet.
+     */
+    private CollectionIdWrapper<ID> getOrCreateCollectionWrapper(K key) {
+        var idWrapper = keyIdMapper.computeIfAbsent(key, k -> new CollectionIdWrapper<>(generation.get()));
+        if (isExpired(idWrapper)) {
+            removeWrapper(key, idWrapper);
+            idWrapper = keyIdMapper.computeIfAbsent(key, k -> new CollectionIdWrapper<>(generation.get()));
+        }
+        return (CollectionIdWrapper<ID>) idWrapper;
+    }
+
+    /**
+     * Removes the key only if it still maps to the given wrapper, so that a concurrent put is never undone.
+     */
+    private void removeWrapper(K key, IdWrapper<ID> idWrapper) {
+        concurrentFIFOQueue.remove(key); //before the keyIdMapper, see get()
+        if (!keyIdMapper.remove(key, idWrapper)) {
+            if (keyIdMapper.containsKey(key) && !concurrentFIFOQueue.contains(key)) {
+                concurrentFIFOQueue.add(key);
+            }
+            return;
+        }
+        removeOrDecreaseIdUses(key, idWrapper);
+    }
+
+    private void removeOrDecreaseIdUses(K key, IdWrapper<ID> idWrapper) {
+        if (returnsCollection) {
+            Collection<ID> ids = ((CollectionIdWrapper) idWrapper).getIds();
+            ids.forEach(id -> removeOrDecreaseIdUses(key, id));
         } else {
-            numberOfUsesById.put(id, numOfCollectionsUsingId);
+            var id = (ID) ((AbstractSingleIdWrapper) idWrapper).getId();
+            removeOrDecreaseIdUses(key, id);
+        }
+    }
+
+    private void removeOrDecreaseIdUses(K key, ID id) {
+        unlinkKey(key, id);
+        if (decreaseIdUses(id) <= 0) {
+            releaseWeight(id);
+            valuePool.removeOrDecreaseNumberOfUsesForId(id);
         }
     }
 
-    private void addOrUpdateIdAndValue(ID id) {
-        var usesOfIdInCache = numberOfUsesById.getOrDefault(id, 0); //In non-collection caches, a key corresponds to just one object, but one object may be referenced to by many keys.
-        var idAlreadyInCache = usesOfIdInCache > 0;
-        numberOfUsesById.put(id, ++usesOfIdInCache);
+    private void addOrUpdateIdAndValue(K key, ID id) {
+        linkKey(key, id);
+        var idAlreadyInCache = increaseIdUses(id) > 0; //In non-collection caches, a key corresponds to just one object, but one object may be referenced to by many keys.
         valuePool.put(id, !idAlreadyInCache);
+        if (!idAlreadyInCache) {
+            chargeWeight(id);
+        }
+    }
+
+    /**
+     * @return The number of uses before the increase. The reclaim of invalidated entries runs concurrently with the writers, hence the update is atomic.
+     */
+    private int increaseIdUses(ID id) {
+        synchronized (numberOfUsesById) {
+            var uses = numberOfUsesById.getOrDefault(id, 0);
+            numberOfUsesById.put(id, uses + 1);
+            return uses;
+        }
+    }
+
+    /**
+     * @return The number of uses left. The ID is removed once none is left.
+     */
+    private int decreaseIdUses(ID id) {
+        synchronized (numberOfUsesById) {
+            var remaining = numberOfUsesById.getOrDefault(id, 0) - 1;
+            if (remaining <= 0) {
+                numberOfUsesById.remove(id);
+            } else {
+                numberOfUsesById.put(id, remaining);
+            }
+            return remaining;
+        }
     }
 
 }
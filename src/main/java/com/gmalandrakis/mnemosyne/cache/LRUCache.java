@@ -1,22 +1,23 @@
 package com.gmalandrakis.mnemosyne.cache;
 
 import com.gmalandrakis.mnemosyne.core.ValuePool;
+import com.gmalandrakis.mnemosyne.structures.AbstractSingleIdWrapper;
 import com.gmalandrakis.mnemosyne.structures.CacheParameters;
 import com.gmalandrakis.mnemosyne.structures.CollectionIdWrapper;
+import com.gmalandrakis.mnemosyne.structures.IdMap;
 import com.gmalandrakis.mnemosyne.structures.IdWrapper;
-import com.gmalandrakis.mnemosyne.structures.SingleIdWrapper;
 
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 @SuppressWarnings({"unchecked", "rawtypes"})
 public class LRUCache<K, ID, T> extends AbstractGenericCache<K, ID, T> {
 
-    final ConcurrentHashMap<ID, Integer> numberOfUsesById = new ConcurrentHashMap<ID, Integer>();
+    final IdMap<ID, Integer> numberOfUsesById;
 
     public LRUCache(CacheParameters cacheParameters, ValuePool poolService) {
         super(cacheParameters, poolService);
+        this.numberOfUsesById = IdMap.forIdType(cacheParameters.getIdType());
         this.keyIdMapper = new LinkedHashMap<K, IdWrapper<ID>>(totalCapacity, 0.75F, true);
 
     }
@@ -26,16 +27,14 @@ public class LRUCache<K, ID, T> extends AbstractGenericCache<K, ID, T> {
         if (key == null || map == null || !returnsCollection) {
             return;
         }
-        if (keyIdMapper.size() >= this.actualCapacity) {
-            this.evict();
-        }
+        evictIfNecessary();
         //We avoid iterative calls to put(), to avoid checking the keyIdMapper multiple times. One time suffices.
         synchronized (keyIdMapper) {
-            var possibleValue = (CollectionIdWrapper<ID>) keyIdMapper.computeIfAbsent(key, k -> new CollectionIdWrapper<>());
+            var possibleValue = getOrCreateCollectionWrapper(key);
             possibleValue.addAllToCollectionOrUpdate(map);
         }
 
-        map.forEach(this::addOrUpdateIdAndValue);
+        map.forEach(id -> addOrUpdateIdAndValue(key, id));
     }
 
     @Override
@@ -45,16 +44,24 @@ public class LRUCache<K, ID, T> extends AbstractGenericCache<K, ID, T> {
         }
         var in = numberOfUsesById.get(id);
         var initialNumOfUses = in == null ? 0 : in;
-        int i = initialNumOfUses;
+        int added = 0;
         synchronized (keyIdMapper) {
             for (K k : keyIdMapper.keySet()) {
                 var idWrapper = ((CollectionIdWrapper) keyIdMapper.get(k));
+                if (isInvalidated(idWrapper)) {
+                    continue;
+                }
                 if (idWrapper.addToCollectionOrUpdate(id)) {
-                    numberOfUsesById.put(id, ++i);
+                    increaseIdUses(id);
+                    added++;
+                    linkKey(k, id);
                 }
             }
         }
         valuePool.put(id, initialNumOfUses == 0);
+        if (initialNumOfUses == 0 && added > 0) {
+            chargeWeight(id);
+        }
     }
 
     @Override
@@ -62,28 +69,31 @@ public class LRUCache<K, ID, T> extends AbstractGenericCache<K, ID, T> {
         if (key == null || id == null) {
             return;
         }
-        if (keyIdMapper.size() >= this.actualCapacity) {
-            this.evict();
-        }
+        evictIfNecessary();
         synchronized (keyIdMapper) {
 
             if (returnsCollection) {
-                var idWrapper = (CollectionIdWrapper) keyIdMapper.computeIfAbsent(key, k -> new CollectionIdWrapper());
+                var idWrapper = getOrCreateCollectionWrapper(key);
                 idWrapper.addToCollectionOrUpdate(id); //Unlike single-value caches, removing an old ID from a collection cache is not as simple as just replacing it a newer one. Only a manual call to removeOneFromCollection() or expiration can remove it.
             } else {
                 var idWrapper = keyIdMapper.get(key);
                 if (idWrapper != null) {
-                    var oldId = (ID) ((SingleIdWrapper) idWrapper).getId();
-                    if (oldId.equals(id)) {
+                    var expired = isExpired(idWrapper); //before getId(), which counts as an access
+                    var oldId = (ID) ((AbstractSingleIdWrapper) idWrapper).getId();
+                    if (oldId.equals(id) && !expired) { //an expired wrapper is replaced, since it would stay expired
                         valuePool.put(id, false); //just update the current value
                         return;
                     }
-                    removeOrDecreaseIdUses(oldId);
+                    if (oldId.equals(id)) { //the key keeps its' use, since releasing it first would drop the value if the key were its' only user
+                        keyIdMapper.put(key, newSingleIdWrapper(id));
+                        return;
+                    }
+                    removeOrDecreaseIdUses(key, oldId);
                 }
-                keyIdMapper.put(key, new SingleIdWrapper<ID>(id)); //if we used putIfAbsent, we would prevent the key from being updated with a brand new ID/value
+                keyIdMapper.put(key, newSingleIdWrapper(id)); //if we used putIfAbsent, we would prevent the key from being updated with a brand new ID/value
             }
         }
-        addOrUpdateIdAndValue(id);
+        addOrUpdateIdAndValue(key, id);
 
     }
 
@@ -93,8 +103,19 @@ public class LRUCache<K, ID, T> extends AbstractGenericCache<K, ID, T> {
             return null;
         }
         synchronized (keyIdMapper) {
-            var id = ((SingleIdWrapper) keyIdMapper.get(key)).getId();
-            return valuePool.getValue((ID) id);
+            var idWrapper = (AbstractSingleIdWrapper) keyIdMapper.get(key);
+            if (idWrapper == null) {
+                return null;
+            }
+            if (isExpired(idWrapper)) {
+                scheduleExpiredRemoval(key);
+                return null;
+            }
+            var value = valuePool.getValue((ID) idWrapper.getId());
+            if (value != null) {
+                recordHit();
+            }
+            return value;
         }
     }
 
@@ -106,7 +127,19 @@ public class LRUCache<K, ID, T> extends AbstractGenericCache<K, ID, T> {
         synchronized (keyIdMapper) {
             var ids = ((CollectionIdWrapper) keyIdMapper.get(key));
             if (ids != null) {
-                return valuePool.getAll(ids.getIds());
+                if (isExpired(ids)) {
+                    scheduleExpiredRemoval(key);
+                    return Collections.emptyList();
+                }
+                var values = valuePool.getAll(ids.getIds());
+                if (values.size() < ids.getIds().size()) { //some values were removed by the ValuePool
+                    scheduleIncompleteRemoval(key, ids);
+                    return Collections.emptyList();
+                }
+                if (!values.isEmpty()) {
+                    recordHit();
+                }
+                return values;
             }
         }
         return Collections.emptyList();
@@ -119,15 +152,30 @@ public class LRUCache<K, ID, T> extends AbstractGenericCache<K, ID, T> {
             for (K k : key) {
                 if (returnsCollection) {
                     var p = this.keyIdMapper.get(k);
-                    if (p != null) {
+                    if (p != null && isExpired(p)) {
+                        scheduleExpiredRemoval(k);
+                    } else if (p != null) {
                         var ids = ((CollectionIdWrapper) p).getIds();
-                        all.addAll(valuePool.getAll(ids));
+                        var values = valuePool.getAll(ids);
+                        if (values.size() < ids.size()) { //some values were removed by the ValuePool
+                            scheduleIncompleteRemoval(k, p);
+                        } else {
+                            all.addAll(values);
+                            recordHit();
+                        }
                     }
                 } else {
                     var p = this.keyIdMapper.get(k);
-                    if (p != null) {
-                        var id = ((SingleIdWrapper) p).getId();
-                        all.add(valuePool.getValue((ID) id));
+                    if (p != null && isExpired(p)) {
+                        scheduleExpiredRemoval(k);
+                    } else if (p != null) {
+                        var value = valuePool.getValue((ID) ((AbstractSingleIdWrapper) p).getId());
+                        if (value == null) { //removed by the ValuePool
+                            scheduleIncompleteRemoval(k, p);
+                        } else {
+                            all.add(value);
+                            recordHit();
+                        }
                     }
                 }
             }
@@ -145,13 +193,7 @@ public class LRUCache<K, ID, T> extends AbstractGenericCache<K, ID, T> {
             }
             keyIdMapper.remove(key);
         }
-        if (returnsCollection) {
-            Collection<ID> ids = ((CollectionIdWrapper) cacheData).getIds();
-            ids.forEach(this::removeOrDecreaseIdUses);
-        } else {
-            var id = (ID) ((SingleIdWrapper) cacheData).getId();
-            removeOrDecreaseIdUses(id);
-        }
+        removeOrDecreaseIdUses(key, cacheData);
     }
 
     @Override
@@ -170,16 +212,29 @@ public class LRUCache<K, ID, T> extends AbstractGenericCache<K, ID, T> {
                     return;
                 }
             }
-            if (cacheData.getIds().remove(id)) {
-                removeOrDecreaseIdUses(id);
+            if (cacheData.removeFromCollection(id)) {
+                removeOrDecreaseIdUses(key, id);
             }
-            if (cacheData.getIds().isEmpty()) {
+            if (cacheData.isEmpty()) {
                 keyIdMapper.remove(key);
             }
         }
     }
 
 
+    @Override
+    protected void removeIfExpired(K key) {
+        IdWrapper<ID> idWrapper;
+        synchronized (keyIdMapper) { //keyIdMapper is not a ConcurrentMap here, and the check and removal must be atomic
+            idWrapper = keyIdMapper.get(key);
+            if (idWrapper == null || !isReclaimable(idWrapper)) {
+                return;
+            }
+            keyIdMapper.remove(key);
+        }
+        removeOrDecreaseIdUses(key, idWrapper);
+    }
+
     @Override
     public String getAlgorithmName() {
         return "LRU";
@@ -191,37 +246,64 @@ public class LRUCache<K, ID, T> extends AbstractGenericCache<K, ID, T> {
     }
 
     @Override
-    public void evict() {
-        if (timeToLive != Long.MAX_VALUE && timeToLive > 0) {
-            Set<K> expiredValues;
-            synchronized (keyIdMapper) {
-                expiredValues = keyIdMapper.entrySet().stream().filter(this::isExpired).map(Map.Entry::getKey).collect(Collectors.toSet());
-            }
-            expiredValues.forEach(this::remove);
+    protected long getNumberOfEntries() {
+        return numberOfUsesById.size();
+    }
+
+    @Override
+    protected boolean countsHits() {
+        return false;
+    }
+
+    @Override
+    protected void evictExpired() {
+        Set<K> expiredValues;
+        synchronized (keyIdMapper) {
+            expiredValues = keyIdMapper.entrySet().stream().filter(this::isReclaimable).map(Map.Entry::getKey).collect(Collectors.toSet());
         }
+        expiredValues.forEach(this::remove);
+    }
 
-        while (numberOfUsesById.size() >= this.actualCapacity) {
+    @Override
+    protected int evictEntries(int numberOfEntries) {
+        var leastRecentlyUsed = new ArrayList<Map.Entry<K, IdWrapper<ID>>>(numberOfEntries);
+        synchronized (keyIdMapper) { //the access-ordered LinkedHashMap iterates from the least recently used key
             var it = keyIdMapper.entrySet().iterator();
-            K lastKey = it.next().getKey(); //get first
-
-            if (lastKey != null) {
-                remove(lastKey);
-            } else {
-                break;
+            while (it.hasNext() && leastRecentlyUsed.size() < numberOfEntries) {
+                var entry = it.next();
+                leastRecentlyUsed.add(Map.entry(entry.getKey(), entry.getValue()));
             }
         }
+        leastRecentlyUsed.forEach(entry -> {
+            notifyEviction(entry.getKey(), entry.getValue());
+            remove(entry.getKey());
+        });
+        return leastRecentlyUsed.size();
     }
 
+    /**
+     * Reads under the lock of the map, since even a lookup of an access-ordered LinkedHashMap modifies it. The lookup moves the key as any other access would,
+     * which the callers do not mind: they only peek at keys they have just read or are about to load.
+     */
     @Override
-    public void invalidateCache() {
-        List<K> keyList;
+    public IdWrapper<ID> peekWrapper(K key) {
         synchronized (keyIdMapper) {
-            keyList = keyIdMapper.keySet().stream().toList();
+            return keyIdMapper.get(key);
         }
-        for (K k : keyList) {
-            this.remove(k);
+    }
+
+    @Override
+    protected Collection<K> getKeySnapshot() {
+        synchronized (keyIdMapper) {
+            return new ArrayList<>(keyIdMapper.keySet());
         }
+    }
 
+    @Override
+    protected Collection<Map.Entry<K, IdWrapper<ID>>> getEntrySnapshot() {
+        synchronized (keyIdMapper) { //iterates from the least recently used key, so that a restore reproduces the order
+            return super.getEntrySnapshot();
+        }
     }
 
     @Override
@@ -234,50 +316,102 @@ public class LRUCache<K, ID, T> extends AbstractGenericCache<K, ID, T> {
     public void removeById(Collection<ID> ids) {
         var relatedKeys = new HashSet<K>();
 
-        for (ID id : ids) {
-            if (!returnsCollection) {
-                for (K k : keyIdMapper.keySet()) {
-                    if (((SingleIdWrapper) k).getId().equals(id)) {
-                        relatedKeys.add(k);
-                        removeOrDecreaseIdUses(id);
+        synchronized (keyIdMapper) { //the keys are looked up through the index, so that the map is not iterated once per ID
+            for (ID id : ids) {
+                for (K k : getKeysOf(id)) {
+                    var idWrapper = keyIdMapper.get(k);
+                    if (idWrapper == null) {
+                        continue;
                     }
-                }
-            } else {
-                for (K k : keyIdMapper.keySet()) {
-                    var savedIds = ((CollectionIdWrapper) keyIdMapper.get(k)).getIds();
-                    var deleted = savedIds.remove(id);
-                    if (deleted) {
-                        if (savedIds.isEmpty()) {
+                    if (!returnsCollection) {
+                        if (((AbstractSingleIdWrapper) idWrapper).getId().equals(id)) {
                             relatedKeys.add(k);
+                            removeOrDecreaseIdUses(k, id);
+                        }
+                    } else {
+                        var savedIds = (CollectionIdWrapper<ID>) idWrapper;
+                        var deleted = savedIds.removeFromCollection(id);
+                        if (deleted) {
+                            if (savedIds.isEmpty()) {
+                                relatedKeys.add(k);
+                            }
+                            removeOrDecreaseIdUses(k, id);
                         }
-                        removeOrDecreaseIdUses(id);
                     }
                 }
             }
+
+            if (handleCollectionKeysSeparately || !returnsCollection) { //on special collection handling, a key corresponds to at most one ID
+                relatedKeys.forEach(k -> {
+                    keyIdMapper.remove(k);
+                });
+            }
         }
+    }
+
 
-        if (handleCollectionKeysSeparately || !returnsCollection) { //on special collection handling, a key corresponds to at most one ID
-            relatedKeys.forEach(k -> {
-                keyIdMapper.remove(k);
-            });
+    /**
+     * Returns the collection wrapper of the key, replacing it first if it belongs to an invalidated generation that is not reclaimed yet.
+     * Must be called while holding the lock on keyIdMapper.
+     */
+    private CollectionIdWrapper<ID> getOrCreateCollectionWrapper(K key) {
+        var idWrapper = keyIdMapper.get(key);
+        if (idWrapper != null && isExpired(idWrapper)) {
+            remove(key);
         }
+        return (CollectionIdWrapper<ID>) keyIdMapper.computeIfAbsent(key, k -> new CollectionIdWrapper<>(generation.get()));
     }
 
+    private void removeOrDecreaseIdUses(K key, IdWrapper<ID> idWrapper) {
+        if (returnsCollection) {
+            Collection<ID> ids = ((CollectionIdWrapper) idWrapper).getIds();
+            ids.forEach(id -> removeOrDecreaseIdUses(key, id));
+        } else {
+            var id = (ID) ((AbstractSingleIdWrapper) idWrapper).getId();
+            removeOrDecreaseIdUses(key, id);
+        }
+    }
 
-    private void removeOrDecreaseIdUses(ID id) {
-        var numOfCollectionsUsingId = numberOfUsesById.getOrDefault(id, 0) - 1;
-        if (numOfCollectionsUsingId <= 0) {
-            numberOfUsesById.remove(id);
+    private void removeOrDecreaseIdUses(K key, ID id) {
+        unlinkKey(key, id);
+        if (decreaseIdUses(id) <= 0) {
+            releaseWeight(id);
             valuePool.removeOrDecreaseNumberOfUsesForId(id);
-        } else {
-            numberOfUsesById.put(id, numOfCollectionsUsingId);
         }
     }
 
-    private void addOrUpdateIdAndValue(ID id) {
-        var usesOfIdInCache = numberOfUsesById.getOrDefault(id, 0); //In non-collection caches, a key corresponds to just one object, but one object may be referenced to by many keys.
-        var idAlreadyInCache = usesOfIdInCache > 0;
-        numberOfUsesById.put(id, ++usesOfIdInCache);
+    private void addOrUpdateIdAndValue(K key, ID id) {
+        linkKey(key, id);
+        var idAlreadyInCache = increaseIdUses(id) > 0; //In non-collection caches, a key corresponds to just one object, but one object may be referenced to by many keys.
         valuePool.put(id, !idAlreadyInCache);
+        if (!idAlreadyInCache) {
+            chargeWeight(id);
+        }
+    }
+
+    /**
+     * @return The number of uses before the increase. The reclaim of invalidated entries runs concurrently with the writers, hence the update is atomic.
+     */
+    private int increaseIdUses(ID id) {
+        synchronized (numberOfUsesById) {
+            var uses = numberOfUsesById.getOrDefault(id, 0);
+            numberOfUsesById.put(id, uses + 1);
+            return uses;
+        }
+    }
+
+    /**
+     * @return The number of uses left. The ID is removed once none is left.
+     */
+    private int decreaseIdUses(ID id) {
+        synchronized (numberOfUsesById) {
+            var remaining = numberOfUsesById.getOrDefault(id, 0) - 1;
+            if (remaining <= 0) {
+                numberOfUsesById.remove(id);
+            } else {
+                numberOfUsesById.put(id, remaining);
+            }
+            return remaining;
+        }
     }
 }
@@ -0,0 +1,99 @@
+package com.gmalandrakis.mnemosyne.codec;
+
+import com.gmalandrakis.mnemosyne.exception.MnemosyneRuntimeException;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads the encodings of {@link BinaryOutput}.
+ *
+ * @author George Malandrakis (malandrakisgeo@gmail.com)
+ */
+final class BinaryInput {
+
+    private final byte[] buffer;
+    private int position;
+
+    BinaryInput(byte[] buffer) {
+        this.buffer = buffer;
+    }
+
+    byte readByte() {
+        if (position >= buffer.length) {
+            throw new MnemosyneRuntimeException("Unexpected end of the encoded value");
+        }
+        return buffer[position++];
+    }
+
+    boolean readBoolean() {
+        return readByte() != 0;
+    }
+
+    int readUnsignedVarInt() {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            var b = readByte();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new MnemosyneRuntimeException("Malformed varint");
+    }
+
+    int readVarInt() {
+        var zigZag = readUnsignedVarInt();
+        return (zigZag >>> 1) ^ -(zigZag & 1);
+    }
+
+    long readVarLong() {
+        long zigZag = 0;
+        for (int shift = 0; shift < 70; shift += 7) {
+            var b = readByte();
+            zigZag |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return (zigZag >>> 1) ^ -(zigZag & 1);
+            }
+        }
+        throw new MnemosyneRuntimeException("Malformed varint");
+    }
+
+    long readFixedLong() {
+        long value = 0;
+        for (int i = 0; i < 8; i++) {
+            value = (value << 8) | (readByte() & 0xFF);
+        }
+        return value;
+    }
+
+    int readFixedInt() {
+        int value = 0;
+        for (int i = 0; i < 4; i++) {
+            value = (value << 8) | (readByte() & 0xFF);
+        }
+        return value;
+    }
+
+    byte[] readBytes() {
+        var length = readUnsignedVarInt();
+        if (length < 0 || length > buffer.length - position) {
+            throw new MnemosyneRuntimeException("Unexpected end of the encoded value");
+        }
+        var bytes = new byte[length];
+        System.arraycopy(buffer, position, bytes, 0, length);
+        position += length;
+        return bytes;
+    }
+
+    /**
+     * Reads a UTF-8 string of the given number of bytes directly from the buffer.
+     */
+    String readString(int length) {
+        if (length < 0 || length > buffer.length - position) {
+            throw new MnemosyneRuntimeException("Unexpected end of the encoded value");
+        }
+        var string = new String(buffer, position, length, StandardCharsets.UTF_8);
+        position += length;
+        return string;
+    }
+}
@@ -0,0 +1,472 @@
+package com.gmalandrakis.mnemosyne.codec;
+
+import com.gmalandrakis.mnemosyne.exception.MnemosyneInitializationException;
+import com.gmalandrakis.mnemosyne.exception.MnemosyneRuntimeException;
+
+import java.lang.reflect.*;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.*;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+
+/**
+ * Builds a compact binary {@link ValueCodec} for a class, once, by inspecting its' record components or fields.
+ * <p>
+ * Supported are the primitives and their wrappers, String, UUID, BigDecimal, BigInteger, Instant, LocalDate, LocalDateTime, enums, arrays,
+ * Lists, Sets, Maps, and any record or class with a no-argument constructor built of these, nested to any depth. Integers and lengths are
+ * encoded as varints, and no type information is written: the layout follows the declared types of the fields.
+ * <p>
+ * The fields of a class are its' non-static, non-transient fields, including the inherited ones. Fields of abstract types, other than the
+ * collections, cannot be encoded, and neither can values of a subclass of the declared type of their field. Types with a codec of their own,
+ * e.g. a hand-written one registered in a {@link CodecRegistry}, are encoded with it.
+ *
+ * @author George Malandrakis (malandrakisgeo@gmail.com)
+ */
+@SuppressWarnings({"unchecked", "rawtypes"})
+public final class CodecGenerator {
+
+    private final Function<Class<?>, ValueCodec<?>> overrides;
+
+    /**
+     * The codecs of the classes built so far, so that recursive types refer to the codec under construction.
+     */
+    private final Map<Class<?>, ObjectCodec> objectCodecs = new HashMap<>();
+
+    private CodecGenerator(Function<Class<?>, ValueCodec<?>> overrides) {
+        this.overrides = overrides;
+    }
+
+    /**
+     * @throws MnemosyneInitializationException if the type, or any type it consists of, cannot be encoded.
+     */
+    public static <T> ValueCodec<T> generate(Class<T> type) {
+        return generate(type, t -> null);
+    }
+
+    /**
+     * @param overrides The codec to use for a type instead of a generated one, or null if none.
+     * @throws MnemosyneInitializationException if the type, or any type it consists of, cannot be encoded.
+     */
+    public static <T> ValueCodec<T> generate(Class<T> type, Function<Class<?>, ValueCodec<?>> overrides) {
+        var root = new CodecGenerator(overrides).codecFor(type, type.getName());
+        return new GeneratedCodec<>(type, root);
+    }
+
+    private TypeCodec codecFor(Type type, String path) {
+        if (type instanceof Class<?> clazz) {
+            if (clazz.isPrimitive()) {
+                return primitiveCodec(clazz);
+            }
+            var override = overrides.apply(clazz);
+            if (override != null) {
+                return nullable(new OverrideCodec(override));
+            }
+            var scalar = scalarCodec(clazz);
+            if (scalar != null) {
+                return scalar;
+            }
+            if (clazz.isArray()) {
+                return nullable(new ArrayCodec(clazz.getComponentType(), codecFor(clazz.getComponentType(), path + "[]")));
+            }
+            if (Collection.class.isAssignableFrom(clazz) || Map.class.isAssignableFrom(clazz)) {
+                throw new MnemosyneInitializationException("The element types of " + path + " are unknown: collections must be declared with type arguments");
+            }
+            return nullable(objectCodec(clazz, path));
+        }
+        if (type instanceof ParameterizedType parameterizedType && parameterizedType.getRawType() instanceof Class<?> raw) {
+            var arguments = parameterizedType.getActualTypeArguments();
+            if (Map.class.isAssignableFrom(raw)) {
+                return nullable(new MapCodec(mapFactory(raw, path), codecFor(arguments[0], path + "<key>"), codecFor(arguments[1], path + "<value>")));
+            }
+            if (Collection.class.isAssignableFrom(raw)) {
+                return nullable(new CollectionCodec(collectionFactory(raw, path), codecFor(arguments[0], path + "<element>")));
+            }
+            return codecFor(raw, path);
+        }
+        if (type instanceof GenericArrayType arrayType) {
+            var component = arrayType.getGenericComponentType();
+            var rawComponent = component instanceof ParameterizedType p ? (Class<?>) p.getRawType() : Object.class;
+            return nullable(new ArrayCodec(rawComponent, codecFor(component, path + "[]")));
+        }
+        if (type instanceof WildcardType wildcardType && wildcardType.getUpperBounds().length == 1) {
+            return codecFor(wildcardType.getUpperBounds()[0], path);
+        }
+        throw new MnemosyneInitializationException("The type " + type.getTypeName() + " of " + path + " cannot be encoded");
+    }
+
+    private ObjectCodec objectCodec(Class<?> clazz, String path) {
+        var existing = objectCodecs.get(clazz);
+        if (existing != null) {
+            return existing;
+        }
+        if (clazz.isInterface() || Modifier.isAbstract(clazz.getModifiers()) || clazz == Object.class) {
+            throw new MnemosyneInitializationException("The abstract type " + clazz.getName() + " of " + path + " cannot be encoded");
+        }
+        var codec = new ObjectCodec(clazz);
+        objectCodecs.put(clazz, codec);
+        try {
+            if (clazz.isRecord()) {
+                var components = clazz.getRecordComponents();
+                var types = new Class<?>[components.length];
+                codec.accessors = new Method[components.length];
+                codec.properties = new TypeCodec[components.length];
+                for (int i = 0; i < components.length; i++) {
+                    types[i] = components[i].getType();
+                    codec.accessors[i] = components[i].getAccessor();
+                    codec.accessors[i].setAccessible(true);
+                    codec.properties[i] = codecFor(components[i].getGenericType(), path + "." + components[i].getName());
+                }
+                codec.constructor = clazz.getDeclaredConstructor(types);
+            } else {
+                var fields = new ArrayList<Field>();
+                for (Class<?> c = clazz; c != null && c != Object.class; c = c.getSuperclass()) {
+                    for (Field field : c.getDeclaredFields()) {
+                        if (!Modifier.isStatic(field.getModifiers()) && !Modifier.isTransient(field.getModifiers()) && !field.isSynthetic()) {
+                            fields.add(field);
+                        }
+                    }
+                }
+                codec.fields = fields.toArray(new Field[0]);
+                codec.properties = new TypeCodec[fields.size()];
+                for (int i = 0; i < codec.fields.length; i++) {
+                    codec.fields[i].setAccessible(true);
+                    codec.properties[i] = codecFor(codec.fields[i].getGenericType(), path + "." + codec.fields[i].getName());
+                }
+                codec.constructor = clazz.getDeclaredConstructor();
+            }
+            codec.constructor.setAccessible(true);
+        } catch (NoSuchMethodException e) {
+            throw new MnemosyneInitializationException(clazz.getName() + " of " + path + " has no no-argument constructor");
+        } catch (RuntimeException e) { //InaccessibleObjectException, for classes of modules not open to mnemosyne
+            if (e instanceof MnemosyneInitializationException) {
+                throw e;
+            }
+            throw new MnemosyneInitializationException("The fields of " + clazz.getName() + " of " + path + " are not accessible: " + e.getMessage());
+        }
+        return codec;
+    }
+
+    private static TypeCodec primitiveCodec(Class<?> clazz) {
+        if (clazz == int.class) {
+            return new TypeCodec((out, value) -> out.writeVarInt((Integer) value), BinaryInput::readVarInt);
+        }
+        if (clazz == long.class) {
+            return new TypeCodec((out, value) -> out.writeVarLong((Long) value), BinaryInput::readVarLong);
+        }
+        if (clazz == double.class) {
+            return new TypeCodec((out, value) -> out.writeFixedLong(Double.doubleToRawLongBits((Double) value)), in -> Double.longBitsToDouble(in.readFixedLong()));
+        }
+        if (clazz == float.class) {
+            return new TypeCodec((out, value) -> out.writeFixedInt(Float.floatToRawIntBits((Float) value)), in -> Float.intBitsToFloat(in.readFixedInt()));
+        }
+        if (clazz == boolean.class) {
+            return new TypeCodec((out, value) -> out.writeBoolean((Boolean) value), BinaryInput::readBoolean);
+        }
+        if (clazz == byte.class) {
+            return new TypeCodec((out, value) -> out.writeByte((Byte) value), BinaryInput::readByte);
+        }
+        if (clazz == short.class) {
+            return new TypeCodec((out, value) -> out.writeVarInt((Short) value), in -> (short) in.readVarInt());
+        }
+        if (clazz == char.class) {
+            return new TypeCodec((out, value) -> out.writeUnsignedVarInt((Character) value), in -> (char) in.readUnsignedVarInt());
+        }
+        throw new MnemosyneInitializationException("Unsupported primitive type " + clazz);
+    }
+
+    /**
+     * @return The codec of a type encoded as a single value, or null if the type is not one of them.
+     */
+    private static TypeCodec scalarCodec(Class<?> clazz) {
+        if (clazz == String.class) {
+            return STRING; //nullable on its' own: the length is written plus one, and zero stands for null
+        }
+        if (clazz == Integer.class || clazz == Long.class || clazz == Double.class || clazz == Float.class || clazz == Boolean.class
+                || clazz == Byte.class || clazz == Short.class || clazz == Character.class) {
+            return nullable(primitiveCodec(primitiveOf(clazz)));
+        }
+        if (clazz == byte[].class) {
+            return nullable(new TypeCodec((out, value) -> out.writeBytes((byte[]) value), BinaryInput::readBytes));
+        }
+        if (clazz == UUID.class) {
+            return nullable(new TypeCodec((out, value) -> {
+                out.writeFixedLong(((UUID) value).getMostSignificantBits());
+                out.writeFixedLong(((UUID) value).getLeastSignificantBits());
+            }, in -> new UUID(in.readFixedLong(), in.readFixedLong())));
+        }
+        if (clazz == BigInteger.class) {
+            return nullable(new TypeCodec((out, value) -> out.writeBytes(((BigInteger) value).toByteArray()), in -> new BigInteger(in.readBytes())));
+        }
+        if (clazz == BigDecimal.class) {
+            return nullable(new TypeCodec((out, value) -> {
+                out.writeVarInt(((BigDecimal) value).scale());
+                out.writeBytes(((BigDecimal) value).unscaledValue().toByteArray());
+            }, in -> {
+                var scale = in.readVarInt();
+                return new BigDecimal(new BigInteger(in.readBytes()), scale);
+            }));
+        }
+        if (clazz == Instant.class) {
+            return nullable(new TypeCodec((out, value) -> {
+                out.writeVarLong(((Instant) value).getEpochSecond());
+                out.writeVarInt(((Instant) value).getNano());
+            }, in -> {
+                var seconds = in.readVarLong();
+                return Instant.ofEpochSecond(seconds, in.readVarInt());
+            }));
+        }
+        if (clazz == LocalDate.class) {
+            return nullable(new TypeCodec((out, value) -> out.writeVarLong(((LocalDate) value).toEpochDay()), in -> LocalDate.ofEpochDay(in.readVarLong())));
+        }
+        if (clazz == LocalDateTime.class) {
+            return nullable(new TypeCodec((out, value) -> {
+                out.writeVarLong(((LocalDateTime) value).toLocalDate().toEpochDay());
+                out.writeVarLong(((LocalDateTime) value).toLocalTime().toNanoOfDay());
+            }, in -> {
+                var date = LocalDate.ofEpochDay(in.readVarLong());
+                return LocalDateTime.of(date, LocalTime.ofNanoOfDay(in.readVarLong()));
+            }));
+        }
+        if (clazz.isEnum()) {
+            var constants = clazz.getEnumConstants();
+            return nullable(new TypeCodec((out, value) -> out.writeUnsignedVarInt(((Enum<?>) value).ordinal()), in -> constants[in.readUnsignedVarInt()]));
+        }
+        return null;
+    }
+
+    private static Class<?> primitiveOf(Class<?> wrapper) {
+        if (wrapper == Integer.class) return int.class;
+        if (wrapper == Long.class) return long.class;
+        if (wrapper == Double.class) return double.class;
+        if (wrapper == Float.class) return float.class;
+        if (wrapper == Boolean.class) return boolean.class;
+        if (wrapper == Byte.class) return byte.class;
+        if (wrapper == Short.class) return short.class;
+        return char.class;
+    }
+
+    private static IntFunction<Collection<Object>> collectionFactory(Class<?> raw, String path) {
+        if (raw.isAssignableFrom(ArrayList.class)) {
+            return ArrayList::new;
+        }
+        if (raw.isAssignableFrom(LinkedHashSet.class)) {
+            return size -> new LinkedHashSet<>(Math.max(16, size * 2));
+        }
+        if (raw.isAssignableFrom(TreeSet.class)) {
+            return size -> new TreeSet<>();
+        }
+        if (raw.isAssignableFrom(ArrayDeque.class)) {
+            return ArrayDeque::new;
+        }
+        if (raw.isAssignableFrom(LinkedList.class)) {
+            return size -> new LinkedList<>();
+        }
+        throw new MnemosyneInitializationException("The collection type " + raw.getName() + " of " + path + " cannot be decoded");
+    }
+
+    private static IntFunction<Map<Object, Object>> mapFactory(Class<?> raw, String path) {
+        if (raw.isAssignableFrom(LinkedHashMap.class)) {
+            return size -> new LinkedHashMap<>(Math.max(16, size * 2));
+        }
+        if (raw.isAssignableFrom(TreeMap.class)) {
+            return size -> new TreeMap<>();
+        }
+        throw new MnemosyneInitializationException("The map type " + raw.getName() + " of " + path + " cannot be decoded");
+    }
+
+    private static TypeCodec nullable(TypeCodec codec) {
+        return new TypeCodec((out, value) -> {
+            if (value == null) {
+                out.writeByte(0);
+            } else {
+                out.writeByte(1);
+                codec.writer.write(out, value);
+            }
+        }, in -> in.readByte() == 0 ? null : codec.reader.read(in));
+    }
+
+    private static final TypeCodec STRING = new TypeCodec((out, value) -> {
+        if (value == null) {
+            out.writeUnsignedVarInt(0);
+            return;
+        }
+        var bytes = ((String) value).getBytes(StandardCharsets.UTF_8);
+        out.writeUnsignedVarInt(bytes.length + 1);
+        out.writeRaw(bytes);
+    }, in -> {
+        var length = in.readUnsignedVarInt();
+        return length == 0 ? null : in.readString(length - 1);
+    });
+
+    interface Writer {
+        void write(BinaryOutput out, Object value);
+    }
+
+    interface Reader {
+        Object read(BinaryInput in);
+    }
+
+    /**
+     * The codec of a single declared type, i.e. of a field, a component, or an element.
+     */
+    static class TypeCodec {
+        final Writer writer;
+        final Reader reader;
+
+        TypeCodec(Writer writer, Reader reader) {
+            this.writer = writer;
+            this.reader = reader;
+        }
+    }
+
+    private static final class OverrideCodec extends TypeCodec {
+        OverrideCodec(ValueCodec codec) {
+            super((out, value) -> out.writeBytes(codec.encode(value)), in -> codec.decode(in.readBytes()));
+        }
+    }
+
+    private static final class ArrayCodec extends TypeCodec {
+        ArrayCodec(Class<?> componentType, TypeCodec elementCodec) {
+            super((out, value) -> {
+                var length = Array.getLength(value);
+                out.writeUnsignedVarInt(length);
+                for (int i = 0; i < length; i++) {
+                    elementCodec.writer.write(out, Array.get(value, i));
+                }
+            }, in -> {
+                var length = in.readUnsignedVarInt();
+                var array = Array.newInstance(componentType, length);
+                for (int i = 0; i < length; i++) {
+                    Array.set(array, i, elementCodec.reader.read(in));
+                }
+                return array;
+            });
+        }
+    }
+
+    private static final class CollectionCodec extends TypeCodec {
+        CollectionCodec(IntFunction<Collection<Object>> factory, TypeCodec elementCodec) {
+            super((out, value) -> {
+                var collection = (Collection<?>) value;
+                out.writeUnsignedVarInt(collection.size());
+                for (Object element : collection) {
+                    elementCodec.writer.write(out, element);
+                }
+            }, in -> {
+                var size = in.readUnsignedVarInt();
+                var collection = factory.apply(size);
+                for (int i = 0; i < size; i++) {
+                    collection.add(elementCodec.reader.read(in));
+                }
+                return collection;
+            });
+        }
+    }
+
+    private static final class MapCodec extends TypeCodec {
+        MapCodec(IntFunction<Map<Object, Object>> factory, TypeCodec keyCodec, TypeCodec valueCodec) {
+            super((out, value) -> {
+                var map = (Map<?, ?>) value;
+                out.writeUnsignedVarInt(map.size());
+                for (Map.Entry<?, ?> entry : map.entrySet()) {
+                    keyCodec.writer.write(out, entry.getKey());
+                    valueCodec.writer.write(out, entry.getValue());
+                }
+            }, in -> {
+                var size = in.readUnsignedVarInt();
+                var map = factory.apply(size);
+                for (int i = 0; i < size; i++) {
+                    map.put(keyCodec.reader.read(in), valueCodec.reader.read(in));
+                }
+                return map;
+            });
+        }
+    }
+
+    /**
+     * The codec of a record or a class, writing its' components or fields one after the other. Completed after construction,
+     * so that the codecs of its' properties may refer to it.
+     */
+    private static final class ObjectCodec extends TypeCodec {
+        final Class<?> type;
+        TypeCodec[] properties;
+        Method[] accessors; //records only
+        Field[] fields; //classes only
+        Constructor<?> constructor;
+
+        ObjectCodec(Class<?> type) {
+            this(type, new ObjectCodec[1]);
+        }
+
+        private ObjectCodec(Class<?> type, ObjectCodec[] self) {
+            super((out, value) -> self[0].writeObject(out, value), in -> self[0].readObject(in));
+            self[0] = this;
+            this.type = type;
+        }
+
+        void writeObject(BinaryOutput out, Object value) {
+            if (value.getClass() != type) {
+                throw new MnemosyneRuntimeException("Cannot encode " + value.getClass().getName() + " as its' declared type " + type.getName());
+            }
+            try {
+                for (int i = 0; i < properties.length; i++) {
+                    properties[i].writer.write(out, accessors != null ? accessors[i].invoke(value) : fields[i].get(value));
+                }
+            } catch (IllegalAccessException | InvocationTargetException e) {
+                throw new MnemosyneRuntimeException(e);
+            }
+        }
+
+        Object readObject(BinaryInput in) {
+            try {
+                if (accessors != null) {
+                    var arguments = new Object[properties.length];
+                    for (int i = 0; i < properties.length; i++) {
+                        arguments[i] = properties[i].reader.read(in);
+                    }
+                    return constructor.newInstance(arguments);
+                }
+                var instance = constructor.newInstance();
+                for (int i = 0; i < properties.length; i++) {
+                    fields[i].set(instance, properties[i].reader.read(in));
+                }
+                return instance;
+            } catch (InstantiationException | IllegalAccessException | InvocationTargetException e) {
+                throw new MnemosyneRuntimeException(e);
+            }
+        }
+    }
+
+    private static final class GeneratedCodec<T> implements ValueCodec<T> {
+        private final Class<T> type;
+        private final TypeCodec root;
+
+        GeneratedCodec(Class<T> type, TypeCodec root) {
+            this.type = type;
+            this.root = root;
+        }
+
+        @Override
+        public Class<T> getValueType() {
+            return type;
+        }
+
+        @Override
+        public byte[] encode(T value) {
+            var out = new BinaryOutput(64);
+            root.writer.write(out, value);
+            return out.toByteArray();
+        }
+
+        @Override
+        public T decode(byte[] bytes) {
+            return (T) root.reader.read(new BinaryInput(bytes));
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.gmalandrakis.mnemosyne.codec;
+
+import com.gmalandrakis.mnemosyne.exception.MnemosyneInitializationException;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The codecs of the value types: the hand-written ones registered by the application, and the ones built by the {@link CodecGenerator}
+ * for every other type on first use.
+ * <p>
+ * A registered codec overrides the generated one everywhere, including the fields of other types that are encoded via generated codecs.
+ * Hence the codecs should be registered before any value is encoded.
+ *
+ * @author George Malandrakis (malandrakisgeo@gmail.com)
+ */
+@SuppressWarnings("unchecked")
+public class CodecRegistry {
+
+    private final ConcurrentHashMap<Class<?>, ValueCodec<?>> registered = new ConcurrentHashMap<>();
+
+    private final ConcurrentHashMap<Class<?>, ValueCodec<?>> generated = new ConcurrentHashMap<>();
+
+    /**
+     * The types the generator has failed for, so that it is not retried on every lookup.
+     */
+    private final Set<Class<?>> unsupported = ConcurrentHashMap.newKeySet();
+
+    public void register(ValueCodec<?> codec) {
+        registered.put(codec.getValueType(), codec);
+        generated.clear(); //they may contain fields of the type
+        unsupported.clear();
+    }
+
+    /**
+     * @return The codec registered for the type, or else a generated one.
+     * @throws MnemosyneInitializationException if the type cannot be encoded by a generated codec.
+     */
+    public <T> ValueCodec<T> getCodec(Class<T> type) {
+        var codec = findCodec(type);
+        if (codec == null) {
+            CodecGenerator.generate(type, registered::get); //throws the reason
+        }
+        return codec;
+    }
+
+    /**
+     * @return The codec registered for the type, or else a generated one, or null if the type cannot be encoded by a generated codec.
+     */
+    public <T> ValueCodec<T> findCodec(Class<T> type) {
+        var codec = registered.get(type);
+        if (codec == null) {
+            codec = generated.get(type);
+        }
+        if (codec != null || unsupported.contains(type)) {
+            return (ValueCodec<T>) codec;
+        }
+        try {
+            codec = CodecGenerator.generate(type, registered::get);
+        } catch (MnemosyneInitializationException e) {
+            unsupported.add(type);
+            return null;
+        }
+        var previous = generated.putIfAbsent(type, codec);
+        return (ValueCodec<T>) (previous != null ? previous : codec);
+    }
+}
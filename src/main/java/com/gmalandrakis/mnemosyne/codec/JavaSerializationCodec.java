@@ -0,0 +1,44 @@
+package com.gmalandrakis.mnemosyne.codec;
+
+import com.gmalandrakis.mnemosyne.exception.MnemosyneRuntimeException;
+
+import java.io.*;
+
+/**
+ * A ValueCodec for any Serializable type, based on the built-in Java serialization.
+ * It works out of the box, but is neither fast nor compact; a codec written for the type is preferable for large ValuePools.
+ *
+ * @author George Malandrakis (malandrakisgeo@gmail.com)
+ */
+public class JavaSerializationCodec<T extends Serializable> implements ValueCodec<T> {
+    private final Class<T> valueType;
+
+    public JavaSerializationCodec(Class<T> valueType) {
+        this.valueType = valueType;
+    }
+
+    @Override
+    public Class<T> getValueType() {
+        return valueType;
+    }
+
+    @Override
+    public byte[] encode(T value) {
+        var bytes = new ByteArrayOutputStream();
+        try (var out = new ObjectOutputStream(bytes)) {
+            out.writeObject(value);
+        } catch (IOException e) {
+            throw new MnemosyneRuntimeException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    @Override
+    public T decode(byte[] bytes) {
+        try (var in = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+            return valueType.cast(in.readObject());
+        } catch (IOException | ClassNotFoundException e) {
+            throw new MnemosyneRuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package com.gmalandrakis.mnemosyne.codec;
+
+/**
+ * Converts the values of a type to bytes and back, for ValuePools that keep their values outside the heap.
+ * <p>
+ * Implementations must be thread-safe, and the decoded value must be equal to the encoded one. The encoded form should be compact,
+ * since it is what the memory limits of such ValuePools account for.
+ *
+ * @param <T> The type of the values.
+ * @author George Malandrakis (malandrakisgeo@gmail.com)
+ */
+public interface ValueCodec<T> {
+
+    /**
+     * @return The type of the values, used to match the codec with the ValuePool of the type.
+     */
+    Class<T> getValueType();
+
+    byte[] encode(T value);
+
+    T decode(byte[] bytes);
+}
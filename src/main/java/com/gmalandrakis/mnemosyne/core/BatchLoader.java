@@ -0,0 +1,157 @@
+package com.gmalandrakis.mnemosyne.core;
+
+import com.gmalandrakis.mnemosyne.exception.MnemosyneRuntimeException;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Collects the keys that miss a single-value cache concurrently, and loads them with a single invocation of a bulk method, e.g.
+ * {@code getTransactionsByIds(Set<UUID>)} instead of one {@code getTransactionById(UUID)} per key.
+ * <p>
+ * The first miss of a batch waits for the batch window, or until the batch reaches its' maximum size, and then invokes the bulk method
+ * on its' own thread; the misses joining the batch in the meantime wait for it. Concurrent misses of the same key share a single slot.
+ * The bulk method returns either a Map of the values by key, or a Collection of values whose IDs are the keys.
+ * Keys without a value get null, and if the bulk method throws, every miss of the batch throws the same exception.
+ *
+ * @author George Malandrakis (malandrakisgeo@gmail.com)
+ */
+@SuppressWarnings("unchecked")
+final class BatchLoader<V> {
+
+    private final Method bulkMethod;
+
+    private final Object invocationTargetObject;
+
+    private final long batchWindow;
+
+    private final int maxBatchSize;
+
+    private final boolean takesList;
+
+    private final LongAdder batches = new LongAdder();
+
+    /**
+     * The batch misses currently join, or null if the next miss starts a new one. Guarded by this.
+     */
+    private Batch<V> current;
+
+    BatchLoader(Method bulkMethod, Object invocationTargetObject, long batchWindow, int maxBatchSize) {
+        this.bulkMethod = bulkMethod;
+        this.invocationTargetObject = invocationTargetObject;
+        this.batchWindow = batchWindow;
+        this.maxBatchSize = maxBatchSize;
+        this.takesList = List.class.isAssignableFrom(bulkMethod.getParameterTypes()[0]);
+    }
+
+    /**
+     * @return The value of the key, or null if the bulk method returned none.
+     */
+    V load(Object key) {
+        Batch<V> batch;
+        CompletableFuture<V> future;
+        boolean leader;
+        synchronized (this) {
+            leader = current == null;
+            if (leader) {
+                current = new Batch<>();
+            }
+            batch = current;
+            future = batch.futures.computeIfAbsent(key, k -> new CompletableFuture<>());
+            if (batch.futures.size() >= maxBatchSize) {
+                current = null;
+                batch.full.countDown();
+            }
+        }
+        if (leader) {
+            awaitAndDispatch(batch);
+        }
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            if (e.getCause() instanceof Error error) {
+                throw error;
+            }
+            throw new MnemosyneRuntimeException(e);
+        }
+    }
+
+    /**
+     * @return The number of invocations of the bulk method so far.
+     */
+    long getBatchCount() {
+        return batches.sum();
+    }
+
+    private void awaitAndDispatch(Batch<V> batch) {
+        try {
+            batch.full.await(batchWindow, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt(); //dispatch right away, since the others are waiting
+        }
+        synchronized (this) {
+            if (current == batch) {
+                current = null;
+            }
+        }
+        try {
+            var loaded = invokeBulkMethod(batch.futures.keySet());
+            batch.futures.forEach((key, future) -> future.complete(loaded.get(key)));
+        } catch (RuntimeException | Error e) {
+            batch.futures.values().forEach(future -> future.completeExceptionally(e));
+        }
+    }
+
+    private Map<Object, V> invokeBulkMethod(Collection<Object> keys) {
+        batches.increment();
+        Object result;
+        try {
+            result = bulkMethod.invoke(invocationTargetObject, takesList ? new ArrayList<>(keys) : new LinkedHashSet<>(keys));
+        } catch (InvocationTargetException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            if (e.getCause() instanceof Error error) {
+                throw error;
+            }
+            throw new MnemosyneRuntimeException(e);
+        } catch (IllegalAccessException e) {
+            throw new MnemosyneRuntimeException(e);
+        }
+        if (result instanceof Map<?, ?> map) {
+            return (Map<Object, V>) map;
+        }
+        var valuesByKey = new LinkedHashMap<Object, V>();
+        if (result != null) {
+            for (Object value : (Collection<?>) result) {
+                if (value != null) {
+                    valuesByKey.put(MnemoCommon.deduceIdOrMap(value), (V) value);
+                }
+            }
+        }
+        return valuesByKey;
+    }
+
+    private static final class Batch<V> {
+        /**
+         * The misses of the batch by key, in the order they arrived. Only modified under the lock of the loader, and only before the batch is dispatched.
+         */
+        final Map<Object, CompletableFuture<V>> futures = new LinkedHashMap<>();
+
+        final CountDownLatch full = new CountDownLatch(1);
+    }
+}
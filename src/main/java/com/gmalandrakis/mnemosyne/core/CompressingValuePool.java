@@ -0,0 +1,346 @@
+package com.gmalandrakis.mnemosyne.core;
+
+import com.gmalandrakis.mnemosyne.codec.ValueCodec;
+import com.gmalandrakis.mnemosyne.exception.MnemosyneRuntimeException;
+import com.gmalandrakis.mnemosyne.memory.ValueInterner;
+import com.gmalandrakis.mnemosyne.memory.Weigher;
+import com.gmalandrakis.mnemosyne.structures.CompressionStats;
+import com.gmalandrakis.mnemosyne.structures.ReferenceMode;
+import com.gmalandrakis.mnemosyne.structures.ValuePoolStats;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * A {@link HeapValuePool} that stores the values whose encoded form exceeds a threshold compressed with {@link Deflater}, and decompresses them on every read.
+ * Meant for large values that are rarely read, trading some CPU time for a lot of memory.
+ * <p>
+ * The smaller values, and the ones that do not shrink when compressed, are stored as they are. The most recently read compressed values are also kept
+ * decompressed in a small cache in front of the ValuePool, so that repeated reads of the same value do not decompress it every time.
+ * Like in the {@link OffHeapValuePool}, every decompression returns a new instance, hence the values should be immutable.
+ * <p>
+ * Weighers weigh the values themselves, not their stored form, i.e. a compressed value weighs as much as it would uncompressed, in the unit of the Weigher.
+ * The weight of a value is calculated when it is stored, before it is compressed, so that weighing never decompresses anything.
+ * Reference modes apply to the stored form of the values.
+ *
+ * @author George Malandrakis (malandrakisgeo@gmail.com)
+ */
+public class CompressingValuePool<ID, T> implements ValuePool<ID, T> {
+
+    public static final int DEFAULT_DECOMPRESSED_CACHE_SIZE = 16;
+
+    private final HeapValuePool<ID, Object> delegate = new HeapValuePool<>();
+
+    private final ValueCodec<T> codec;
+
+    private final int threshold;
+
+    private final Map<ID, Decompressed> decompressedCache;
+
+    private final AtomicLong compressionNanos = new AtomicLong(0);
+
+    private volatile Weigher<T> weigher;
+
+    private final AtomicLong decompressions = new AtomicLong(0);
+
+    private final AtomicLong decompressionNanos = new AtomicLong(0);
+
+    private final AtomicLong decompressedCacheHits = new AtomicLong(0);
+
+    public CompressingValuePool(ValueCodec<T> codec, int threshold) {
+        this(codec, threshold, DEFAULT_DECOMPRESSED_CACHE_SIZE);
+    }
+
+    /**
+     * @param threshold             The size in bytes of the encoded form of a value, above which the value is stored compressed.
+     * @param decompressedCacheSize The number of decompressed values kept in front of the ValuePool. Zero disables the cache.
+     */
+    public CompressingValuePool(ValueCodec<T> codec, int threshold, int decompressedCacheSize) {
+        this.codec = codec;
+        this.threshold = threshold;
+        this.decompressedCache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<ID, Decompressed> eldest) {
+                return size() > decompressedCacheSize;
+            }
+        };
+    }
+
+    @Override
+    public T getValue(ID id) {
+        return unpack(id, delegate.getValue(id));
+    }
+
+    @Override
+    public List<T> getAll(Collection<ID> ids) {
+        List<T> list = new ArrayList<>();
+        for (ID id : ids) {
+            var value = getValue(id);
+            if (value != null) {
+                list.add(value);
+            }
+        }
+        return list;
+    }
+
+    @Override
+    public void put(ID id, T value, boolean newCache) {
+        delegate.put(id, pack(value), newCache);
+    }
+
+    @Override
+    public void put(ID id, boolean newCache) {
+        delegate.put(id, newCache);
+    }
+
+    @Override
+    public void updateValueOrPutPreemptively(ID id, T value) {
+        delegate.updateValueOrPutPreemptively(id, pack(value));
+    }
+
+    @Override
+    public void increaseNumberOfUsesForId(ID id, T value) {
+        delegate.increaseNumberOfUsesForId(id, pack(value));
+    }
+
+    @Override
+    public Integer removeOrDecreaseNumberOfUsesForId(ID id) {
+        var remaining = delegate.removeOrDecreaseNumberOfUsesForId(id);
+        if (remaining == 0) {
+            synchronized (decompressedCache) {
+                decompressedCache.remove(id);
+            }
+        }
+        return remaining;
+    }
+
+    @Override
+    public int getSize() {
+        return delegate.getSize();
+    }
+
+    @Override
+    public void forEach(BiConsumer<ID, T> action) {
+        delegate.forEach((id, stored) -> {
+            var value = unpack(id, stored);
+            if (value != null) {
+                action.accept(id, value);
+            }
+        });
+    }
+
+    @Override
+    public int getNumberOfUsesForId(ID id) {
+        return delegate.getNumberOfUsesForId(id);
+    }
+
+    @Override
+    public long getWeight(ID id) {
+        return delegate.getWeight(id);
+    }
+
+    @Override
+    public long getTotalWeight() {
+        return delegate.getTotalWeight();
+    }
+
+    @Override
+    public synchronized void enableWeighing(Class<? extends Weigher<?>> weigherType) {
+        if (weigher != null) {
+            HeapValuePool.checkSameWeigher(weigher, weigherType);
+            return;
+        }
+        weigher = HeapValuePool.instantiateWeigher(weigherType);
+        delegate.useWeigher(this::weighStored);
+    }
+
+    @Override
+    public void useReferences(ReferenceMode mode) {
+        delegate.useReferences(mode);
+    }
+
+    @Override
+    public ReferenceMode getReferenceMode() {
+        return delegate.getReferenceMode();
+    }
+
+    @Override
+    public void addRemovalListener(Consumer<Collection<ID>> listener) {
+        delegate.addRemovalListener(listener);
+    }
+
+    @Override
+    public void addWeightListener(WeightListener<ID> listener) {
+        delegate.addWeightListener(listener);
+    }
+
+    @Override
+    public int sweepOrphans(int maxEntries) {
+        return delegate.sweepOrphans(maxEntries);
+    }
+
+    @Override
+    public void scheduleOrphanSweeping(long intervalMillis) {
+        delegate.scheduleOrphanSweeping(intervalMillis);
+    }
+
+    @Override
+    public void setOrphanGracePeriod(long orphanGracePeriod) {
+        delegate.setOrphanGracePeriod(orphanGracePeriod);
+    }
+
+    /**
+     * Only the values stored uncompressed are interned, since the decompressed ones are new instances on every read anyway.
+     */
+    @Override
+    public void useInterner(ValueInterner interner) {
+        delegate.useInterner(interner);
+    }
+
+    /**
+     * The sizes of the compressed values are summed on every call, hence it should not be called too often for large ValuePools.
+     */
+    @Override
+    public ValuePoolStats getStats() {
+        var compressedValues = new int[1];
+        var compressedBytes = new long[1];
+        var uncompressedBytes = new long[1];
+        delegate.forEach((id, stored) -> {
+            if (stored instanceof Compressed compressed) {
+                compressedValues[0]++;
+                compressedBytes[0] += compressed.bytes.length;
+                uncompressedBytes[0] += compressed.uncompressedLength;
+            }
+        });
+        var stats = delegate.getStats();
+        var compression = new CompressionStats(compressedValues[0], compressedBytes[0], uncompressedBytes[0], compressionNanos.get(),
+                decompressions.get(), decompressionNanos.get(), decompressedCacheHits.get());
+        return new ValuePoolStats(stats.getSize(), stats.getTotalWeight(), stats.getOrphansReclaimed(), stats.getReferencesReclaimed(), stats.getSweeps(), compression);
+    }
+
+    private Object pack(T value) {
+        if (value == null) {
+            return null;
+        }
+        var start = System.nanoTime();
+        var encoded = codec.encode(value);
+        if (encoded.length <= threshold) {
+            return value;
+        }
+        var compressed = compress(encoded);
+        if (compressed.length >= encoded.length) {
+            return value;
+        }
+        compressionNanos.addAndGet(System.nanoTime() - start);
+        var currentWeigher = weigher;
+        return new Compressed(compressed, encoded.length, currentWeigher == null ? -1 : currentWeigher.weigh(value));
+    }
+
+    /**
+     * The Weigher of the delegate. Only the values compressed before weighing was enabled are decompressed in order to be weighed.
+     */
+    @SuppressWarnings("unchecked")
+    private long weighStored(Object stored) {
+        if (!(stored instanceof Compressed compressed)) {
+            return weigher.weigh((T) stored);
+        }
+        return compressed.weight >= 0 ? compressed.weight : weigher.weigh(codec.decode(decompress(compressed)));
+    }
+
+    @SuppressWarnings("unchecked")
+    private T unpack(ID id, Object stored) {
+        if (!(stored instanceof Compressed compressed)) {
+            return (T) stored;
+        }
+        synchronized (decompressedCache) {
+            var decompressed = decompressedCache.get(id);
+            if (decompressed != null && decompressed.source == compressed) { //the value may have been updated since it was decompressed
+                decompressedCacheHits.incrementAndGet();
+                return decompressed.value;
+            }
+        }
+        var start = System.nanoTime();
+        var value = codec.decode(decompress(compressed));
+        decompressions.incrementAndGet();
+        decompressionNanos.addAndGet(System.nanoTime() - start);
+        synchronized (decompressedCache) {
+            decompressedCache.put(id, new Decompressed(compressed, value));
+        }
+        return value;
+    }
+
+    private static byte[] compress(byte[] bytes) {
+        var deflater = new Deflater();
+        try {
+            deflater.setInput(bytes);
+            deflater.finish();
+            var out = new ByteArrayOutputStream(bytes.length / 4);
+            var buffer = new byte[8192];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] decompress(Compressed compressed) {
+        var inflater = new Inflater();
+        try {
+            inflater.setInput(compressed.bytes);
+            var bytes = new byte[compressed.uncompressedLength];
+            var length = 0;
+            while (length < bytes.length && !inflater.finished()) {
+                var inflated = inflater.inflate(bytes, length, bytes.length - length);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                length += inflated;
+            }
+            if (length != bytes.length) {
+                throw new MnemosyneRuntimeException("The compressed value is truncated");
+            }
+            return bytes;
+        } catch (DataFormatException e) {
+            throw new MnemosyneRuntimeException(e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static final class Compressed {
+        private final byte[] bytes;
+        private final int uncompressedLength;
+        /**
+         * The weight of the uncompressed value, or -1 if it was compressed before weighing was enabled.
+         */
+        private final long weight;
+
+        Compressed(byte[] bytes, int uncompressedLength, long weight) {
+            this.bytes = bytes;
+            this.uncompressedLength = uncompressedLength;
+            this.weight = weight;
+        }
+    }
+
+    private final class Decompressed {
+        private final Compressed source;
+        private final T value;
+
+        Decompressed(Compressed source, T value) {
+            this.source = source;
+            this.value = value;
+        }
+    }
+}
@@ -0,0 +1,432 @@
+package com.gmalandrakis.mnemosyne.core;
+
+import com.gmalandrakis.mnemosyne.exception.MnemosyneInitializationException;
+import com.gmalandrakis.mnemosyne.memory.ValueInterner;
+import com.gmalandrakis.mnemosyne.memory.Weigher;
+import com.gmalandrakis.mnemosyne.structures.CacheValue;
+import com.gmalandrakis.mnemosyne.structures.IdMap;
+import com.gmalandrakis.mnemosyne.structures.ReferenceMode;
+import com.gmalandrakis.mnemosyne.structures.ValuePoolStats;
+import com.gmalandrakis.mnemosyne.utils.Maintenance;
+import com.gmalandrakis.mnemosyne.utils.Tickers;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * The default {@link ValuePool}, holding the values themselves on the heap, in an {@link IdMap} that stores Long, Integer and UUID IDs as primitives.
+ * <p>
+ * If any of the caches using the ValuePool has a maxWeight, the ValuePool weighs every value once on addition or update,
+ * and the caches use the stored weight instead of weighing the value themselves.
+ * <p>
+ * The values may also be held through soft or weak references (see {@link ReferenceMode}). Values reclaimed by the GC are treated as misses,
+ * and their IDs are removed from the ValuePool and all the caches using it by the maintenance thread.
+ * <p>
+ * Values that no cache uses (e.g. values added preemptively by an @UpdatesValuePool) are reclaimed by an incremental
+ * {@link #sweepOrphans(int) orphan sweeper} once they have been unused for longer than the orphan grace period.
+ *
+ * @author George Malandrakis (malandrakisgeo@gmail.com)
+ */
+public class HeapValuePool<ID, T> implements ValuePool<ID, T> {
+
+    private final IdMap<ID, CacheValue<T>> valueMap;
+
+    private final AtomicLong totalWeight = new AtomicLong(0);
+
+    private volatile Weigher<T> weigher;
+
+    private volatile ReferenceMode referenceMode = ReferenceMode.STRONG;
+
+    private volatile ValueInterner interner;
+
+    private final ReferenceQueue<T> referenceQueue = new ReferenceQueue<>();
+
+    private final List<Consumer<Collection<ID>>> removalListeners = new CopyOnWriteArrayList<>();
+
+    private final List<WeightListener<ID>> weightListeners = new CopyOnWriteArrayList<>();
+
+    static final long REFERENCE_DRAIN_INTERVAL_MILLIS = 1000;
+
+    private volatile long orphanGracePeriod = DEFAULT_ORPHAN_GRACE_PERIOD_MILLIS;
+
+    private Iterator<Map.Entry<ID, CacheValue<T>>> sweepCursor;
+
+    private final AtomicLong orphansReclaimed = new AtomicLong(0);
+
+    private final AtomicLong referencesReclaimed = new AtomicLong(0);
+
+    private final AtomicLong sweeps = new AtomicLong(0);
+
+    public HeapValuePool() {
+        this(null);
+    }
+
+    /**
+     * @param idType The type of the IDs, used to pick an {@link IdMap} that stores Long, Integer and UUID IDs as primitives. May be null if unknown.
+     */
+    public HeapValuePool(Class<?> idType) {
+        this.valueMap = IdMap.forIdType(idType);
+    }
+
+    @Override
+    public T getValue(ID id) {
+        var val = valueMap.get(id);
+        if (val == null) {
+            return null;
+        }
+        return val.getValue();
+    }
+
+    @Override
+    public List<T> getAll(Collection<ID> ids) {
+        List<T> list = new ArrayList<>();
+        ids.forEach(id -> {
+            var fromValueMap = valueMap.get(id);
+            if (fromValueMap != null) {
+                var value = fromValueMap.getValue();
+                if (value != null) { //null if reclaimed by the GC
+                    list.add(value);
+                }
+            }
+        });
+        return list;
+    }
+
+    @Override
+    public void put(ID id, T value, boolean newCache) {
+        value = intern(value);
+        var cachedValue = this.valueMap.get(id);
+        if (cachedValue == null || cachedValue.isRetired() || newCache && !cachedValue.tryIncreaseNumberOfUses()) {
+            replace(id, cachedValue, new CacheValue<>(value));
+        } else {
+            cachedValue.updateValue(value);
+            hold(id, weigh(id, cachedValue));
+        }
+    }
+    @Override
+    public void put(ID id, boolean newCache) {
+        var cachedValue = this.valueMap.get(id);
+        if (cachedValue == null)
+            return; //TODO: perhaps throw?
+        else {
+            if (newCache && !cachedValue.tryIncreaseNumberOfUses()) { //swept in the meantime, but its' value is still there
+                replace(id, cachedValue, new CacheValue<>(cachedValue.getValue()));
+            }
+        }
+    }
+
+    @Override
+    public void updateValueOrPutPreemptively(ID id, T value) {
+        value = intern(value);
+        var cachedValue = this.valueMap.get(id);
+        if (cachedValue == null || cachedValue.isRetired())
+            replace(id, cachedValue, new CacheValue<>(value, true));
+        else {
+            cachedValue.updateValue(value);
+            hold(id, weigh(id, cachedValue));
+        }
+    }
+
+
+    @Override
+    public void increaseNumberOfUsesForId(ID id, T value) {
+        var cachedValue = this.valueMap.get(id);
+        if (cachedValue == null || !cachedValue.tryIncreaseNumberOfUses())
+            replace(id, cachedValue, new CacheValue<>(intern(value))); //if no active cache uses the value, the orphan sweeper reclaims it
+    }
+
+    @Override
+    public Integer removeOrDecreaseNumberOfUsesForId(ID id) {
+        var cachedValue = valueMap.get(id);
+        if (cachedValue == null) {
+            return 0;
+        }
+        var newNumberOfUses = cachedValue.decreaseNumberOfUses();
+        if (newNumberOfUses == 0 && valueMap.remove(id, cachedValue)) {
+            changeWeight(id, cachedValue.getWeight(), 0);
+        }
+        return newNumberOfUses;
+    }
+
+    @Override
+    public int getSize() {
+        return valueMap.size();
+    }
+
+    @Override
+    public void forEach(BiConsumer<ID, T> action) {
+        valueMap.forEach((id, cacheValue) -> {
+            var value = cacheValue.getValue();
+            if (value != null) {
+                action.accept(id, value);
+            }
+        });
+    }
+
+    @Override
+    public int getNumberOfUsesForId(ID id) {
+        var val = valueMap.get(id);
+        if (val == null) {
+            return 0;
+        }
+        return val.getNumberOfUses();
+    }
+
+    @Override
+    public long getWeight(ID id) {
+        var val = valueMap.get(id);
+        if (val == null) {
+            return 0;
+        }
+        return val.getWeight();
+    }
+
+    @Override
+    public long getTotalWeight() {
+        return totalWeight.get();
+    }
+
+    @Override
+    public synchronized void enableWeighing(Class<? extends Weigher<?>> weigherType) {
+        if (weigher != null) {
+            checkSameWeigher(weigher, weigherType);
+            return;
+        }
+        useWeigher(instantiateWeigher(weigherType));
+    }
+
+    /**
+     * Makes the ValuePool weigh its' values with the given instance, e.g. one wrapping the Weigher of the caches. The values already present are weighed immediately.
+     */
+    synchronized void useWeigher(Weigher<T> weigher) {
+        this.weigher = weigher;
+        valueMap.forEach(this::weigh);
+    }
+
+    static void checkSameWeigher(Weigher<?> weigher, Class<? extends Weigher<?>> weigherType) {
+        if (!weigher.getClass().equals(weigherType)) {
+            throw new MnemosyneInitializationException("Caches sharing a ValuePool must use the same weigher: " + weigher.getClass().getName() + " is already in use");
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    static <T> Weigher<T> instantiateWeigher(Class<? extends Weigher<?>> weigherType) {
+        try {
+            return (Weigher<T>) weigherType.getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new MnemosyneInitializationException("The weigher " + weigherType.getName() + " could not be instantiated: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public synchronized void useReferences(ReferenceMode mode) {
+        if (mode == null || mode == ReferenceMode.STRONG || mode == referenceMode) {
+            return;
+        }
+        if (referenceMode != ReferenceMode.STRONG) {
+            throw new MnemosyneInitializationException("Caches sharing a ValuePool must use the same reference mode: " + referenceMode + " is already in use");
+        }
+        referenceMode = mode;
+        valueMap.forEach((id, cacheValue) -> {
+            var value = cacheValue.getValue();
+            if (value != null) {
+                cacheValue.holdThrough(newReference(id, value));
+            }
+        });
+        Maintenance.scheduleWithFixedDelay(this::drainClearedReferences, REFERENCE_DRAIN_INTERVAL_MILLIS);
+    }
+
+    @Override
+    public ReferenceMode getReferenceMode() {
+        return referenceMode;
+    }
+
+    @Override
+    public void addRemovalListener(Consumer<Collection<ID>> listener) {
+        removalListeners.add(listener);
+    }
+
+    @Override
+    public void addWeightListener(WeightListener<ID> listener) {
+        weightListeners.add(listener);
+    }
+
+    /**
+     * Removes the values reclaimed by the GC and notifies the removal listeners. Called periodically by the maintenance thread.
+     */
+    @SuppressWarnings("unchecked")
+    public void drainClearedReferences() {
+        var clearedIds = new ArrayList<ID>();
+        Reference<? extends T> reference;
+        while ((reference = referenceQueue.poll()) != null) {
+            var id = ((IdReference<ID>) reference).getId();
+            var cachedValue = valueMap.get(id);
+            if (cachedValue != null && cachedValue.isHeldThrough(reference) && valueMap.remove(id, cachedValue)) { //it may have been updated with a new value in the meantime
+                changeWeight(id, cachedValue.getWeight(), 0);
+                clearedIds.add(id);
+            }
+        }
+        referencesReclaimed.addAndGet(clearedIds.size());
+        if (!clearedIds.isEmpty()) {
+            removalListeners.forEach(listener -> listener.accept(clearedIds));
+        }
+    }
+
+    @Override
+    public synchronized int sweepOrphans(int maxEntries) {
+        var now = Tickers.now();
+        var gracePeriod = orphanGracePeriod;
+        int reclaimed = 0;
+        for (int examined = 0; examined < maxEntries; examined++) {
+            if (sweepCursor == null || !sweepCursor.hasNext()) {
+                if (sweepCursor != null) {
+                    sweeps.incrementAndGet();
+                }
+                sweepCursor = valueMap.entryIterator(); //weakly consistent: never throws on concurrent modifications
+                if (!sweepCursor.hasNext()) {
+                    break;
+                }
+            }
+            var entry = sweepCursor.next();
+            var cacheValue = entry.getValue();
+            if (isOrphan(cacheValue, now, gracePeriod) && cacheValue.retire()) { //from now on, the caches replace it instead of using it
+                removeRetired(entry.getKey(), cacheValue);
+                reclaimed++;
+            }
+        }
+        orphansReclaimed.addAndGet(reclaimed);
+        return reclaimed;
+    }
+
+    @Override
+    public void scheduleOrphanSweeping(long intervalMillis) {
+        Maintenance.scheduleWithFixedDelay(() -> sweepOrphans(ORPHAN_SWEEP_BATCH_SIZE), intervalMillis);
+    }
+
+    @Override
+    public void setOrphanGracePeriod(long orphanGracePeriod) {
+        this.orphanGracePeriod = Math.max(0, orphanGracePeriod);
+    }
+
+    @Override
+    public void useInterner(ValueInterner interner) {
+        this.interner = interner;
+    }
+
+    @Override
+    public ValuePoolStats getStats() {
+        return new ValuePoolStats(valueMap.size(), totalWeight.get(), orphansReclaimed.get(), referencesReclaimed.get(), sweeps.get());
+    }
+
+    private boolean isOrphan(CacheValue<T> cacheValue, long now, long gracePeriod) {
+        return cacheValue.getNumberOfUses() <= 0 && now - cacheValue.getUnusedSince() > gracePeriod;
+    }
+
+    /**
+     * Puts a new wrapper for the ID, in place of the given one if it is retired.
+     *
+     * @param cachedValue The wrapper found for the ID, or null if none was found.
+     */
+    private void replace(ID id, CacheValue<T> cachedValue, CacheValue<T> newValue) {
+        if (cachedValue != null) {
+            removeRetired(id, cachedValue);
+        }
+        var previous = valueMap.put(id, hold(id, weigh(id, newValue)));
+        if (previous != null) { //put concurrently by another thread
+            changeWeight(id, previous.getWeight(), 0);
+        }
+    }
+
+    /**
+     * Removes a retired wrapper, unless the sweeper or a cache has removed it already.
+     */
+    private void removeRetired(ID id, CacheValue<T> cachedValue) {
+        if (valueMap.remove(id, cachedValue)) {
+            changeWeight(id, cachedValue.getWeight(), 0);
+        }
+    }
+
+    private CacheValue<T> hold(ID id, CacheValue<T> cacheValue) {
+        if (referenceMode != ReferenceMode.STRONG) {
+            var value = cacheValue.getValue();
+            if (value != null) {
+                cacheValue.holdThrough(newReference(id, value));
+            }
+        }
+        return cacheValue;
+    }
+
+    private Reference<T> newReference(ID id, T value) {
+        return referenceMode == ReferenceMode.WEAK ? new IdWeakReference<>(id, value, referenceQueue) : new IdSoftReference<>(id, value, referenceQueue);
+    }
+
+    private T intern(T value) {
+        var interner = this.interner;
+        return interner == null ? value : interner.intern(value);
+    }
+
+    private CacheValue<T> weigh(ID id, CacheValue<T> cacheValue) {
+        var currentWeigher = weigher;
+        if (currentWeigher != null) {
+            var weight = Math.max(0, currentWeigher.weigh(cacheValue.getValue()));
+            var previousWeight = cacheValue.getWeight();
+            cacheValue.setWeight(weight);
+            changeWeight(id, previousWeight, weight);
+        }
+        return cacheValue;
+    }
+
+    private void changeWeight(ID id, long previousWeight, long weight) {
+        if (previousWeight == weight) {
+            return;
+        }
+        totalWeight.addAndGet(weight - previousWeight);
+        weightListeners.forEach(listener -> listener.onWeightChange(id, previousWeight, weight));
+    }
+
+    /**
+     * References that remember the ID of their referent, so that it can be removed once the referent is reclaimed.
+     */
+    private interface IdReference<ID> {
+        ID getId();
+    }
+
+    private static final class IdSoftReference<ID, T> extends SoftReference<T> implements IdReference<ID> {
+        private final ID id;
+
+        IdSoftReference(ID id, T referent, ReferenceQueue<? super T> queue) {
+            super(referent, queue);
+            this.id = id;
+        }
+
+        @Override
+        public ID getId() {
+            return id;
+        }
+    }
+
+    private static final class IdWeakReference<ID, T> extends WeakReference<T> implements IdReference<ID> {
+        private final ID id;
+
+        IdWeakReference(ID id, T referent, ReferenceQueue<? super T> queue) {
+            super(referent, queue);
+            this.id = id;
+        }
+
+        @Override
+        public ID getId() {
+            return id;
+        }
+    }
+}
@@ -11,8 +11,10 @@ import com.gmalandrakis.mnemosyne.structures.CompoundKey;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Method;
 import java.lang.reflect.Parameter;
+import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Stream;
 
@@ -48,7 +50,7 @@ public class MnemoCommon {
         if (object instanceof Iterable<?>) {
             var idObjectMap = new ConcurrentHashMap<>();
 
-            ((Iterable) object).forEach(obj -> {
+            ((Iterable<?>) object).forEach(obj -> {
                 idObjectMap.put(deduceIdOrMap(obj), obj); //Returns a Map<ID, V>
             });
             return idObjectMap;
@@ -70,6 +72,60 @@ public class MnemoCommon {
         return new CompoundId(idObjects.toArray());
     }
 
+    static boolean returnsFuture(Method method) {
+        return CompletableFuture.class.isAssignableFrom(method.getReturnType());
+    }
+
+    /**
+     * @return The type the method returns, or the type of the result of the CompletableFuture it returns (Object if it is not declared).
+     */
+    static Type getResultType(Method method) {
+        if (!returnsFuture(method)) {
+            return method.getGenericReturnType();
+        }
+        return method.getGenericReturnType() instanceof ParameterizedType parameterizedType ? parameterizedType.getActualTypeArguments()[0] : Object.class;
+    }
+
+    /**
+     * @return The class of the {@link #getResultType(Method) result} of the method, without any type arguments, or Object if it is not a class.
+     */
+    static Class<?> getResultClass(Method method) {
+        var type = getResultType(method);
+        if (type instanceof ParameterizedType parameterizedType) {
+            type = parameterizedType.getRawType();
+        }
+        return type instanceof Class<?> resultClass ? resultClass : Object.class;
+    }
+
+    /**
+     * Deduces the type of the IDs that {@link #deduceIdOrMap(Object)} returns for the values of a type, without any value at hand.
+     *
+     * @return The type of the IDs, or null if it cannot be deduced from the type alone, e.g. for compound IDs or IDs returned by getters.
+     */
+    static Class<?> deduceIdType(Class<?> valueType) {
+        if (Number.class.isAssignableFrom(valueType)) {
+            return valueType;
+        }
+        if (CharSequence.class.isAssignableFrom(valueType)) {
+            return String.class;
+        }
+        var idFields = Stream.concat(Arrays.stream(valueType.getFields()), Arrays.stream(valueType.getDeclaredFields()))
+                .filter(field -> field.getAnnotation(Id.class) != null).toList();
+        if (idFields.size() == 1) {
+            return idFields.get(0).getType();
+        }
+        if (!idFields.isEmpty()) {
+            return null; //a CompoundId
+        }
+        for (String name : new String[]{"Id", "ID", "id"}) { //the same order as tryGetIDField
+            try {
+                return valueType.getDeclaredField(name).getType();
+            } catch (NoSuchFieldException ignore) {
+            }
+        }
+        return null;
+    }
+
     static Object getAnnotatedUpdatedValue(Annotation[][] parameterAnnotations, Object[] args) {
         int i = 0;
         for (Annotation[] annotations : parameterAnnotations) {
@@ -145,7 +201,7 @@ public class MnemoCommon {
     }
 
 
-    static Map<Parameter, Annotation> getParametersWithAnnotation(Method method, Class annotationType) {
+    static Map<Parameter, Annotation> getParametersWithAnnotation(Method method, Class<? extends Annotation> annotationType) {
         var paramList = new HashMap<Parameter, Annotation>();
         var parameters = method.getParameters();
         for (Parameter parameter : parameters) {
@@ -158,7 +214,7 @@ public class MnemoCommon {
         return paramList;
     }
 
-    static Class<?>[] getAnnotatedParamTypes(Method method, Class annotationType) {
+    static Class<?>[] getAnnotatedParamTypes(Method method, Class<? extends Annotation> annotationType) {
         Class<?>[] paramList = {};
         var paramArray = new ArrayList<Class<?>>();
         var parameters = method.getParameters();
@@ -245,12 +301,12 @@ public class MnemoCommon {
                 The reason for the code below is that a CompoundKey that contains an object A is different from a compoundKey containing a List or a Set with an object A.
                 If a cached function takes a list as an argument and the value A is cached in a list, a CompoundKey(List(A)) is needed. CompoundKey(A) will not yield a result.
              */
-            Set hashSet = new HashSet();
-            List arrayList = new ArrayList();
+            Set<Object> hashSet = new HashSet<>();
+            List<Object> arrayList = new ArrayList<>();
 
-            var linkedHashMaps = new LinkedHashMap[]{annotatedKeyNamesAndValues, targetKeyNamesAndValues};
+            var linkedHashMaps = Arrays.asList(annotatedKeyNamesAndValues, targetKeyNamesAndValues);
             if (keyIsASet) {
-                for (LinkedHashMap linkedHashMap : linkedHashMaps) {
+                for (LinkedHashMap<String, Object> linkedHashMap : linkedHashMaps) {
                     if (linkedHashMap != null) {
                         linkedHashMap.keySet().forEach(keyName -> {
                             hashSet.add(linkedHashMap.get(keyName));
@@ -259,7 +315,7 @@ public class MnemoCommon {
                 }
                 keyObjects.add(hashSet);
             } else if (keyIsAList) {
-                for (LinkedHashMap linkedHashMap : linkedHashMaps) {
+                for (LinkedHashMap<String, Object> linkedHashMap : linkedHashMaps) {
                     if (linkedHashMap != null) {
                         linkedHashMap.keySet().forEach(keyName -> {
                             arrayList.add(linkedHashMap.get(keyName));
@@ -268,7 +324,7 @@ public class MnemoCommon {
                 }
                 keyObjects.add(arrayList);
             } else {
-                for (LinkedHashMap linkedHashMap : linkedHashMaps) {
+                for (LinkedHashMap<String, Object> linkedHashMap : linkedHashMaps) {
                     if (linkedHashMap != null) {
                         linkedHashMap.keySet().forEach(keyName -> {
                             keyObjects.add(linkedHashMap.get(keyName));
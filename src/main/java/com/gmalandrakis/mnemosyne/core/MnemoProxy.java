@@ -7,17 +7,33 @@ import com.gmalandrakis.mnemosyne.annotations.UpdatesCache;
 import com.gmalandrakis.mnemosyne.cache.AbstractGenericCache;
 import com.gmalandrakis.mnemosyne.cache.AbstractMnemosyneCache;
 import com.gmalandrakis.mnemosyne.structures.AddMode;
+import com.gmalandrakis.mnemosyne.exception.MnemosyneRuntimeException;
 import com.gmalandrakis.mnemosyne.structures.CompoundKey;
+import com.gmalandrakis.mnemosyne.structures.IdWrapper;
+import com.gmalandrakis.mnemosyne.structures.NegativeCache;
 import com.gmalandrakis.mnemosyne.structures.RemoveMode;
+import com.gmalandrakis.mnemosyne.structures.TierStats;
+import com.gmalandrakis.mnemosyne.tier.Tier;
+import com.gmalandrakis.mnemosyne.tier.TierChain;
+import com.gmalandrakis.mnemosyne.utils.Tickers;
 
 import java.lang.annotation.Annotation;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 import static com.gmalandrakis.mnemosyne.core.MnemoCommon.*;
@@ -29,7 +45,7 @@ import static com.gmalandrakis.mnemosyne.utils.GeneralUtils.isAssignableTo;
  *
  * @author George Malandrakis (malandrakisgeo@gmail.com)
  */
-@SuppressWarnings({"unchecked", "raw"})
+@SuppressWarnings("unchecked")
 public class MnemoProxy<K, ID, V> {
 
     protected final AbstractMnemosyneCache<K, ID, V> cache;
@@ -46,16 +62,260 @@ public class MnemoProxy<K, ID, V> {
 
     private final ExecutorService executorService;
 
+    /**
+     * Runs the reloads of keys in the background, tracked along with the maintenance of the cache if it is a generic one.
+     */
+    private final Executor reloadExecutor;
+
+    /**
+     * Whether the method returns a CompletableFuture of its' values rather than the values themselves.
+     */
+    private final boolean returnsFuture;
+
+    /**
+     * The class of the values the method returns, or of the result of the CompletableFuture it returns.
+     */
+    private final Class<?> resultClass;
+
+    /**
+     * The loads of the keys that missed, if the method returns a CompletableFuture, so that concurrent misses of a key share a single invocation.
+     */
+    private final ConcurrentHashMap<K, Load> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * The tiers the entries evicted from the cache are demoted to, if any.
+     */
+    private volatile TierChain<K, ID, V> lowerTiers;
+
+    /**
+     * The lookups that missed the cache itself.
+     */
+    private final LongAdder cacheMisses = new LongAdder();
+
+    /**
+     * The time in milliseconds after which the values of a key are reloaded on the next read, or zero if they are never reloaded ahead of time.
+     */
+    private volatile long refreshAfter;
+
+    /**
+     * The keys being reloaded, so that concurrent reads of a key trigger a single reload.
+     */
+    private final Set<K> refreshing = ConcurrentHashMap.newKeySet();
+
+    /**
+     * The time in milliseconds after their expiration the values of a key are still served while the key is reloaded in the background.
+     */
+    private volatile long staleWhileRevalidate;
+
+    /**
+     * The time in milliseconds after their expiration the values of a key are still served if the underlying method fails.
+     */
+    private volatile long staleIfError;
+
+    /**
+     * The time in milliseconds after which a load counts as failed, if stale values may be served instead. Zero waits for as long as the load takes.
+     */
+    private volatile long loadTimeout;
+
+    private final LongAdder staleHits = new LongAdder();
+
+    /**
+     * The keys for which the underlying method returned nothing recently, if negative caching is enabled.
+     */
+    private volatile NegativeCache<K> negativeCache;
+
+    /**
+     * Loads the misses of a single-value cache in batches through a bulk method, if one is set.
+     */
+    private volatile BatchLoader<V> batchLoader;
+
+    /**
+     * The journal of the mutations of the cache, if any.
+     */
+    private volatile MutationJournal journal;
+
+    private volatile String cacheName;
+
+    private volatile String valueType;
+
     public MnemoProxy(AbstractMnemosyneCache<K, ID, V> cache, Method method, Object invocationTargetObject,
                       ValuePool<ID, V> valuePool, boolean returnsCollections, boolean specialCollectionHandling) {
         this.cache = cache;
         this.cachedMethod = method;
         this.invocationTargetObject = invocationTargetObject;
         this.valuePool = valuePool;
-        this.executorService = cache instanceof AbstractGenericCache ? ((AbstractGenericCache) cache).getInternalThreadService() : Executors.newCachedThreadPool();
+        this.executorService = cache instanceof AbstractGenericCache<K, ID, V> genericCache ? genericCache.getInternalThreadService() : Executors.newCachedThreadPool();
+        this.reloadExecutor = cache instanceof AbstractGenericCache<K, ID, V> genericCache ? genericCache.getMaintenanceExecutor() : executorService;
         assert (!(specialCollectionHandling && !returnsCollections));
         this.returnsCollections = returnsCollections;
         this.specialCollectionHandlingEnabled = specialCollectionHandling;
+        this.returnsFuture = MnemoCommon.returnsFuture(method);
+        this.resultClass = MnemoCommon.getResultClass(method);
+    }
+
+    boolean returnsFuture() {
+        return returnsFuture;
+    }
+
+    /**
+     * Invokes the underlying method of a cache whose method returns a CompletableFuture, unless an invocation for the key is in flight already,
+     * and updates the cache once the future completes. A future that fails leaves the cache as it was, and the next miss invokes the method again.
+     *
+     * @param onLoaded Called once with the loaded values by ID, before the load completes, e.g. to update the related caches.
+     *                 Only the one of the caller that starts the load is used.
+     * @return The in-flight load of the key, shared by every concurrent miss of it, and completed with the value or the collection of values the method returns.
+     */
+    CompletableFuture<Object> loadAsync(Consumer<Map<ID, V>> onLoaded, Object... args) {
+        return startLoad(onLoaded, args).result;
+    }
+
+    private Load startLoad(Consumer<Map<ID, V>> onLoaded, Object... args) {
+        assert (returnsFuture);
+        var compoundKey = MnemoCommon.deduceCompoundKeyFromMethodAndArgs(cachedMethod, args);
+        var load = new Load();
+        var existing = inFlight.putIfAbsent((K) compoundKey, load);
+        if (existing != null) {
+            return existing;
+        }
+        CompletableFuture<?> returned;
+        try {
+            returned = (CompletableFuture<?>) invokeUnderlyingMethod(args);
+        } catch (RuntimeException | Error e) {
+            inFlight.remove((K) compoundKey, load);
+            load.values.completeExceptionally(e); //the callers that joined in the meantime
+            throw e;
+        }
+        if (returned == null) {
+            inFlight.remove((K) compoundKey, load);
+            load.values.complete(null);
+            return load;
+        }
+        returned.whenComplete((result, failure) -> {
+            Map<ID, V> loaded = null;
+            try {
+                if (failure == null) {
+                    loaded = returnsCollections ? putMultipleInCache(Collections.emptySet(), compoundKey, result) : putSingleInCache(compoundKey, (V) result);
+                    if (loaded != null && onLoaded != null) {
+                        onLoaded.accept(loaded);
+                    }
+                }
+            } catch (RuntimeException e) {
+                failure = e;
+            }
+            inFlight.remove((K) compoundKey, load); //before completing, so that the callers arriving afterwards do not get a failed load
+            if (failure != null) {
+                load.values.completeExceptionally(failure instanceof CompletionException && failure.getCause() != null ? failure.getCause() : failure);
+            } else {
+                load.values.complete(loaded);
+            }
+        });
+        return load;
+    }
+
+    /**
+     * Demotes the entries evicted from the cache to the given tiers, and checks them in order on every miss.
+     */
+    void useLowerTiers(TierChain<K, ID, V> tiers) {
+        this.lowerTiers = tiers;
+        if (cache instanceof AbstractGenericCache<K, ID, V> genericCache) {
+            tiers.spillOn(genericCache.getMaintenanceExecutor());
+            genericCache.setEvictionListener(tiers);
+        }
+    }
+
+    TierChain<K, ID, V> getLowerTiers() {
+        return lowerTiers;
+    }
+
+    /**
+     * Drops the entries of the lower tiers containing any of the IDs, since their values may have changed.
+     */
+    void invalidateLowerTiers(Collection<?> ids) {
+        var tiers = lowerTiers;
+        if (tiers != null) {
+            tiers.removeByIds(ids);
+        }
+    }
+
+    /**
+     * @return The counters of the cache itself, followed by the ones of every lower tier.
+     */
+    List<TierStats> getTierStats() {
+        var tiers = lowerTiers;
+        var hits = cache instanceof AbstractGenericCache<K, ID, V> genericCache ? genericCache.getHitCount() : 0;
+        var stats = new ArrayList<TierStats>();
+        stats.add(new TierStats(1, "heap", cache.getKeyIdMapper().size(), hits, cacheMisses.sum(), tiers == null ? 0 : tiers.getDemotedFromCacheCount()));
+        if (tiers != null) {
+            for (Tier<K, ID, V> tier : tiers.getTiers()) {
+                var pendingHits = stats.size() == 1 ? tiers.getPendingHitCount() : 0; //the entries not written yet belong to the first tier
+                stats.add(new TierStats(stats.size() + 1, tier.getKind(), tier.getSize(), tier.getHitCount() + pendingHits, tier.getMissCount(), tier.getEvictionCount()));
+            }
+        }
+        return stats;
+    }
+
+    /**
+     * Makes the reads of keys older than the given time trigger a reload of the key in the background. Zero disables refreshing.
+     */
+    void refreshAfter(long refreshAfter) {
+        this.refreshAfter = Math.max(0, refreshAfter);
+    }
+
+    /**
+     * Makes the misses of recently expired keys serve the last known values, either while reloading the key in the background, or if the load fails.
+     * The cache keeps its' expired entries for the longer of the two periods.
+     */
+    void serveStale(long staleWhileRevalidate, long staleIfError, long loadTimeout) {
+        this.staleWhileRevalidate = Math.max(0, staleWhileRevalidate);
+        this.staleIfError = Math.max(0, staleIfError);
+        this.loadTimeout = Math.max(0, loadTimeout);
+        if (cache instanceof AbstractGenericCache<K, ID, V> genericCache) {
+            genericCache.retainExpiredFor(Math.max(this.staleWhileRevalidate, this.staleIfError));
+        }
+    }
+
+    /**
+     * Remembers the keys for which the underlying method returns nothing in the given negative cache, and skips the method for them until they expire from it.
+     */
+    void useNegativeCache(NegativeCache<K> negativeCache) {
+        this.negativeCache = negativeCache;
+    }
+
+    /**
+     * Loads concurrent misses through the bulk method of the given loader instead of invoking the underlying method once per key.
+     * Only for single-value caches whose method takes a single argument.
+     */
+    void useBatchLoader(BatchLoader<V> batchLoader) {
+        this.batchLoader = batchLoader;
+    }
+
+    BatchLoader<V> getBatchLoader() {
+        return batchLoader;
+    }
+
+    NegativeCache<K> getNegativeCache() {
+        return negativeCache;
+    }
+
+    /**
+     * Forgets every key the underlying method returned nothing for, e.g. because values were added that the keys may now return.
+     */
+    void invalidateNegativeCache() {
+        var negativeCache = this.negativeCache;
+        if (negativeCache != null) {
+            negativeCache.clear();
+        }
+    }
+
+    /**
+     * Records every mutation of the cache, and every value the proxy adds to the ValuePool, to the given journal.
+     *
+     * @param valueType The name the ValuePool is journaled under.
+     */
+    void useJournal(MutationJournal journal, String cacheName, String valueType) {
+        this.cacheName = cacheName;
+        this.valueType = valueType;
+        this.journal = journal;
     }
 
     Cached getAnnotation() {
@@ -71,15 +331,217 @@ public class MnemoProxy<K, ID, V> {
             }
             var cachedValue = cache.getAll((K) compoundKey);
             if (cachedValue == null || cachedValue.isEmpty()) {
-                return null;
+                return fetchFromLowerTiers((K) compoundKey);
             }
+            refreshIfDue((K) compoundKey, args);
             return cachedValue;
         } else {
-            return cache.get((K) compoundKey);
+            var cachedValue = cache.get((K) compoundKey);
+            if (cachedValue == null) {
+                return fetchFromLowerTiers((K) compoundKey);
+            }
+            refreshIfDue((K) compoundKey, args);
+            return cachedValue;
+        }
+    }
+
+    /**
+     * Reloads the key in the background, if its' values are older than the refreshAfter of the cache.
+     */
+    private void refreshIfDue(K key, Object... args) {
+        var refreshAfter = this.refreshAfter;
+        if (refreshAfter == 0) {
+            return;
+        }
+        var idWrapper = peekWrapper(key);
+        if (idWrapper != null && Tickers.now() - idWrapper.getCreatedOn() >= refreshAfter) {
+            reloadInBackground(key, args);
+        }
+    }
+
+    /**
+     * Reloads the key through the underlying method on the internal thread service, unless a reload of the key is in progress already.
+     */
+    private void reloadInBackground(K key, Object... args) {
+        if (!refreshing.add(key)) {
+            return;
+        }
+        try {
+            reloadExecutor.execute(() -> {
+                try {
+                    if (reload(key, args) != null) {
+                        var refreshed = peekWrapper(key);
+                        if (refreshed != null) {
+                            refreshed.markRefreshed(); //the wrapper is kept if the ID did not change
+                        }
+                    }
+                } catch (RuntimeException ignore) { //the cached value is kept, and the next read retries
+                } finally {
+                    refreshing.remove(key);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            refreshing.remove(key);
+        }
+    }
+
+    /**
+     * Invokes the underlying method and replaces the values of the key with the ones it returned: the IDs of a collection the method no longer returns
+     * are removed from it, rather than kept along with the new ones.
+     */
+    private Map<ID, V> reload(K key, Object... args) {
+        var idWrapper = returnsCollections && !specialCollectionHandlingEnabled ? peekWrapper(key) : null;
+        var previousIds = idWrapper == null ? List.<ID>of() : List.copyOf(idWrapper.peekIds());
+        var reloaded = getFromUnderlyingMethodAndUpdateMainCache(args);
+        if (reloaded != null) {
+            var journal = this.journal;
+            for (ID id : previousIds) {
+                if (!reloaded.containsKey(id)) {
+                    cache.removeOneFromCollection(key, id);
+                    if (journal != null) {
+                        journal.removeFromCollection(cacheName, key, id);
+                    }
+                }
+            }
+        }
+        return reloaded;
+    }
+
+    private IdWrapper<ID> peekWrapper(K key) {
+        return cache instanceof AbstractGenericCache<K, ID, V> genericCache ? genericCache.peekWrapper(key) : cache.getKeyIdMapper().get(key);
+    }
+
+    /**
+     * Looks the key up in the lower tiers, if any, and promotes the entry back to the cache on a hit, keeping its' original expiration.
+     * Values still present in the ValuePool take precedence over the ones of the tiers.
+     */
+    private Object fetchFromLowerTiers(K key) {
+        cacheMisses.increment();
+        var tiers = lowerTiers;
+        if (tiers == null) {
+            return null;
+        }
+        var entry = tiers.promote(key);
+        if (entry == null) {
+            return null;
+        }
+        var promoted = new LinkedHashMap<ID, V>();
+        entry.getValues().forEach((id, value) -> {
+            var current = valuePool.getValue(id);
+            if (current == null) {
+                preemptivePut(id, value);
+                current = value;
+            }
+            promoted.put(id, current);
+        });
+        if (!restoreInCache(key, promoted.keySet(), entry.getExpiresAt())) {
+            return null;
+        }
+        return deduce(promoted);
+    }
+
+    /**
+     * Called on a miss. Returns nothing if the key is in the negative cache, and otherwise invokes the underlying method and updates the cache,
+     * or serves the last known values of the key if it expired recently enough (see {@link #loadOrServeStale(Object, Object...)}).
+     * Keys for which nothing is found are added to the negative cache, if any.
+     */
+    Map<ID, V> load(Object... args) {
+        var negativeCache = this.negativeCache;
+        if ((negativeCache == null && !servesStale()) || specialCollectionHandlingEnabled) {
+            return getFromUnderlyingMethodAndUpdateMainCache(args);
+        }
+        var key = (K) MnemoCommon.deduceCompoundKeyFromMethodAndArgs(cachedMethod, args);
+        if (negativeCache == null) {
+            return loadOrServeStale(key, args);
+        }
+        if (negativeCache.contains(key)) {
+            return null;
+        }
+        var stamp = negativeCache.getStamp();
+        var loaded = loadOrServeStale(key, args);
+        if (loaded == null || loaded.isEmpty()) {
+            negativeCache.add(key, stamp);
+        }
+        return loaded;
+    }
+
+    private boolean servesStale() {
+        return staleWhileRevalidate > 0 || staleIfError > 0;
+    }
+
+    /**
+     * Invokes the underlying method and updates the cache, or serves the last known values of the key if it expired recently enough:
+     * right away while reloading the key in the background (see {@link Cached#staleWhileRevalidate()}), or if the underlying method fails or takes
+     * longer than the loadTimeout (see {@link Cached#staleIfError()}).
+     */
+    private Map<ID, V> loadOrServeStale(K key, Object... args) {
+        var staleWhileRevalidate = this.staleWhileRevalidate;
+        var staleIfError = this.staleIfError;
+        if ((staleWhileRevalidate == 0 && staleIfError == 0) || !(cache instanceof AbstractGenericCache<K, ID, V> genericCache)) {
+            return getFromUnderlyingMethodAndUpdateMainCache(args);
+        }
+        var idWrapper = genericCache.peekWrapper(key);
+        var expiredFor = idWrapper == null ? Long.MAX_VALUE : genericCache.getTimeSinceExpiration(idWrapper);
+        var stale = expiredFor < 0 || expiredFor > Math.max(staleWhileRevalidate, staleIfError) ? null : peekValues(idWrapper);
+        if (stale == null) {
+            return getFromUnderlyingMethodAndUpdateMainCache(args);
+        }
+        if (expiredFor <= staleWhileRevalidate) {
+            staleHits.increment();
+            reloadInBackground(key, args);
+            return stale;
+        }
+        try {
+            return loadTimeout == 0 ? getFromUnderlyingMethodAndUpdateMainCache(args) : loadWithTimeout(args);
+        } catch (RuntimeException e) {
+            staleHits.increment();
+            return stale;
+        }
+    }
+
+    /**
+     * @return The number of misses served with stale values.
+     */
+    long getStaleHitCount() {
+        return staleHits.sum();
+    }
+
+    /**
+     * @return The values of the IDs of the wrapper still present in the ValuePool, or null if none is.
+     */
+    private Map<ID, V> peekValues(IdWrapper<ID> idWrapper) {
+        var values = new LinkedHashMap<ID, V>();
+        for (ID id : idWrapper.peekIds()) {
+            var value = valuePool.getValue(id);
+            if (value != null) {
+                values.put(id, value);
+            }
+        }
+        return values.isEmpty() ? null : values;
+    }
+
+    /**
+     * Invokes the underlying method on the internal thread service, and waits for it up to the loadTimeout.
+     * A load that times out goes on, and updates the cache once it completes.
+     */
+    private Map<ID, V> loadWithTimeout(Object... args) {
+        var future = CompletableFuture.supplyAsync(() -> getFromUnderlyingMethodAndUpdateMainCache(args), executorService);
+        try {
+            return future.get(loadTimeout, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            throw new MnemosyneRuntimeException("The underlying method of " + cachedMethod.getName() + " did not return within " + loadTimeout + " ms");
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof RuntimeException runtimeException ? runtimeException : new MnemosyneRuntimeException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MnemosyneRuntimeException(e);
         }
     }
 
     Map<ID, V> getFromUnderlyingMethodAndUpdateMainCache(Object... args) {
+        if (returnsFuture) { //e.g. when refreshing ahead, which runs in the background anyway
+            return startLoad(null, args).values.join();
+        }
         var compoundKey = MnemoCommon.deduceCompoundKeyFromMethodAndArgs(cachedMethod, args);
 
         if (!returnsCollections) {
@@ -98,13 +560,13 @@ public class MnemoProxy<K, ID, V> {
             if (!returnsCollections) {
                 return res.values().stream().toList().get(0);
             } else {
-                if (List.class.isAssignableFrom(cachedMethod.getReturnType())) {
+                if (List.class.isAssignableFrom(resultClass)) {
                     return res.values().stream().collect(Collectors.toList());
                 }
-                if (Set.class.isAssignableFrom(cachedMethod.getReturnType())) {
+                if (Set.class.isAssignableFrom(resultClass)) {
                     return res.values().stream().collect(Collectors.toSet());
                 }
-                if (Collection.class.isAssignableFrom(cachedMethod.getReturnType())) {
+                if (Collection.class.isAssignableFrom(resultClass)) {
                     //TODO
                     return res.values().stream().collect(Collectors.toSet());
                 }
@@ -117,20 +579,36 @@ public class MnemoProxy<K, ID, V> {
         if (removeMode != RemoveMode.NONE && (conditionalRemove == null || conditionalRemove)) {
 
             if (key != null && removeMode.equals(RemoveMode.SINGLE_VALUE) || idValueMap == null) {
-                cache.remove(key);
+                removeFromCache(key);
                 return;
             }
+            var journal = this.journal;
 
             if (returnsCollections) {
                 if (removeMode.equals(RemoveMode.REMOVE_FROM_COLLECTION)) {
-                    idValueMap.keySet().forEach(id -> cache.removeOneFromCollection(key, id));
+                    idValueMap.keySet().forEach(id -> {
+                        cache.removeOneFromCollection(key, id);
+                        if (journal != null) {
+                            journal.removeFromCollection(cacheName, key, id);
+                        }
+                    });
                 } else if (removeMode.equals(RemoveMode.REMOVE_FROM_ALL_COLLECTIONS)) {
                     cache.removeById(idValueMap.keySet());//o prwtos pou tha mou steilei email gia auto to sxolio lamvanei pente evrw.
+                    if (journal != null) {
+                        journal.removeIds(cacheName, idValueMap.keySet());
+                    }
                 }
             }
 
             if (removeMode.equals(RemoveMode.INVALIDATE_CACHE)) {
                 cache.invalidateCache();
+                if (journal != null) {
+                    journal.invalidate(cacheName);
+                }
+                var tiers = lowerTiers;
+                if (tiers != null) {
+                    tiers.clear(); //custom caches do not notify the tiers
+                }
             }
             return;
         }
@@ -145,10 +623,10 @@ public class MnemoProxy<K, ID, V> {
                     if (!specialCollectionHandlingEnabled) {
                         preemptiveAdd(key, idValueMap.keySet()); //Crudely written. TODO: Improve or remove. Perhaps allow the user to decide if the preemptive add happens?
                     }
-                    cache.putAll(key, idValueMap.keySet());
+                    putAllInCache(key, idValueMap.keySet());
                 } else {
                     var singleKey = idValueMap.keySet().stream().toList().get(0);
-                    cache.put(key, singleKey);
+                    putInCache(key, singleKey);
                 }
             }
 
@@ -158,16 +636,26 @@ public class MnemoProxy<K, ID, V> {
                         preemptiveAdd(key, idValueMap.keySet());
                     }
                 }
-                cache.putAll(key, idValueMap.keySet());
+                putAllInCache(key, idValueMap.keySet());
             }
 
             if (addMode == AddMode.ADD_TO_ALL_COLLECTIONS) {
-                idValueMap.keySet().forEach(cache::putInAllCollections);
+                var journal = this.journal;
+                idValueMap.keySet().forEach(id -> {
+                    cache.putInAllCollections(id);
+                    if (journal != null) {
+                        journal.putInAllCollections(cacheName, id);
+                    }
+                });
+                var tiers = lowerTiers;
+                if (tiers != null) {
+                    tiers.clear(); //every collection of the tiers is missing the new IDs
+                }
             }
 
             if (addMode == AddMode.REPLACE_EXISTING_COLLECTION) {
-                cache.remove(key);
-                cache.putAll(key, idValueMap.keySet());
+                removeFromCache(key);
+                putAllInCache(key, idValueMap.keySet());
             }
             return;
         }
@@ -259,6 +747,24 @@ public class MnemoProxy<K, ID, V> {
                                V updatedValue, K key,
                                boolean add, boolean remove,
                                AddMode addMode, RemoveMode removeMode) {
+        var tiers = lowerTiers;
+        if (tiers != null) { //whatever the update, the copies in the tiers are outdated
+            if (key != null) {
+                tiers.remove(key);
+            }
+            if (idOfUpdatedValue != null) {
+                tiers.removeByIds(idOfUpdatedValue instanceof Map ? ((Map<?, ?>) idOfUpdatedValue).keySet() : List.of(idOfUpdatedValue));
+            }
+        }
+
+        var negativeCache = this.negativeCache;
+        if (negativeCache != null) {
+            if (add && key != null && addMode != AddMode.ADD_TO_ALL_COLLECTIONS) {
+                negativeCache.remove(key);
+            } else if (add || (remove && removeMode == RemoveMode.INVALIDATE_CACHE)) {
+                negativeCache.clear(); //any key may return the added value now
+            }
+        }
 
         if (idOfUpdatedValue == null && updatedValue == null) { //this can only happen on key removal.
             updateByRemoving(key, null, add, removeMode);
@@ -376,11 +882,16 @@ public class MnemoProxy<K, ID, V> {
     }
 
     private Map<ID, V> getSingleAndUpdate(CompoundKey compoundKey, Object... args) {
-        var value = (V) invokeUnderlyingMethod(args);
+        var batchLoader = this.batchLoader;
+        var value = batchLoader != null ? batchLoader.load(args[0]) : (V) invokeUnderlyingMethod(args);
+        return putSingleInCache(compoundKey, value);
+    }
+
+    private Map<ID, V> putSingleInCache(CompoundKey compoundKey, V value) {
         if (value != null) {
             var id = (ID) MnemoCommon.deduceIdOrMap(value);
-            valuePool.updateValueOrPutPreemptively(id, value);
-            cache.put((K) compoundKey, (ID) id);
+            preemptivePut(id, value);
+            putInCache((K) compoundKey, id);
             return Map.of(id, value);
         }
         return null;
@@ -393,13 +904,16 @@ public class MnemoProxy<K, ID, V> {
             having the same IDs with two hits instead of one, potentially leading to memory leaks.
             TODO; Unit tests to verify the ignored are ignored
          */
-        var value = invokeUnderlyingMethod(args);
+        return putMultipleInCache(ignored, compoundKey, invokeUnderlyingMethod(args));
+    }
+
+    private Map<ID, V> putMultipleInCache(Set<ID> ignored, CompoundKey compoundKey, Object value) {
         if (value != null) {
             assert (value instanceof Collection);
             var map = (ConcurrentMap<ID, V>) MnemoCommon.deduceIdOrMap(value);
             ignored.forEach(map::remove);
-            map.forEach(valuePool::updateValueOrPutPreemptively);
-            cache.putAll((K) compoundKey, map.keySet());
+            map.forEach(this::preemptivePut);
+            putAllInCache((K) compoundKey, map.keySet());
             return map;
         }
         return null;
@@ -419,7 +933,7 @@ public class MnemoProxy<K, ID, V> {
         keys.stream()
                 .parallel()
                 .forEach(k -> { //Note again that k is not a compoundKey!
-                    var hit = (V) cache.get((K) MnemoCommon.deduceCompoundKeyFromMethodAndArgs(cachedMethod, new Object[]{k})); //reminder that (k) is never equal to CompoundKey(k), and since we wrap all (k)s around CompoundKeys everywhere else, we need to do so here too
+                    var hit = cache.get((K) MnemoCommon.deduceCompoundKeyFromMethodAndArgs(cachedMethod, new Object[]{k})); //reminder that (k) is never equal to CompoundKey(k), and since we wrap all (k)s around CompoundKeys everywhere else, we need to do so here too
                     if (hit == null) {
                         failedKeys.add(k);
                     } else {
@@ -446,8 +960,8 @@ public class MnemoProxy<K, ID, V> {
                                         var id = (ID) MnemoCommon.deduceIdOrMap(valueCollection.toArray()[0]);
                                         var val = (V) valueCollection.toArray()[0];
                                         initiallyMissedFromCache.put(id, val);
-                                        valuePool.updateValueOrPutPreemptively(id, val);
-                                        cache.put((K) MnemoCommon.deduceCompoundKeyFromMethodAndArgs(cachedMethod, new Object[]{failedKey}), id);
+                                        preemptivePut(id, val);
+                                        putInCache((K) MnemoCommon.deduceCompoundKeyFromMethodAndArgs(cachedMethod, new Object[]{failedKey}), id);
                                         //  keyValueMap.put(failedKey, Iterables.get(valueCollection, 0));
                                     }
                                 }
@@ -457,6 +971,60 @@ public class MnemoProxy<K, ID, V> {
         return initiallyMissedFromCache; //Reminder that only List or Set may be returned whenever separate handling is enabled.
     }
 
+    private void preemptivePut(ID id, V value) {
+        valuePool.updateValueOrPutPreemptively(id, value);
+        var journal = this.journal;
+        if (journal != null) {
+            journal.putValue(valueType, id, value);
+        }
+    }
+
+    private void putInCache(K key, ID id) {
+        cache.put(key, id);
+        var journal = this.journal;
+        if (journal != null && key != null) {
+            journal.putKey(cacheName, key, List.of(id));
+        }
+    }
+
+    private void putAllInCache(K key, Collection<ID> ids) {
+        cache.putAll(key, ids);
+        var journal = this.journal;
+        if (journal != null && key != null) {
+            journal.putKey(cacheName, key, ids);
+        }
+    }
+
+    /**
+     * Adds an entry promoted from the lower tiers with its' original expiration.
+     *
+     * @return False if the entry expired in the meantime.
+     */
+    private boolean restoreInCache(K key, Collection<ID> ids, long expiresAt) {
+        if (!(cache instanceof AbstractGenericCache<K, ID, V> genericCache)) {
+            if (returnsCollections) {
+                cache.putAll(key, ids);
+            } else {
+                cache.put(key, ids.iterator().next());
+            }
+        } else if (!genericCache.restoreEntry(key, ids, expiresAt)) {
+            return false;
+        }
+        var journal = this.journal;
+        if (journal != null && key != null) {
+            journal.putKey(cacheName, key, ids);
+        }
+        return true;
+    }
+
+    private void removeFromCache(K key) {
+        cache.remove(key);
+        var journal = this.journal;
+        if (journal != null && key != null) {
+            journal.removeKey(cacheName, key);
+        }
+    }
+
     private Object invokeUnderlyingMethod(Object... args) {
 
         Object updatedValue = getAnnotatedUpdatedValue(cachedMethod.getParameterAnnotations(), args); // check if any of the args is annotated as @UpdatedValue.
@@ -466,9 +1034,24 @@ public class MnemoProxy<K, ID, V> {
         }
         try {
             return cachedMethod.invoke(invocationTargetObject, args);
-        } catch (IllegalAccessException | InvocationTargetException e) {
-            throw new RuntimeException(e);
+        } catch (InvocationTargetException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException; //thrown by the method itself, hence passed on as is
+            }
+            if (e.getCause() instanceof Error error) {
+                throw error;
+            }
+            throw new MnemosyneRuntimeException(e);
+        } catch (IllegalAccessException e) {
+            throw new MnemosyneRuntimeException(e);
         }
     }
 
+    /**
+     * An in-flight load of a key: the values by ID the underlying method returned, and the result handed to every caller that missed the key.
+     */
+    private final class Load {
+        final CompletableFuture<Map<ID, V>> values = new CompletableFuture<>();
+        final CompletableFuture<Object> result = values.thenApply(MnemoProxy.this::deduce);
+    }
 }
@@ -1,18 +1,41 @@
 package com.gmalandrakis.mnemosyne.core;
 
 import com.gmalandrakis.mnemosyne.annotations.*;
+import com.gmalandrakis.mnemosyne.cache.AbstractGenericCache;
 import com.gmalandrakis.mnemosyne.cache.AbstractMnemosyneCache;
+import com.gmalandrakis.mnemosyne.codec.CodecRegistry;
+import com.gmalandrakis.mnemosyne.codec.JavaSerializationCodec;
+import com.gmalandrakis.mnemosyne.codec.ValueCodec;
 import com.gmalandrakis.mnemosyne.exception.MnemosyneInitializationException;
 import com.gmalandrakis.mnemosyne.exception.MnemosyneRuntimeException;
 import com.gmalandrakis.mnemosyne.exception.MnemosyneUpdateException;
+import com.gmalandrakis.mnemosyne.memory.HeapPressureMonitor;
+import com.gmalandrakis.mnemosyne.memory.MemoryBudget;
+import com.gmalandrakis.mnemosyne.memory.ValueInterner;
 import com.gmalandrakis.mnemosyne.structures.AddMode;
 import com.gmalandrakis.mnemosyne.structures.CacheParameters;
+import com.gmalandrakis.mnemosyne.structures.InterningStats;
+import com.gmalandrakis.mnemosyne.structures.JournalSyncMode;
+import com.gmalandrakis.mnemosyne.structures.NegativeCache;
 import com.gmalandrakis.mnemosyne.structures.RemoveMode;
-
+import com.gmalandrakis.mnemosyne.structures.TierStats;
+import com.gmalandrakis.mnemosyne.structures.ValuePoolStats;
+import com.gmalandrakis.mnemosyne.tier.DiskTier;
+import com.gmalandrakis.mnemosyne.tier.MappedFileTier;
+import com.gmalandrakis.mnemosyne.tier.Tier;
+import com.gmalandrakis.mnemosyne.tier.TierChain;
+
+import java.io.IOException;
+import java.io.Serializable;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -30,13 +53,151 @@ import static com.gmalandrakis.mnemosyne.utils.ParameterUtils.annotationValuesTo
  * @author George Malandrakis (malandrakisgeo@gmail.com)
  */
 @SuppressWarnings({"unchecked", "rawtypes"})
-public class MnemoService {
+public class MnemoService implements AutoCloseable {
     private final ConcurrentHashMap<ValuePool, List<MnemoProxy>> proxiesByValuePool = new ConcurrentHashMap<>(); //pools by fully qualified object name
 
     private final ConcurrentHashMap<String, ValuePool> valuePoolConcurrentHashMap = new ConcurrentHashMap<>(); //pools by fully qualified object name
     private final ConcurrentHashMap<Method, MnemoProxy> proxies = new ConcurrentHashMap<>();
     private final ConcurrentHashMap<String, MnemoProxy> cachesByName = new ConcurrentHashMap<>();
     private final ExecutorService threadPool = Executors.newCachedThreadPool();
+    private volatile MemoryBudget memoryBudget;
+
+    static final long ORPHAN_SWEEP_INTERVAL_MILLIS = 1000;
+    private volatile HeapPressureMonitor heapPressureMonitor;
+    private final ConcurrentHashMap<String, ValueCodec> valueCodecs = new ConcurrentHashMap<>(); //codecs by fully qualified object name
+    private final CodecRegistry codecRegistry = new CodecRegistry();
+    private final Set<String> offHeapTypes = ConcurrentHashMap.newKeySet();
+    private final ConcurrentHashMap<String, Integer> compressionThresholds = new ConcurrentHashMap<>(); //thresholds in bytes by fully qualified object name
+    private final ConcurrentHashMap<String, Class<?>> valueTypes = new ConcurrentHashMap<>(); //the types of the values by fully qualified object name
+    private volatile MutationJournal journal;
+    private final ValueInterner valueInterner = new ValueInterner();
+    private volatile Path secondLevelTierDirectory = Path.of(System.getProperty("java.io.tmpdir"), "mnemosyne");
+    private volatile Path diskTierDirectory = secondLevelTierDirectory;
+
+    /**
+     * Sets a single memory limit for all the caches, in addition to their own limits.
+     * The caches generated before the budget was set do not take part in it, hence it should be set before any cache is generated.
+     */
+    public void setMemoryBudget(MemoryBudget memoryBudget) {
+        this.memoryBudget = memoryBudget;
+    }
+
+    public MemoryBudget getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    /**
+     * Starts the given monitor, which shrinks the caches while the heap is under pressure.
+     * The caches generated before the monitor was set are not affected, hence it should be set before any cache is generated.
+     */
+    public void setHeapPressureMonitor(HeapPressureMonitor heapPressureMonitor) {
+        this.heapPressureMonitor = heapPressureMonitor;
+        heapPressureMonitor.start();
+    }
+
+    /**
+     * Makes the ValuePool of the type of the codec keep its' values off-heap, in an {@link OffHeapValuePool}.
+     * Has to be set before any cache returning the type is generated.
+     *
+     * @throws MnemosyneInitializationException if the ValuePool of the type already exists.
+     */
+    public void useOffHeapValuePool(ValueCodec<?> codec) {
+        var type = codec.getValueType().getName();
+        if (valuePoolConcurrentHashMap.containsKey(type)) {
+            throw new MnemosyneInitializationException("The ValuePool of " + type + " already exists on the heap");
+        }
+        registerValueCodec(codec);
+        offHeapTypes.add(type);
+    }
+
+    /**
+     * Makes the ValuePool of the type, which is about to be created, keep its' values off-heap. Requested by the caches with offHeap set.
+     */
+    private void keepOffHeap(String type) {
+        if (offHeapTypes.contains(type)) {
+            return;
+        }
+        if (valuePoolConcurrentHashMap.containsKey(type)) {
+            throw new MnemosyneInitializationException("The ValuePool of " + type + " already exists on the heap: offHeap has to be set by the first cache returning the type");
+        }
+        if (compressionThresholds.containsKey(type)) {
+            throw new MnemosyneInitializationException("The ValuePool of " + type + " stores large values compressed and cannot be off-heap");
+        }
+        if (findValueCodec(type) == null) {
+            throw new MnemosyneInitializationException("No codec is registered or can be generated for " + type + ", and it is not Serializable");
+        }
+        offHeapTypes.add(type);
+    }
+
+    /**
+     * Makes the ValuePool of the type store the values whose encoded form is larger than the threshold compressed, in a {@link CompressingValuePool}.
+     * The values are encoded with the codec of the type, which is registered, generated, or based on Java serialization.
+     * Has to be set before any cache returning the type is generated.
+     *
+     * @param thresholdBytes The size in bytes of the encoded form of a value, above which the value is compressed.
+     * @throws MnemosyneInitializationException if the ValuePool of the type already exists or is off-heap, or no codec is possible for the type.
+     */
+    public void compressLargeValues(Class<?> type, int thresholdBytes) {
+        var typeName = type.getName();
+        if (valuePoolConcurrentHashMap.containsKey(typeName)) {
+            throw new MnemosyneInitializationException("The ValuePool of " + typeName + " already exists");
+        }
+        if (offHeapTypes.contains(typeName)) {
+            throw new MnemosyneInitializationException("The ValuePool of " + typeName + " is off-heap and cannot be compressed");
+        }
+        valueTypes.putIfAbsent(typeName, type);
+        if (findValueCodec(typeName) == null) {
+            throw new MnemosyneInitializationException("No codec is registered or can be generated for " + typeName + ", and it is not Serializable");
+        }
+        compressionThresholds.put(typeName, Math.max(0, thresholdBytes));
+    }
+
+    /**
+     * Makes the ValuePools share a single instance of every group of equal sub-objects of the given types embedded in the cached values,
+     * e.g. the same customer referred to by thousands of orders. The types must be immutable: records, Strings or boxed primitives.
+     * The cached values are never modified; records are copied with the canonical sub-objects instead.
+     * Applies to the values added from now on, in every ValuePool kept on the heap.
+     *
+     * @throws MnemosyneInitializationException if any of the types is neither a record, a String nor a boxed primitive.
+     * @see ValueInterner
+     */
+    public void internSubObjects(Class<?>... types) {
+        for (Class<?> type : types) {
+            valueInterner.register(type);
+        }
+    }
+
+    /**
+     * @return A snapshot of the counters of the interning of every type registered by {@link #internSubObjects(Class[])}, by the fully qualified name of the type.
+     */
+    public Map<String, InterningStats> getInterningStats() {
+        return valueInterner.getStats();
+    }
+
+    /**
+     * Registers the codec used whenever values of its' type have to be converted to bytes, e.g. for a second-level tier,
+     * instead of the one generated by the {@link com.gmalandrakis.mnemosyne.codec.CodecGenerator CodecGenerator}.
+     * It is also used for the fields of the type in other values.
+     */
+    public void registerValueCodec(ValueCodec<?> codec) {
+        valueCodecs.put(codec.getValueType().getName(), codec);
+        codecRegistry.register(codec);
+    }
+
+    /**
+     * Sets the directory of the files of the second-level tiers. Defaults to a "mnemosyne" directory under java.io.tmpdir.
+     */
+    public void setSecondLevelTierDirectory(Path secondLevelTierDirectory) {
+        this.secondLevelTierDirectory = secondLevelTierDirectory;
+    }
+
+    /**
+     * Sets the directory of the files of the disk tiers, e.g. on a larger disk than the one of the second-level tiers.
+     * Defaults to a "mnemosyne" directory under java.io.tmpdir.
+     */
+    public void setDiskTierDirectory(Path diskTierDirectory) {
+        this.diskTierDirectory = diskTierDirectory;
+    }
 
     public Object invokeMethodAndUpdateValuePool(Method method, Object obj, Object... args) {
         Object object = null;
@@ -64,6 +225,7 @@ public class MnemoService {
         var v = proxiesByValuePool.get(vp);
         if (v != null && !v.isEmpty() && !annotation.remove()) { //If we remove, we remove via updateValuePool.
             for (MnemoProxy mnemoProxy : v) {
+                mnemoProxy.invalidateNegativeCache(); //the keys cannot be deduced from the IDs, and any of them may return the values now
                 mnemoProxy.updateCacheViaValuepoolUpdate(id, object); //Otherwise, we add/update on conditions
             }
         }
@@ -97,15 +259,30 @@ public class MnemoService {
     public Object fetchFromCacheOrInvokeMethodAndUpdate(Method method, Object... args) {
         var cacheProxy = proxies.get(method);
         assert (cacheProxy != null);
+        if (cacheProxy.returnsFuture()) {
+            return fetchFromCacheOrLoadAsync(method, cacheProxy, args);
+        }
         Object result = tryFetchFromCache(cacheProxy, args);
         if (result == null) {
-            var idValMap = cacheProxy.getFromUnderlyingMethodAndUpdateMainCache(args);
+            var idValMap = cacheProxy.load(args);
             updateRelatedCaches(method, idValMap, args);
             result = cacheProxy.deduce(idValMap);
         }
         return result;
     }
 
+    /**
+     * Returns a completed future on a hit, and otherwise the load of the key, shared by every concurrent miss of it.
+     * The related caches are updated once, before the load completes, and nothing is cached if it fails.
+     */
+    private CompletableFuture<Object> fetchFromCacheOrLoadAsync(Method method, MnemoProxy<?, ?, ?> cacheProxy, Object... args) {
+        Object result = tryFetchFromCache(cacheProxy, args);
+        if (result != null) {
+            return CompletableFuture.completedFuture(result);
+        }
+        return cacheProxy.loadAsync(idValMap -> updateRelatedCaches(method, idValMap, args), args);
+    }
+
     public List<MnemoProxy> generateCachesForBean(Object singletonBean) {
         var clazz = singletonBean.getClass();
 
@@ -149,13 +326,61 @@ public class MnemoService {
         return vp;
     }
 
-    ValuePool getOrCreateValuePool(Method method) {
+    /**
+     * @return The type of the values of the method, i.e. the type of its' elements if it returns a Collection, or null if it is not a class.
+     */
+    private Class<?> getValueType(Method method) {
+        var type = MnemoCommon.getResultType(method);
+        if (type instanceof ParameterizedType parameterizedType) {
+            type = parameterizedType.getActualTypeArguments()[0];
+        }
+        return type instanceof Class<?> valueType ? valueType : null;
+    }
+
+    ValuePool getOrCreateValuePool(Method method, boolean offHeap) {
         var cleanType = getCleanType(method);
-        var vp = valuePoolConcurrentHashMap.computeIfAbsent(cleanType, k -> new ValuePool<>());
+        var valueType = getValueType(method);
+        if (valueType != null) {
+            valueTypes.putIfAbsent(cleanType, valueType);
+        }
+        if (offHeap) {
+            keepOffHeap(cleanType);
+        }
+        var vp = valuePoolConcurrentHashMap.computeIfAbsent(cleanType, k -> {
+            ValuePool valuePool;
+            if (offHeapTypes.contains(k)) {
+                valuePool = new OffHeapValuePool<>(findValueCodec(k));
+            } else if (compressionThresholds.containsKey(k)) {
+                valuePool = new CompressingValuePool<>(findValueCodec(k), compressionThresholds.get(k));
+            } else {
+                valuePool = new HeapValuePool<>(valueType == null ? null : deduceIdType(valueType));
+            }
+            valuePool.useInterner(valueInterner);
+            valuePool.scheduleOrphanSweeping(ORPHAN_SWEEP_INTERVAL_MILLIS);
+            return valuePool;
+        });
 
         return vp;
     }
 
+    /**
+     * @return A snapshot of the counters of every ValuePool, by the fully qualified name of the type of its' values.
+     */
+    public Map<String, ValuePoolStats> getValuePoolStats() {
+        var stats = new HashMap<String, ValuePoolStats>();
+        valuePoolConcurrentHashMap.forEach((type, valuePool) -> stats.put(type, valuePool.getStats()));
+        return stats;
+    }
+
+    /**
+     * @return A snapshot of the counters of every tier of every cache, by the name of the cache, starting from the cache itself.
+     */
+    public Map<String, List<TierStats>> getTierStats() {
+        var stats = new HashMap<String, List<TierStats>>();
+        cachesByName.forEach((name, proxy) -> stats.put(name, proxy.getTierStats()));
+        return stats;
+    }
+
     private void updateRelatedCaches(Method method, Map<?, ?> idValMap, Object... args) {
         //   threadPool.execute(() -> {
         var updatesCaches = method.getAnnotation(UpdatesCaches.class);
@@ -182,9 +407,15 @@ public class MnemoService {
             return;
         }
         var vp = getValuePool(invokedMethod);
+        proxiesByValuePool.getOrDefault(vp, List.of()).forEach(p -> p.invalidateLowerTiers(idObjectMap.keySet()));
+        var currentJournal = journal;
+        var type = currentJournal == null ? null : updateType(invokedMethod);
 
         if (remove) {
             var ids = idObjectMap.keySet();
+            if (currentJournal != null) {
+                currentJournal.removeValues(type, ids);
+            }
 
             proxies.values().forEach(p -> {
                 p.cache.removeById(ids); //will be removed from valuepool via the local caches, along with the ID from them.
@@ -192,6 +423,9 @@ public class MnemoService {
         } else {
             idObjectMap.forEach((id, v) -> {
                 if (v != null) { //TODO: This should not be possible Verify it indeed isn't.
+                    if (currentJournal != null) {
+                        currentJournal.putValue(type, id, v);
+                    }
                     if (addIfAbsent) {
                         vp.put(id, v, true);
                         return;
@@ -203,6 +437,38 @@ public class MnemoService {
     }
 
 
+    /**
+     * @return The codec registered for the type of the values the method returns, or one based on Java serialization if the type is Serializable.
+     * @throws MnemosyneInitializationException if neither is the case.
+     */
+    private ValueCodec getValueCodec(Method method) {
+        var codec = findValueCodec(getCleanType(method));
+        if (codec == null) {
+            throw new MnemosyneInitializationException("No codec is registered or can be generated for the values of " + method.getName() + ", and they are not Serializable");
+        }
+        return codec;
+    }
+
+    /**
+     * @return The codec registered for the type, or else a generated one, or else one based on Java serialization if the type is Serializable,
+     * or null if none of them is possible.
+     */
+    private ValueCodec findValueCodec(String type) {
+        var codec = valueCodecs.get(type);
+        if (codec != null) {
+            return codec;
+        }
+        var valueType = valueTypes.get(type);
+        if (valueType == null) {
+            return null;
+        }
+        codec = codecRegistry.findCodec(valueType);
+        if (codec != null) {
+            return codec;
+        }
+        return Serializable.class.isAssignableFrom(valueType) ? new JavaSerializationCodec(valueType) : null;
+    }
+
     private String getCleanType(Method method) {
 
         var methodDescription = method.toGenericString(); //!!!!!!
@@ -223,30 +489,177 @@ public class MnemoService {
         }
     }
 
+    /**
+     * Writes the values of all the ValuePools and the entries of all the caches to the given file, so that a later {@link #restore(Path)} can
+     * bring them back, e.g. after a restart. The entries are streamed one at a time, hence the caches remain usable while the snapshot is written.
+     * <p>
+     * The values are converted via the codec registered for their type, or else a generated one, or else via Java serialization if the type is Serializable.
+     * The ValuePools of the types that are neither, and their caches, are left out, along with any custom caches. The keys and the IDs have to be Serializable.
+     */
+    public void snapshot(Path path) {
+        var pools = new LinkedHashMap<String, ValuePool>();
+        var codecs = new HashMap<String, ValueCodec>();
+        valuePoolConcurrentHashMap.forEach((type, valuePool) -> {
+            var codec = findValueCodec(type);
+            if (codec != null) {
+                pools.put(type, valuePool);
+                codecs.put(type, codec);
+            }
+        });
+        var caches = new LinkedHashMap<String, AbstractGenericCache<?, ?, ?>>();
+        cachesByName.forEach((name, proxy) -> {
+            if (proxy.cache instanceof AbstractGenericCache<?, ?, ?> genericCache && pools.containsValue(proxy.getValuePool())) {
+                caches.put(name, genericCache);
+            }
+        });
+        try {
+            SnapshotFile.write(path, pools, codecs, caches);
+        } catch (IOException e) {
+            throw new MnemosyneRuntimeException(e);
+        }
+    }
+
+    /**
+     * Restores the ValuePools and the caches from a file written by {@link #snapshot(Path)}. Has to be called after the caches are generated,
+     * and before they are used. The ValuePools and the caches are rebuilt in parallel, and the entries whose time to live has run out are dropped.
+     *
+     * @return The number of cache entries restored.
+     */
+    public int restore(Path path) {
+        try {
+            return SnapshotFile.read(path, valuePoolConcurrentHashMap::get, this::findValueCodec, this::findGenericCache, threadPool);
+        } catch (IOException | ClassNotFoundException e) {
+            throw new MnemosyneRuntimeException(e);
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException cause ? cause : e;
+        }
+    }
+
+    /**
+     * Recovers the ValuePools and the caches from the snapshot and the journal in the given directory, if any, and journals every mutation to it from then on.
+     * Has to be called after the caches are generated, and before they are used.
+     * <p>
+     * Only the ValuePools whose values can be converted to bytes (see {@link #snapshot(Path)}) and their caches are journaled.
+     * The journal grows until {@link #compactJournal()} is called.
+     *
+     * @param syncIntervalMillis The interval of the syncs in the {@link JournalSyncMode#PERIODIC PERIODIC} mode.
+     * @return The number of journaled mutations replayed.
+     * @throws MnemosyneInitializationException if a journal is already in use.
+     */
+    public synchronized int useJournal(Path directory, JournalSyncMode syncMode, long syncIntervalMillis) {
+        if (journal != null) {
+            throw new MnemosyneInitializationException("A journal is already in use");
+        }
+        int replayed;
+        try {
+            var snapshot = directory.resolve(MutationJournal.SNAPSHOT_FILE_NAME);
+            if (Files.exists(snapshot)) {
+                restore(snapshot);
+            }
+            replayed = MutationJournal.replay(directory, valuePoolConcurrentHashMap::get, this::findValueCodec, this::findGenericCache,
+                    ids -> cachesByName.values().forEach(p -> p.cache.removeById(ids)));
+        } catch (IOException | ClassNotFoundException e) {
+            throw new MnemosyneRuntimeException(e);
+        }
+        journal = new MutationJournal(directory, syncMode, syncIntervalMillis, this::findValueCodec);
+        proxies.forEach((method, proxy) -> attachJournal(method, proxy));
+        return replayed;
+    }
+
+    /**
+     * Writes a snapshot to the directory of the journal, and deletes the journal files it makes obsolete.
+     * The mutations keep being journaled in the meantime, to a new file.
+     *
+     * @throws MnemosyneRuntimeException if no journal is in use.
+     */
+    public synchronized void compactJournal() {
+        var currentJournal = journal;
+        if (currentJournal == null) {
+            throw new MnemosyneRuntimeException("No journal is in use");
+        }
+        var obsolete = currentJournal.rotate();
+        snapshot(currentJournal.getSnapshotPath());
+        MutationJournal.delete(obsolete);
+    }
+
+    public MutationJournal getJournal() {
+        return journal;
+    }
+
+    /**
+     * Writes the pending mutations of the journal, if any, forces them to the disk and closes it, so that a shutdown loses none of them.
+     * The caches keep working afterwards, without a journal.
+     */
+    @Override
+    public synchronized void close() {
+        var currentJournal = journal;
+        if (currentJournal != null) {
+            journal = null;
+            currentJournal.close();
+        }
+    }
+
+    private void attachJournal(Method method, MnemoProxy proxy) {
+        var currentJournal = journal;
+        var type = getCleanType(method);
+        if (currentJournal != null && findValueCodec(type) != null) {
+            proxy.useJournal(currentJournal, proxy.getAnnotation().cacheName(), type);
+        }
+    }
+
+    private AbstractGenericCache<?, ?, ?> findGenericCache(String name) {
+        var proxy = cachesByName.get(name);
+        return proxy != null && proxy.cache instanceof AbstractGenericCache<?, ?, ?> genericCache ? genericCache : null;
+    }
+
     private MnemoProxy generateInternal(Method method, Object singletonBean) {
         var annotation = method.getAnnotation(Cached.class);
 
         if (annotation == null || method == null) {
             return null;
         }
-        Class<?> returnedClassType = method.getReturnType();
+        Class<?> returnedClassType = MnemoCommon.getResultClass(method);
 
         var handleCollectionKeysSeparately = annotation.allowSeparateHandlingForKeyCollections();
         var returnsCollection = Collection.class.isAssignableFrom(returnedClassType);
 
         var cacheParams = annotationValuesToCacheParameters(annotation, returnsCollection, handleCollectionKeysSeparately);
+        var valueType = getValueType(method);
+        cacheParams.setIdType(valueType == null ? null : deduceIdType(valueType));
         generalControls(method, cacheParams);
 
         Class<? extends AbstractMnemosyneCache> algoClass = cacheParams.getCacheType();
-        ValuePool valuePool = getOrCreateValuePool(method);
+        ValuePool valuePool = getOrCreateValuePool(method, cacheParams.isOffHeap());
         AbstractMnemosyneCache cache = null;
         try {
             cache = algoClass.getDeclaredConstructor(CacheParameters.class, ValuePool.class).newInstance(cacheParams, valuePool);
         } catch (Exception e) {
             throw new MnemosyneRuntimeException(e);
         }
+        var budget = memoryBudget;
+        if (budget != null && cache instanceof AbstractGenericCache<?, ?, ?> genericCache) {
+            budget.register(genericCache, cacheParams.getMinBudgetShare(), cacheParams.getMaxBudgetShare());
+        }
+        var monitor = heapPressureMonitor;
+        if (monitor != null && cache instanceof AbstractGenericCache<?, ?, ?> genericCache) {
+            monitor.register(genericCache, cacheParams.getShrinkPriority());
+        }
         var proxyService = new MnemoProxy<>(cache, method, singletonBean, valuePool, returnsCollection, handleCollectionKeysSeparately);
+        proxyService.refreshAfter(cacheParams.getRefreshAfter());
+        proxyService.serveStale(cacheParams.getStaleWhileRevalidate(), cacheParams.getStaleIfError(), cacheParams.getLoadTimeout());
+        if (cacheParams.getNegativeTimeToLive() > 0) {
+            proxyService.useNegativeCache(new NegativeCache<>(cacheParams.getNegativeCapacity(), cacheParams.getNegativeTimeToLive()));
+        }
+        if (!cacheParams.getBatchLoader().isEmpty()) {
+            proxyService.useBatchLoader(new BatchLoader<>(findBulkMethod(method, cacheParams.getBatchLoader()), singletonBean,
+                    cacheParams.getBatchWindow(), cacheParams.getMaxBatchSize()));
+        }
+        var lowerTiers = createLowerTiers(annotation.cacheName(), cacheParams, method);
+        if (!lowerTiers.isEmpty()) {
+            proxyService.useLowerTiers(new TierChain(lowerTiers));
+        }
 
+        attachJournal(method, proxyService);
         proxies.put(method, proxyService);
         var proxyList = proxiesByValuePool.getOrDefault(valuePool, new ArrayList<>());
         proxyList.add(proxyService);
@@ -256,6 +669,33 @@ public class MnemoService {
         return proxyService;
     }
 
+    /**
+     * @return The tiers below the cache, from the fastest to the slowest.
+     */
+    private List<Tier> createLowerTiers(String cacheName, CacheParameters cacheParams, Method method) {
+        var tiers = new ArrayList<Tier>();
+        if (cacheParams.getSecondLevelTierSize() > 0) {
+            tiers.add(new MappedFileTier<>(secondLevelTierDirectory, cacheName, cacheParams.getSecondLevelTierSize(), getValueCodec(method)));
+        }
+        if (cacheParams.getDiskTierSize() > 0) {
+            tiers.add(new DiskTier<>(diskTierDirectory, cacheName, cacheParams.getDiskTierSize(), getValueCodec(method)));
+        }
+        return tiers;
+    }
+
+    /**
+     * @return The method of the class of the cached method with the given name that takes a single Collection of keys, and returns a Map or a Collection.
+     * @throws MnemosyneInitializationException if there is no such method.
+     */
+    private Method findBulkMethod(Method method, String name) {
+        return Arrays.stream(method.getDeclaringClass().getDeclaredMethods())
+                .filter(m -> m.getName().equals(name) && m.getParameterCount() == 1)
+                .filter(m -> m.getParameterTypes()[0].isAssignableFrom(Set.class) || m.getParameterTypes()[0].isAssignableFrom(List.class))
+                .filter(m -> Map.class.isAssignableFrom(m.getReturnType()) || Collection.class.isAssignableFrom(m.getReturnType()))
+                .findFirst()
+                .orElseThrow(() -> new MnemosyneInitializationException("No method " + name + " taking a Collection of keys and returning a Map or a Collection was found for the batchLoader of " + method.getName()));
+    }
+
     private void generalControls(Method method, CacheParameters parameters) {
         var returnType = method.getReturnType();
         var arguments = method.getParameters();
@@ -269,6 +709,29 @@ public class MnemoService {
         if (cachesByName.get(parameters.getCacheName()) != null) {
             throw new MnemosyneInitializationException("Cache with the same name already exists!");
         }
+        if (parameters.getRefreshAfter() > 0 && parameters.getTimeToLive() > 0 && parameters.getRefreshAfter() >= parameters.getTimeToLive()) {
+            throw new MnemosyneInitializationException("The refreshAfter of a cache must be shorter than its' timeToLive");
+        }
+        if (parameters.getNegativeTimeToLive() > 0 && parameters.getNegativeCapacity() <= 0) {
+            throw new MnemosyneInitializationException("The negativeCapacity of a cache must be positive if negative caching is enabled");
+        }
+        if (MnemoCommon.returnsFuture(method)) {
+            if (MnemoCommon.getResultClass(method) == Object.class) {
+                throw new MnemosyneInitializationException("Methods returning a CompletableFuture must declare the type of its' result");
+            }
+            if (parameters.isHandleCollectionKeysSeparately() || parameters.getStaleWhileRevalidate() > 0 || parameters.getStaleIfError() > 0
+                    || parameters.getNegativeTimeToLive() > 0 || !parameters.getBatchLoader().isEmpty()) {
+                throw new MnemosyneInitializationException("Separate handling of key collections, stale values, negative caching and batchLoaders are not supported by methods returning a CompletableFuture");
+            }
+        }
+        if (!parameters.getBatchLoader().isEmpty()) {
+            if (parameters.isReturnsCollection() || method.getParameterCount() != 1) {
+                throw new MnemosyneInitializationException("A batchLoader may only be used by single-value caches whose method takes a single argument");
+            }
+            if (parameters.getMaxBatchSize() <= 0 || parameters.getBatchWindow() < 0) {
+                throw new MnemosyneInitializationException("The maxBatchSize of a cache must be positive, and its' batchWindow not negative");
+            }
+        }
 
         if (parameters.isHandleCollectionKeysSeparately()) {
             /*
@@ -0,0 +1,509 @@
+package com.gmalandrakis.mnemosyne.core;
+
+import com.gmalandrakis.mnemosyne.cache.AbstractGenericCache;
+import com.gmalandrakis.mnemosyne.codec.ValueCodec;
+import com.gmalandrakis.mnemosyne.exception.MnemosyneInitializationException;
+import com.gmalandrakis.mnemosyne.exception.MnemosyneRuntimeException;
+import com.gmalandrakis.mnemosyne.structures.JournalSyncMode;
+import com.gmalandrakis.mnemosyne.utils.Tickers;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * A write-ahead journal of the mutations of the ValuePools and the caches, so that a restart loses nothing written since the last snapshot.
+ * <p>
+ * The callers encode their mutations and enqueue them. A mutation that cannot be encoded is rejected right away, with an exception to its' caller.
+ * A single writer thread drains the queue and appends everything enqueued in the meantime as one frame (group commit), i.e. the cost of a write,
+ * and of a sync, is shared by all the mutations of the frame. If the writer falls behind and the queue fills up, the callers write the pending frames themselves
+ * instead of waiting for room. Every frame carries its' length and checksum, so that a frame torn by a crash is recognized and ignored on replay. Reads never touch the journal.
+ * <p>
+ * The journal is split into numbered files. Compacting it starts a new file, writes a snapshot, and deletes the older files once the snapshot is complete.
+ * On recovery, the snapshot is restored and the remaining files are replayed on top of it, in order.
+ * <p>
+ * Only the mutations requested by the application are journaled, not the evictions and expirations of the caches: a replay may bring back entries
+ * evicted in the meantime, which the caches evict again once over their limits, while the entries whose time to live ran out are dropped.
+ *
+ * @author George Malandrakis (malandrakisgeo@gmail.com)
+ */
+@SuppressWarnings({"unchecked", "rawtypes"})
+public class MutationJournal implements AutoCloseable {
+
+    static final String SNAPSHOT_FILE_NAME = "snapshot";
+
+    static final int MAX_BATCH_SIZE = 4096;
+
+    /**
+     * The number of mutations that may be waiting for the writer before the mutating threads write them themselves, so that a slow disk cannot exhaust the heap.
+     */
+    static final int QUEUE_CAPACITY = 1 << 16;
+
+    static final long IDLE_POLL_MILLIS = 50;
+
+    private static final Pattern FILE_NAME = Pattern.compile("journal-(\\d+)\\.log");
+
+    private static final byte PUT_VALUE = 1;
+    private static final byte REMOVE_VALUES = 2;
+    private static final byte PUT_KEY = 3;
+    private static final byte REMOVE_KEY = 4;
+    private static final byte REMOVE_FROM_COLLECTION = 5;
+    private static final byte PUT_IN_ALL_COLLECTIONS = 6;
+    private static final byte REMOVE_IDS = 7;
+    private static final byte INVALIDATE = 8;
+
+    private final Path directory;
+    private final JournalSyncMode syncMode;
+    private final long syncIntervalMillis;
+    private final Function<String, ValueCodec> codecs;
+
+    /**
+     * The encoded mutations waiting to be written.
+     */
+    private final LinkedBlockingQueue<byte[]> queue = new LinkedBlockingQueue<>(QUEUE_CAPACITY);
+    /**
+     * Held while draining the queue and writing the frame, so that the frames are written in the order of the queue.
+     */
+    private final Object drainLock = new Object();
+    private final AtomicLong appended = new AtomicLong();
+    private final Object commitMonitor = new Object();
+    private long committed; //guarded by commitMonitor
+    private volatile IOException failure;
+    private volatile boolean closed;
+
+    private final Object fileLock = new Object();
+    private FileChannel channel; //guarded by fileLock
+    private long generation; //guarded by fileLock
+    private boolean unsynced; //guarded by fileLock
+    private long lastSync; //guarded by fileLock
+
+    private final Thread writer;
+
+    /**
+     * Opens a new journal file in the directory, numbered after the existing ones, which are kept for a later compaction.
+     *
+     * @param syncIntervalMillis The interval of the syncs in the {@link JournalSyncMode#PERIODIC PERIODIC} mode.
+     * @param codecs             The codecs of the values by the name of their type. The values of types without a codec are not journaled.
+     */
+    MutationJournal(Path directory, JournalSyncMode syncMode, long syncIntervalMillis, Function<String, ValueCodec> codecs) {
+        this.directory = directory;
+        this.syncMode = syncMode;
+        this.syncIntervalMillis = syncIntervalMillis;
+        this.codecs = codecs;
+        try {
+            Files.createDirectories(directory);
+            var files = listFiles(directory);
+            openFile(files.isEmpty() ? 1 : generationOf(files.get(files.size() - 1)) + 1);
+        } catch (IOException e) {
+            throw new MnemosyneInitializationException("The journal could not be opened in " + directory + ": " + e.getMessage());
+        }
+        this.writer = new Thread(this::writeLoop, "mnemosyne-journal");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * @throws MnemosyneRuntimeException if the ID cannot be serialized. Exceptions of the codec of the value are thrown as they are.
+     */
+    void putValue(String type, Object id, Object value) {
+        if (value != null) {
+            append(PUT_VALUE, type, null, List.of(id), value);
+        }
+    }
+
+    /**
+     * Records the removal of the values from the ValuePool, and thereby from all the caches.
+     */
+    void removeValues(String type, Collection<?> ids) {
+        append(REMOVE_VALUES, type, null, ids, null);
+    }
+
+    /**
+     * @throws MnemosyneRuntimeException if the key or the IDs cannot be serialized.
+     */
+    void putKey(String cacheName, Object key, Collection<?> ids) {
+        append(PUT_KEY, cacheName, key, ids, null);
+    }
+
+    void removeKey(String cacheName, Object key) {
+        append(REMOVE_KEY, cacheName, key, List.of(), null);
+    }
+
+    void removeFromCollection(String cacheName, Object key, Object id) {
+        append(REMOVE_FROM_COLLECTION, cacheName, key, List.of(id), null);
+    }
+
+    void putInAllCollections(String cacheName, Object id) {
+        append(PUT_IN_ALL_COLLECTIONS, cacheName, null, List.of(id), null);
+    }
+
+    void removeIds(String cacheName, Collection<?> ids) {
+        append(REMOVE_IDS, cacheName, null, ids, null);
+    }
+
+    void invalidate(String cacheName) {
+        append(INVALIDATE, cacheName, null, List.of(), null);
+    }
+
+    /**
+     * Blocks until every mutation enqueued before the call is written, and forced to the disk in the {@link JournalSyncMode#EVERY_COMMIT EVERY_COMMIT} mode.
+     *
+     * @throws MnemosyneRuntimeException if a write to the file has failed.
+     */
+    public void awaitCommit() {
+        var target = appended.get();
+        synchronized (commitMonitor) {
+            while (committed < target && writer.isAlive()) {
+                try {
+                    commitMonitor.wait(IDLE_POLL_MILLIS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new MnemosyneRuntimeException(e);
+                }
+            }
+        }
+        var error = failure;
+        if (error != null) {
+            throw new MnemosyneRuntimeException(error);
+        }
+    }
+
+    /**
+     * Writes the pending mutations, forces them to the disk, and stops the writer.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        LockSupport.unpark(writer);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (fileLock) {
+            if (!channel.isOpen()) {
+                return;
+            }
+            try {
+                channel.force(false);
+                channel.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    Path getSnapshotPath() {
+        return directory.resolve(SNAPSHOT_FILE_NAME);
+    }
+
+    /**
+     * Writes the pending mutations, and continues the journal in a new file. Called before a compaction.
+     *
+     * @return The older files, made obsolete once a snapshot written after the call is complete.
+     * @throws MnemosyneRuntimeException if a write to the file has failed, in which case the older files are kept.
+     */
+    List<Path> rotate() {
+        awaitCommit(); //the mutations enqueued before the compaction belong to the older files
+        synchronized (fileLock) {
+            try {
+                channel.force(false);
+                channel.close();
+                var obsolete = listFiles(directory);
+                openFile(generation + 1);
+                return obsolete;
+            } catch (IOException e) {
+                throw new MnemosyneRuntimeException(e);
+            }
+        }
+    }
+
+    static void delete(List<Path> files) {
+        try {
+            for (Path file : files) {
+                Files.deleteIfExists(file);
+            }
+        } catch (IOException e) {
+            throw new MnemosyneRuntimeException(e);
+        }
+    }
+
+    /**
+     * Applies the mutations of all the journal files in the directory, in order. Every file is read up to its' first incomplete or corrupted frame.
+     * The mutations of the ValuePools and the caches that no longer exist are skipped.
+     *
+     * @param pools       The ValuePools by the name of their type, or null if absent.
+     * @param codecs      The codecs by the name of their type, or null if absent.
+     * @param caches      The caches by name, or null if absent.
+     * @param removeByIds Removes the IDs from every cache, along with their values.
+     * @return The number of mutations applied.
+     */
+    static int replay(Path directory, Function<String, ValuePool> pools, Function<String, ValueCodec> codecs, Function<String, AbstractGenericCache> caches,
+                      Consumer<Collection<Object>> removeByIds) throws IOException, ClassNotFoundException {
+        if (!Files.isDirectory(directory)) {
+            return 0;
+        }
+        int applied = 0;
+        for (Path file : listFiles(directory)) {
+            try (var in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+                while (true) {
+                    byte[] frame;
+                    try {
+                        var length = in.readInt();
+                        var checksum = in.readLong();
+                        frame = in.readNBytes(length);
+                        if (frame.length < length || checksum(frame) != checksum) {
+                            break; //torn by a crash
+                        }
+                    } catch (EOFException e) {
+                        break;
+                    }
+                    var records = ByteBuffer.wrap(frame);
+                    while (records.hasRemaining()) {
+                        var record = new byte[records.getInt()];
+                        records.get(record);
+                        if (apply(record, pools, codecs, caches, removeByIds)) {
+                            applied++;
+                        }
+                    }
+                }
+            }
+        }
+        return applied;
+    }
+
+    /**
+     * Applies a single mutation.
+     *
+     * @return False if its' ValuePool or cache no longer exists.
+     */
+    private static boolean apply(byte[] record, Function<String, ValuePool> pools, Function<String, ValueCodec> codecs, Function<String, AbstractGenericCache> caches,
+                                 Consumer<Collection<Object>> removeByIds) throws IOException, ClassNotFoundException {
+        try (var in = new ObjectInputStream(new ByteArrayInputStream(record))) {
+            var type = in.readByte();
+            var target = in.readUTF();
+            var timestamp = in.readLong();
+            var key = in.readObject();
+            var ids = new ArrayList<Object>();
+            for (int i = in.readInt(); i > 0; i--) {
+                ids.add(in.readObject());
+            }
+            var length = in.readInt();
+            var value = length < 0 ? null : in.readNBytes(length);
+
+            if (type == PUT_VALUE || type == REMOVE_VALUES) {
+                var pool = pools.apply(target);
+                var codec = codecs.apply(target);
+                if (pool == null) {
+                    return false;
+                }
+                if (type == REMOVE_VALUES) {
+                    removeByIds.accept(ids);
+                } else if (codec != null) {
+                    pool.updateValueOrPutPreemptively(ids.get(0), codec.decode(value));
+                }
+                return true;
+            }
+            var cache = caches.apply(target);
+            if (cache == null) {
+                return false;
+            }
+            switch (type) {
+                case PUT_KEY -> cache.restoreEntry(key, ids, timestamp, timestamp);
+                case REMOVE_KEY -> cache.remove(key);
+                case REMOVE_FROM_COLLECTION -> cache.removeOneFromCollection(key, ids.get(0));
+                case PUT_IN_ALL_COLLECTIONS -> cache.putInAllCollections(ids.get(0));
+                case REMOVE_IDS -> cache.removeById(ids);
+                case INVALIDATE -> cache.invalidateCache();
+                default -> throw new MnemosyneRuntimeException("Unknown journal record " + type);
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Encodes the mutation on the calling thread, so that a mutation that cannot be written is rejected here rather than by the writer.
+     */
+    private void append(byte type, String target, Object key, Collection<?> ids, Object value) {
+        if (closed) {
+            return;
+        }
+        var record = encode(type, target, key, ids, value);
+        if (record == null) {
+            return;
+        }
+        appended.incrementAndGet();
+        while (!queue.offer(record)) {
+            writePending(); //the writer fell behind
+        }
+        if (queue.size() == 1) {
+            LockSupport.unpark(writer); //the writer may be idle
+        }
+    }
+
+    /**
+     * Every mutation is encoded on its' own, with its' own stream header, so that it can be decoded without the rest of the frame.
+     *
+     * @return The encoded mutation, or null if it is a value without a codec, which is not journaled.
+     * @throws MnemosyneRuntimeException if the key or the IDs cannot be serialized.
+     */
+    private byte[] encode(byte type, String target, Object key, Collection<?> ids, Object value) {
+        byte[] encodedValue = null;
+        if (value != null) {
+            var codec = codecs.apply(target);
+            if (codec == null) {
+                return null;
+            }
+            encodedValue = codec.encode(value);
+        }
+        var bytes = new ByteArrayOutputStream();
+        try (var out = new ObjectOutputStream(bytes)) {
+            out.writeByte(type);
+            out.writeUTF(target);
+            out.writeLong(Tickers.now());
+            out.writeObject(key);
+            out.writeInt(ids.size());
+            for (Object id : ids) {
+                out.writeObject(id);
+            }
+            out.writeInt(encodedValue == null ? -1 : encodedValue.length);
+            if (encodedValue != null) {
+                out.write(encodedValue);
+            }
+        } catch (IOException e) {
+            throw new MnemosyneRuntimeException("The mutation of " + target + " cannot be journaled: " + e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * The loop of the writer thread: writes everything enqueued so far, and waits for more.
+     */
+    private void writeLoop() {
+        while (!closed || !queue.isEmpty()) {
+            if (writePending() == 0) {
+                syncIfDue(); //nothing else to write in the meantime
+                LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(IDLE_POLL_MILLIS));
+            }
+        }
+    }
+
+    /**
+     * Drains the queue into a frame, appends it, and marks it as committed. Called by the writer, and by the callers finding the queue full.
+     *
+     * @return The number of mutations written.
+     */
+    private int writePending() {
+        synchronized (drainLock) {
+            var batch = new ArrayList<byte[]>();
+            queue.drainTo(batch, MAX_BATCH_SIZE);
+            if (batch.isEmpty()) {
+                return 0;
+            }
+            try {
+                write(frame(batch));
+            } catch (IOException e) {
+                failure = e;
+            }
+            synchronized (commitMonitor) {
+                committed += batch.size();
+                commitMonitor.notifyAll();
+            }
+            return batch.size();
+        }
+    }
+
+    private static byte[] frame(List<byte[]> records) {
+        int length = 0;
+        for (byte[] record : records) {
+            length += Integer.BYTES + record.length;
+        }
+        var frame = ByteBuffer.allocate(length);
+        for (byte[] record : records) {
+            frame.putInt(record.length).put(record);
+        }
+        return frame.array();
+    }
+
+    private void write(byte[] frame) throws IOException {
+        var buffer = ByteBuffer.allocate(Integer.BYTES + Long.BYTES + frame.length);
+        buffer.putInt(frame.length).putLong(checksum(frame)).put(frame).flip();
+        synchronized (fileLock) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            unsynced = true;
+            if (syncMode == JournalSyncMode.EVERY_COMMIT) {
+                sync();
+            } else {
+                syncIfDue();
+            }
+        }
+    }
+
+    private void syncIfDue() {
+        synchronized (fileLock) {
+            if (syncMode == JournalSyncMode.PERIODIC && unsynced && Tickers.now() - lastSync >= syncIntervalMillis) {
+                try {
+                    sync();
+                } catch (IOException e) {
+                    failure = e;
+                }
+            }
+        }
+    }
+
+    private void sync() throws IOException {
+        channel.force(false);
+        unsynced = false;
+        lastSync = Tickers.now();
+    }
+
+    private void openFile(long generation) throws IOException {
+        this.generation = generation;
+        this.channel = FileChannel.open(directory.resolve(String.format("journal-%016d.log", generation)),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        this.lastSync = Tickers.now();
+    }
+
+    /**
+     * @return The journal files of the directory, from the oldest to the newest.
+     */
+    private static List<Path> listFiles(Path directory) throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return Collections.emptyList();
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> FILE_NAME.matcher(file.getFileName().toString()).matches())
+                    .sorted((a, b) -> Long.compare(generationOf(a), generationOf(b)))
+                    .toList();
+        }
+    }
+
+    private static long generationOf(Path file) {
+        var matcher = FILE_NAME.matcher(file.getFileName().toString());
+        return matcher.matches() ? Long.parseLong(matcher.group(1)) : 0;
+    }
+
+    private static long checksum(byte[] frame) {
+        var crc = new CRC32();
+        crc.update(frame);
+        return crc.getValue();
+    }
+}
@@ -0,0 +1,423 @@
+package com.gmalandrakis.mnemosyne.core;
+
+import com.gmalandrakis.mnemosyne.codec.ValueCodec;
+import com.gmalandrakis.mnemosyne.exception.MnemosyneInitializationException;
+import com.gmalandrakis.mnemosyne.memory.SlabAllocator;
+import com.gmalandrakis.mnemosyne.memory.Weigher;
+import com.gmalandrakis.mnemosyne.structures.ReferenceMode;
+import com.gmalandrakis.mnemosyne.structures.ValuePoolStats;
+import com.gmalandrakis.mnemosyne.utils.Maintenance;
+import com.gmalandrakis.mnemosyne.utils.Tickers;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * A {@link ValuePool} that keeps its' values serialized outside the heap, in slabs of direct memory, and deserializes them on every read.
+ * Only the index from the IDs to the locations of the values stays on the heap, so that very large ValuePools do not burden the GC.
+ * <p>
+ * The values are converted via the {@link ValueCodec} of the type. Every read returns a new instance, hence the values should be immutable,
+ * or at least not modified by the callers in the expectation of modifying the cached value.
+ * <p>
+ * The weight of every value is the size of its' encoded form in bytes, regardless of the weigher configured by the caches.
+ * Soft and weak references are not supported, since the values are not objects the GC could reclaim.
+ * <p>
+ * Reads do not block: they copy the bytes of the value optimistically, and repeat the copy under a read lock only if a write happened in the meantime.
+ * The writes are serialized, but the encoding and decoding happen outside the lock.
+ *
+ * @author George Malandrakis (malandrakisgeo@gmail.com)
+ */
+public class OffHeapValuePool<ID, T> implements ValuePool<ID, T> {
+
+    public static final int DEFAULT_SLAB_SIZE = 16 * 1024 * 1024;
+
+    private static final long NULL_ADDRESS = -1;
+
+    private static final byte[] NULL_VALUE = new byte[0];
+
+    private final ValueCodec<T> codec;
+
+    private final SlabAllocator allocator;
+
+    private final ConcurrentHashMap<ID, Slot> index = new ConcurrentHashMap<>();
+
+    private final StampedLock lock = new StampedLock();
+
+    private final AtomicLong totalWeight = new AtomicLong(0);
+
+    private final List<WeightListener<ID>> weightListeners = new CopyOnWriteArrayList<>();
+
+    private volatile long orphanGracePeriod = DEFAULT_ORPHAN_GRACE_PERIOD_MILLIS;
+
+    private Iterator<Map.Entry<ID, Slot>> sweepCursor;
+
+    private final AtomicLong orphansReclaimed = new AtomicLong(0);
+
+    private final AtomicLong sweeps = new AtomicLong(0);
+
+    public OffHeapValuePool(ValueCodec<T> codec) {
+        this(codec, DEFAULT_SLAB_SIZE);
+    }
+
+    /**
+     * @param slabSize The size in bytes of the blocks of direct memory allocated whenever the existing ones are full.
+     */
+    public OffHeapValuePool(ValueCodec<T> codec, int slabSize) {
+        this.codec = codec;
+        this.allocator = new SlabAllocator(slabSize);
+    }
+
+    @Override
+    public T getValue(ID id) {
+        var bytes = readBytes(id);
+        return bytes == null || bytes == NULL_VALUE ? null : codec.decode(bytes);
+    }
+
+    @Override
+    public List<T> getAll(Collection<ID> ids) {
+        List<T> list = new ArrayList<>();
+        ids.forEach(id -> {
+            var bytes = readBytes(id);
+            if (bytes != null && bytes != NULL_VALUE) {
+                list.add(codec.decode(bytes));
+            }
+        });
+        return list;
+    }
+
+    @Override
+    public void put(ID id, T value, boolean newCache) {
+        var bytes = encode(value);
+        Slot previous;
+        Slot stored;
+        var stamp = lock.writeLock();
+        try {
+            previous = index.get(id);
+            if (previous == null) {
+                stored = store(id, bytes, 1);
+            } else {
+                stored = store(id, bytes, newCache ? previous.uses + 1 : previous.uses);
+                release(previous);
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        changeWeight(id, previous, stored);
+    }
+
+    @Override
+    public void put(ID id, boolean newCache) {
+        if (!newCache) {
+            return;
+        }
+        var stamp = lock.writeLock();
+        try {
+            var slot = index.get(id);
+            if (slot != null) {
+                slot.uses++;
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public void updateValueOrPutPreemptively(ID id, T value) {
+        var bytes = encode(value);
+        Slot previous;
+        Slot stored;
+        var stamp = lock.writeLock();
+        try {
+            previous = index.get(id);
+            if (previous == null) {
+                stored = store(id, bytes, 0);
+            } else {
+                stored = store(id, bytes, previous.uses);
+                stored.unusedSince = previous.unusedSince;
+                release(previous);
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        changeWeight(id, previous, stored);
+    }
+
+    @Override
+    public void increaseNumberOfUsesForId(ID id, T value) {
+        var bytes = index.containsKey(id) ? null : encode(value); //encoded outside the lock, in the likely case it is needed
+        Slot stored = null;
+        var stamp = lock.writeLock();
+        try {
+            var slot = index.get(id);
+            if (slot != null) {
+                slot.uses++;
+            } else {
+                stored = store(id, bytes != null ? bytes : encode(value), 1);
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        if (stored != null) {
+            changeWeight(id, null, stored);
+        }
+    }
+
+    @Override
+    public Integer removeOrDecreaseNumberOfUsesForId(ID id) {
+        Slot slot;
+        int newNumberOfUses;
+        var stamp = lock.writeLock();
+        try {
+            slot = index.get(id);
+            if (slot == null) {
+                return 0;
+            }
+            newNumberOfUses = --slot.uses;
+            if (newNumberOfUses <= 0) {
+                slot.unusedSince = Tickers.now();
+            }
+            if (newNumberOfUses == 0) {
+                index.remove(id);
+                release(slot);
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        if (newNumberOfUses == 0) {
+            changeWeight(id, slot, null);
+        }
+        return newNumberOfUses;
+    }
+
+    @Override
+    public int getSize() {
+        return index.size();
+    }
+
+    @Override
+    public void forEach(BiConsumer<ID, T> action) {
+        index.keySet().forEach(id -> {
+            var value = getValue(id);
+            if (value != null) {
+                action.accept(id, value);
+            }
+        });
+    }
+
+    @Override
+    public int getNumberOfUsesForId(ID id) {
+        var slot = index.get(id);
+        return slot == null ? 0 : slot.uses;
+    }
+
+    @Override
+    public long getWeight(ID id) {
+        var slot = index.get(id);
+        return slot == null ? 0 : slot.length;
+    }
+
+    @Override
+    public long getTotalWeight() {
+        return totalWeight.get();
+    }
+
+    /**
+     * Has no effect: the weight of the values is always the size of their encoded form.
+     */
+    @Override
+    public void enableWeighing(Class<? extends Weigher<?>> weigherType) {
+    }
+
+    @Override
+    public void useReferences(ReferenceMode mode) {
+        if (mode != null && mode != ReferenceMode.STRONG) {
+            throw new MnemosyneInitializationException("Values kept off-heap cannot be held through " + mode + " references");
+        }
+    }
+
+    @Override
+    public ReferenceMode getReferenceMode() {
+        return ReferenceMode.STRONG;
+    }
+
+    /**
+     * Has no effect: the ValuePool never removes values on its' own, except for the orphans.
+     */
+    @Override
+    public void addRemovalListener(Consumer<Collection<ID>> listener) {
+    }
+
+    @Override
+    public void addWeightListener(WeightListener<ID> listener) {
+        weightListeners.add(listener);
+    }
+
+    @Override
+    public synchronized int sweepOrphans(int maxEntries) {
+        var now = Tickers.now();
+        var gracePeriod = orphanGracePeriod;
+        int reclaimed = 0;
+        for (int examined = 0; examined < maxEntries; examined++) {
+            if (sweepCursor == null || !sweepCursor.hasNext()) {
+                if (sweepCursor != null) {
+                    sweeps.incrementAndGet();
+                }
+                sweepCursor = index.entrySet().iterator();
+                if (!sweepCursor.hasNext()) {
+                    break;
+                }
+            }
+            var entry = sweepCursor.next();
+            if (entry.getValue().isOrphan(now, gracePeriod) && removeOrphan(entry.getKey(), entry.getValue(), now, gracePeriod)) {
+                reclaimed++;
+            }
+        }
+        orphansReclaimed.addAndGet(reclaimed);
+        return reclaimed;
+    }
+
+    @Override
+    public void scheduleOrphanSweeping(long intervalMillis) {
+        Maintenance.scheduleWithFixedDelay(() -> sweepOrphans(ORPHAN_SWEEP_BATCH_SIZE), intervalMillis);
+    }
+
+    @Override
+    public void setOrphanGracePeriod(long orphanGracePeriod) {
+        this.orphanGracePeriod = Math.max(0, orphanGracePeriod);
+    }
+
+    @Override
+    public ValuePoolStats getStats() {
+        return new ValuePoolStats(index.size(), totalWeight.get(), orphansReclaimed.get(), 0, sweeps.get());
+    }
+
+    /**
+     * @return The total size of the direct memory allocated by the ValuePool, including the free space.
+     */
+    public long getReservedBytes() {
+        var stamp = lock.readLock();
+        try {
+            return allocator.getReservedBytes();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    private boolean removeOrphan(ID id, Slot slot, long now, long gracePeriod) {
+        var stamp = lock.writeLock();
+        try {
+            if (index.get(id) != slot || !slot.isOrphan(now, gracePeriod)) { //adopted or replaced in the meantime
+                return false;
+            }
+            index.remove(id);
+            release(slot);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        changeWeight(id, slot, null);
+        return true;
+    }
+
+    /**
+     * Copies the encoded value from the slabs to the heap. The copy is repeated under the read lock if the chunk may have been freed and reused while copying.
+     */
+    private byte[] readBytes(ID id) {
+        var stamp = lock.tryOptimisticRead();
+        if (stamp != 0) {
+            var bytes = copy(index.get(id));
+            if (lock.validate(stamp)) {
+                return bytes;
+            }
+        }
+        stamp = lock.readLock();
+        try {
+            return copy(index.get(id));
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    private byte[] copy(Slot slot) {
+        if (slot == null) {
+            return null;
+        }
+        if (slot.address == NULL_ADDRESS) {
+            return NULL_VALUE;
+        }
+        var bytes = new byte[slot.length];
+        allocator.read(slot.address, bytes);
+        return bytes;
+    }
+
+    private byte[] encode(T value) {
+        return value == null ? null : codec.encode(value);
+    }
+
+    /**
+     * Writes the bytes to a new chunk and points the ID to it. Called under the write lock.
+     */
+    private Slot store(ID id, byte[] bytes, int uses) {
+        Slot slot;
+        if (bytes == null) {
+            slot = new Slot(NULL_ADDRESS, 0, uses);
+        } else {
+            slot = new Slot(allocator.allocate(bytes.length), bytes.length, uses);
+            allocator.write(slot.address, bytes);
+        }
+        index.put(id, slot);
+        return slot;
+    }
+
+    /**
+     * Frees the chunk of a slot no longer in the index. Called under the write lock.
+     */
+    private void release(Slot slot) {
+        if (slot.address != NULL_ADDRESS) {
+            allocator.free(slot.address, slot.length);
+        }
+    }
+
+    /**
+     * Accounts for the replacement of a slot of an ID, with null standing for the absence of one. Called after the write lock is released,
+     * so that the listeners never run under it.
+     */
+    private void changeWeight(ID id, Slot previous, Slot current) {
+        long previousWeight = previous == null ? 0 : previous.length;
+        long weight = current == null ? 0 : current.length;
+        if (previousWeight == weight) {
+            return;
+        }
+        totalWeight.addAndGet(weight - previousWeight);
+        weightListeners.forEach(listener -> listener.onWeightChange(id, previousWeight, weight));
+    }
+
+    /**
+     * The location of a value in the slabs, along with the number of caches using it. Modified only under the write lock.
+     */
+    private static final class Slot {
+        final long address;
+        final int length;
+        volatile int uses;
+        volatile long unusedSince;
+
+        Slot(long address, int length, int uses) {
+            this.address = address;
+            this.length = length;
+            this.uses = uses;
+            this.unusedSince = Tickers.now();
+        }
+
+        boolean isOrphan(long now, long gracePeriod) {
+            return uses <= 0 && now - unusedSince > gracePeriod;
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package com.gmalandrakis.mnemosyne.core;
+
+import com.gmalandrakis.mnemosyne.cache.AbstractGenericCache;
+import com.gmalandrakis.mnemosyne.codec.ValueCodec;
+import com.gmalandrakis.mnemosyne.exception.MnemosyneRuntimeException;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes and reads the snapshots of {@link MnemoService#snapshot(Path)}.
+ * <p>
+ * A snapshot consists of a header, a section for every ValuePool, and a section for every cache, compressed as a whole.
+ * The values are stored in the form produced by the {@link ValueCodec} of their type, while the keys and the IDs are stored via Java serialization.
+ * The entries of the caches keep their timestamps, so that their time to live keeps counting from the original ones after a restore.
+ * <p>
+ * The entries are streamed one at a time from the live ValuePools and caches, hence writing a snapshot never blocks them for long,
+ * but the snapshot is not an atomic view of them either: entries added or updated while it is written may or may not be included.
+ *
+ * @author George Malandrakis (malandrakisgeo@gmail.com)
+ */
+@SuppressWarnings({"unchecked", "rawtypes"})
+final class SnapshotFile {
+
+    static final int MAGIC = 0x4D4E454D;
+
+    static final int VERSION = 1;
+
+    /**
+     * The number of entries after which the stream forgets the objects written so far, so that it does not hold on to the whole snapshot.
+     */
+    static final int RESET_INTERVAL = 1024;
+
+    /**
+     * The number of values decoded and added to a ValuePool by every task of a restore.
+     */
+    static final int RESTORE_BATCH_SIZE = 1024;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final byte ENTRY = 1;
+
+    private static final byte END_OF_SECTION = 0;
+
+    private SnapshotFile() {
+    }
+
+    /**
+     * Writes the snapshot to a temporary file next to the given one, and moves it in place once complete, so that a failed snapshot
+     * never replaces a good one.
+     *
+     * @param pools  The ValuePools to include by the name of their type, each of them along with the codec of the type.
+     * @param caches The caches to include by name.
+     */
+    static void write(Path path, Map<String, ValuePool> pools, Map<String, ValueCodec> codecs, Map<String, AbstractGenericCache<?, ?, ?>> caches) throws IOException {
+        var temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        try (var out = new ObjectOutputStream(new GZIPOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary), BUFFER_SIZE), BUFFER_SIZE))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            var entries = new AtomicInteger();
+            for (Map.Entry<String, ValuePool> pool : pools.entrySet()) {
+                var codec = codecs.get(pool.getKey());
+                out.writeByte(ENTRY);
+                out.writeUTF(pool.getKey());
+                try {
+                    pool.getValue().forEach((id, value) -> {
+                        try {
+                            var bytes = codec.encode(value);
+                            out.writeByte(ENTRY);
+                            out.writeObject(id);
+                            out.writeInt(bytes.length);
+                            out.write(bytes);
+                            resetPeriodically(out, entries.incrementAndGet());
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    });
+                } catch (UncheckedIOException e) {
+                    throw e.getCause();
+                }
+                out.writeByte(END_OF_SECTION);
+            }
+            out.writeByte(END_OF_SECTION);
+
+            for (Map.Entry<String, AbstractGenericCache<?, ?, ?>> cache : caches.entrySet()) {
+                out.writeByte(ENTRY);
+                out.writeUTF(cache.getKey());
+                for (var entry : cache.getValue().getLiveEntries()) {
+                    var idWrapper = entry.getValue();
+                    var createdOn = idWrapper.getCreatedOn();
+                    var lastAccessed = idWrapper.getLastAccessed();
+                    var ids = idWrapper.peekIds();
+                    out.writeByte(ENTRY);
+                    out.writeObject(entry.getKey());
+                    out.writeLong(createdOn);
+                    out.writeLong(lastAccessed);
+                    out.writeInt(ids.size());
+                    for (Object id : ids) {
+                        out.writeObject(id);
+                    }
+                    resetPeriodically(out, entries.incrementAndGet());
+                }
+                out.writeByte(END_OF_SECTION);
+            }
+            out.writeByte(END_OF_SECTION);
+        } catch (IOException e) {
+            Files.deleteIfExists(temporary);
+            throw e;
+        }
+        Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Reads the snapshot, restoring the ValuePools first and the caches afterwards. The file is read sequentially, while the values are decoded
+     * and added on the executor in batches, and every cache is restored by a task of its' own.
+     * The sections of the ValuePools and caches that no longer exist are skipped, along with the values of types without a codec.
+     *
+     * @param pools  The ValuePools by the name of their type, or null if absent.
+     * @param codecs The codecs by the name of their type, or null if absent.
+     * @param caches The caches by name, or null if absent.
+     * @return The number of cache entries restored. The entries whose time to live ran out in the meantime are not counted.
+     */
+    static int read(Path path, Function<String, ValuePool> pools, Function<String, ValueCodec> codecs, Function<String, AbstractGenericCache> caches,
+                    Executor executor) throws IOException, ClassNotFoundException {
+        try (var in = new ObjectInputStream(new GZIPInputStream(new BufferedInputStream(Files.newInputStream(path), BUFFER_SIZE), BUFFER_SIZE))) {
+            if (in.readInt() != MAGIC) {
+                throw new MnemosyneRuntimeException(path + " is not a mnemosyne snapshot");
+            }
+            var version = in.readInt();
+            if (version != VERSION) {
+                throw new MnemosyneRuntimeException("Unsupported snapshot version " + version);
+            }
+
+            var poolTasks = new ArrayList<CompletableFuture<Void>>();
+            while (in.readByte() == ENTRY) {
+                var type = in.readUTF();
+                var pool = pools.apply(type);
+                var codec = pool == null ? null : codecs.apply(type);
+                var batch = new ArrayList<Object[]>(RESTORE_BATCH_SIZE);
+                while (in.readByte() == ENTRY) {
+                    var id = in.readObject();
+                    var bytes = in.readNBytes(in.readInt());
+                    if (codec == null) {
+                        continue;
+                    }
+                    batch.add(new Object[]{id, bytes});
+                    if (batch.size() == RESTORE_BATCH_SIZE) {
+                        poolTasks.add(restoreValues(pool, codec, batch, executor));
+                        batch = new ArrayList<>(RESTORE_BATCH_SIZE);
+                    }
+                }
+                if (!batch.isEmpty()) {
+                    poolTasks.add(restoreValues(pool, codec, batch, executor));
+                }
+            }
+            join(poolTasks); //the caches only refer to values already in the ValuePools
+
+            var restored = new AtomicInteger();
+            var cacheTasks = new ArrayList<CompletableFuture<Void>>();
+            while (in.readByte() == ENTRY) {
+                var cache = caches.apply(in.readUTF());
+                var entries = new ArrayList<Object[]>();
+                while (in.readByte() == ENTRY) {
+                    var key = in.readObject();
+                    var createdOn = in.readLong();
+                    var lastAccessed = in.readLong();
+                    var ids = new ArrayList<>();
+                    for (int i = in.readInt(); i > 0; i--) {
+                        ids.add(in.readObject());
+                    }
+                    if (cache != null) {
+                        entries.add(new Object[]{key, ids, createdOn, lastAccessed});
+                    }
+                }
+                if (!entries.isEmpty()) {
+                    cacheTasks.add(CompletableFuture.runAsync(() -> {
+                        for (Object[] entry : entries) { //in the order of the snapshot, which is the order of the eviction algorithm
+                            if (cache.restoreEntry(entry[0], (List) entry[1], (long) entry[2], (long) entry[3])) {
+                                restored.incrementAndGet();
+                            }
+                        }
+                    }, executor));
+                }
+            }
+            join(cacheTasks);
+            return restored.get();
+        }
+    }
+
+    private static CompletableFuture<Void> restoreValues(ValuePool pool, ValueCodec codec, List<Object[]> batch, Executor executor) {
+        return CompletableFuture.runAsync(() -> batch.forEach(entry -> pool.updateValueOrPutPreemptively(entry[0], codec.decode((byte[]) entry[1]))), executor);
+    }
+
+    private static void join(List<CompletableFuture<Void>> tasks) {
+        CompletableFuture.allOf(tasks.toArray(new CompletableFuture[0])).join();
+    }
+
+    private static void resetPeriodically(ObjectOutputStream out, int entries) throws IOException {
+        if (entries % RESET_INTERVAL == 0) {
+            out.reset();
+        }
+    }
+}
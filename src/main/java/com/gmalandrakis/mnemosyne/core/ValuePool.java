@@ -1,40 +1,44 @@
 package com.gmalandrakis.mnemosyne.core;
 
-import com.gmalandrakis.mnemosyne.structures.CacheValue;
+import com.gmalandrakis.mnemosyne.exception.MnemosyneInitializationException;
+import com.gmalandrakis.mnemosyne.memory.ValueInterner;
+import com.gmalandrakis.mnemosyne.memory.Weigher;
+import com.gmalandrakis.mnemosyne.structures.ReferenceMode;
+import com.gmalandrakis.mnemosyne.structures.ValuePoolStats;
 
-import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 
 /**
  * A ValuePool of IDs and their corresponding values.
  * A separate ValuePool is created by Mnemosyne for each object type cached, and is shared across all caches returning a type (or a Collection of it).
+ * <p>
+ * The ValuePool keeps track of how many caches use every value, and removes a value once no cache uses it anymore.
+ * The default implementation is the {@link HeapValuePool}. The {@link OffHeapValuePool} keeps the values serialized outside the heap instead.
  *
  * @author George Malandrakis (malandrakisgeo@gmail.com)
  */
-public class ValuePool<ID, T> {
+public interface ValuePool<ID, T> {
 
-    private final ConcurrentHashMap<ID, CacheValue<T>> valueMap = new ConcurrentHashMap<>();
+    long DEFAULT_ORPHAN_GRACE_PERIOD_MILLIS = 60_000;
 
-    public T getValue(ID id) {
-        var val = valueMap.get(id);
-        if (val == null) {
-            return null;
-        }
-        return val.getValue();
-    }
+    /**
+     * The maximum number of entries examined by every run of the orphan sweeper, so that no run takes long regardless of the size of the ValuePool.
+     */
+    int ORPHAN_SWEEP_BATCH_SIZE = 1000;
 
-    public List<T> getAll(Collection<ID> ids) {
-        List<T> list = new ArrayList<>();
-        ids.forEach(id -> {
-            var fromValueMap = valueMap.get(id);
-            if (fromValueMap != null) {
-                list.add(fromValueMap.getValue());
-            }
-        });
-        return list;
-    }
+    /**
+     * @return The value, or null if the ID is absent.
+     */
+    T getValue(ID id);
+
+    /**
+     * @return The values of the IDs present, in the order of the IDs. Absent IDs, and the ones whose values were reclaimed by the GC, are skipped:
+     * the caller can tell that some values are missing by comparing the sizes.
+     */
+    List<T> getAll(Collection<ID> ids);
 
     /**
      * Stores a new value in memory.
@@ -43,70 +47,103 @@ public class ValuePool<ID, T> {
      * @param value:    The value itself
      * @param newCache: Set to true if the calling cache did not include the value before.
      */
-    public void put(ID id, T value, boolean newCache) {
-        var cachedValue = this.valueMap.get(id);
-        if (cachedValue == null)
-            this.valueMap.put(id, new CacheValue<>(value));
-        else {
-            cachedValue.updateValue(value);
-            if (newCache) {
-                cachedValue.increaseNumberOfUses();
-            }
-        }
-    }
-    public void put(ID id, boolean newCache) {
-        var cachedValue = this.valueMap.get(id);
-        if (cachedValue == null)
-            return; //TODO: perhaps throw?
-        else {
-            if (newCache) {
-                cachedValue.increaseNumberOfUses();
-            }
-        }
-    }
+    void put(ID id, T value, boolean newCache);
 
-    public void updateValueOrPutPreemptively(ID id, T value) {
-        var cachedValue = this.valueMap.get(id);
-        if (cachedValue == null)
-            this.valueMap.put(id, new CacheValue<>(value, true));
-        else {
-            cachedValue.updateValue(value);
-        }
-    }
+    /**
+     * Increases the number of uses of a value already present, if the calling cache did not include the value before.
+     */
+    void put(ID id, boolean newCache);
+
+    /**
+     * Updates the value if present, or adds it without any uses otherwise.
+     */
+    void updateValueOrPutPreemptively(ID id, T value);
 
+    void increaseNumberOfUsesForId(ID id, T value);
 
-    public void increaseNumberOfUsesForId(ID id, T value) {
-        var cachedValue = this.valueMap.get(id);
-        if (cachedValue == null)
-            this.valueMap.put(id, new CacheValue<>(value)); //TODO: Can lead to memory leaks if no active cache uses the value
-        else {
-            cachedValue.increaseNumberOfUses();
-        }
-    }
+    /**
+     * Decreases the number of uses of the value, and removes it once no cache uses it.
+     *
+     * @return The remaining number of uses.
+     */
+    Integer removeOrDecreaseNumberOfUsesForId(ID id);
 
-    public Integer removeOrDecreaseNumberOfUsesForId(ID id) {
-        var cachedValue = valueMap.get(id);
-        if (cachedValue == null) {
-            return 0;
-        }
-        var newNumberOfUses = cachedValue.decreaseNumberOfUses();
-        if (newNumberOfUses == 0) {
-            valueMap.remove(id);
-        }
-        return newNumberOfUses;
-    }
+    int getSize();
 
-    public int getSize() {
-        return valueMap.size();
-    }
+    /**
+     * Passes every non-null value to the action, one at a time. The values added or removed in the meantime may or may not be included.
+     */
+    void forEach(BiConsumer<ID, T> action);
 
-    public int getNumberOfUsesForId(ID id) {
-        var val = valueMap.get(id);
-        if (val == null) {
-            return 0;
-        }
-        return val.getNumberOfUses();
-    }
+    int getNumberOfUsesForId(ID id);
+
+    /**
+     * @return The weight of the value as calculated on its' last addition or update, or zero if the ID is absent or the ValuePool does not weigh its' values.
+     */
+    long getWeight(ID id);
+
+    /**
+     * @return The sum of the weights of all the values, each value counted once regardless of how many caches use it.
+     */
+    long getTotalWeight();
+
+    /**
+     * Makes the ValuePool weigh its' values with an instance of the given Weigher. The values already present are weighed immediately.
+     * <p>
+     * All the caches sharing a ValuePool have to use the same type of Weigher, since the weight of every value is calculated only once.
+     *
+     * @throws MnemosyneInitializationException if the ValuePool already uses another type of Weigher, or the Weigher cannot be instantiated.
+     */
+    void enableWeighing(Class<? extends Weigher<?>> weigherType);
+
+    /**
+     * Makes the ValuePool hold its' values through soft or weak references. The values already present are wrapped immediately,
+     * and the maintenance thread starts removing the reclaimed ones.
+     * <p>
+     * A ValuePool is shared by all the caches returning the same type, so they must all agree on the mode, unless they use the default.
+     *
+     * @throws MnemosyneInitializationException if the ValuePool already uses another non-strong mode, or does not support the mode.
+     */
+    void useReferences(ReferenceMode mode);
+
+    ReferenceMode getReferenceMode();
+
+    /**
+     * Registers a listener notified with the IDs removed by the ValuePool itself, e.g. the ones whose values were reclaimed by the GC.
+     * The caches use it to remove the keys referring to them.
+     */
+    void addRemovalListener(Consumer<Collection<ID>> listener);
+
+    /**
+     * Registers a listener notified whenever the weight of a value changes, including the additions and removals of values.
+     * Values are only weighed once weighing is {@link #enableWeighing enabled}, or always by ValuePools that weigh their values on their own.
+     */
+    void addWeightListener(WeightListener<ID> listener);
+
+    /**
+     * Removes the values that have had no uses for longer than the orphan grace period. Examines at most the given number of entries,
+     * and resumes from where it stopped on the next call, starting over once it reaches the end of the ValuePool.
+     *
+     * @return The number of values removed.
+     */
+    int sweepOrphans(int maxEntries);
 
+    /**
+     * Starts sweeping orphans periodically on the maintenance thread.
+     */
+    void scheduleOrphanSweeping(long intervalMillis);
+
+    /**
+     * @param orphanGracePeriod The time in milliseconds a value may remain unused before the orphan sweeper removes it.
+     */
+    void setOrphanGracePeriod(long orphanGracePeriod);
+
+    /**
+     * Makes the ValuePool replace the sub-objects of the registered types of every value added or updated with their canonical instances.
+     * Ignored by the ValuePools that do not hold the values themselves, e.g. the {@link OffHeapValuePool}.
+     */
+    default void useInterner(ValueInterner interner) {
+    }
 
+    ValuePoolStats getStats();
 }
@@ -0,0 +1,19 @@
+package com.gmalandrakis.mnemosyne.core;
+
+/**
+ * Notified by a {@link ValuePool} whenever the weight of one of its' values changes, i.e. on addition, update and removal.
+ * The caches use it to keep the weight charged for their IDs in line with the values actually held.
+ *
+ * @author George Malandrakis (malandrakisgeo@gmail.com)
+ */
+@FunctionalInterface
+public interface WeightListener<ID> {
+
+    /**
+     * Called on the thread that changed the value, after the change.
+     *
+     * @param previousWeight The weight before the change, zero if the value was just added.
+     * @param weight         The weight after the change, zero if the value was removed.
+     */
+    void onWeightChange(ID id, long previousWeight, long weight);
+}
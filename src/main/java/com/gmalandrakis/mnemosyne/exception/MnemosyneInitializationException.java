@@ -2,6 +2,8 @@ package com.gmalandrakis.mnemosyne.exception;
 
 public class MnemosyneInitializationException extends MnemosyneRuntimeException {
 
+    private static final long serialVersionUID = -8167524060087530376L;
+
 
     public MnemosyneInitializationException(String message) {
         super(message);
@@ -1,6 +1,9 @@
 package com.gmalandrakis.mnemosyne.exception;
 
 public class MnemosyneRetrievalException extends MnemosyneRuntimeException{
+
+    private static final long serialVersionUID = -9145275148394538885L;
+
     public MnemosyneRetrievalException(Exception e) {
         super(e);
     }
@@ -2,6 +2,8 @@ package com.gmalandrakis.mnemosyne.exception;
 
 public class MnemosyneRuntimeException extends RuntimeException{
 
+    private static final long serialVersionUID = -8582409636356462270L;
+
     public MnemosyneRuntimeException(Exception e){
         super(e);
     }
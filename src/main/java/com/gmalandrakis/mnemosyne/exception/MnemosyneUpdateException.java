@@ -2,6 +2,8 @@ package com.gmalandrakis.mnemosyne.exception;
 
 public class MnemosyneUpdateException extends MnemosyneRuntimeException{
 
+    private static final long serialVersionUID = -1311253023649136742L;
+
     public MnemosyneUpdateException(String message){
         super(message);
     }
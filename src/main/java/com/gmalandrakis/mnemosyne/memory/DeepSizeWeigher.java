@@ -0,0 +1,18 @@
+package com.gmalandrakis.mnemosyne.memory;
+
+/**
+ * Weighs values by the estimated size in bytes of the whole object graph reachable from them.
+ * <p>
+ * The default weigher of mnemosyne. More expensive than the {@link ShallowSizeWeigher ShallowSizeWeigher}, but the cost
+ * is paid only once per added or updated value.
+ *
+ * @author George Malandrakis (malandrakisgeo@gmail.com)
+ * @see ObjectSizeEstimator#deepSizeOf(Object)
+ */
+public class DeepSizeWeigher implements Weigher<Object> {
+
+    @Override
+    public long weigh(Object value) {
+        return ObjectSizeEstimator.deepSizeOf(value);
+    }
+}
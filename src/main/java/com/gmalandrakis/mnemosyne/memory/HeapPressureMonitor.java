@@ -0,0 +1,197 @@
+package com.gmalandrakis.mnemosyne.memory;
+
+import com.gmalandrakis.mnemosyne.cache.AbstractGenericCache;
+
+import javax.management.ListenerNotFoundException;
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryNotificationInfo;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Shrinks the registered caches while the old generation of the heap is under pressure, and grows them back once the pressure drops,
+ * trading hit ratio for memory gradually instead of running into long full GCs or an OutOfMemoryError.
+ * <p>
+ * The monitor sets a usage threshold and a collection usage threshold on the tenured memory pools (the heap pools that support usage thresholds),
+ * and shrinks the caches by one step on every notification. Since the JVM notifies only when a threshold is crossed, the usage is also checked
+ * periodically: the caches keep shrinking while the usage stays above the threshold, and grow back one step at a time once it is below the recovery threshold.
+ * <p>
+ * Caches are shrunk by priority: on every step, only the caches with the lowest priority that are not already at the minimum capacity are shrunk,
+ * and they are grown back in the reverse order. Caches of the same priority are shrunk proportionally, i.e. all by the same percentage of their limits.
+ *
+ * @author George Malandrakis (malandrakisgeo@gmail.com)
+ */
+public class HeapPressureMonitor implements NotificationListener, AutoCloseable {
+
+    private final int thresholdPercentage;
+    private final int recoveryPercentage;
+    private final float step;
+    private final float minimumFactor;
+    private final long checkInterval;
+    private final List<Participant> participants = new CopyOnWriteArrayList<>();
+    private final List<MemoryPoolMXBean> tenuredPools;
+    private final AtomicBoolean started = new AtomicBoolean(false);
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        var thread = new Thread(runnable, "mnemosyne-heap-pressure");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Shrinks the caches by 25% of their limits on every step, down to 25%, and checks the usage every second.
+     *
+     * @param thresholdPercentage The usage of the old generation, as a percentage of its' maximum, above which the caches are shrunk.
+     * @param recoveryPercentage  The usage below which the caches grow back. Should be lower than the threshold, to avoid oscillations.
+     */
+    public HeapPressureMonitor(int thresholdPercentage, int recoveryPercentage) {
+        this(thresholdPercentage, recoveryPercentage, 25, 25, 1000);
+    }
+
+    /**
+     * @param thresholdPercentage        The usage of the old generation, as a percentage of its' maximum, above which the caches are shrunk.
+     * @param recoveryPercentage         The usage below which the caches grow back. Should be lower than the threshold, to avoid oscillations.
+     * @param stepPercentage             The percentage of the configured limits removed or restored on every step.
+     * @param minimumCapacityPercentage  The percentage of the configured limits below which no cache is shrunk.
+     * @param checkInterval              The interval between the periodic checks of the usage, in milliseconds.
+     */
+    public HeapPressureMonitor(int thresholdPercentage, int recoveryPercentage, int stepPercentage, int minimumCapacityPercentage, long checkInterval) {
+        if (thresholdPercentage <= 0 || thresholdPercentage >= 100 || recoveryPercentage <= 0 || recoveryPercentage > thresholdPercentage) {
+            throw new IllegalArgumentException("The threshold must be between 1 and 99, and the recovery threshold between 1 and the threshold");
+        }
+        if (stepPercentage <= 0 || stepPercentage > 100 || minimumCapacityPercentage <= 0 || minimumCapacityPercentage > 100 || checkInterval <= 0) {
+            throw new IllegalArgumentException("The step and minimum capacity must be between 1 and 100, and the check interval positive");
+        }
+        this.thresholdPercentage = thresholdPercentage;
+        this.recoveryPercentage = recoveryPercentage;
+        this.step = stepPercentage / 100f;
+        this.minimumFactor = minimumCapacityPercentage / 100f;
+        this.checkInterval = checkInterval;
+        this.tenuredPools = ManagementFactory.getMemoryPoolMXBeans().stream()
+                .filter(pool -> pool.getType() == MemoryType.HEAP && pool.isValid() && pool.isUsageThresholdSupported())
+                .toList();
+    }
+
+    /**
+     * Registers a cache to be shrunk under pressure.
+     *
+     * @param priority Caches with lower priority are shrunk first and grown back last.
+     */
+    public void register(AbstractGenericCache<?, ?, ?> cache, int priority) {
+        participants.add(new Participant(cache, priority));
+    }
+
+    /**
+     * Sets the thresholds on the tenured pools and starts listening. Has no effect if already started.
+     */
+    public void start() {
+        if (!started.compareAndSet(false, true)) {
+            return;
+        }
+        for (MemoryPoolMXBean pool : tenuredPools) {
+            var max = pool.getUsage().getMax();
+            if (max <= 0) {
+                continue; //undefined maximum
+            }
+            var threshold = max / 100 * thresholdPercentage;
+            pool.setUsageThreshold(threshold);
+            if (pool.isCollectionUsageThresholdSupported()) {
+                pool.setCollectionUsageThreshold(threshold);
+            }
+        }
+        ((NotificationEmitter) ManagementFactory.getMemoryMXBean()).addNotificationListener(this, null, null);
+        scheduler.scheduleWithFixedDelay(this::checkUsage, checkInterval, checkInterval, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void handleNotification(Notification notification, Object handback) {
+        var type = notification.getType();
+        if (MemoryNotificationInfo.MEMORY_THRESHOLD_EXCEEDED.equals(type) || MemoryNotificationInfo.MEMORY_COLLECTION_THRESHOLD_EXCEEDED.equals(type)) {
+            scheduler.execute(this::shrink); //never evict on the notification thread
+        }
+    }
+
+    /**
+     * @return The highest usage of the tenured pools as a percentage of their maximum. The usage after the last collection is preferred, since it excludes garbage.
+     */
+    public int getTenuredUsagePercentage() {
+        int highest = 0;
+        for (MemoryPoolMXBean pool : tenuredPools) {
+            MemoryUsage usage = pool.isCollectionUsageThresholdSupported() && pool.getCollectionUsage() != null ? pool.getCollectionUsage() : pool.getUsage();
+            var max = pool.getUsage().getMax();
+            if (usage != null && max > 0) {
+                highest = Math.max(highest, (int) (usage.getUsed() * 100 / max));
+            }
+        }
+        return highest;
+    }
+
+    @Override
+    public void close() {
+        if (started.get()) {
+            try {
+                ((NotificationEmitter) ManagementFactory.getMemoryMXBean()).removeNotificationListener(this);
+            } catch (ListenerNotFoundException ignored) {
+            }
+        }
+        scheduler.shutdownNow();
+    }
+
+    void checkUsage() {
+        var usage = getTenuredUsagePercentage();
+        if (usage >= thresholdPercentage) {
+            shrink();
+        } else if (usage < recoveryPercentage) {
+            grow();
+        }
+    }
+
+    /**
+     * Shrinks by one step the caches of the lowest priority that can still be shrunk.
+     */
+    synchronized void shrink() {
+        var priority = participants.stream().filter(p -> p.factor > minimumFactor).mapToInt(p -> p.priority).min();
+        if (priority.isEmpty()) {
+            return;
+        }
+        participants.stream().filter(p -> p.priority == priority.getAsInt() && p.factor > minimumFactor)
+                .forEach(p -> p.setFactor(Math.max(minimumFactor, p.factor - step)));
+    }
+
+    /**
+     * Grows back by one step the caches of the highest priority that are still shrunk.
+     */
+    synchronized void grow() {
+        var priority = participants.stream().filter(p -> p.factor < 1f).mapToInt(p -> p.priority).max();
+        if (priority.isEmpty()) {
+            return;
+        }
+        participants.stream().filter(p -> p.priority == priority.getAsInt() && p.factor < 1f)
+                .forEach(p -> p.setFactor(Math.min(1f, p.factor + step)));
+    }
+
+    private static final class Participant {
+        final AbstractGenericCache<?, ?, ?> cache;
+        final int priority;
+        float factor = 1f;
+
+        Participant(AbstractGenericCache<?, ?, ?> cache, int priority) {
+            this.cache = cache;
+            this.priority = priority;
+        }
+
+        void setFactor(float newFactor) {
+            factor = newFactor;
+            cache.setCapacityFactor(newFactor);
+        }
+    }
+}
@@ -0,0 +1,254 @@
+package com.gmalandrakis.mnemosyne.memory;
+
+import com.gmalandrakis.mnemosyne.cache.AbstractGenericCache;
+import com.gmalandrakis.mnemosyne.core.ValuePool;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A single memory limit shared by all the caches of a {@link com.gmalandrakis.mnemosyne.core.MnemoService MnemoService}, instead of
+ * a separate capacity for every cache.
+ * <p>
+ * The budget is charged with the total weight of the ValuePools of the registered caches, so that every value is charged exactly once,
+ * regardless of how many caches use it, and the values no cache uses (e.g. the ones added preemptively) are charged as well.
+ * Once the total weight exceeds the limit, the budget asynchronously sweeps the orphaned values of the ValuePools and evicts until the total weight is one step (5% of the limit) below it, starting from the caches with the fewest hits per unit of weight
+ * since the previous rebalance, i.e. the caches that offer the least in return for the memory they take.
+ * <p>
+ * Every cache can be given a minimum share, below which it is never evicted by the budget, and a maximum share, above which it is always evicted
+ * regardless of how useful it is. Both are percentages of the limit. The caches keep their own capacity and maxWeight limits as well.
+ *
+ * @author George Malandrakis (malandrakisgeo@gmail.com)
+ */
+public class MemoryBudget {
+
+    static final int REBALANCE_STEP_PERCENTAGE = 5;
+
+    private final long limit;
+    private final long rebalanceTarget;
+    private final AtomicLong used = new AtomicLong(0);
+    private final List<Participant> participants = new CopyOnWriteArrayList<>();
+    private final Map<AbstractGenericCache<?, ?, ?>, Participant> participantsByCache = new ConcurrentHashMap<>();
+    private final Set<ValuePool<?, ?>> valuePools = Collections.synchronizedSet(Collections.newSetFromMap(new IdentityHashMap<>()));
+
+    /**
+     * Guards rebalanceInProgress and rebalanceRequested, and is notified whenever a rebalance finishes without another one requested.
+     */
+    private final Object rebalanceLock = new Object();
+    private boolean rebalanceInProgress;
+
+    /**
+     * Set by the charges that exceed the budget while a rebalance is in progress, since the weight they add may not be evicted by it.
+     */
+    private boolean rebalanceRequested;
+    private final ExecutorService rebalancer = Executors.newSingleThreadExecutor(runnable -> {
+        var thread = new Thread(runnable, "mnemosyne-memory-budget");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private MemoryBudget(long limit) {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("The memory budget has to be positive");
+        }
+        this.limit = limit;
+        this.rebalanceTarget = limit - Math.max(1, limit * REBALANCE_STEP_PERCENTAGE / 100);
+    }
+
+    /**
+     * @param bytes The limit in bytes, or in the unit of the weighers in use if custom weighers are used.
+     */
+    public static MemoryBudget ofBytes(long bytes) {
+        return new MemoryBudget(bytes);
+    }
+
+    /**
+     * @param percentage The limit as a percentage of the maximum heap size of the JVM.
+     */
+    public static MemoryBudget ofHeapPercentage(int percentage) {
+        if (percentage <= 0 || percentage > 100) {
+            throw new IllegalArgumentException("The percentage of the heap has to be between 1 and 100");
+        }
+        return new MemoryBudget(Runtime.getRuntime().maxMemory() / 100 * percentage);
+    }
+
+    /**
+     * Makes the cache draw its' weight from the budget, and charges the budget with the weight of its' ValuePool, unless another cache
+     * using the same ValuePool is registered already. Has to be called before the cache is used.
+     * Values over 100 or negative are switched to 0 and 100 respectively.
+     *
+     * @param minSharePercentage The percentage of the limit the cache may always keep.
+     * @param maxSharePercentage The percentage of the limit the cache may never exceed.
+     */
+    public void register(AbstractGenericCache<?, ?, ?> cache, short minSharePercentage, short maxSharePercentage) {
+        var minShare = minSharePercentage < 0 || minSharePercentage > 100 ? 0 : minSharePercentage;
+        var maxShare = maxSharePercentage <= 0 || maxSharePercentage > 100 ? 100 : maxSharePercentage;
+        var participant = new Participant(cache, limit * minShare / 100, limit * Math.max(minShare, maxShare) / 100);
+        participants.add(participant);
+        participantsByCache.put(cache, participant);
+        cache.joinBudget(this);
+        track(cache.getValuePool());
+    }
+
+    /**
+     * Called by the caches whenever their weight increases, in order to check whether they exceed their maximum share.
+     * The budget itself is charged by the ValuePools.
+     */
+    public void checkShare(AbstractGenericCache<?, ?, ?> cache) {
+        var participant = participantsByCache.get(cache);
+        if (participant != null && cache.getCurrentWeight() > participant.maxWeight) {
+            scheduleRebalance();
+        }
+    }
+
+    /**
+     * Waits until no rebalance is running or requested.
+     *
+     * @return False if the timeout elapsed first.
+     */
+    public boolean awaitRebalance(long timeoutMillis) throws InterruptedException {
+        var deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        synchronized (rebalanceLock) {
+            while (rebalanceInProgress) {
+                var remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                if (remaining <= 0) {
+                    return false;
+                }
+                rebalanceLock.wait(remaining);
+            }
+        }
+        return true;
+    }
+
+    public long getLimit() {
+        return limit;
+    }
+
+    public long getUsed() {
+        return used.get();
+    }
+
+    /**
+     * Evicts the caches exceeding their maximum share, and then, if the limit is exceeded, sweeps the orphaned values of the ValuePools
+     * and evicts the caches with the lowest hits per unit of weight. Since the values shared by several caches are only released once none of them
+     * uses them, evicting a cache does not necessarily release as much weight as the cache loses.
+     */
+    public void rebalance() {
+        for (Participant participant : participants) {
+            if (participant.cache.getCurrentWeight() > participant.maxWeight) {
+                participant.cache.evictWeightDownTo(participant.maxWeight);
+            }
+        }
+
+        var byMarginalValue = participants.stream()
+                .map(participant -> Map.entry(participant, participant.hitsPerWeight())) //the hits keep changing while sorting
+                .sorted(Map.Entry.comparingByValue())
+                .map(Map.Entry::getKey)
+                .toList();
+        participants.forEach(Participant::resetHits);
+        if (used.get() <= limit) {
+            return;
+        }
+        List<ValuePool<?, ?>> pools;
+        synchronized (valuePools) {
+            pools = List.copyOf(valuePools);
+        }
+        pools.forEach(pool -> pool.sweepOrphans(ValuePool.ORPHAN_SWEEP_BATCH_SIZE));
+        for (Participant participant : byMarginalValue) {
+            var excess = used.get() - rebalanceTarget;
+            if (excess <= 0) {
+                break;
+            }
+            var weight = participant.cache.getCurrentWeight();
+            var target = Math.max(participant.minWeight, weight - excess);
+            if (target < weight) {
+                participant.cache.evictWeightDownTo(target);
+            }
+        }
+    }
+
+    /**
+     * Starts charging the budget with the weight of the values of the ValuePool, each value once.
+     */
+    private <ID> void track(ValuePool<ID, ?> valuePool) {
+        if (!valuePools.add(valuePool)) {
+            return;
+        }
+        valuePool.addWeightListener((id, previousWeight, weight) -> charge(weight - previousWeight));
+        charge(valuePool.getTotalWeight());
+    }
+
+    private void charge(long weight) {
+        var total = used.addAndGet(weight);
+        if (weight > 0 && total > limit) {
+            scheduleRebalance();
+        }
+    }
+
+    private void scheduleRebalance() {
+        synchronized (rebalanceLock) {
+            if (rebalanceInProgress) {
+                rebalanceRequested = true;
+                return;
+            }
+            rebalanceInProgress = true;
+        }
+        rebalancer.execute(this::runRebalance);
+    }
+
+    private void runRebalance() {
+        synchronized (rebalanceLock) {
+            rebalanceRequested = false;
+        }
+        try {
+            rebalance();
+        } finally {
+            synchronized (rebalanceLock) {
+                if (rebalanceRequested) {
+                    rebalancer.execute(this::runRebalance);
+                } else {
+                    rebalanceInProgress = false;
+                    rebalanceLock.notifyAll();
+                }
+            }
+        }
+    }
+
+    private static final class Participant {
+        final AbstractGenericCache<?, ?, ?> cache;
+        final long minWeight;
+        final long maxWeight;
+        long hitsOnLastRebalance;
+
+        /**
+         * The hits of the previous rebalances, halved on every rebalance, so that a rebalance shortly after another one does not see every cache as equally useless.
+         */
+        double earlierHits;
+
+        Participant(AbstractGenericCache<?, ?, ?> cache, long minWeight, long maxWeight) {
+            this.cache = cache;
+            this.minWeight = minWeight;
+            this.maxWeight = maxWeight;
+            this.hitsOnLastRebalance = cache.getHitCount();
+        }
+
+        double hitsPerWeight() {
+            return (earlierHits + cache.getHitCount() - hitsOnLastRebalance) / Math.max(1, cache.getCurrentWeight());
+        }
+
+        void resetHits() {
+            var hits = cache.getHitCount();
+            earlierHits = (earlierHits + hits - hitsOnLastRebalance) / 2;
+            hitsOnLastRebalance = hits;
+        }
+    }
+}
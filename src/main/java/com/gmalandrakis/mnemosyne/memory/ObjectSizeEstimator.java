@@ -0,0 +1,193 @@
+package com.gmalandrakis.mnemosyne.memory;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.*;
+
+/**
+ * Estimates the memory footprint of objects via reflection, assuming a 64-bit JVM with compressed references
+ * (the default for heaps under 32GB).
+ * <p>
+ * The results are estimations and not measurements: the actual layout is up to the JVM. Objects of classes that cannot be
+ * reflected upon (e.g. the internals of java.util collections under the module system) are measured by their public API instead,
+ * and instances of Class and Enum are not counted at all, since they are shared by the whole application.
+ *
+ * @author George Malandrakis (malandrakisgeo@gmail.com)
+ */
+public final class ObjectSizeEstimator {
+
+    static final int OBJECT_HEADER = 12;
+    static final int ARRAY_HEADER = 16;
+    static final int REFERENCE = 4;
+    static final int ALIGNMENT = 8;
+
+    /**
+     * Rough overhead of an element of an opaque collection or map (e.g. a HashMap.Node), on top of the element itself.
+     */
+    static final int OPAQUE_ENTRY_OVERHEAD = 32;
+
+    private static final ClassValue<ClassLayout> LAYOUTS = new ClassValue<>() {
+        @Override
+        protected ClassLayout computeValue(Class<?> type) {
+            return ClassLayout.of(type);
+        }
+    };
+
+    private ObjectSizeEstimator() {
+    }
+
+    /**
+     * @return The estimated size of the object itself in bytes, without the objects it refers to.
+     */
+    public static long shallowSizeOf(Object object) {
+        if (object == null || isShared(object)) {
+            return 0;
+        }
+        var type = object.getClass();
+        if (type.isArray()) {
+            return align(ARRAY_HEADER + (long) java.lang.reflect.Array.getLength(object) * sizeOfType(type.getComponentType()));
+        }
+        return LAYOUTS.get(type).shallowSize;
+    }
+
+    /**
+     * @return The estimated size in bytes of the object and every object reachable from it. Objects reachable via multiple paths are counted once.
+     */
+    public static long deepSizeOf(Object root) {
+        if (root == null) {
+            return 0;
+        }
+        long size = 0;
+        var visited = Collections.newSetFromMap(new IdentityHashMap<>());
+        var pending = new ArrayDeque<>();
+        pending.push(root);
+
+        while (!pending.isEmpty()) {
+            var object = pending.pop();
+            if (isShared(object) || !visited.add(object)) {
+                continue;
+            }
+            size += shallowSizeOf(object);
+            var type = object.getClass();
+
+            if (type.isArray()) {
+                if (!type.getComponentType().isPrimitive()) {
+                    for (Object element : (Object[]) object) {
+                        pushIfNotNull(pending, element);
+                    }
+                }
+                continue;
+            }
+            if (object instanceof String string) { //the backing array is not accessible
+                size += align(ARRAY_HEADER + (long) string.length());
+                continue;
+            }
+
+            var layout = LAYOUTS.get(type);
+            if (layout.accessible) {
+                for (Field field : layout.referenceFields) {
+                    try {
+                        pushIfNotNull(pending, field.get(object));
+                    } catch (IllegalAccessException ignored) {
+                    }
+                }
+            } else {
+                size += sizeOfOpaqueContents(object, pending);
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Pushes the contents of collections and maps whose internals cannot be reflected upon, and estimates the overhead of their internal structures.
+     */
+    private static long sizeOfOpaqueContents(Object object, Deque<Object> pending) {
+        long overhead = 0;
+        try {
+            if (object instanceof Collection<?> collection) {
+                for (Object element : collection) {
+                    pushIfNotNull(pending, element);
+                    overhead += OPAQUE_ENTRY_OVERHEAD;
+                }
+            } else if (object instanceof Map<?, ?> map) {
+                for (Map.Entry<?, ?> entry : map.entrySet()) {
+                    pushIfNotNull(pending, entry.getKey());
+                    pushIfNotNull(pending, entry.getValue());
+                    overhead += OPAQUE_ENTRY_OVERHEAD;
+                }
+            }
+        } catch (ConcurrentModificationException ignored) {
+            //an estimation of a collection modified while weighing it is as good as any
+        }
+        return overhead;
+    }
+
+    private static void pushIfNotNull(Deque<Object> pending, Object object) {
+        if (object != null) {
+            pending.push(object);
+        }
+    }
+
+    private static boolean isShared(Object object) {
+        return object instanceof Class || object instanceof Enum;
+    }
+
+    static long align(long size) {
+        return (size + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT;
+    }
+
+    static int sizeOfType(Class<?> type) {
+        if (type == long.class || type == double.class) {
+            return 8;
+        }
+        if (type == int.class || type == float.class) {
+            return 4;
+        }
+        if (type == short.class || type == char.class) {
+            return 2;
+        }
+        if (type == byte.class || type == boolean.class) {
+            return 1;
+        }
+        return REFERENCE;
+    }
+
+    /**
+     * The shallow size and the reference fields of a class, calculated once per class.
+     */
+    private static final class ClassLayout {
+        final long shallowSize;
+        final List<Field> referenceFields;
+        final boolean accessible;
+
+        private ClassLayout(long shallowSize, List<Field> referenceFields, boolean accessible) {
+            this.shallowSize = shallowSize;
+            this.referenceFields = referenceFields;
+            this.accessible = accessible;
+        }
+
+        static ClassLayout of(Class<?> type) {
+            long fieldsSize = 0;
+            var referenceFields = new ArrayList<Field>();
+            boolean accessible = true;
+            for (Class<?> c = type; c != null; c = c.getSuperclass()) {
+                for (Field field : c.getDeclaredFields()) {
+                    if (Modifier.isStatic(field.getModifiers())) {
+                        continue;
+                    }
+                    fieldsSize += sizeOfType(field.getType());
+                    if (field.getType().isPrimitive()) {
+                        continue;
+                    }
+                    try {
+                        field.setAccessible(true);
+                        referenceFields.add(field);
+                    } catch (RuntimeException e) { //InaccessibleObjectException, SecurityException
+                        accessible = false;
+                    }
+                }
+            }
+            return new ClassLayout(align(OBJECT_HEADER + fieldsSize), accessible ? List.copyOf(referenceFields) : List.of(), accessible);
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package com.gmalandrakis.mnemosyne.memory;
+
+/**
+ * Weighs values by the estimated size of the object itself in bytes, without the objects it refers to.
+ * <p>
+ * Cheap, but only meaningful for values that consist mostly of primitive fields.
+ *
+ * @author George Malandrakis (malandrakisgeo@gmail.com)
+ * @see ObjectSizeEstimator#shallowSizeOf(Object)
+ */
+public class ShallowSizeWeigher implements Weigher<Object> {
+
+    @Override
+    public long weigh(Object value) {
+        return ObjectSizeEstimator.shallowSizeOf(value);
+    }
+}
@@ -0,0 +1,145 @@
+package com.gmalandrakis.mnemosyne.memory;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Allocates chunks of memory outside the heap, from direct ByteBuffers (slabs) that are allocated once and never released.
+ * <p>
+ * Every allocation is rounded up to a power of two (its' size class), and freed chunks are reused by later allocations of the same size class,
+ * so that the slabs do not fragment regardless of the order of allocations and frees. Chunks larger than a slab get a slab of their own.
+ * <p>
+ * A chunk is identified by its' address, the index of its' slab in the upper 32 bits and its' offset in the slab in the lower ones.
+ * Allocations and frees are not thread-safe and have to be guarded by the caller. Reads and writes may happen concurrently, as long as
+ * the chunk is not freed in the meantime.
+ *
+ * @author George Malandrakis (malandrakisgeo@gmail.com)
+ */
+public final class SlabAllocator {
+
+    static final int MIN_CHUNK_SIZE = 16;
+
+    private final int slabSize;
+    private volatile ByteBuffer[] slabs = new ByteBuffer[0];
+    private int currentOffset;
+    private final LongStack[] freeChunks = new LongStack[Integer.SIZE];
+    private long reservedBytes;
+
+    /**
+     * @param slabSize The size of every slab in bytes, rounded up to a power of two.
+     */
+    public SlabAllocator(int slabSize) {
+        if (slabSize < MIN_CHUNK_SIZE || slabSize > 1 << 30) {
+            throw new IllegalArgumentException("The slab size has to be between " + MIN_CHUNK_SIZE + " bytes and 1GB");
+        }
+        this.slabSize = roundUp(slabSize);
+        this.currentOffset = this.slabSize; //no current slab yet
+        for (int i = 0; i < freeChunks.length; i++) {
+            freeChunks[i] = new LongStack();
+        }
+    }
+
+    /**
+     * @return The address of a chunk of at least the given size.
+     */
+    public long allocate(int size) {
+        if (size > 1 << 30) {
+            throw new IllegalArgumentException("Chunks larger than 1GB are not supported");
+        }
+        var chunkSize = roundUp(Math.max(MIN_CHUNK_SIZE, size));
+        var free = freeChunks[sizeClass(chunkSize)];
+        if (!free.isEmpty()) {
+            return free.pop();
+        }
+        if (chunkSize > slabSize) {
+            return address(addSlab(chunkSize), 0);
+        }
+        if (currentOffset + chunkSize > slabSize) {
+            addSlab(slabSize);
+            currentOffset = 0;
+        }
+        var address = address(slabs.length - 1, currentOffset);
+        currentOffset += chunkSize;
+        return address;
+    }
+
+    /**
+     * Makes the chunk available to later allocations of the same size class.
+     *
+     * @param size The size the chunk was allocated with.
+     */
+    public void free(long address, int size) {
+        freeChunks[sizeClass(roundUp(Math.max(MIN_CHUNK_SIZE, size)))].push(address);
+    }
+
+    public void write(long address, byte[] bytes) {
+        slabs[slabIndex(address)].put(offset(address), bytes);
+    }
+
+    /**
+     * Copies the start of the chunk to the given array, filling it.
+     */
+    public void read(long address, byte[] target) {
+        slabs[slabIndex(address)].get(offset(address), target);
+    }
+
+    /**
+     * @return The total size of the slabs allocated, used or not.
+     */
+    public long getReservedBytes() {
+        return reservedBytes;
+    }
+
+    private int addSlab(int size) {
+        var current = slabs;
+        var grown = Arrays.copyOf(current, current.length + 1);
+        grown[current.length] = ByteBuffer.allocateDirect(size);
+        slabs = grown; //readers see either the old or the new array, both valid for the addresses they know
+        reservedBytes += size;
+        return current.length;
+    }
+
+    private static long address(int slabIndex, int offset) {
+        return ((long) slabIndex << 32) | offset;
+    }
+
+    private static int slabIndex(long address) {
+        return (int) (address >>> 32);
+    }
+
+    private static int offset(long address) {
+        return (int) address;
+    }
+
+    private static int roundUp(int size) {
+        var highest = Integer.highestOneBit(size);
+        return highest == size ? size : highest << 1;
+    }
+
+    private static int sizeClass(int chunkSize) {
+        return Integer.numberOfTrailingZeros(chunkSize);
+    }
+
+    /**
+     * A stack of primitive longs, so that the free chunks do not cost an object each.
+     */
+    private static final class LongStack {
+        private long[] elements = new long[8];
+        private int size;
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        void push(long element) {
+            if (size == elements.length) {
+                elements = Arrays.copyOf(elements, size * 2);
+            }
+            elements[size++] = element;
+        }
+
+        long pop() {
+            return elements[--size];
+        }
+    }
+}
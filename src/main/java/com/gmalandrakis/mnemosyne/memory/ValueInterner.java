@@ -0,0 +1,181 @@
+package com.gmalandrakis.mnemosyne.memory;
+
+import com.gmalandrakis.mnemosyne.exception.MnemosyneInitializationException;
+import com.gmalandrakis.mnemosyne.structures.InterningStats;
+
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.RecordComponent;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Replaces the sub-objects of the cached values with canonical instances, so that equal sub-objects embedded in many values
+ * (e.g. the same seller in thousands of transactions) share a single copy.
+ * <p>
+ * Only immutable types can be registered: records, Strings and the boxed primitives. Their instances are matched by equals(),
+ * and the canonical instances are held weakly, so that they are reclaimed once no cached value refers to them.
+ * <p>
+ * The values are never modified. A value of a registered type is replaced as a whole, and a record is copied with its' components interned,
+ * recursively. The values of any other class are kept as they are, since their sub-objects could only be replaced by modifying them.
+ *
+ * @author George Malandrakis (malandrakisgeo@gmail.com)
+ */
+public class ValueInterner {
+
+    /**
+     * The depth at which the traversal of a value stops, so that interning never walks a large object graph.
+     */
+    static final int MAX_DEPTH = 8;
+
+    private static final Set<Class<?>> IMMUTABLE_LEAVES = Set.of(String.class, Boolean.class, Character.class, Byte.class, Short.class,
+            Integer.class, Long.class, Float.class, Double.class);
+
+    private final ConcurrentHashMap<Class<?>, TypeInterner> interners = new ConcurrentHashMap<>();
+
+    private static final ClassValue<Layout> LAYOUTS = new ClassValue<>() {
+        @Override
+        protected Layout computeValue(Class<?> type) {
+            return Layout.of(type);
+        }
+    };
+
+    /**
+     * Registers a type whose instances are interned from now on.
+     *
+     * @throws MnemosyneInitializationException if the type is neither a record, a String nor a boxed primitive.
+     */
+    public void register(Class<?> type) {
+        if (!type.isRecord() && !IMMUTABLE_LEAVES.contains(type)) {
+            throw new MnemosyneInitializationException(type.getName() + " cannot be interned, since it is neither a record, a String nor a boxed primitive");
+        }
+        interners.putIfAbsent(type, new TypeInterner());
+    }
+
+    public boolean isEnabled() {
+        return !interners.isEmpty();
+    }
+
+    /**
+     * @return The value with its' sub-objects of the registered types replaced by their canonical instances. Either the value itself,
+     * its' canonical instance, or a copy of it if it is a record whose components had to be replaced.
+     */
+    public <T> T intern(T value) {
+        if (value == null || interners.isEmpty()) {
+            return value;
+        }
+        @SuppressWarnings("unchecked") //the canonical instances and the copies are of the class of the value
+        var interned = (T) intern(value, 0);
+        return interned;
+    }
+
+    /**
+     * @return The counters of every registered type, by the fully qualified name of the type.
+     */
+    public Map<String, InterningStats> getStats() {
+        var stats = new HashMap<String, InterningStats>();
+        interners.forEach((type, interner) -> stats.put(type.getName(), interner.getStats()));
+        return stats;
+    }
+
+    private Object intern(Object object, int depth) {
+        var interner = interners.get(object.getClass());
+        if (interner != null) {
+            return interner.intern(object); //the canonical instances are shared, hence they are not traversed
+        }
+        var layout = LAYOUTS.get(object.getClass());
+        if (depth >= MAX_DEPTH || layout == Layout.NONE) {
+            return object;
+        }
+        var components = new Object[layout.components.length];
+        var changed = false;
+        try {
+            for (int i = 0; i < components.length; i++) {
+                var component = layout.components[i].getAccessor().invoke(object);
+                components[i] = component == null ? null : intern(component, depth + 1);
+                changed |= components[i] != component;
+            }
+            return changed ? layout.canonicalConstructor.newInstance(components) : object;
+        } catch (ReflectiveOperationException e) { //e.g. the constructor rejected the components
+            return object;
+        }
+    }
+
+    /**
+     * The canonical instances of one type, held weakly.
+     */
+    private static final class TypeInterner {
+        private final Map<Object, Canonical> canonicals = new WeakHashMap<>();
+        private final AtomicLong replacedInstances = new AtomicLong();
+        private final AtomicLong bytesSaved = new AtomicLong();
+
+        Object intern(Object object) {
+            synchronized (canonicals) {
+                var canonical = canonicals.get(object);
+                var instance = canonical == null ? null : canonical.instance.get();
+                if (instance == null) {
+                    canonicals.put(object, new Canonical(object));
+                    return object;
+                }
+                if (instance != object) {
+                    replacedInstances.incrementAndGet();
+                    bytesSaved.addAndGet(canonical.size);
+                }
+                return instance;
+            }
+        }
+
+        InterningStats getStats() {
+            synchronized (canonicals) {
+                return new InterningStats(canonicals.size(), replacedInstances.get(), bytesSaved.get());
+            }
+        }
+    }
+
+    private static final class Canonical {
+        private final WeakReference<Object> instance; //the WeakHashMap holds its' keys weakly, but not its' values
+        private final long size;
+
+        Canonical(Object instance) {
+            this.instance = new WeakReference<>(instance);
+            this.size = ObjectSizeEstimator.deepSizeOf(instance);
+        }
+    }
+
+    /**
+     * The components of a record along with its' canonical constructor, or {@link #NONE} for the classes that are not traversed.
+     */
+    private static final class Layout {
+        private static final Layout NONE = new Layout(null, null);
+
+        private final RecordComponent[] components;
+        private final Constructor<?> canonicalConstructor;
+
+        private Layout(RecordComponent[] components, Constructor<?> canonicalConstructor) {
+            this.components = components;
+            this.canonicalConstructor = canonicalConstructor;
+        }
+
+        static Layout of(Class<?> type) {
+            if (!type.isRecord()) {
+                return NONE;
+            }
+            try {
+                var components = type.getRecordComponents();
+                var constructor = type.getDeclaredConstructor(Arrays.stream(components).map(RecordComponent::getType).toArray(Class<?>[]::new));
+                constructor.setAccessible(true);
+                for (RecordComponent component : components) {
+                    component.getAccessor().setAccessible(true);
+                }
+                return new Layout(components, constructor);
+            } catch (ReflectiveOperationException | RuntimeException e) { //e.g. not accessible under the module system
+                return NONE;
+            }
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package com.gmalandrakis.mnemosyne.memory;
+
+/**
+ * Calculates the weight of a cached value, used instead of the number of entries by caches with a
+ * {@link com.gmalandrakis.mnemosyne.annotations.Cached#maxWeight() maxWeight}.
+ * <p>
+ * The unit is up to the implementation, as long as it is the same as the unit of the maxWeight. The built-in
+ * {@link ShallowSizeWeigher ShallowSizeWeigher} and {@link DeepSizeWeigher DeepSizeWeigher} return an estimation in bytes.
+ * <p>
+ * Implementations must have a public no-argument constructor, must be thread-safe, and should be fast: the weight of a value is calculated
+ * once by its' ValuePool every time the value is added or updated, and shared by all the caches using it.
+ *
+ * @param <T> The type of the cached values
+ * @author George Malandrakis (malandrakisgeo@gmail.com)
+ */
+@FunctionalInterface
+public interface Weigher<T> {
+
+    /**
+     * @return The weight of the value. Negative weights are regarded as zero.
+     */
+    long weigh(T value);
+}
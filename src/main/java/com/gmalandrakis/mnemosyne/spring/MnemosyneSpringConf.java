@@ -1,6 +1,11 @@
 package com.gmalandrakis.mnemosyne.spring;
 
+import com.gmalandrakis.mnemosyne.codec.ValueCodec;
 import com.gmalandrakis.mnemosyne.core.MnemoService;
+import com.gmalandrakis.mnemosyne.memory.HeapPressureMonitor;
+import com.gmalandrakis.mnemosyne.memory.MemoryBudget;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.aop.Advisor;
 import org.springframework.aop.aspectj.AspectJExpressionPointcut;
 import org.springframework.aop.support.DefaultPointcutAdvisor;
@@ -12,11 +17,21 @@ import org.springframework.context.annotation.EnableAspectJAutoProxy;
 @Configuration
 @ComponentScan
 @EnableAspectJAutoProxy
-public class MnemosyneSpringConf {
+public class MnemosyneSpringConf implements DisposableBean {
     private final MnemoService mnemoService = new MnemoService();
     private final SpringInterceptor springInterceptor = new SpringInterceptor(mnemoService);
+    /**
+     * If the application defines a {@link MemoryBudget MemoryBudget} bean, all the caches draw their weight from it.
+     * If it defines a {@link HeapPressureMonitor HeapPressureMonitor} bean, all the caches are shrunk while the heap is under pressure.
+     * If it defines {@link ValueCodec ValueCodec} beans, they are registered as the codecs of their types, used by the tiers, the snapshots, and the caches
+     * that keep their values off-heap. Whether the values are kept off-heap is decided by the caches themselves, via {@code @Cached(offHeap = true)}.
+     */
     @Bean
-    public SpringBeanPostProcessor springBeanPostProcessor() {
+    public SpringBeanPostProcessor springBeanPostProcessor(ObjectProvider<MemoryBudget> memoryBudget, ObjectProvider<HeapPressureMonitor> heapPressureMonitor,
+                                                           ObjectProvider<ValueCodec<?>> valueCodecs) {
+        memoryBudget.ifAvailable(mnemoService::setMemoryBudget);
+        heapPressureMonitor.ifAvailable(mnemoService::setHeapPressureMonitor);
+        valueCodecs.orderedStream().forEach(mnemoService::registerValueCodec);
         return new SpringBeanPostProcessor(mnemoService);
     }
 
@@ -30,4 +45,12 @@ public class MnemosyneSpringConf {
         return new DefaultPointcutAdvisor(pointcut, springInterceptor);
     }
 
+    /**
+     * Closes the journal, if any, on the shutdown of the context.
+     */
+    @Override
+    public void destroy() {
+        mnemoService.close();
+    }
+
 }
@@ -0,0 +1,40 @@
+package com.gmalandrakis.mnemosyne.structures;
+
+import com.gmalandrakis.mnemosyne.utils.Tickers;
+
+import java.util.Collection;
+import java.util.Collections;
+
+/**
+ * The wrapper of the ID of a key in the caches of single values. The caches create it via {@link #of(Object, int, boolean)}, which returns
+ * a {@link SingleIdWrapper} if the hits are counted, or a wrapper without a hit counter otherwise.
+ *
+ * @author George Malandrakis (malandrakisgeo@gmail.com)
+ */
+public abstract class AbstractSingleIdWrapper<ID> extends IdWrapper<ID> {
+    ID singleId;
+
+    protected AbstractSingleIdWrapper(ID singleId, int generation) {
+        this.singleId = singleId;
+        this.createdOn = Tickers.now();
+        this.generation = generation;
+    }
+
+    /**
+     * @param generation The generation of the cache the wrapper is created in.
+     * @param countsHits Whether the wrapper counts the hits. Counting takes some more memory per entry.
+     */
+    public static <ID> AbstractSingleIdWrapper<ID> of(ID singleId, int generation, boolean countsHits) {
+        return countsHits ? new SingleIdWrapper<>(singleId, generation) : new PlainSingleIdWrapper<>(singleId, generation);
+    }
+
+    public ID getId() {
+        recordAccess();
+        return singleId;
+    }
+
+    @Override
+    public Collection<ID> peekIds() {
+        return Collections.singletonList(singleId);
+    }
+}
@@ -2,12 +2,15 @@ package com.gmalandrakis.mnemosyne.structures;
 
 
 import com.gmalandrakis.mnemosyne.cache.AbstractMnemosyneCache;
+import com.gmalandrakis.mnemosyne.memory.DeepSizeWeigher;
+import com.gmalandrakis.mnemosyne.memory.Weigher;
 
 /**
  * @see com.gmalandrakis.mnemosyne.annotations.Cached Cached
  */
 public class CacheParameters {
 
+    @SuppressWarnings("rawtypes") //the class literals of the generic caches, e.g. FIFOCache.class, are raw
     private Class<? extends AbstractMnemosyneCache> cacheType;
     private String cacheName;
     private long timeToLive;
@@ -19,6 +22,25 @@ public class CacheParameters {
     private short evictionStepPercentage;
     private boolean handleCollectionKeysSeparately;
     private boolean returnsCollection;
+    private long maxWeight;
+    private Class<? extends Weigher<?>> weigher = DeepSizeWeigher.class;
+    private short minBudgetShare;
+    private short maxBudgetShare = 100;
+    private int shrinkPriority;
+    private ReferenceMode valueReferences = ReferenceMode.STRONG;
+    private boolean offHeap;
+    private long secondLevelTierSize;
+    private long diskTierSize;
+    private long refreshAfter;
+    private long staleWhileRevalidate;
+    private long staleIfError;
+    private long loadTimeout;
+    private long negativeTimeToLive;
+    private int negativeCapacity;
+    private String batchLoader;
+    private long batchWindow;
+    private int maxBatchSize;
+    private Class<?> idType;
 
 
     public String getCacheName() {
@@ -61,10 +83,12 @@ public class CacheParameters {
         this.countdownFromCreation = countdownFromCreation;
     }
 
+    @SuppressWarnings("rawtypes")
     public Class<? extends AbstractMnemosyneCache> getCacheType() {
         return cacheType;
     }
 
+    @SuppressWarnings("rawtypes")
     public void setCacheType(Class<? extends AbstractMnemosyneCache> cacheType) {
         this.cacheType = cacheType;
     }
@@ -108,4 +132,159 @@ public class CacheParameters {
     public void setReturnsCollection(boolean returnsCollection) {
         this.returnsCollection = returnsCollection;
     }
+
+    public long getMaxWeight() {
+        return maxWeight;
+    }
+
+    public void setMaxWeight(long maxWeight) {
+        this.maxWeight = maxWeight;
+    }
+
+    public Class<? extends Weigher<?>> getWeigher() {
+        return weigher;
+    }
+
+    public void setWeigher(Class<? extends Weigher<?>> weigher) {
+        this.weigher = weigher;
+    }
+
+    public short getMinBudgetShare() {
+        return minBudgetShare;
+    }
+
+    public void setMinBudgetShare(short minBudgetShare) {
+        this.minBudgetShare = minBudgetShare;
+    }
+
+    public short getMaxBudgetShare() {
+        return maxBudgetShare;
+    }
+
+    public void setMaxBudgetShare(short maxBudgetShare) {
+        this.maxBudgetShare = maxBudgetShare;
+    }
+
+    public int getShrinkPriority() {
+        return shrinkPriority;
+    }
+
+    public void setShrinkPriority(int shrinkPriority) {
+        this.shrinkPriority = shrinkPriority;
+    }
+
+    public ReferenceMode getValueReferences() {
+        return valueReferences;
+    }
+
+    public void setValueReferences(ReferenceMode valueReferences) {
+        this.valueReferences = valueReferences;
+    }
+
+    public boolean isOffHeap() {
+        return offHeap;
+    }
+
+    public void setOffHeap(boolean offHeap) {
+        this.offHeap = offHeap;
+    }
+
+    public long getSecondLevelTierSize() {
+        return secondLevelTierSize;
+    }
+
+    public void setSecondLevelTierSize(long secondLevelTierSize) {
+        this.secondLevelTierSize = secondLevelTierSize;
+    }
+
+    public long getDiskTierSize() {
+        return diskTierSize;
+    }
+
+    public void setDiskTierSize(long diskTierSize) {
+        this.diskTierSize = diskTierSize;
+    }
+
+    public long getRefreshAfter() {
+        return refreshAfter;
+    }
+
+    public void setRefreshAfter(long refreshAfter) {
+        this.refreshAfter = refreshAfter;
+    }
+
+    public long getStaleWhileRevalidate() {
+        return staleWhileRevalidate;
+    }
+
+    public void setStaleWhileRevalidate(long staleWhileRevalidate) {
+        this.staleWhileRevalidate = staleWhileRevalidate;
+    }
+
+    public long getStaleIfError() {
+        return staleIfError;
+    }
+
+    public void setStaleIfError(long staleIfError) {
+        this.staleIfError = staleIfError;
+    }
+
+    public long getLoadTimeout() {
+        return loadTimeout;
+    }
+
+    public void setLoadTimeout(long loadTimeout) {
+        this.loadTimeout = loadTimeout;
+    }
+
+    public long getNegativeTimeToLive() {
+        return negativeTimeToLive;
+    }
+
+    public void setNegativeTimeToLive(long negativeTimeToLive) {
+        this.negativeTimeToLive = negativeTimeToLive;
+    }
+
+    public int getNegativeCapacity() {
+        return negativeCapacity;
+    }
+
+    public void setNegativeCapacity(int negativeCapacity) {
+        this.negativeCapacity = negativeCapacity;
+    }
+
+    public String getBatchLoader() {
+        return batchLoader;
+    }
+
+    public void setBatchLoader(String batchLoader) {
+        this.batchLoader = batchLoader;
+    }
+
+    public long getBatchWindow() {
+        return batchWindow;
+    }
+
+    public void setBatchWindow(long batchWindow) {
+        this.batchWindow = batchWindow;
+    }
+
+    public int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    public void setMaxBatchSize(int maxBatchSize) {
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    /**
+     * @return The type of the IDs of the values, or null if it could not be deduced.
+     */
+    public Class<?> getIdType() {
+        return idType;
+    }
+
+    public void setIdType(Class<?> idType) {
+        this.idType = idType;
+    }
 }
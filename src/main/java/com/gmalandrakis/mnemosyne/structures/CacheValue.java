@@ -1,49 +1,138 @@
 package com.gmalandrakis.mnemosyne.structures;
 
+import com.gmalandrakis.mnemosyne.utils.Tickers;
+
+import java.lang.ref.Reference;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
 /**
  * A wrapper for cached values along with basic metadata.
+ * <p>
+ * Since there is one for every value, it is kept small: the timestamps other than the creation time are stored as {@link CompactTimestamp CompactTimestamps},
+ * and the number of uses is updated atomically instead of under the monitor of the wrapper.
+ * <p>
+ * A wrapper the orphan sweeper decided to remove is {@link #retire() retired} first, atomically with respect to the changes of the number of uses,
+ * so that no cache can start using a value while it is being removed.
  *
  * @param <T> The type of the cached value
  * @author George Malandrakis (malandrakisgeo@gmail.com)
  */
 public class CacheValue<T> {
-    private int cachesUsingValue;
-    private long createdOn;
-    private long lastUpdated;
+    @SuppressWarnings("rawtypes") //the updater of a generic class is created from its' raw class literal
+    private static final AtomicIntegerFieldUpdater<CacheValue> CACHES_USING_VALUE = AtomicIntegerFieldUpdater.newUpdater(CacheValue.class, "cachesUsingValue");
+
+    /**
+     * The number of uses of a retired wrapper.
+     */
+    private static final int RETIRED = Integer.MIN_VALUE;
+
+    private volatile int cachesUsingValue;
+    private final long createdOn;
+    private int lastUpdated;
+    private volatile int unusedSince;
     private T value;
+    private long weight;
+    /**
+     * Set, instead of the value, if the ValuePool holds its' values through soft or weak references.
+     */
+    private volatile Reference<T> reference;
 
 
     public CacheValue(T t, boolean addedPreemptively) {
-        createdOn = System.currentTimeMillis();
+        createdOn = Tickers.now();
         value = t;
         cachesUsingValue = addedPreemptively ? 0 : 1; //manually increased or decreased afterwards by the ValuePool. We set it to zero if the CacheValue was created preemptively (i.e. not for a particular cache)
     }
 
     public CacheValue(T t) {
-        createdOn = System.currentTimeMillis();
+        createdOn = Tickers.now();
         value = t;
         cachesUsingValue =  1; //manually increased or decreased afterwards by the ValuePool. We set it to zero if the CacheValue was created preemptively (i.e. not for a particular cache)
     }
 
-    public synchronized int increaseNumberOfUses() {
-        return ++cachesUsingValue;
+    /**
+     * @return False if the wrapper is retired, in which case the ValuePool has to replace it with a new one.
+     */
+    public boolean tryIncreaseNumberOfUses() {
+        while (true) {
+            var uses = cachesUsingValue;
+            if (uses == RETIRED) {
+                return false;
+            }
+            if (CACHES_USING_VALUE.compareAndSet(this, uses, uses + 1)) {
+                return true;
+            }
+        }
     }
 
-    public synchronized int decreaseNumberOfUses() {
-        return --cachesUsingValue;
+    /**
+     * @return The remaining number of uses, or zero if the wrapper is retired.
+     */
+    public int decreaseNumberOfUses() {
+        while (true) {
+            var uses = cachesUsingValue;
+            if (uses == RETIRED) {
+                return 0;
+            }
+            if (CACHES_USING_VALUE.compareAndSet(this, uses, uses - 1)) {
+                if (uses - 1 <= 0) {
+                    unusedSince = CompactTimestamp.encode(createdOn, Tickers.now());
+                }
+                return uses - 1;
+            }
+        }
     }
 
+    /**
+     * Marks the wrapper as about to be removed, provided that no cache uses it.
+     *
+     * @return False if a cache uses the wrapper, or it is retired already.
+     */
+    public boolean retire() {
+        while (true) {
+            var uses = cachesUsingValue;
+            if (uses > 0 || uses == RETIRED) {
+                return false;
+            }
+            if (CACHES_USING_VALUE.compareAndSet(this, uses, RETIRED)) {
+                return true;
+            }
+        }
+    }
+
+    public boolean isRetired() {
+        return cachesUsingValue == RETIRED;
+    }
+
+    /**
+     * @return The value, or null if it was held through a reference that has been cleared by the GC.
+     */
     public T getValue() {
-        return value;
+        var ref = reference;
+        return ref != null ? ref.get() : value;
     }
 
     public int getNumberOfUses() {
-        return cachesUsingValue;
+        var uses = cachesUsingValue;
+        return uses == RETIRED ? 0 : uses;
     }
 
     public synchronized void updateValue(T t) {
-        lastUpdated = System.currentTimeMillis();
+        lastUpdated = CompactTimestamp.encode(createdOn, Tickers.now());
         this.value = t;
+        this.reference = null; //the ValuePool wraps the new value again if necessary
+    }
+
+    /**
+     * Holds the value only through the given reference from now on.
+     */
+    public synchronized void holdThrough(Reference<T> reference) {
+        this.reference = reference;
+        this.value = null;
+    }
+
+    public boolean isHeldThrough(Reference<?> reference) {
+        return this.reference == reference;
     }
 
 
@@ -51,7 +140,28 @@ public class CacheValue<T> {
         return createdOn;
     }
 
+    /**
+     * @return The timestamp of the last update, or of the creation if the value was never updated.
+     */
     public long getLastUpdated() {
-        return lastUpdated;
+        return CompactTimestamp.decode(createdOn, lastUpdated);
+    }
+
+    /**
+     * @return The timestamp of the last time the number of uses dropped to zero, or of the creation. Meaningful only while the number of uses is zero.
+     */
+    public long getUnusedSince() {
+        return CompactTimestamp.decode(createdOn, unusedSince);
+    }
+
+    /**
+     * @return The weight of the value as calculated by the ValuePool, or zero if the ValuePool does not weigh its' values.
+     */
+    public long getWeight() {
+        return weight;
+    }
+
+    public void setWeight(long weight) {
+        this.weight = weight;
     }
 }
@@ -1,35 +1,81 @@
 package com.gmalandrakis.mnemosyne.structures;
 
+import com.gmalandrakis.mnemosyne.utils.Tickers;
+
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashSet;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 
+/**
+ * The IDs of a key of a collection cache, kept in a {@link CompactIdSet} that is replaced as a whole on every update.
+ * Reads never lock, while updates are serialized per wrapper.
+ */
 public class CollectionIdWrapper<ID> extends IdWrapper<ID> {
-    Collection<ID> collection  = Collections.synchronizedSet(new HashSet<ID>());
+    @SuppressWarnings("rawtypes") //the updater of a generic class is created from its' raw class literal
+    private static final AtomicIntegerFieldUpdater<CollectionIdWrapper> HITS = AtomicIntegerFieldUpdater.newUpdater(CollectionIdWrapper.class, "hits");
+
+    private volatile CompactIdSet<ID> collection = CompactIdSet.empty();
+    private volatile int hits;
 
     public CollectionIdWrapper(){
         //should only be used only in e.g. computeIfAbsent
-        this.createdOn = System.currentTimeMillis();
-        this.lastAccessed = createdOn;
+        this.createdOn = Tickers.now();
+    }
+
+    public CollectionIdWrapper(int generation){
+        this();
+        this.generation = generation;
     }
 
     public CollectionIdWrapper(Collection<ID> objs) {
-        this.collection = Collections.synchronizedSet(new HashSet<ID>(objs));
-        this.createdOn = System.currentTimeMillis();
-        this.lastAccessed = createdOn;
+        this.collection = CompactIdSet.of(objs);
+        this.createdOn = Tickers.now();
+    }
+
+    public synchronized void addAllToCollectionOrUpdate(Collection<ID> id) {
+        collection = collection.withAll(id);
+    }
+
+    public synchronized boolean addToCollectionOrUpdate(ID id) {
+        var current = collection;
+        collection = current.withAll(Collections.singletonList(id));
+        return collection != current; //hits and timestamps are updated only when requesting the IDs.
     }
 
-    public void addAllToCollectionOrUpdate(Collection<ID> id) {
-        collection.addAll(id);
+    /**
+     * @return True if the ID was present.
+     */
+    public synchronized boolean removeFromCollection(ID id) {
+        var current = collection;
+        collection = current.without(id);
+        return collection != current;
     }
 
-    public boolean addToCollectionOrUpdate(ID id) {
-        return collection.add(id); //hits and timestamps are updated only when requesting the IDs.
+    public boolean isEmpty() {
+        return collection.isEmpty();
     }
 
+    /**
+     * @return An immutable snapshot of the IDs.
+     */
     public Collection<ID> getIds() {
-        hits += 1;
-        this.lastAccessed = System.currentTimeMillis();
+        HITS.incrementAndGet(this);
+        updateLastAccessed();
+        return collection;
+    }
+
+    @Override
+    public void increaseHits() {
+        HITS.incrementAndGet(this);
+    }
+
+    @Override
+    public int getHits() {
+        return hits;
+    }
+
+    @Override
+    public Collection<ID> peekIds() {
         return collection;
     }
 }
@@ -0,0 +1,228 @@
+package com.gmalandrakis.mnemosyne.structures;
+
+import java.util.AbstractCollection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.NoSuchElementException;
+
+/**
+ * An immutable set of IDs, stored compactly: Long and Integer IDs as a sorted long array searched by binary search,
+ * and every other type of IDs as a packed array, searched linearly when small and through an open-addressing index of the positions otherwise.
+ * <p>
+ * Updates return a new set, hence the sets can be read by any number of threads without locking. Every update copies the whole set,
+ * so the IDs should be added in batches whenever possible.
+ *
+ * @author George Malandrakis (malandrakisgeo@gmail.com)
+ */
+public abstract class CompactIdSet<ID> extends AbstractCollection<ID> {
+
+    private static final CompactIdSet<?> EMPTY = new ObjectIdSet<>(new Object[0]);
+
+    @SuppressWarnings("unchecked")
+    public static <ID> CompactIdSet<ID> empty() {
+        return (CompactIdSet<ID>) EMPTY;
+    }
+
+    /**
+     * @return A set of the distinct non-null IDs of the collection.
+     */
+    public static <ID> CompactIdSet<ID> of(Collection<? extends ID> ids) {
+        if (ids.isEmpty()) {
+            return empty();
+        }
+        var numericType = numericTypeOf(ids);
+        if (numericType != null) {
+            var values = new long[ids.size()];
+            int size = 0;
+            for (ID id : ids) {
+                values[size++] = ((Number) id).longValue();
+            }
+            Arrays.sort(values);
+            size = 0;
+            for (int i = 0; i < values.length; i++) { //removes the duplicates
+                if (i == 0 || values[i] != values[i - 1]) {
+                    values[size++] = values[i];
+                }
+            }
+            return new NumericIdSet<>(size == values.length ? values : Arrays.copyOf(values, size), numericType == Integer.class);
+        }
+        var distinct = new LinkedHashSet<ID>(ids);
+        distinct.remove(null);
+        return distinct.isEmpty() ? empty() : new ObjectIdSet<>(distinct.toArray());
+    }
+
+    /**
+     * @return A set with the IDs of this one and the given ones, or this set itself if it contains all of them already.
+     */
+    public CompactIdSet<ID> withAll(Collection<? extends ID> ids) {
+        var added = new ArrayList<ID>();
+        for (ID id : ids) {
+            if (id != null && !contains(id)) {
+                added.add(id);
+            }
+        }
+        if (added.isEmpty()) {
+            return this;
+        }
+        var all = new ArrayList<ID>(size() + added.size());
+        all.addAll(this);
+        all.addAll(added);
+        return of(all);
+    }
+
+    /**
+     * @return A set without the given ID, or this set itself if it does not contain it.
+     */
+    public CompactIdSet<ID> without(Object id) {
+        if (!contains(id)) {
+            return this;
+        }
+        var remaining = new ArrayList<ID>(size() - 1);
+        for (ID existing : this) {
+            if (!existing.equals(id)) {
+                remaining.add(existing);
+            }
+        }
+        return of(remaining);
+    }
+
+    /**
+     * @return Long.class or Integer.class if all the IDs are of that type, or null otherwise.
+     */
+    private static Class<?> numericTypeOf(Collection<?> ids) {
+        Class<?> type = null;
+        for (Object id : ids) {
+            if (id == null) {
+                return null;
+            }
+            var idType = id.getClass();
+            if ((idType != Long.class && idType != Integer.class) || (type != null && type != idType)) {
+                return null;
+            }
+            type = idType;
+        }
+        return type;
+    }
+
+    private static final class NumericIdSet<ID> extends CompactIdSet<ID> {
+        private final long[] values;
+        private final boolean integers;
+
+        NumericIdSet(long[] values, boolean integers) {
+            this.values = values;
+            this.integers = integers;
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            if (!(integers ? o instanceof Integer : o instanceof Long)) {
+                return false;
+            }
+            return Arrays.binarySearch(values, ((Number) o).longValue()) >= 0;
+        }
+
+        @Override
+        public int size() {
+            return values.length;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public Iterator<ID> iterator() {
+            return new Iterator<>() {
+                private int next = 0;
+
+                @Override
+                public boolean hasNext() {
+                    return next < values.length;
+                }
+
+                @Override
+                public ID next() {
+                    if (next >= values.length) {
+                        throw new NoSuchElementException();
+                    }
+                    var value = values[next++];
+                    if (integers) {
+                        return (ID) Integer.valueOf((int) value);
+                    }
+                    return (ID) Long.valueOf(value);
+                }
+            };
+        }
+    }
+
+    private static final class ObjectIdSet<ID> extends CompactIdSet<ID> {
+
+        /**
+         * The size up to which the IDs are searched linearly, since comparing a few IDs is cheaper than hashing one.
+         */
+        private static final int LINEAR_SEARCH_THRESHOLD = 8;
+
+        private final Object[] ids;
+
+        /**
+         * The positions of the IDs plus one, by the hash of the IDs, with zero marking the free slots. Null if the set is small.
+         */
+        private final int[] index;
+
+        ObjectIdSet(Object[] ids) {
+            this.ids = ids;
+            if (ids.length <= LINEAR_SEARCH_THRESHOLD) {
+                this.index = null;
+                return;
+            }
+            this.index = new int[Integer.highestOneBit(ids.length) << 2]; //at most half full
+            var mask = index.length - 1;
+            for (int i = 0; i < ids.length; i++) {
+                var slot = spread(ids[i].hashCode()) & mask;
+                while (index[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                index[slot] = i + 1;
+            }
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            if (o == null) {
+                return false;
+            }
+            if (index == null) {
+                for (Object id : ids) {
+                    if (id.equals(o)) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+            var mask = index.length - 1;
+            var slot = spread(o.hashCode()) & mask;
+            while (index[slot] != 0) {
+                if (ids[index[slot] - 1].equals(o)) {
+                    return true;
+                }
+                slot = (slot + 1) & mask;
+            }
+            return false;
+        }
+
+        @Override
+        public int size() {
+            return ids.length;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public Iterator<ID> iterator() {
+            return (Iterator<ID>) Arrays.asList(ids).iterator();
+        }
+
+        private static int spread(int hash) {
+            return hash ^ (hash >>> 16);
+        }
+    }
+}
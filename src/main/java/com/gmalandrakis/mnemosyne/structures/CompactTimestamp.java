@@ -0,0 +1,32 @@
+package com.gmalandrakis.mnemosyne.structures;
+
+/**
+ * Encodes timestamps as ints, by their offset from a base timestamp kept as a long, e.g. the creation time of an entry.
+ * Offsets of up to 2^30 milliseconds (about 12 days) keep millisecond precision, and larger ones are kept in seconds, up to about 34 years.
+ * Timestamps before the base are encoded as the base itself.
+ *
+ * @author George Malandrakis (malandrakisgeo@gmail.com)
+ */
+final class CompactTimestamp {
+
+    private static final long MAX_OFFSET = (1L << 30) - 1;
+
+    private CompactTimestamp() {
+    }
+
+    static int encode(long base, long timestamp) {
+        var offset = timestamp - base;
+        if (offset <= 0) {
+            return 0;
+        }
+        if (offset <= MAX_OFFSET) {
+            return (int) (offset << 1);
+        }
+        return (int) (Math.min(offset / 1000, MAX_OFFSET) << 1) | 1; //the lowest bit marks the offsets in seconds
+    }
+
+    static long decode(long base, int encoded) {
+        long offset = encoded >>> 1;
+        return base + ((encoded & 1) == 0 ? offset : offset * 1000);
+    }
+}
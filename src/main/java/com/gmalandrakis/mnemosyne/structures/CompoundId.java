@@ -1,8 +1,14 @@
 package com.gmalandrakis.mnemosyne.structures;
 
+import java.io.Serializable;
 import java.util.Arrays;
 
-public class CompoundId {
+public class CompoundId implements Serializable {
+
+    /**
+     * The value computed for the class when snapshots started storing it, so that existing snapshots stay readable.
+     */
+    private static final long serialVersionUID = -4222508750881668805L;
 
     Object[] idObjects;
 
@@ -1,5 +1,6 @@
 package com.gmalandrakis.mnemosyne.structures;
 
+import java.io.Serializable;
 import java.util.Arrays;
 
 /**
@@ -10,7 +11,12 @@ import java.util.Arrays;
  *
  * @author George Malandrakis (malandrakisgeo@gmail.com)
  */
-public class CompoundKey {
+public class CompoundKey implements Serializable {
+
+    /**
+     * The value computed for the class when snapshots started storing it, so that existing snapshots stay readable.
+     */
+    private static final long serialVersionUID = -1811786622791303139L;
 
     Object[] keyObjects;
 
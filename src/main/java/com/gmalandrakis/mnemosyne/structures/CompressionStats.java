@@ -0,0 +1,85 @@
+package com.gmalandrakis.mnemosyne.structures;
+
+/**
+ * The counters of a ValuePool that stores its' large values compressed, showing the memory saved and the CPU time spent for it.
+ *
+ * @author George Malandrakis (malandrakisgeo@gmail.com)
+ * @see com.gmalandrakis.mnemosyne.core.CompressingValuePool
+ */
+public class CompressionStats {
+    private final int compressedValues;
+    private final long compressedBytes;
+    private final long uncompressedBytes;
+    private final long compressionNanos;
+    private final long decompressions;
+    private final long decompressionNanos;
+    private final long decompressedCacheHits;
+
+    public CompressionStats(int compressedValues, long compressedBytes, long uncompressedBytes, long compressionNanos,
+                            long decompressions, long decompressionNanos, long decompressedCacheHits) {
+        this.compressedValues = compressedValues;
+        this.compressedBytes = compressedBytes;
+        this.uncompressedBytes = uncompressedBytes;
+        this.compressionNanos = compressionNanos;
+        this.decompressions = decompressions;
+        this.decompressionNanos = decompressionNanos;
+        this.decompressedCacheHits = decompressedCacheHits;
+    }
+
+    /**
+     * @return The number of values currently stored compressed.
+     */
+    public int getCompressedValues() {
+        return compressedValues;
+    }
+
+    /**
+     * @return The total size in bytes of the values currently stored compressed.
+     */
+    public long getCompressedBytes() {
+        return compressedBytes;
+    }
+
+    /**
+     * @return The total size in bytes the values currently stored compressed had in their encoded form before compression.
+     */
+    public long getUncompressedBytes() {
+        return uncompressedBytes;
+    }
+
+    public long getBytesSaved() {
+        return uncompressedBytes - compressedBytes;
+    }
+
+    /**
+     * @return The total time spent encoding and compressing the values stored compressed. The values left uncompressed are not counted.
+     */
+    public long getCompressionNanos() {
+        return compressionNanos;
+    }
+
+    /**
+     * @return The number of reads that had to decompress a value.
+     */
+    public long getDecompressions() {
+        return decompressions;
+    }
+
+    public long getDecompressionNanos() {
+        return decompressionNanos;
+    }
+
+    /**
+     * @return The number of reads of compressed values served by the cache of decompressed values.
+     */
+    public long getDecompressedCacheHits() {
+        return decompressedCacheHits;
+    }
+
+    @Override
+    public String toString() {
+        return "CompressionStats{compressedValues=" + compressedValues + ", compressedBytes=" + compressedBytes + ", uncompressedBytes=" + uncompressedBytes
+                + ", compressionNanos=" + compressionNanos + ", decompressions=" + decompressions + ", decompressionNanos=" + decompressionNanos
+                + ", decompressedCacheHits=" + decompressedCacheHits + "}";
+    }
+}
@@ -0,0 +1,59 @@
+package com.gmalandrakis.mnemosyne.structures;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+
+/**
+ * The {@link IdMap} of the IDs that are not stored as primitives, backed by a ConcurrentHashMap.
+ *
+ * @author George Malandrakis (malandrakisgeo@gmail.com)
+ */
+public class ConcurrentIdMap<ID, V> implements IdMap<ID, V> {
+
+    private final ConcurrentHashMap<ID, V> map = new ConcurrentHashMap<>();
+
+    @Override
+    public V get(Object id) {
+        return map.get(id);
+    }
+
+    @Override
+    public V put(ID id, V value) {
+        return map.put(id, value);
+    }
+
+    @Override
+    public V remove(Object id) {
+        return map.remove(id);
+    }
+
+    @Override
+    public boolean remove(ID id, V value) {
+        var removed = new boolean[1];
+        map.computeIfPresent(id, (k, v) -> {
+            if (v != value) {
+                return v;
+            }
+            removed[0] = true;
+            return null;
+        });
+        return removed[0];
+    }
+
+    @Override
+    public int size() {
+        return map.size();
+    }
+
+    @Override
+    public void forEach(BiConsumer<ID, V> action) {
+        map.forEach(action);
+    }
+
+    @Override
+    public Iterator<Map.Entry<ID, V>> entryIterator() {
+        return map.entrySet().iterator();
+    }
+}
@@ -0,0 +1,73 @@
+package com.gmalandrakis.mnemosyne.structures;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.BiConsumer;
+
+/**
+ * A concurrent map from IDs to values, used by the ValuePools and the caches for the structures that hold an entry for every ID.
+ * <p>
+ * Most IDs are Longs, Integers or UUIDs, which a ConcurrentHashMap stores boxed in nodes of their own.
+ * For these types {@link #forIdType(Class)} returns maps that store the IDs as primitives in open-addressing tables instead.
+ * With a million Long IDs, a {@link LongIdMap} takes about 24 bytes per entry, and a ConcurrentHashMap about 64, not counting the values.
+ * Lookups take about as long as in a ConcurrentHashMap (see IdMapBenchmark in the tests).
+ * <p>
+ * Like in a ConcurrentHashMap, neither the IDs nor the values can be null, and the iterators are weakly consistent.
+ *
+ * @author George Malandrakis (malandrakisgeo@gmail.com)
+ */
+public interface IdMap<ID, V> {
+
+    /**
+     * @param idType The type of the IDs, or null if unknown.
+     * @return A {@link LongIdMap} for Long and Integer IDs, a {@link UuidIdMap} for UUIDs, or a {@link ConcurrentIdMap} for every other type.
+     */
+    @SuppressWarnings("unchecked")
+    static <ID, V> IdMap<ID, V> forIdType(Class<?> idType) {
+        if (idType == Long.class || idType == long.class) {
+            return (IdMap<ID, V>) new LongIdMap<Long, V>(false);
+        }
+        if (idType == Integer.class || idType == int.class) {
+            return (IdMap<ID, V>) new LongIdMap<Integer, V>(true);
+        }
+        if (idType == UUID.class) {
+            return (IdMap<ID, V>) new UuidIdMap<V>();
+        }
+        return new ConcurrentIdMap<>();
+    }
+
+    /**
+     * Accepts any object like {@link Map#get(Object)}, returning null for the objects that are not IDs of the map.
+     */
+    V get(Object id);
+
+    default V getOrDefault(Object id, V defaultValue) {
+        var value = get(id);
+        return value == null ? defaultValue : value;
+    }
+
+    /**
+     * @return The previous value, or null if the ID was absent.
+     */
+    V put(ID id, V value);
+
+    /**
+     * @return The removed value, or null if the ID was absent.
+     */
+    V remove(Object id);
+
+    /**
+     * Removes the ID only if it is mapped to the given value, compared by identity.
+     */
+    boolean remove(ID id, V value);
+
+    int size();
+
+    void forEach(BiConsumer<ID, V> action);
+
+    /**
+     * @return A weakly consistent iterator: it never throws on concurrent modifications, and may or may not reflect them.
+     */
+    Iterator<Map.Entry<ID, V>> entryIterator();
+}
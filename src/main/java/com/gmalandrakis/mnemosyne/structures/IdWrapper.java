@@ -1,5 +1,9 @@
 package com.gmalandrakis.mnemosyne.structures;
 
+import com.gmalandrakis.mnemosyne.utils.Tickers;
+
+import java.util.Collection;
+
 /**
  * The structure used to wrap IDs internally in implementations of {@link com.gmalandrakis.mnemosyne.cache.AbstractGenericCache AbstractGenericCache},
  * along with metadata such as creation time, last access time, and number of hits.
@@ -13,14 +17,16 @@ package com.gmalandrakis.mnemosyne.structures;
 public abstract class IdWrapper<ID> {
 
     /**
-     * Timestamp of last access.
+     * Timestamp of last access, stored as a {@link CompactTimestamp} relative to the creation time.
      * <p>
      * In the default cache implementations provided by mnemosyne, this will be increased only on explicit gets, not on updates. The logic behind
      * this choice is that updates can come from automated procedures and are not synonymous to explicit accesses by users.
      * <p>
      * You may use explicit calls to updateLastAccessed() in custom implementations of AbstractMnemosyneCache for updating the timestamp even when updating the value.
+     * <p>
+     * Kept by every wrapper, including the ones of caches counting down from creation, since the snapshots and the refreshes keep it too.
      */
-    long lastAccessed;
+    int lastAccessed;
 
     /**
      * Timestamp of creation time.
@@ -28,32 +34,74 @@ public abstract class IdWrapper<ID> {
     long createdOn;
 
     /**
-     * Number of cache hits.
-     * <p>
-     * By default, this will be increased only on explicit gets, not on updates. The logic behind
-     * this choice is that updates can come from automated procedures and are not synonymous to explicit accesses by users.
+     * The generation of the cache at the time the wrapper was created.
      * <p>
-     * You may use explicit calls to increaseHits() in custom implementations of AbstractMnemosyneCache for updating the timestamp even when updating the value.
+     * Invalidating a cache only increases the generation of the cache, so wrappers of an older generation are considered invalidated
+     * until they are reclaimed.
      */
-    int hits;
+    int generation;
 
     public void updateLastAccessed() {
-        this.lastAccessed = System.currentTimeMillis();
+        this.lastAccessed = CompactTimestamp.encode(createdOn, Tickers.now());
     }
 
     public long getLastAccessed() {
-        return lastAccessed;
+        return CompactTimestamp.decode(createdOn, lastAccessed);
     }
 
-    public synchronized void increaseHits() {
-        hits += 1;
+    /**
+     * Increases the number of cache hits, if the wrapper counts them. Only the {@link SingleIdWrapper} and the {@link CollectionIdWrapper} do, atomically,
+     * while the wrappers of the caches that never read the hits have no counter, so that they do not pay for one in every entry.
+     * <p>
+     * By default, the hits are increased only on explicit gets, not on updates. The logic behind
+     * this choice is that updates can come from automated procedures and are not synonymous to explicit accesses by users.
+     * <p>
+     * You may use explicit calls to increaseHits() in custom implementations of AbstractMnemosyneCache for updating the number even when updating the value.
+     */
+    public void increaseHits() {
     }
 
+    /**
+     * @return The number of cache hits, or zero if the wrapper does not count them.
+     */
     public int getHits() {
-        return hits;
+        return 0;
     }
 
     public long getCreatedOn() {
         return createdOn;
     }
+
+    public int getGeneration() {
+        return generation;
+    }
+
+    /**
+     * @return The IDs of the wrapper, without counting it as an access.
+     */
+    public abstract Collection<ID> peekIds();
+
+    /**
+     * Sets the timestamps of a wrapper restored from a snapshot, so that its' time to live keeps counting from the original ones.
+     */
+    public void restoreTimestamps(long createdOn, long lastAccessed) {
+        this.createdOn = createdOn;
+        this.lastAccessed = CompactTimestamp.encode(createdOn, lastAccessed);
+    }
+
+    /**
+     * Restarts the countdown from creation, e.g. because the values of the key were just reloaded. The last access is kept, unless it precedes the restart.
+     */
+    public void markRefreshed() {
+        var accessed = getLastAccessed();
+        this.createdOn = Tickers.now();
+        this.lastAccessed = CompactTimestamp.encode(createdOn, accessed);
+    }
+
+    /**
+     * Called on every explicit get of the IDs.
+     */
+    protected void recordAccess() {
+        updateLastAccessed();
+    }
 }
@@ -0,0 +1,45 @@
+package com.gmalandrakis.mnemosyne.structures;
+
+/**
+ * The counters of the interning of one type of sub-objects of the cached values.
+ *
+ * @author George Malandrakis (malandrakisgeo@gmail.com)
+ * @see com.gmalandrakis.mnemosyne.memory.ValueInterner
+ */
+public class InterningStats {
+    private final int canonicalInstances;
+    private final long replacedInstances;
+    private final long bytesSaved;
+
+    public InterningStats(int canonicalInstances, long replacedInstances, long bytesSaved) {
+        this.canonicalInstances = canonicalInstances;
+        this.replacedInstances = replacedInstances;
+        this.bytesSaved = bytesSaved;
+    }
+
+    /**
+     * @return The number of distinct instances currently shared by the values.
+     */
+    public int getCanonicalInstances() {
+        return canonicalInstances;
+    }
+
+    /**
+     * @return The number of instances replaced by an equal canonical one so far.
+     */
+    public long getReplacedInstances() {
+        return replacedInstances;
+    }
+
+    /**
+     * @return The estimated size in bytes of all the instances replaced so far, i.e. the memory saved as long as the values referring to them are cached.
+     */
+    public long getBytesSaved() {
+        return bytesSaved;
+    }
+
+    @Override
+    public String toString() {
+        return "InterningStats{canonicalInstances=" + canonicalInstances + ", replacedInstances=" + replacedInstances + ", bytesSaved=" + bytesSaved + "}";
+    }
+}
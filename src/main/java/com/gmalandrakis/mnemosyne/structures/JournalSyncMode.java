@@ -0,0 +1,23 @@
+package com.gmalandrakis.mnemosyne.structures;
+
+/**
+ * Determines when the {@link com.gmalandrakis.mnemosyne.core.MutationJournal MutationJournal} forces its' writes to the disk.
+ * <p>
+ * The writes reach the operating system on every group commit regardless of the mode, hence they survive a crash of the application.
+ * The mode only matters for crashes of the machine itself.
+ */
+public enum JournalSyncMode {
+
+    /**
+     * Every group commit is forced to the disk before it counts as committed. The safest and slowest mode.
+     */
+    EVERY_COMMIT,
+    /**
+     * The writes are forced to the disk at a fixed interval, i.e. a crash of the machine loses at most the writes of one interval.
+     */
+    PERIODIC,
+    /**
+     * The writes are never forced, and reach the disk whenever the operating system flushes them.
+     */
+    NONE
+}
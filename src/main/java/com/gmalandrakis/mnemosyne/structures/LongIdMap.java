@@ -0,0 +1,38 @@
+package com.gmalandrakis.mnemosyne.structures;
+
+/**
+ * An {@link IdMap} of Long or Integer IDs, storing every ID as a single long.
+ *
+ * @author George Malandrakis (malandrakisgeo@gmail.com)
+ */
+public class LongIdMap<ID extends Number, V> extends PrimitiveIdMap<ID, V> {
+
+    private final boolean integers;
+
+    /**
+     * @param integers True if the IDs are Integers, false if they are Longs.
+     */
+    public LongIdMap(boolean integers) {
+        super(1);
+        this.integers = integers;
+    }
+
+    @Override
+    boolean accepts(Object id) {
+        return integers ? id instanceof Integer : id instanceof Long;
+    }
+
+    @Override
+    long part(ID id, int position) {
+        return id.longValue();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    ID toId(long[] keys, int offset) {
+        if (integers) {
+            return (ID) Integer.valueOf((int) keys[offset]);
+        }
+        return (ID) Long.valueOf(keys[offset]);
+    }
+}
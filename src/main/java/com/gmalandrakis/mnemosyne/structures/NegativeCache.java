@@ -0,0 +1,103 @@
+package com.gmalandrakis.mnemosyne.structures;
+
+import com.gmalandrakis.mnemosyne.utils.Tickers;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A small cache of the keys for which the underlying method of a cache returned nothing, i.e. null or an empty collection,
+ * so that repeated lookups of missing keys do not reach the underlying method every time.
+ * <p>
+ * The keys expire after a short time to live, and the oldest ones are dropped once the capacity is reached. Every invalidation increases a stamp,
+ * and a key is only added if the stamp has not changed since its' load started, so that a load racing with an update that adds the key
+ * cannot mark the key as missing after the update.
+ *
+ * @author George Malandrakis (malandrakisgeo@gmail.com)
+ */
+public class NegativeCache<K> {
+
+    private final long timeToLive;
+
+    /**
+     * The expiration times by key, in insertion order.
+     */
+    private final LinkedHashMap<K, Long> expirations;
+
+    private final AtomicLong stamp = new AtomicLong();
+
+    private final LongAdder hits = new LongAdder();
+
+    public NegativeCache(int capacity, long timeToLive) {
+        this.timeToLive = timeToLive;
+        this.expirations = new LinkedHashMap<>(16, 0.75f, false) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, Long> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * @return True if the key is known to be missing, counting it as a hit.
+     */
+    public boolean contains(K key) {
+        synchronized (expirations) {
+            var expiresAt = expirations.get(key);
+            if (expiresAt == null) {
+                return false;
+            }
+            if (expiresAt < Tickers.now()) {
+                expirations.remove(key);
+                return false;
+            }
+        }
+        hits.increment();
+        return true;
+    }
+
+    /**
+     * @return The stamp to pass to {@link #add(Object, long)} once the load of a key completes.
+     */
+    public long getStamp() {
+        return stamp.get();
+    }
+
+    /**
+     * Marks the key as missing, unless the negative cache has been invalidated since the given stamp was taken.
+     */
+    public void add(K key, long loadStamp) {
+        synchronized (expirations) {
+            if (stamp.get() == loadStamp) {
+                expirations.remove(key); //so that the key moves to the end of the insertion order
+                expirations.put(key, Tickers.now() + timeToLive);
+            }
+        }
+    }
+
+    public void remove(K key) {
+        synchronized (expirations) {
+            stamp.incrementAndGet();
+            expirations.remove(key);
+        }
+    }
+
+    public void clear() {
+        synchronized (expirations) {
+            stamp.incrementAndGet();
+            expirations.clear();
+        }
+    }
+
+    public int getSize() {
+        synchronized (expirations) {
+            return expirations.size();
+        }
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+}
@@ -0,0 +1,14 @@
+package com.gmalandrakis.mnemosyne.structures;
+
+/**
+ * The wrapper of the caches of single values that never read the hits, e.g. the FIFOCache and the LRUCache. It has no hit counter,
+ * so that the entries of these caches do not pay for one.
+ *
+ * @author George Malandrakis (malandrakisgeo@gmail.com)
+ */
+final class PlainSingleIdWrapper<ID> extends AbstractSingleIdWrapper<ID> {
+
+    PlainSingleIdWrapper(ID singleId, int generation) {
+        super(singleId, generation);
+    }
+}
@@ -0,0 +1,393 @@
+package com.gmalandrakis.mnemosyne.structures;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.BiConsumer;
+
+/**
+ * The base of the {@link IdMap IdMaps} that store their IDs as one or two longs, in open-addressing tables with linear probing.
+ * <p>
+ * The map is split into segments, each guarded by its' own lock, so that concurrent writes rarely contend. Every segment keeps its' IDs in a long array
+ * and its' values in an Object array of the same capacity, which doubles whenever the segment is more than {@link #MAX_LOAD_FACTOR} full.
+ * Removals shift the following entries of the probe sequence back instead of leaving tombstones, so that lookups never slow down over time.
+ * <p>
+ * Lookups take no lock: they read the segment optimistically, and repeat the read under the read lock only if a write to the segment happened in the meantime.
+ * <p>
+ * IDs of another type than the one of the map (e.g. a Long ID in a map of UUIDs) are kept in a ConcurrentHashMap on the side,
+ * hence the map remains correct even if the type of the IDs was not deduced correctly.
+ *
+ * @author George Malandrakis (malandrakisgeo@gmail.com)
+ */
+abstract class PrimitiveIdMap<ID, V> implements IdMap<ID, V> {
+
+    /**
+     * Must be a power of two.
+     */
+    static final int SEGMENTS = 64;
+
+    static final int INITIAL_SEGMENT_CAPACITY = 16;
+
+    static final float MAX_LOAD_FACTOR = 0.6f;
+
+    /**
+     * The number of longs every ID takes.
+     */
+    private final int width;
+
+    private final Segment[] segments = new Segment[SEGMENTS];
+
+    private final ConcurrentHashMap<ID, V> others = new ConcurrentHashMap<>();
+
+    PrimitiveIdMap(int width) {
+        this.width = width;
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(width);
+        }
+    }
+
+    /**
+     * @return True if the ID can be stored as primitives by the map.
+     */
+    abstract boolean accepts(Object id);
+
+    /**
+     * @return The long at the given position of the primitive form of the ID, with the position being less than the width of the map.
+     */
+    abstract long part(ID id, int position);
+
+    /**
+     * @return The ID of the primitive form starting at the given offset of the array.
+     */
+    abstract ID toId(long[] keys, int offset);
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V get(Object id) {
+        if (!accepts(id)) {
+            return id == null ? null : others.get(id);
+        }
+        var hash = hash((ID) id);
+        var segment = segments[segmentOf(hash)];
+        var stamp = segment.lock.tryOptimisticRead();
+        if (stamp != 0) {
+            var value = findValue(segment.table, (ID) id, hash);
+            if (segment.lock.validate(stamp)) {
+                return (V) value;
+            }
+        }
+        stamp = segment.lock.readLock();
+        try {
+            return (V) findValue(segment.table, (ID) id, hash);
+        } finally {
+            segment.lock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V put(ID id, V value) {
+        if (value == null) {
+            throw new NullPointerException("IdMaps do not accept null values");
+        }
+        if (!accepts(id)) {
+            return others.put(id, value);
+        }
+        var hash = hash(id);
+        var segment = segments[segmentOf(hash)];
+        var stamp = segment.lock.writeLock();
+        try {
+            var table = segment.table;
+            var slot = find(table, id, hash);
+            if (slot >= 0) {
+                var previous = table.values[slot];
+                table.values[slot] = value;
+                return (V) previous;
+            }
+            if (segment.size + 1 > table.values.length * MAX_LOAD_FACTOR) {
+                table = resize(segment);
+                slot = find(table, id, hash); //the free slot found before the resize is not valid anymore
+            }
+            slot = -slot - 1;
+            for (int i = 0; i < width; i++) {
+                table.keys[slot * width + i] = part(id, i);
+            }
+            table.values[slot] = value;
+            segment.size++;
+            return null;
+        } finally {
+            segment.lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V remove(Object id) {
+        if (!accepts(id)) {
+            return id == null ? null : others.remove(id);
+        }
+        var hash = hash((ID) id);
+        var segment = segments[segmentOf(hash)];
+        var stamp = segment.lock.writeLock();
+        try {
+            var slot = find(segment.table, (ID) id, hash);
+            if (slot < 0) {
+                return null;
+            }
+            var previous = segment.table.values[slot];
+            removeAt(segment, slot);
+            return (V) previous;
+        } finally {
+            segment.lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public boolean remove(ID id, V value) {
+        if (!accepts(id)) {
+            return others.remove(id, value);
+        }
+        var hash = hash(id);
+        var segment = segments[segmentOf(hash)];
+        var stamp = segment.lock.writeLock();
+        try {
+            var slot = find(segment.table, id, hash);
+            if (slot < 0 || segment.table.values[slot] != value) {
+                return false;
+            }
+            removeAt(segment, slot);
+            return true;
+        } finally {
+            segment.lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public int size() {
+        int size = others.size();
+        for (Segment segment : segments) {
+            var stamp = segment.lock.readLock();
+            try {
+                size += segment.size;
+            } finally {
+                segment.lock.unlockRead(stamp);
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Passes the entries of every segment to the action after copying them, so that the action never runs under the lock of a segment.
+     */
+    @Override
+    public void forEach(BiConsumer<ID, V> action) {
+        for (int i = 0; i < SEGMENTS; i++) {
+            copySegment(i).forEach(entry -> action.accept(entry.getKey(), entry.getValue()));
+        }
+        others.forEach(action);
+    }
+
+    /**
+     * Copies the entries of one segment at a time, hence it holds at most one segment's worth of entries regardless of the size of the map.
+     */
+    @Override
+    public Iterator<Map.Entry<ID, V>> entryIterator() {
+        return new Iterator<>() {
+            private int nextSegment = 0;
+            private Iterator<Map.Entry<ID, V>> current = Collections.emptyIterator();
+
+            @Override
+            public boolean hasNext() {
+                while (!current.hasNext()) {
+                    if (nextSegment < SEGMENTS) {
+                        current = copySegment(nextSegment++).iterator();
+                    } else if (nextSegment == SEGMENTS) {
+                        nextSegment++;
+                        current = others.entrySet().iterator();
+                    } else {
+                        return false;
+                    }
+                }
+                return true;
+            }
+
+            @Override
+            public Map.Entry<ID, V> next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return current.next();
+            }
+        };
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Map.Entry<ID, V>> copySegment(int index) {
+        var segment = segments[index];
+        var stamp = segment.lock.readLock();
+        try {
+            var table = segment.table;
+            var entries = new ArrayList<Map.Entry<ID, V>>(segment.size);
+            for (int slot = 0; slot < table.values.length; slot++) {
+                if (table.values[slot] != null) {
+                    entries.add(new AbstractMap.SimpleImmutableEntry<>(toId(table.keys, slot * width), (V) table.values[slot]));
+                }
+            }
+            return entries;
+        } finally {
+            segment.lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * @return The slot of the ID, or (-(the free slot where the ID would be inserted) - 1) if absent. Called under the write lock.
+     */
+    private int find(Table table, ID id, int hash) {
+        var mask = table.values.length - 1;
+        var slot = hash & mask;
+        while (table.values[slot] != null) {
+            if (matches(table.keys, slot, id)) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -slot - 1;
+    }
+
+    /**
+     * Like {@link #find(Table, Object, int)}, but safe to call without a lock: a concurrent write may make it return a wrong value,
+     * which the caller discards, but never makes it fail or probe forever.
+     *
+     * @return The value of the ID, or null if absent.
+     */
+    private Object findValue(Table table, ID id, int hash) {
+        var values = table.values;
+        var mask = values.length - 1;
+        var slot = hash & mask;
+        for (int probes = 0; probes < values.length; probes++) {
+            var value = values[slot];
+            if (value == null) {
+                return null;
+            }
+            if (matches(table.keys, slot, id)) {
+                return value;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return null;
+    }
+
+    private boolean matches(long[] keys, int slot, ID id) {
+        for (int i = 0; i < width; i++) {
+            if (keys[slot * width + i] != part(id, i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void removeAt(Segment segment, int slot) {
+        var table = segment.table;
+        var mask = table.values.length - 1;
+        var free = slot;
+        var next = (slot + 1) & mask;
+        while (table.values[next] != null) { //shifts back the entries whose probe sequence passes through the freed slot
+            var home = mix(table.keys, next * width) & mask;
+            if (((next - home) & mask) >= ((next - free) & mask)) {
+                System.arraycopy(table.keys, next * width, table.keys, free * width, width);
+                table.values[free] = table.values[next];
+                free = next;
+            }
+            next = (next + 1) & mask;
+        }
+        table.values[free] = null;
+        segment.size--;
+    }
+
+    /**
+     * Fills a table of twice the capacity before publishing it, so that the unlocked lookups see either the old table or the complete new one.
+     */
+    private Table resize(Segment segment) {
+        var old = segment.table;
+        var capacity = old.values.length * 2;
+        var table = new Table(capacity, width);
+        var mask = capacity - 1;
+        for (int oldSlot = 0; oldSlot < old.values.length; oldSlot++) {
+            if (old.values[oldSlot] == null) {
+                continue;
+            }
+            var slot = mix(old.keys, oldSlot * width) & mask;
+            while (table.values[slot] != null) {
+                slot = (slot + 1) & mask;
+            }
+            System.arraycopy(old.keys, oldSlot * width, table.keys, slot * width, width);
+            table.values[slot] = old.values[oldSlot];
+        }
+        segment.table = table;
+        return table;
+    }
+
+    private int hash(ID id) {
+        long h = 0;
+        for (int i = 0; i < width; i++) {
+            h = h * 31 + part(id, i);
+        }
+        return finalizeHash(h);
+    }
+
+    private int mix(long[] keys, int offset) {
+        long h = 0;
+        for (int i = 0; i < width; i++) {
+            h = h * 31 + keys[offset + i];
+        }
+        return finalizeHash(h);
+    }
+
+    /**
+     * The finalizer of MurmurHash3, so that sequential IDs spread across the segments and the slots.
+     */
+    private static int finalizeHash(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return (int) h;
+    }
+
+    /**
+     * The segment is chosen by the highest bits of the hash, and the slot by the lowest ones, so that they do not correlate.
+     */
+    private static int segmentOf(int hash) {
+        return hash >>> (Integer.SIZE - Integer.numberOfTrailingZeros(SEGMENTS));
+    }
+
+    private static final class Segment {
+        private final StampedLock lock = new StampedLock();
+        private Table table;
+        private int size;
+
+        Segment(int width) {
+            this.table = new Table(INITIAL_SEGMENT_CAPACITY, width);
+        }
+    }
+
+    /**
+     * The arrays of a segment, replaced together on a resize, so that a lookup never pairs the IDs of one capacity with the values of another.
+     */
+    private static final class Table {
+        private final long[] keys;
+        private final Object[] values;
+
+        Table(int capacity, int width) {
+            this.keys = new long[capacity * width];
+            this.values = new Object[capacity];
+        }
+    }
+}
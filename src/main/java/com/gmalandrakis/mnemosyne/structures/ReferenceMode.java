@@ -0,0 +1,27 @@
+package com.gmalandrakis.mnemosyne.structures;
+
+/**
+ * Determines how a {@link com.gmalandrakis.mnemosyne.core.ValuePool ValuePool} holds its' values.
+ * <p>
+ * Since every value type has its' own ValuePool, the mode applies to all the values of a type, in all the caches using it.
+ */
+public enum ReferenceMode {
+
+    /**
+     * The default. Values are kept in memory until no cache uses them anymore.
+     */
+    STRONG,
+    /**
+     * Values are held through SoftReferences, i.e. the GC may reclaim them when the heap runs low. Meant for large values that are expensive to load but can be reloaded.
+     * <p>
+     * A reclaimed value is treated as a miss, and the keys referring to it are removed from the caches asynchronously.
+     */
+    SOFT,
+    /**
+     * Values are held through WeakReferences, i.e. only as long as they are strongly reachable from somewhere else in the application.
+     * Meant for values that are held elsewhere anyway, e.g. in sessions.
+     * <p>
+     * A reclaimed value is treated as a miss, and the keys referring to it are removed from the caches asynchronously.
+     */
+    WEAK
+}
@@ -1,17 +1,43 @@
 package com.gmalandrakis.mnemosyne.structures;
 
-public class SingleIdWrapper<ID> extends IdWrapper<ID> {
-    ID singleId;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+/**
+ * The wrapper of the ID of a key in the caches of single values that count the hits. The caches that never read the hits use a wrapper without
+ * a hit counter instead; both are created via {@link #of(Object, int, boolean)}.
+ */
+public class SingleIdWrapper<ID> extends AbstractSingleIdWrapper<ID> {
+    @SuppressWarnings("rawtypes") //the updater of a generic class is created from its' raw class literal
+    private static final AtomicIntegerFieldUpdater<SingleIdWrapper> HITS = AtomicIntegerFieldUpdater.newUpdater(SingleIdWrapper.class, "hits");
+
+    private volatile int hits;
+
+    /**
+     * @deprecated The wrapper counts the hits, which takes more memory per entry than the caches need unless they read the hits.
+     * Use {@link #of(Object, int, boolean)}, which only counts them if asked to.
+     */
+    @Deprecated
     public SingleIdWrapper(ID singleId){
-        this.singleId = singleId;
-        this.createdOn = System.currentTimeMillis();
-        this.lastAccessed = createdOn;
+        this(singleId, 0);
+    }
+
+    protected SingleIdWrapper(ID singleId, int generation){
+        super(singleId, generation);
+    }
+
+    @Override
+    protected void recordAccess() {
+        super.recordAccess();
+        HITS.incrementAndGet(this);
     }
 
-    public ID getId() {
-        hits += 1;
-        this.lastAccessed = System.currentTimeMillis();
+    @Override
+    public void increaseHits() {
+        HITS.incrementAndGet(this);
+    }
 
-        return singleId;
+    @Override
+    public int getHits() {
+        return hits;
     }
 }
@@ -0,0 +1,71 @@
+package com.gmalandrakis.mnemosyne.structures;
+
+/**
+ * A snapshot of the counters of one tier of a cache, meant to be exported to the metrics system of the application in order to size the tiers.
+ * The first level is the cache itself.
+ *
+ * @author George Malandrakis (malandrakisgeo@gmail.com)
+ * @see com.gmalandrakis.mnemosyne.tier.TierChain
+ */
+public class TierStats {
+    private final int level;
+    private final String kind;
+    private final int size;
+    private final long hits;
+    private final long misses;
+    private final long evictions;
+
+    public TierStats(int level, String kind, int size, long hits, long misses, long evictions) {
+        this.level = level;
+        this.kind = kind;
+        this.size = size;
+        this.hits = hits;
+        this.misses = misses;
+        this.evictions = evictions;
+    }
+
+    /**
+     * @return The level of the tier, starting from 1 for the cache itself.
+     */
+    public int getLevel() {
+        return level;
+    }
+
+    /**
+     * @return The storage of the tier, i.e. "heap" for the cache itself, "mapped" or "disk".
+     */
+    public String getKind() {
+        return kind;
+    }
+
+    /**
+     * @return The number of keys in the tier.
+     */
+    public int getSize() {
+        return size;
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    /**
+     * @return The lookups that missed the tier, and went on to the next one or to the underlying method.
+     */
+    public long getMisses() {
+        return misses;
+    }
+
+    /**
+     * @return The entries evicted from the tier, i.e. demoted to the next one, or dropped if this is the last one.
+     * For the cache itself, only the entries demoted to a lower tier are counted.
+     */
+    public long getEvictions() {
+        return evictions;
+    }
+
+    @Override
+    public String toString() {
+        return "TierStats{level=" + level + ", kind=" + kind + ", size=" + size + ", hits=" + hits + ", misses=" + misses + ", evictions=" + evictions + "}";
+    }
+}
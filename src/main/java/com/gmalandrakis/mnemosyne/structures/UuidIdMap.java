@@ -0,0 +1,30 @@
+package com.gmalandrakis.mnemosyne.structures;
+
+import java.util.UUID;
+
+/**
+ * An {@link IdMap} of UUIDs, storing every ID as its' two halves.
+ *
+ * @author George Malandrakis (malandrakisgeo@gmail.com)
+ */
+public class UuidIdMap<V> extends PrimitiveIdMap<UUID, V> {
+
+    public UuidIdMap() {
+        super(2);
+    }
+
+    @Override
+    boolean accepts(Object id) {
+        return id instanceof UUID;
+    }
+
+    @Override
+    long part(UUID id, int position) {
+        return position == 0 ? id.getMostSignificantBits() : id.getLeastSignificantBits();
+    }
+
+    @Override
+    UUID toId(long[] keys, int offset) {
+        return new UUID(keys[offset], keys[offset + 1]);
+    }
+}
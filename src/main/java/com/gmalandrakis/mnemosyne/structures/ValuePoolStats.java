@@ -0,0 +1,77 @@
+package com.gmalandrakis.mnemosyne.structures;
+
+/**
+ * A snapshot of the state and the housekeeping counters of a {@link com.gmalandrakis.mnemosyne.core.ValuePool ValuePool},
+ * meant to be exported to the metrics system of the application.
+ *
+ * @author George Malandrakis (malandrakisgeo@gmail.com)
+ */
+public class ValuePoolStats {
+    private final int size;
+    private final long totalWeight;
+    private final long orphansReclaimed;
+    private final long referencesReclaimed;
+    private final long sweeps;
+    private final CompressionStats compression;
+
+    public ValuePoolStats(int size, long totalWeight, long orphansReclaimed, long referencesReclaimed, long sweeps) {
+        this(size, totalWeight, orphansReclaimed, referencesReclaimed, sweeps, null);
+    }
+
+    public ValuePoolStats(int size, long totalWeight, long orphansReclaimed, long referencesReclaimed, long sweeps, CompressionStats compression) {
+        this.size = size;
+        this.totalWeight = totalWeight;
+        this.orphansReclaimed = orphansReclaimed;
+        this.referencesReclaimed = referencesReclaimed;
+        this.sweeps = sweeps;
+        this.compression = compression;
+    }
+
+    /**
+     * @return The number of values in the ValuePool.
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * @return The total weight of the values, or zero if the ValuePool does not weigh its' values.
+     */
+    public long getTotalWeight() {
+        return totalWeight;
+    }
+
+    /**
+     * @return The number of values removed by the orphan sweeper because no cache used them.
+     */
+    public long getOrphansReclaimed() {
+        return orphansReclaimed;
+    }
+
+    /**
+     * @return The number of values removed after the GC reclaimed them.
+     */
+    public long getReferencesReclaimed() {
+        return referencesReclaimed;
+    }
+
+    /**
+     * @return The number of completed passes of the orphan sweeper over the whole ValuePool.
+     */
+    public long getSweeps() {
+        return sweeps;
+    }
+
+    /**
+     * @return The counters of the compression of the values, or null if the ValuePool does not compress them.
+     */
+    public CompressionStats getCompression() {
+        return compression;
+    }
+
+    @Override
+    public String toString() {
+        return "ValuePoolStats{size=" + size + ", totalWeight=" + totalWeight + ", orphansReclaimed=" + orphansReclaimed
+                + ", referencesReclaimed=" + referencesReclaimed + ", sweeps=" + sweeps + (compression == null ? "" : ", compression=" + compression) + "}";
+    }
+}
@@ -0,0 +1,60 @@
+package com.gmalandrakis.mnemosyne.tier;
+
+import com.gmalandrakis.mnemosyne.codec.ValueCodec;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+
+/**
+ * A tier kept in a plain file, read and written through positional file I/O. Meant as the last tier of a cache, for entries too many to keep in memory:
+ * unlike the {@link MappedFileTier}, the file is not mapped into the address space, hence it may be as large as the disk allows,
+ * at the cost of a system call on every read and write.
+ * <p>
+ * The file grows as the segments are first written, up to its' full size.
+ *
+ * @author George Malandrakis (malandrakisgeo@gmail.com)
+ */
+public class DiskTier<K, ID, V> extends SegmentedFileTier<K, ID, V> {
+
+    /**
+     * @param directory The directory of the file, created if missing.
+     * @param name      The prefix of the name of the file, e.g. the name of the cache.
+     * @param size      The size of the file in bytes.
+     */
+    public DiskTier(Path directory, String name, long size, ValueCodec<V> codec) {
+        super(directory, name, size, codec);
+    }
+
+    @Override
+    protected void write(int segment, int offset, byte[] record) throws IOException {
+        var buffer = ByteBuffer.wrap(record);
+        var position = position(segment, offset);
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    @Override
+    protected void read(int segment, int offset, byte[] record) throws IOException {
+        var buffer = ByteBuffer.wrap(record);
+        var position = position(segment, offset);
+        while (buffer.hasRemaining()) {
+            var read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new EOFException("The record ends beyond the end of the file of the disk tier");
+            }
+            position += read;
+        }
+    }
+
+    @Override
+    public String getKind() {
+        return "disk";
+    }
+
+    private long position(int segment, int offset) {
+        return (long) segment * segmentSize + offset;
+    }
+}
@@ -0,0 +1,56 @@
+package com.gmalandrakis.mnemosyne.tier;
+
+import com.gmalandrakis.mnemosyne.codec.ValueCodec;
+import com.gmalandrakis.mnemosyne.exception.MnemosyneInitializationException;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+
+/**
+ * A tier kept in a memory-mapped file instead of the heap. Meant as the second-level tier of a cache, right below the cache itself:
+ * reads and writes are plain memory copies, and the OS keeps the hot pages of the file in memory.
+ * <p>
+ * Like the {@link com.gmalandrakis.mnemosyne.core.OffHeapValuePool OffHeapValuePool}, reads never lock unless a write happened in the meantime.
+ * The size of the file is limited by the address space, hence much larger tiers should rather be a {@link DiskTier}.
+ *
+ * @author George Malandrakis (malandrakisgeo@gmail.com)
+ */
+public class MappedFileTier<K, ID, V> extends SegmentedFileTier<K, ID, V> {
+
+    private final MappedByteBuffer[] segments;
+
+    /**
+     * @param directory The directory of the file, created if missing.
+     * @param name      The prefix of the name of the file, e.g. the name of the cache.
+     * @param size      The size of the file in bytes.
+     */
+    public MappedFileTier(Path directory, String name, long size, ValueCodec<V> codec) {
+        super(directory, name, size, codec);
+        this.segments = new MappedByteBuffer[numberOfSegments];
+        try {
+            for (int i = 0; i < numberOfSegments; i++) {
+                segments[i] = channel.map(FileChannel.MapMode.READ_WRITE, (long) i * segmentSize, segmentSize);
+            }
+        } catch (IOException e) {
+            close();
+            throw new MnemosyneInitializationException("The mapped tier could not be created in " + directory + ": " + e.getMessage());
+        }
+    }
+
+    @Override
+    protected void write(int segment, int offset, byte[] record) {
+        segments[segment].put(offset, record);
+    }
+
+    @Override
+    protected void read(int segment, int offset, byte[] record) {
+        segments[segment].get(offset, record);
+    }
+
+    @Override
+    public String getKind() {
+        return "mapped";
+    }
+}
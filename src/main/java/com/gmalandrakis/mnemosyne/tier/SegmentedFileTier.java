@@ -0,0 +1,366 @@
+package com.gmalandrakis.mnemosyne.tier;
+
+import com.gmalandrakis.mnemosyne.codec.ValueCodec;
+import com.gmalandrakis.mnemosyne.exception.MnemosyneInitializationException;
+import com.gmalandrakis.mnemosyne.utils.Tickers;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * The base of the tiers kept in a file, split into a ring of segments. Entries are appended to the current segment, and once it is full the next one is reused,
+ * evicting all the entries it held: the tier evicts whole segments in FIFO order, without any per-entry bookkeeping in the file.
+ * The evicted entries that have not expired are handed over to the lower tier, if any.
+ * <p>
+ * Only the index stays on the heap: the keys, the IDs and the locations of the values. The values are encoded via the {@link ValueCodec}
+ * of their type, and decoded on every hit. The file is temporary, and deleted on exit.
+ * <p>
+ * Reads copy the bytes optimistically and repeat the copy under a read lock only if a write happened in the meantime, and writes are serialized.
+ * The subclasses only decide how the bytes of the segments are written and read.
+ *
+ * @author George Malandrakis (malandrakisgeo@gmail.com)
+ */
+public abstract class SegmentedFileTier<K, ID, V> implements Tier<K, ID, V> {
+
+    static final int MAX_SEGMENT_SIZE = 1 << 30;
+
+    static final int MIN_SEGMENTS = 4;
+
+    static final int MIN_SIZE = 4096;
+
+    private final ValueCodec<V> codec;
+    private final Path file;
+    protected final FileChannel channel;
+    protected final int numberOfSegments;
+    protected final int segmentSize;
+
+    /**
+     * The sequence each segment was last started with. A location is valid only while its' segment keeps the same sequence.
+     */
+    private final long[] segmentSequences;
+    private long sequence;
+    private int currentSegment;
+    private int writeOffset;
+
+    private final ConcurrentHashMap<K, Location<ID>> index = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Object, Set<K>> keysById = new ConcurrentHashMap<>();
+    private final StampedLock lock = new StampedLock();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private volatile Tier<K, ID, V> lowerTier;
+
+    /**
+     * @param directory The directory of the file, created if missing.
+     * @param name      The prefix of the name of the file, e.g. the name of the cache.
+     * @param size      The size of the file in bytes.
+     */
+    protected SegmentedFileTier(Path directory, String name, long size, ValueCodec<V> codec) {
+        if (size < MIN_SIZE) {
+            throw new MnemosyneInitializationException("The " + getKind() + " tier must be at least " + MIN_SIZE + " bytes");
+        }
+        this.codec = codec;
+        this.numberOfSegments = (int) Math.max(MIN_SEGMENTS, (size + MAX_SEGMENT_SIZE - 1) / MAX_SEGMENT_SIZE);
+        this.segmentSize = (int) Math.min(MAX_SEGMENT_SIZE, size / numberOfSegments);
+        this.segmentSequences = new long[numberOfSegments];
+        try {
+            Files.createDirectories(directory);
+            this.file = Files.createTempFile(directory, name, ".tier");
+            file.toFile().deleteOnExit();
+            this.channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        } catch (IOException e) {
+            throw new MnemosyneInitializationException("The " + getKind() + " tier could not be created in " + directory + ": " + e.getMessage());
+        }
+        segmentSequences[0] = ++sequence;
+    }
+
+    /**
+     * Writes the record at the offset of the segment. Called under the write lock.
+     */
+    protected abstract void write(int segment, int offset, byte[] record) throws IOException;
+
+    /**
+     * Fills the record with the bytes at the offset of the segment. May run concurrently with a write, in which case the copy is discarded.
+     */
+    protected abstract void read(int segment, int offset, byte[] record) throws IOException;
+
+    /**
+     * Entries that do not fit in a segment are not stored, and the previous entry of the key is removed anyway, so that it is never served instead.
+     */
+    @Override
+    public void put(K key, Map<ID, V> values, long expiresAt) {
+        var ids = new Object[values.size()];
+        var encoded = new byte[values.size()][];
+        int recordLength = Integer.BYTES;
+        int i = 0;
+        for (Map.Entry<ID, V> entry : values.entrySet()) {
+            ids[i] = entry.getKey();
+            encoded[i] = codec.encode(entry.getValue());
+            recordLength += Integer.BYTES + encoded[i].length;
+            i++;
+        }
+        if (recordLength > segmentSize) {
+            remove(key);
+            return;
+        }
+        var record = ByteBuffer.allocate(recordLength);
+        record.putInt(encoded.length);
+        for (byte[] bytes : encoded) {
+            record.putInt(bytes.length).put(bytes);
+        }
+        putRecord(key, record.array(), ids, expiresAt);
+    }
+
+    @Override
+    public TierEntry<ID, V> getEntry(K key) {
+        Location<ID> location;
+        byte[] record;
+        var stamp = lock.tryOptimisticRead();
+        location = index.get(key);
+        record = copy(location);
+        if (stamp == 0 || !lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                location = index.get(key);
+                record = copy(location);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        if (record == null || location.expiresAt < Tickers.now()) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return new TierEntry<>(decode(record, location.ids), location.expiresAt);
+    }
+
+    @Override
+    public void remove(K key) {
+        var stamp = lock.writeLock();
+        try {
+            unlink(key, index.remove(key));
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public void removeByIds(Collection<?> ids) {
+        var stamp = lock.writeLock();
+        try {
+            for (Object id : ids) {
+                var keys = keysById.get(id);
+                if (keys != null) {
+                    Set.copyOf(keys).forEach(key -> unlink(key, index.remove(key)));
+                }
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public void clear() {
+        var stamp = lock.writeLock();
+        try {
+            index.clear();
+            keysById.clear();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public void demoteTo(Tier<K, ID, V> lowerTier) {
+        this.lowerTier = lowerTier;
+    }
+
+    @Override
+    public int getSize() {
+        return index.size();
+    }
+
+    @Override
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    @Override
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    @Override
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    @Override
+    public void close() {
+        clear();
+        try {
+            channel.close();
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Stores an encoded record. Records demoted from a tier with the same codec are stored as they are, without decoding and encoding them again.
+     * A record demoted from a tier with bigger segments may not fit in one of this tier: it is handed over to the lower tier instead, as if this tier evicted it.
+     */
+    private void putRecord(K key, byte[] record, Object[] ids, long expiresAt) {
+        if (record.length > segmentSize) {
+            remove(key);
+            demote(new Demoted<>(key, record, ids, expiresAt));
+            return;
+        }
+        List<Demoted<K>> demoted = List.of();
+        var stamp = lock.writeLock();
+        try {
+            if (writeOffset + record.length > segmentSize) {
+                demoted = startNextSegment();
+            }
+            write(currentSegment, writeOffset, record);
+            var location = new Location<ID>(currentSegment, segmentSequences[currentSegment], writeOffset, record.length, ids, expiresAt);
+            writeOffset += record.length;
+            unlink(key, index.put(key, location));
+            link(key, location);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        demoted.forEach(this::demote); //outside the lock, since the lower tier may be slow
+    }
+
+    /**
+     * Moves to the next segment of the ring, evicting the entries it held. Called under the write lock.
+     *
+     * @return The evicted entries to be handed over to the lower tier, if any.
+     */
+    private List<Demoted<K>> startNextSegment() {
+        currentSegment = (currentSegment + 1) % numberOfSegments;
+        var dropped = currentSegment;
+        var demoted = new ArrayList<Demoted<K>>();
+        var demote = lowerTier != null;
+        var now = Tickers.now();
+        index.forEach((key, location) -> {
+            if (location.segment == dropped) {
+                if (demote && location.expiresAt >= now) {
+                    var record = copy(location); //still valid, since the sequence of the segment has not changed yet
+                    if (record != null) {
+                        demoted.add(new Demoted<>(key, record, location.ids, location.expiresAt));
+                    }
+                }
+                unlink(key, index.remove(key));
+                evictions.increment();
+            }
+        });
+        segmentSequences[currentSegment] = ++sequence;
+        writeOffset = 0;
+        return demoted;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void demote(Demoted<K> entry) {
+        var tier = lowerTier;
+        if (tier instanceof SegmentedFileTier<K, ID, V> fileTier && fileTier.codec == codec) {
+            fileTier.putRecord(entry.key, entry.record, entry.ids, entry.expiresAt);
+        } else if (tier != null) {
+            tier.put(entry.key, decode(entry.record, entry.ids), entry.expiresAt);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<ID, V> decode(byte[] record, Object[] ids) {
+        var buffer = ByteBuffer.wrap(record);
+        var count = buffer.getInt();
+        var values = new HashMap<ID, V>(count * 2);
+        for (int i = 0; i < count; i++) {
+            var bytes = new byte[buffer.getInt()];
+            buffer.get(bytes);
+            values.put((ID) ids[i], codec.decode(bytes));
+        }
+        return values;
+    }
+
+    private byte[] copy(Location<ID> location) {
+        if (location == null || segmentSequences[location.segment] != location.sequence) {
+            return null;
+        }
+        var record = new byte[location.length];
+        try {
+            read(location.segment, location.offset, record);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return record;
+    }
+
+    private void link(K key, Location<ID> location) {
+        for (Object id : location.ids) {
+            keysById.computeIfAbsent(id, k -> ConcurrentHashMap.newKeySet()).add(key);
+        }
+    }
+
+    private void unlink(K key, Location<ID> location) {
+        if (location == null) {
+            return;
+        }
+        for (Object id : location.ids) {
+            keysById.computeIfPresent(id, (k, keys) -> {
+                keys.remove(key);
+                return keys.isEmpty() ? null : keys;
+            });
+        }
+    }
+
+    private static final class Location<ID> {
+        final int segment;
+        final long sequence;
+        final int offset;
+        final int length;
+        final Object[] ids;
+        final long expiresAt;
+
+        Location(int segment, long sequence, int offset, int length, Object[] ids, long expiresAt) {
+            this.segment = segment;
+            this.sequence = sequence;
+            this.offset = offset;
+            this.length = length;
+            this.ids = ids;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private static final class Demoted<K> {
+        final K key;
+        final byte[] record;
+        final Object[] ids;
+        final long expiresAt;
+
+        Demoted(K key, byte[] record, Object[] ids, long expiresAt) {
+            this.key = key;
+            this.record = record;
+            this.ids = ids;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
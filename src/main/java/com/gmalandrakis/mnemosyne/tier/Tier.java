@@ -0,0 +1,80 @@
+package com.gmalandrakis.mnemosyne.tier;
+
+import com.gmalandrakis.mnemosyne.cache.EvictionListener;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * A lower tier of a cache, i.e. a store for the entries evicted from the cache, or from the tier above it in a {@link TierChain}.
+ * <p>
+ * Entries are keyed like in the cache, and hold the values of the key by ID. A tier evicts entries on its' own to make room,
+ * and hands them over to the tier below it, if any, instead of dropping them.
+ *
+ * @author George Malandrakis (malandrakisgeo@gmail.com)
+ */
+public interface Tier<K, ID, V> extends EvictionListener<K, ID, V>, AutoCloseable {
+
+    /**
+     * Stores the values of the key, replacing any previous ones. Entries that do not fit in the tier are not stored.
+     *
+     * @param expiresAt The time at which the entry expires, or Long.MAX_VALUE if never.
+     */
+    void put(K key, Map<ID, V> values, long expiresAt);
+
+    /**
+     * @return The values of the key by ID along with their expiration, or null if the key is absent or expired.
+     */
+    TierEntry<ID, V> getEntry(K key);
+
+    /**
+     * @return The values of the key by ID, or null if the key is absent or expired.
+     */
+    default Map<ID, V> get(K key) {
+        var entry = getEntry(key);
+        return entry == null ? null : entry.getValues();
+    }
+
+    void remove(K key);
+
+    /**
+     * Removes every entry containing any of the IDs, e.g. because their values were updated.
+     */
+    void removeByIds(Collection<?> ids);
+
+    void clear();
+
+    /**
+     * Makes the tier hand the entries it evicts over to the given one. Null makes the tier drop them.
+     */
+    void demoteTo(Tier<K, ID, V> lowerTier);
+
+    /**
+     * @return A short description of the storage of the tier, e.g. "mapped" or "disk".
+     */
+    String getKind();
+
+    int getSize();
+
+    long getHitCount();
+
+    long getMissCount();
+
+    /**
+     * @return The number of entries the tier has evicted, whether it handed them over to a lower tier or dropped them.
+     */
+    long getEvictionCount();
+
+    @Override
+    default void onEviction(K key, Map<ID, V> values, long expiresAt) {
+        put(key, values, expiresAt);
+    }
+
+    @Override
+    default void onInvalidation() {
+        clear();
+    }
+
+    @Override
+    void close();
+}
@@ -0,0 +1,182 @@
+package com.gmalandrakis.mnemosyne.tier;
+
+import com.gmalandrakis.mnemosyne.cache.EvictionListener;
+import com.gmalandrakis.mnemosyne.utils.Tickers;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The lower tiers of a cache, ordered from the fastest to the slowest, e.g. a {@link MappedFileTier} followed by a {@link DiskTier}.
+ * <p>
+ * The chain listens to the evictions of the cache and demotes the evicted entries to its' first tier, and every tier demotes the entries it evicts to the next one.
+ * The entries evicted by the last tier are dropped. A lookup checks the tiers in order, and a hit removes the entry from its' tier,
+ * so that the caller promotes it straight back to the cache. Entries keep their original expiration throughout the chain, and every key is kept in one tier at most.
+ * <p>
+ * The evicted entries are written to the first tier on the executor given to {@link #spillOn(Executor)}, so that the evicting thread does not wait for the file.
+ * Until then they stay pending, and are served from memory. A removal drops the pending entries it concerns too, and waits for the writes in progress,
+ * so that a late write never brings back values that were removed in the meantime.
+ *
+ * @author George Malandrakis (malandrakisgeo@gmail.com)
+ */
+public class TierChain<K, ID, V> implements EvictionListener<K, ID, V>, AutoCloseable {
+
+    private static final Logger LOGGER = Logger.getLogger(TierChain.class.getName());
+
+    private final List<Tier<K, ID, V>> tiers;
+
+    private final LongAdder demotedFromCache = new LongAdder();
+
+    private final LongAdder pendingHits = new LongAdder();
+
+    /**
+     * The evicted entries not written to the first tier yet.
+     */
+    private final ConcurrentHashMap<K, TierEntry<ID, V>> pending = new ConcurrentHashMap<>();
+
+    /**
+     * Held shared while writing the evicted entries, and exclusively while removing, so that the removals see no write in progress.
+     */
+    private final ReadWriteLock spillLock = new ReentrantReadWriteLock();
+
+    private volatile Executor spillExecutor = Runnable::run;
+
+    public TierChain(List<Tier<K, ID, V>> tiers) {
+        this.tiers = List.copyOf(tiers);
+        for (int i = 0; i < this.tiers.size(); i++) {
+            this.tiers.get(i).demoteTo(i + 1 < this.tiers.size() ? this.tiers.get(i + 1) : null);
+        }
+    }
+
+    /**
+     * Makes the chain write the evicted entries to the first tier on the given executor, e.g. the one of the maintenance of the cache. By default they are written on the evicting thread.
+     */
+    public void spillOn(Executor executor) {
+        this.spillExecutor = executor;
+    }
+
+    @Override
+    public void onEviction(K key, Map<ID, V> values, long expiresAt) {
+        if (tiers.isEmpty()) {
+            return;
+        }
+        demotedFromCache.increment();
+        var entry = new TierEntry<>(values, expiresAt);
+        pending.put(key, entry);
+        try {
+            spillExecutor.execute(() -> spill(key, entry));
+        } catch (RejectedExecutionException e) {
+            pending.remove(key, entry); //shutting down
+        }
+    }
+
+    @Override
+    public void onInvalidation() {
+        clear();
+    }
+
+    /**
+     * Looks the key up in every tier in order, and removes it from the first tier that has it. Expired entries are skipped.
+     *
+     * @return The values of the key by ID along with their expiration, or null if no tier has them.
+     */
+    public TierEntry<ID, V> promote(K key) {
+        var entry = pending.remove(key);
+        if (entry != null && !entry.isExpired(Tickers.now())) {
+            pendingHits.increment();
+            return entry;
+        }
+        for (Tier<K, ID, V> tier : tiers) {
+            entry = tier.getEntry(key);
+            if (entry != null) {
+                tier.remove(key);
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    public void remove(K key) {
+        withoutSpills(() -> {
+            pending.remove(key);
+            tiers.forEach(tier -> tier.remove(key));
+        });
+    }
+
+    /**
+     * Removes every entry containing any of the IDs from every tier, e.g. because their values were updated.
+     */
+    public void removeByIds(Collection<?> ids) {
+        withoutSpills(() -> {
+            pending.values().removeIf(entry -> ids.stream().anyMatch(entry.getValues()::containsKey));
+            tiers.forEach(tier -> tier.removeByIds(ids));
+        });
+    }
+
+    public void clear() {
+        withoutSpills(() -> {
+            pending.clear();
+            tiers.forEach(Tier::clear);
+        });
+    }
+
+    public List<Tier<K, ID, V>> getTiers() {
+        return tiers;
+    }
+
+    /**
+     * @return The number of entries the cache has evicted into the chain.
+     */
+    public long getDemotedFromCacheCount() {
+        return demotedFromCache.sum();
+    }
+
+    /**
+     * @return The number of lookups served by evicted entries not written to the first tier yet. They count as hits of the first tier.
+     */
+    public long getPendingHitCount() {
+        return pendingHits.sum();
+    }
+
+    @Override
+    public void close() {
+        clear();
+        tiers.forEach(Tier::close);
+    }
+
+    /**
+     * Writes the evicted entry to the first tier, unless it was promoted or removed in the meantime. A failure only loses the entry.
+     * An older entry of the key in the lower tiers is dropped, so that every key is kept in one tier only, and a lookup never falls through an expired entry to an older one.
+     */
+    private void spill(K key, TierEntry<ID, V> entry) {
+        spillLock.readLock().lock();
+        try {
+            if (pending.remove(key, entry)) {
+                tiers.subList(1, tiers.size()).forEach(tier -> tier.remove(key));
+                tiers.get(0).put(key, entry.getValues(), entry.getExpiresAt());
+            }
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.WARNING, "The evicted entry could not be written to the " + tiers.get(0).getKind() + " tier", e);
+        } finally {
+            spillLock.readLock().unlock();
+        }
+    }
+
+    private void withoutSpills(Runnable removal) {
+        spillLock.writeLock().lock();
+        try {
+            removal.run();
+        } finally {
+            spillLock.writeLock().unlock();
+        }
+    }
+}
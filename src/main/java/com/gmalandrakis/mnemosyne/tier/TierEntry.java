@@ -0,0 +1,34 @@
+package com.gmalandrakis.mnemosyne.tier;
+
+import java.util.Map;
+
+/**
+ * An entry of a lower tier: the values of a key by ID, along with the time at which the entry expires.
+ * The expiration is kept throughout the tiers, so that an entry promoted back to the cache expires when it would have if it had never left it.
+ *
+ * @author George Malandrakis (malandrakisgeo@gmail.com)
+ */
+public class TierEntry<ID, V> {
+    private final Map<ID, V> values;
+    private final long expiresAt;
+
+    public TierEntry(Map<ID, V> values, long expiresAt) {
+        this.values = values;
+        this.expiresAt = expiresAt;
+    }
+
+    public Map<ID, V> getValues() {
+        return values;
+    }
+
+    /**
+     * @return The time at which the entry expires, or Long.MAX_VALUE if never.
+     */
+    public long getExpiresAt() {
+        return expiresAt;
+    }
+
+    public boolean isExpired(long now) {
+        return expiresAt < now;
+    }
+}
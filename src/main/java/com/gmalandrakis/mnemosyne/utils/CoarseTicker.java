@@ -0,0 +1,52 @@
+package com.gmalandrakis.mnemosyne.utils;
+
+/**
+ * A {@link Ticker Ticker} that reads the system clock only from a single maintenance thread, every few milliseconds,
+ * and serves every other read from a volatile field.
+ * <p>
+ * System.currentTimeMillis() is very slow on some Linux configurations, and mnemosyne used to call it on every access.
+ * The price of the coarse clock is that timestamps may be up to one resolution period behind, which is irrelevant for
+ * TTLs measured in seconds or minutes.
+ *
+ * @author George Malandrakis (malandrakisgeo@gmail.com)
+ */
+public class CoarseTicker implements Ticker {
+
+    public static final long DEFAULT_RESOLUTION_MILLIS = 4;
+
+    private final long resolution;
+
+    private volatile long now;
+
+    public CoarseTicker() {
+        this(DEFAULT_RESOLUTION_MILLIS);
+    }
+
+    public CoarseTicker(long resolution) {
+        this.resolution = resolution <= 0 ? DEFAULT_RESOLUTION_MILLIS : resolution;
+        this.now = System.currentTimeMillis();
+        var maintenanceThread = new Thread(this::tick, "mnemosyne-coarse-ticker");
+        maintenanceThread.setDaemon(true); //must never keep the application alive
+        maintenanceThread.start();
+    }
+
+    @Override
+    public long read() {
+        return now;
+    }
+
+    public long getResolution() {
+        return resolution;
+    }
+
+    private void tick() {
+        while (true) {
+            try {
+                Thread.sleep(resolution);
+            } catch (InterruptedException ignored) {
+                //the clock has to keep ticking
+            }
+            now = System.currentTimeMillis();
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package com.gmalandrakis.mnemosyne.utils;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A single daemon thread for the periodic housekeeping of the ValuePools, shared by the whole application.
+ * <p>
+ * The tasks must be short, since they run one after the other.
+ *
+ * @author George Malandrakis (malandrakisgeo@gmail.com)
+ */
+public final class Maintenance {
+
+    private Maintenance() {
+    }
+
+    /**
+     * Runs the task periodically. An exception thrown by the task does not stop the next runs.
+     *
+     * @param intervalMillis The delay between the end of one run and the start of the next.
+     */
+    public static ScheduledFuture<?> scheduleWithFixedDelay(Runnable task, long intervalMillis) {
+        return MaintenanceThread.INSTANCE.scheduleWithFixedDelay(() -> {
+            try {
+                task.run();
+            } catch (RuntimeException ignored) {
+                //a failed run is retried on the next one
+            }
+        }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private static final class MaintenanceThread { //initialized, and its' thread started, only when first needed
+        static final ScheduledExecutorService INSTANCE = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            var thread = new Thread(runnable, "mnemosyne-maintenance");
+            thread.setDaemon(true); //must never keep the application alive
+            return thread;
+        });
+    }
+}
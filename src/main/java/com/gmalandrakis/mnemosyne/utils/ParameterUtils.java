@@ -19,6 +19,24 @@ public class ParameterUtils {
         cacheParameters.setEvictionStepPercentage(annotation.evictionStepPercentage());
         cacheParameters.setHandleCollectionKeysSeparately(annotation.allowSeparateHandlingForKeyCollections());
         cacheParameters.setReturnsCollection(returnsCollection);
+        cacheParameters.setMaxWeight(annotation.maxWeight());
+        cacheParameters.setWeigher(annotation.weigher());
+        cacheParameters.setMinBudgetShare(annotation.minBudgetShare());
+        cacheParameters.setMaxBudgetShare(annotation.maxBudgetShare());
+        cacheParameters.setShrinkPriority(annotation.shrinkPriority());
+        cacheParameters.setValueReferences(annotation.valueReferences());
+        cacheParameters.setOffHeap(annotation.offHeap());
+        cacheParameters.setSecondLevelTierSize(annotation.secondLevelTierSize());
+        cacheParameters.setDiskTierSize(annotation.diskTierSize());
+        cacheParameters.setRefreshAfter(annotation.refreshAfter());
+        cacheParameters.setStaleWhileRevalidate(annotation.staleWhileRevalidate());
+        cacheParameters.setStaleIfError(annotation.staleIfError());
+        cacheParameters.setLoadTimeout(annotation.loadTimeout());
+        cacheParameters.setNegativeTimeToLive(annotation.negativeTimeToLive());
+        cacheParameters.setNegativeCapacity(annotation.negativeCapacity());
+        cacheParameters.setBatchLoader(annotation.batchLoader());
+        cacheParameters.setBatchWindow(annotation.batchWindow());
+        cacheParameters.setMaxBatchSize(annotation.maxBatchSize());
         return cacheParameters;
     }
 }
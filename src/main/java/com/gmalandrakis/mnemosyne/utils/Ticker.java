@@ -0,0 +1,19 @@
+package com.gmalandrakis.mnemosyne.utils;
+
+/**
+ * A source of the current time in milliseconds, used by mnemosyne for every timestamp it keeps (creation, access, update, expiration).
+ * <p>
+ * The default implementation is a {@link CoarseTicker CoarseTicker}, which removes a system clock read from every cache hit.
+ * A different implementation can be plugged in via {@link Tickers#set(Ticker) Tickers.set()}, e.g. in tests that need to move the time forward
+ * without sleeping.
+ *
+ * @author George Malandrakis (malandrakisgeo@gmail.com)
+ */
+@FunctionalInterface
+public interface Ticker {
+
+    /**
+     * @return The current time in milliseconds since the epoch, as seen by this ticker.
+     */
+    long read();
+}
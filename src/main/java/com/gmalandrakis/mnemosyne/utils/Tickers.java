@@ -0,0 +1,53 @@
+package com.gmalandrakis.mnemosyne.utils;
+
+/**
+ * Holds the {@link Ticker Ticker} shared by all the caches and value pools of the application.
+ * <p>
+ * The default is a {@link CoarseTicker CoarseTicker}, created lazily the first time it is needed.
+ *
+ * @author George Malandrakis (malandrakisgeo@gmail.com)
+ */
+public final class Tickers {
+
+    private static volatile Ticker ticker;
+
+    private Tickers() {
+    }
+
+    /**
+     * @return The ticker currently in use.
+     */
+    public static Ticker current() {
+        var current = ticker;
+        return current != null ? current : DefaultTicker.INSTANCE;
+    }
+
+    /**
+     * Shorthand for {@code Tickers.current().read()}
+     */
+    public static long now() {
+        return current().read();
+    }
+
+    /**
+     * Replaces the ticker used by mnemosyne. Should be called before any cache is created,
+     * otherwise the existing timestamps are compared to the ones produced by the new ticker.
+     */
+    public static void set(Ticker newTicker) {
+        if (newTicker == null) {
+            throw new IllegalArgumentException("The ticker may not be null");
+        }
+        ticker = newTicker;
+    }
+
+    /**
+     * Switches back to the default ticker.
+     */
+    public static void reset() {
+        ticker = null;
+    }
+
+    private static final class DefaultTicker { //initialized, and its' thread started, only when first needed
+        static final CoarseTicker INSTANCE = new CoarseTicker();
+    }
+}
@@ -1,11 +1,16 @@
 package com.gmalandrakis.mnemosyne.cache;
 
+import com.gmalandrakis.mnemosyne.core.HeapValuePool;
 import com.gmalandrakis.mnemosyne.core.ValuePool;
 import com.gmalandrakis.mnemosyne.structures.*;
 import com.gmalandrakis.mnemosyne.core.MnemoCommon;
+import com.gmalandrakis.mnemosyne.memory.Weigher;
+import com.gmalandrakis.mnemosyne.utils.ManualTicker;
+import com.gmalandrakis.mnemosyne.utils.Tickers;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.lang.reflect.Field;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ThreadLocalRandom;
@@ -31,7 +36,7 @@ public class FIFOTest {
     FIFOCache<Integer, String, Integer> separateHandlingCache;
     FIFOCache<Integer, String, Integer> separateHandlingCache2;
 
-    ValuePool<Integer, Integer> valuePool = new ValuePool<>();
+    ValuePool<Integer, Integer> valuePool = new HeapValuePool<>();
 
     ValuePool<Object, testObject> testObjectValuePool;
 
@@ -41,7 +46,7 @@ public class FIFOTest {
 
     @Before
     public void beforeTest() throws NoSuchFieldException, IllegalAccessException {
-        testObjectValuePool = new ValuePool<>();
+        testObjectValuePool = new HeapValuePool<>();
         cacheParameters = new CacheParameters();
         cacheParameters.setCapacity(totalItems - 1);
         cacheParameters.setTimeToLive(1500000);
@@ -72,7 +77,7 @@ public class FIFOTest {
     public void verify__removalFromValuePool() throws InterruptedException {
         for (int i = 0; i < 10; i++) {
             var integersToI = this.getIntegersTo(i);
-            var idmap = (Map) MnemoCommon.deduceIdOrMap(integersToI);
+            Map<Integer, Integer> idmap = idMapOf(integersToI);
             var integer = this.getInteger(i);
 
             valuePool.updateValueOrPutPreemptively(i, integer);
@@ -107,7 +112,7 @@ public class FIFOTest {
         for (int i = 0; i < 10; i++) {
             var objects = this.getTestObjects(i); //returns an empty list on zero!
             var object = this.gettestObject(i);
-            var ids = (Map) MnemoCommon.deduceIdOrMap(objects);
+            Map<String, testObject> ids = idMapOf(objects);
             var id = MnemoCommon.deduceIdOrMap(object);
             intlst.add(i);
             testObjectValuePool.updateValueOrPutPreemptively(id, object);
@@ -199,10 +204,241 @@ public class FIFOTest {
         var object = this.gettestObject(101);
         var id = (String) MnemoCommon.deduceIdOrMap(object);
         collectionTestObjectCache.putAll(100, Set.of(id));
-        assert (collectionTestObjectCache.numberOfUsesById.size() == 100);
+        assert (collectionTestObjectCache.awaitMaintenance(5000)); //the eviction is asynchronous
+        collectionTestObjectCache.scheduleEviction(); //as the next write would, in case the write that triggered the eviction landed after it
+        assert (collectionTestObjectCache.awaitMaintenance(5000));
+        assert (collectionTestObjectCache.numberOfUsesById.size() == 98); //the high watermark is one step of one entry below the capacity, and the low one another step below
         assert (collectionTestObjectCache.getAll(0).isEmpty());
     }
 
+    @Test
+    public void testEvictionDownToLowWatermark() throws InterruptedException {
+        cacheParameters.setCapacity(100);
+        cacheParameters.setPreemptiveEvictionPercentage((short) 80);
+        cacheParameters.setEvictionStepPercentage((short) 10);
+        cacheParameters.setHandleCollectionKeysSeparately(false);
+        var cache = new FIFOCache<Integer, String, testObject>(cacheParameters, testObjectValuePool);
+
+        for (int i = 0; i < 80; i++) {
+            var object = this.gettestObject(i);
+            var id = (String) MnemoCommon.deduceIdOrMap(object);
+            testObjectValuePool.updateValueOrPutPreemptively(id, object);
+            cache.putAll(i, Set.of(id));
+        }
+        assert (cache.numberOfUsesById.size() == 80); //the high watermark is reached, but nothing is evicted before the next write
+
+        var object = this.gettestObject(80);
+        var id = (String) MnemoCommon.deduceIdOrMap(object);
+        testObjectValuePool.updateValueOrPutPreemptively(id, object);
+        cache.putAll(80, Set.of(id));
+        assert (cache.awaitMaintenance(5000));
+        cache.scheduleEviction(); //as the next write would, in case the write that triggered the eviction landed after it
+        assert (cache.awaitMaintenance(5000));
+
+        assert (cache.numberOfUsesById.size() == 61); //81 entries, evicted in steps of 10 down to the low watermark of 70
+        assert (cache.getAll(0).isEmpty());
+        assert (!cache.getAll(80).isEmpty());
+    }
+
+
+    @Test
+    public void testExpiredValuesAreNotReturnedBetweenEvictions() throws InterruptedException {
+        var ticker = new ManualTicker();
+        Tickers.set(ticker);
+        try {
+            cacheParameters.setCapacity(100);
+            cacheParameters.setTimeToLive(100000);
+            cacheParameters.setCountdownFromCreation(true);
+            cacheParameters.setReturnsCollection(false);
+            cacheParameters.setHandleCollectionKeysSeparately(false);
+            var expiringCache = new FIFOCache<Integer, Object, testObject>(cacheParameters, testObjectValuePool);
+
+            var object = this.gettestObject(1);
+            var id = MnemoCommon.deduceIdOrMap(object);
+            testObjectValuePool.updateValueOrPutPreemptively(id, object);
+            expiringCache.put(1, id);
+            assert (expiringCache.get(1).equals(object));
+
+            ticker.advance(100001); //expired, but the periodic eviction is minutes away
+            assert (expiringCache.get(1) == null);
+
+            assert (expiringCache.awaitMaintenance(5000)); //the removal is asynchronous
+            assert (!expiringCache.keyIdMapper.containsKey(1));
+            assert (testObjectValuePool.getNumberOfUsesForId(id) == 0);
+        } finally {
+            Tickers.reset();
+        }
+    }
+
+    @Test
+    public void testExpiredKeyPutAgainKeepsItsOnlyValue() throws InterruptedException {
+        var ticker = new ManualTicker();
+        Tickers.set(ticker);
+        try {
+            cacheParameters.setCapacity(100);
+            cacheParameters.setTimeToLive(100000);
+            cacheParameters.setCountdownFromCreation(true);
+            cacheParameters.setReturnsCollection(false);
+            cacheParameters.setHandleCollectionKeysSeparately(false);
+            var expiringCache = new FIFOCache<Integer, Object, testObject>(cacheParameters, testObjectValuePool);
+
+            var object = this.gettestObject(1);
+            var id = MnemoCommon.deduceIdOrMap(object);
+            testObjectValuePool.updateValueOrPutPreemptively(id, object);
+            expiringCache.put(1, id);
+
+            ticker.advance(100001);
+            expiringCache.put(1, id); //the key is the only user of the value
+
+            assert (expiringCache.get(1).equals(object));
+            assert (testObjectValuePool.getNumberOfUsesForId(id) == 1);
+            assert (expiringCache.awaitMaintenance(5000));
+            assert (expiringCache.get(1).equals(object));
+        } finally {
+            Tickers.reset();
+        }
+    }
+
+    @Test
+    public void testInvalidatedEntriesAreInvisibleBeforeReclaim() throws InterruptedException {
+        for (int i = 0; i < 1000; i++) {
+            var integersToI = this.getIntegersTo(i);
+            Map<Integer, Integer> id = idMapOf(integersToI);
+            id.forEach(collectionIntegerCache.valuePool::updateValueOrPutPreemptively);
+            collectionIntegerCache.putAll(i, id.keySet());
+        }
+        assert (!collectionIntegerCache.getAll(999).isEmpty());
+
+        collectionIntegerCache.invalidateCache();
+        for (int i = 0; i < 1000; i++) {
+            assert (collectionIntegerCache.getAll(i).isEmpty()); //whether reclaimed already or not
+        }
+
+        collectionIntegerCache.putAll(5, List.of(1, 2));
+        assert (collectionIntegerCache.getAll(5).size() == 2); //the invalidated wrapper is replaced, not reused
+
+        assert (collectionIntegerCache.awaitMaintenance(5000)); //the invalidated entries are reclaimed asynchronously
+        assert (collectionIntegerCache.keyIdMapper.size() == 1);
+        assert (collectionIntegerCache.numberOfUsesById.size() == 2);
+        assert (collectionIntegerCache.numberOfUsesById.get(1) == 1);
+        assert (valuePool.getValue(0) == null);
+    }
+
+    @Test
+    public void testEvictionByWeight() throws InterruptedException {
+        cacheParameters.setMaxWeight(100);
+        cacheParameters.setWeigher(TenUnitsWeigher.class);
+        cacheParameters.setPreemptiveEvictionPercentage((short) 80);
+        cacheParameters.setEvictionStepPercentage((short) 10);
+        cacheParameters.setReturnsCollection(true);
+        cacheParameters.setHandleCollectionKeysSeparately(false);
+        var weighedPool = new HeapValuePool<Integer, Integer>();
+        var weighedCache = new FIFOCache<Integer, Integer, Integer>(cacheParameters, weighedPool);
+
+        for (int i = 0; i < 10; i++) {
+            weighedPool.updateValueOrPutPreemptively(i, i);
+        }
+        weighedCache.putAll(0, List.of(0, 1, 2, 3, 4));
+        weighedCache.putAll(1, List.of(0, 1, 2, 3, 4));
+        assert (weighedCache.getUsage() == 50); //every value is charged once, regardless of the number of keys using it
+        assert (weighedPool.getWeight(0) == 10);
+
+        weighedCache.putAll(2, List.of(5, 6, 7));
+        assert (weighedCache.getUsage() == 80);
+        weighedCache.putAll(3, List.of(8)); //the high watermark is reached
+
+        assert (weighedCache.awaitMaintenance(5000));
+        assert (weighedCache.getUsage() <= 70);
+        assert (weighedCache.getAll(0).isEmpty());
+        assert (weighedCache.getAll(3).size() == 1);
+    }
+
+    @Test
+    public void testUpdatedValuesAreChargedWithTheirNewWeight() {
+        cacheParameters.setMaxWeight(1000);
+        cacheParameters.setWeigher(ValueAsWeightWeigher.class);
+        cacheParameters.setReturnsCollection(false);
+        cacheParameters.setHandleCollectionKeysSeparately(false);
+        var weighedPool = new HeapValuePool<Integer, Integer>();
+        var weighedCache = new FIFOCache<Integer, Integer, Integer>(cacheParameters, weighedPool);
+
+        weighedPool.updateValueOrPutPreemptively(1, 10);
+        weighedPool.updateValueOrPutPreemptively(2, 20);
+        weighedCache.put(1, 1);
+        weighedCache.put(2, 2);
+        assert (weighedCache.getCurrentWeight() == 30);
+
+        weighedPool.updateValueOrPutPreemptively(1, 50);
+        assert (weighedCache.getCurrentWeight() == 70);
+        weighedPool.updateValueOrPutPreemptively(2, 5);
+        assert (weighedCache.getCurrentWeight() == 55);
+        weighedPool.updateValueOrPutPreemptively(3, 100); //not used by the cache
+        assert (weighedCache.getCurrentWeight() == 55);
+
+        weighedCache.remove(1);
+        weighedCache.remove(2);
+        assert (weighedCache.getCurrentWeight() == 0);
+    }
+
+    @Test
+    public void testReclaimedValuesAreTreatedAsMisses() throws InterruptedException {
+        cacheParameters.setValueReferences(ReferenceMode.WEAK);
+        cacheParameters.setReturnsCollection(false);
+        cacheParameters.setHandleCollectionKeysSeparately(false);
+        var weakPool = new HeapValuePool<Object, testObject>();
+        var weakCache = new FIFOCache<Integer, Object, testObject>(cacheParameters, weakPool);
+
+        var heldElsewhere = this.gettestObject(1);
+        var id1 = MnemoCommon.deduceIdOrMap(heldElsewhere);
+        weakPool.updateValueOrPutPreemptively(id1, heldElsewhere);
+        weakCache.put(1, id1);
+        var id2 = MnemoCommon.deduceIdOrMap(this.gettestObject(2));
+        weakPool.updateValueOrPutPreemptively(id2, this.gettestObject(2)); //held only by the cache
+        weakCache.put(2, id2);
+
+        for (int i = 0; i < 50 && weakCache.get(2) != null; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assert (weakCache.get(2) == null);
+        assert (weakCache.get(1) == heldElsewhere);
+
+        weakPool.drainClearedReferences(); //otherwise done by the maintenance thread every second
+        assert (!weakCache.keyIdMapper.containsKey(2));
+        assert (weakCache.keyIdMapper.containsKey(1));
+        assert (weakPool.getNumberOfUsesForId(id2) == 0);
+    }
+
+    @Test
+    public void testIncompleteCollectionsAreTreatedAsMisses() throws InterruptedException {
+        cacheParameters.setValueReferences(ReferenceMode.WEAK);
+        cacheParameters.setReturnsCollection(true);
+        cacheParameters.setHandleCollectionKeysSeparately(false);
+        var weakPool = new HeapValuePool<Object, testObject>();
+        var weakCache = new FIFOCache<Integer, Object, testObject>(cacheParameters, weakPool);
+
+        var heldElsewhere = this.gettestObject(1);
+        var id1 = MnemoCommon.deduceIdOrMap(heldElsewhere);
+        weakPool.updateValueOrPutPreemptively(id1, heldElsewhere);
+        var id2 = MnemoCommon.deduceIdOrMap(this.gettestObject(2));
+        weakPool.updateValueOrPutPreemptively(id2, this.gettestObject(2)); //held only by the cache
+        weakCache.putAll(1, List.of(id1, id2));
+        weakCache.putAll(2, List.of(id1));
+
+        for (int i = 0; i < 50 && !weakCache.getAll(1).isEmpty(); i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assert (weakCache.getAll(1).isEmpty()); //never returned without the reclaimed value
+        assert (weakCache.getAll(2).size() == 1);
+
+        assert (weakCache.awaitMaintenance(5000));
+        weakPool.drainClearedReferences();
+        assert (!weakCache.keyIdMapper.containsKey(1));
+        assert (weakCache.keyIdMapper.containsKey(2));
+        assert (weakCache.getKeysOf(id1).equals(List.of(2)));
+        assert (weakCache.getKeysOf(id2).isEmpty());
+    }
 
     @Test
     public void test_separateCacheHandling() throws Exception {
@@ -210,10 +446,10 @@ public class FIFOTest {
         System.out.println(System.currentTimeMillis());
         var valMapField = valuePool.getClass().getDeclaredField("valueMap");
         valMapField.setAccessible(true);
-        var valueMap = (ConcurrentHashMap<?, CacheValue<?>>) valMapField.get(collectionIntegerCache.valuePool);
+        var valueMap = valueMapOf(valMapField, collectionIntegerCache.valuePool);
         for (int i = 0; i < 1000; i++) {
             var integersToI = this.getIntegersTo(i);
-            Map<Integer,Integer> id = (Map<Integer,Integer>) MnemoCommon.deduceIdOrMap(integersToI);
+            Map<Integer,Integer> id = idMapOf(integersToI);
             id.forEach(collectionIntegerCache.valuePool::updateValueOrPutPreemptively);
             collectionIntegerCache.putAll(i, id.keySet());
         }
@@ -221,6 +457,7 @@ public class FIFOTest {
         assert (collectionIntegerCache.numberOfUsesById.get(0) == 1000); //but used in by a thousand keys!
 
         collectionIntegerCache.invalidateCache();
+        assert (collectionIntegerCache.awaitMaintenance(5000)); //the invalidated entries are reclaimed asynchronously
         assert (valueMap.get(0) == null);
 
         for (int i = 0; i < 10000; i++) {
@@ -233,8 +470,8 @@ public class FIFOTest {
         System.out.println(System.currentTimeMillis());
 
 
-        testObjectValuePool = new ValuePool<>();
-        valueMap = (ConcurrentHashMap<?, CacheValue<?>>) valMapField.get(testObjectValuePool);
+        testObjectValuePool = new HeapValuePool<>();
+        valueMap = valueMapOf(valMapField, testObjectValuePool);
         cacheParameters.setThreadPoolSize(10);
         separateHandlingCache = new FIFOCache<>(cacheParameters, testObjectValuePool);
         separateHandlingCache2 = new FIFOCache<>(cacheParameters, testObjectValuePool);
@@ -249,7 +486,7 @@ public class FIFOTest {
          */
         for (int i = 0; i < 1000; i++) {
             var integersToI = this.getIntegersTo(i);
-            Map<String, String> id = (Map<String, String>) MnemoCommon.deduceIdOrMap(integersToI.stream().map(String::valueOf).toList());
+            Map<String, String> id = idMapOf(integersToI.stream().map(String::valueOf).toList());
             id.forEach((a,b)->separateHandlingCache.valuePool.updateValueOrPutPreemptively(a,(Integer.valueOf(b))));
 
             separateHandlingCache.putAll(i, id.keySet());
@@ -263,6 +500,7 @@ public class FIFOTest {
         assert (valueMap.get(String.valueOf(randonum2)).getNumberOfUses() == 2);
 
         separateHandlingCache.invalidateCache();
+        assert (separateHandlingCache.awaitMaintenance(5000));
 
         System.out.println(System.currentTimeMillis());
 
@@ -275,6 +513,16 @@ public class FIFOTest {
     }
 
 
+    @SuppressWarnings("unchecked") //the map of the IDs of a collection to its' elements
+    private static <ID, V> Map<ID, V> idMapOf(Collection<?> values) {
+        return (Map<ID, V>) MnemoCommon.deduceIdOrMap(values);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static IdMap<?, CacheValue<?>> valueMapOf(Field valueMapField, ValuePool<?, ?> valuePool) throws IllegalAccessException {
+        return (IdMap<?, CacheValue<?>>) valueMapField.get(valuePool);
+    }
+
     private List<Integer> getIntegersTo(int i) {
         if (i < 0) {
             return Collections.emptyList();
@@ -323,6 +571,20 @@ public class FIFOTest {
     }
 
 
+    public static class TenUnitsWeigher implements Weigher<Integer> {
+        @Override
+        public long weigh(Integer value) {
+            return 10;
+        }
+    }
+
+    public static class ValueAsWeightWeigher implements Weigher<Integer> {
+        @Override
+        public long weigh(Integer value) {
+            return value;
+        }
+    }
+
     class testObject {
         String id;
         String name;
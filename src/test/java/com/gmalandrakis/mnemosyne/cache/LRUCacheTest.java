@@ -1,7 +1,10 @@
 package com.gmalandrakis.mnemosyne.cache;
 
+import com.gmalandrakis.mnemosyne.core.HeapValuePool;
 import com.gmalandrakis.mnemosyne.core.ValuePool;
 import com.gmalandrakis.mnemosyne.structures.CacheParameters;
+import com.gmalandrakis.mnemosyne.utils.ManualTicker;
+import com.gmalandrakis.mnemosyne.utils.Tickers;
 import org.junit.Test;
 
 import java.util.*;
@@ -20,7 +23,7 @@ public class LRUCacheTest {
     public void testLRUCacheEviction() {
        /* CacheParameters params = new CacheParameters();
         params.setCapacity(3);
-        ValuePool<Integer, String> val = new ValuePool<>();
+        ValuePool<Integer, String> val = new HeapValuePool<>();
         LRUCache<Integer, Integer, String> cache = new LRUCache<>(params, val);
         cache.put(1, 1, "Value1");
         cache.put(2, 2, "Value2");
@@ -48,10 +51,56 @@ public class LRUCacheTest {
         assert (val.getNumberOfUsesForId(1) == 1);*/
     }
 
+    @Test
+    public void testExpiredKeyPutAgainKeepsItsOnlyValue() throws InterruptedException {
+        var ticker = new ManualTicker();
+        Tickers.set(ticker);
+        try {
+            CacheParameters params = new CacheParameters();
+            params.setTimeToLive(200);
+            params.setCapacity(10);
+            ValuePool<Integer, String> val = new HeapValuePool<>();
+            LRUCache<Integer, Integer, String> cache = new LRUCache<>(params, val);
+
+            val.updateValueOrPutPreemptively(1, "Value1");
+            cache.put(1, 1);
+
+            ticker.advance(300);
+            cache.put(1, 1); //the key is the only user of the value
+
+            assertEquals("Value1", cache.get(1));
+            assertEquals(1, val.getNumberOfUsesForId(1));
+            assertTrue(cache.awaitMaintenance(5000));
+            assertEquals("Value1", cache.get(1));
+        } finally {
+            Tickers.reset();
+        }
+    }
+
+    @Test
+    public void testValuesMissingFromTheValuePoolAreSkippedInBulkReads() throws InterruptedException {
+        CacheParameters params = new CacheParameters();
+        params.setCapacity(10);
+        ValuePool<Integer, String> val = new HeapValuePool<>();
+        LRUCache<Integer, Integer, String> cache = new LRUCache<>(params, val);
+        val.updateValueOrPutPreemptively(1, "Value1");
+        cache.put(1, 1);
+        val.updateValueOrPutPreemptively(2, "Value2");
+        cache.put(2, 2);
+
+        val.removeOrDecreaseNumberOfUsesForId(1); //e.g. reclaimed, before the ValuePool got to notify the cache
+        assertEquals(Set.of("Value2"), Set.copyOf(cache.getAll(List.of(1, 2))));
+        assertEquals(1, cache.getHitCount());
+
+        assertTrue(cache.awaitMaintenance(5000));
+        assertFalse(cache.getKeyIdMapper().containsKey(1));
+        assertTrue(cache.getKeyIdMapper().containsKey(2));
+    }
+
     /*@Test
     public void testLRUCacheEvictions() {
         CacheParameters params = new CacheParameters();
-        ValuePool<Integer, String> val = new ValuePool<>();
+        ValuePool<Integer, String> val = new HeapValuePool<>();
         LRUCacheOld<Integer, Integer, testObject> cache = new LRUCacheOld<>(params, val);
 
         var time = System.currentTimeMillis();
@@ -97,7 +146,7 @@ public class LRUCacheTest {
 
     @Test
     public void testLRUCacheRemove() {
-        ValuePool<Integer, String> val = new ValuePool<>();
+        ValuePool<Integer, String> val = new HeapValuePool<>();
 
         LRUCache<Integer, Integer, String> cache = new LRUCache<>(new CacheParameters(), val);
 
@@ -115,7 +164,7 @@ public class LRUCacheTest {
         params.setTimeToLive(200);
         params.setCapacity(10);
         params.setPreemptiveEvictionPercentage((short) 100);
-        ValuePool<Integer, String> val = new ValuePool<>();
+        ValuePool<Integer, String> val = new HeapValuePool<>();
 
         LRUCache<Integer, Integer, String> cache = new LRUCache<>(params, val);
         cache.put(1, 1,"Value1");
@@ -135,7 +184,7 @@ public class LRUCacheTest {
 
     @Test
     public void testLRUCacheConcurrency() throws InterruptedException {
-        ValuePool<Integer, String> val = new ValuePool<>();
+        ValuePool<Integer, String> val = new HeapValuePool<>();
         final LRUCache<Integer, Integer, String> cache = new LRUCache<>(new CacheParameters(), val);
 
         final int numThreads = 10;
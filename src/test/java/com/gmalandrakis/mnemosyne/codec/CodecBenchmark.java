@@ -0,0 +1,53 @@
+package com.gmalandrakis.mnemosyne.codec;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the generated codecs with Java serialization on a typical value type. Not part of the test suite; run the main method
+ * from the test classpath, e.g. via the IDE.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CodecBenchmark {
+
+    private final ValueCodec<Transaction> generated = CodecGenerator.generate(Transaction.class);
+    private final ValueCodec<Transaction> javaSerialization = new JavaSerializationCodec<>(Transaction.class);
+    private final Transaction transaction = Transaction.sample(42);
+    private final byte[] generatedBytes = generated.encode(transaction);
+    private final byte[] javaSerializationBytes = javaSerialization.encode(transaction);
+
+    @Benchmark
+    public byte[] encodeGenerated() {
+        return generated.encode(transaction);
+    }
+
+    @Benchmark
+    public byte[] encodeJavaSerialization() {
+        return javaSerialization.encode(transaction);
+    }
+
+    @Benchmark
+    public Transaction decodeGenerated() {
+        return generated.decode(generatedBytes);
+    }
+
+    @Benchmark
+    public Transaction decodeJavaSerialization() {
+        return javaSerialization.decode(javaSerializationBytes);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        var benchmark = new CodecBenchmark();
+        System.out.println("Encoded size: generated " + benchmark.generatedBytes.length + " bytes, Java serialization " + benchmark.javaSerializationBytes.length + " bytes");
+        new Runner(new OptionsBuilder().include(CodecBenchmark.class.getSimpleName()).build()).run();
+    }
+}
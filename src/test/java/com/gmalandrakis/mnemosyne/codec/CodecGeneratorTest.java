@@ -0,0 +1,99 @@
+package com.gmalandrakis.mnemosyne.codec;
+
+import com.gmalandrakis.mnemosyne.exception.MnemosyneInitializationException;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.*;
+
+import static org.junit.Assert.assertThrows;
+
+public class CodecGeneratorTest {
+
+    @Test
+    public void testRecordsRoundTripMoreCompactlyThanJavaSerialization() {
+        var codec = CodecGenerator.generate(Transaction.class);
+        var transaction = Transaction.sample(42);
+        var encoded = codec.encode(transaction);
+
+        assert (codec.decode(encoded).equals(transaction));
+        assert (encoded.length * 4 < new JavaSerializationCodec<>(Transaction.class).encode(transaction).length);
+
+        var withNulls = new Transaction(null, -1, null, null, null, null, null, null, null);
+        assert (codec.decode(codec.encode(withNulls)).equals(withNulls));
+    }
+
+    @Test
+    public void testClassesWithNestedAndRecursiveFields() {
+        var codec = CodecGenerator.generate(Account.class);
+        var account = new Account();
+        account.number = 7;
+        account.balance = new BigDecimal("-0.01");
+        account.openedOn = LocalDate.of(2020, 2, 29);
+        account.history = new ArrayList<>(List.of(Transaction.sample(1), Transaction.sample(2)));
+        account.limits = new int[]{100, -200};
+        account.parent = new Account();
+        account.parent.number = 1;
+        account.cache = "not encoded";
+
+        var decoded = codec.decode(codec.encode(account));
+        assert (decoded.number == 7 && decoded.balance.equals(account.balance) && decoded.openedOn.equals(account.openedOn));
+        assert (decoded.history.equals(account.history));
+        assert (Arrays.equals(decoded.limits, account.limits));
+        assert (decoded.parent.number == 1 && decoded.parent.parent == null);
+        assert (decoded.cache == null);
+    }
+
+    @Test
+    public void testRegisteredCodecsOverrideGeneratedOnes() {
+        var registry = new CodecRegistry();
+        var counterpartyCodec = new CounterpartyCodec();
+        registry.register(counterpartyCodec);
+
+        var codec = registry.getCodec(Transaction.class);
+        var transaction = Transaction.sample(3);
+        assert (codec.decode(codec.encode(transaction)).equals(transaction));
+        assert (counterpartyCodec.encoded > 0);
+        assert (registry.getCodec(Transaction.Counterparty.class) == counterpartyCodec);
+
+        assert (registry.findCodec(Object.class) == null);
+        assertThrows(MnemosyneInitializationException.class, () -> registry.getCodec(Untyped.class));
+    }
+
+    static class Account {
+        int number;
+        BigDecimal balance;
+        LocalDate openedOn;
+        List<Transaction> history;
+        int[] limits;
+        Account parent;
+        transient String cache;
+    }
+
+    static class Untyped {
+        @SuppressWarnings("rawtypes") //raw collections have no known element type
+        List items;
+    }
+
+    static class CounterpartyCodec implements ValueCodec<Transaction.Counterparty> {
+        int encoded;
+
+        @Override
+        public Class<Transaction.Counterparty> getValueType() {
+            return Transaction.Counterparty.class;
+        }
+
+        @Override
+        public byte[] encode(Transaction.Counterparty value) {
+            encoded++;
+            return (value.name() + "|" + value.iban() + "|" + value.internal()).getBytes();
+        }
+
+        @Override
+        public Transaction.Counterparty decode(byte[] bytes) {
+            var parts = new String(bytes).split("\\|");
+            return new Transaction.Counterparty(parts[0], parts[1], Boolean.parseBoolean(parts[2]));
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package com.gmalandrakis.mnemosyne.codec;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * A value type resembling the ones usually cached, shared by the codec tests and benchmarks.
+ */
+public record Transaction(UUID id, long sequence, String account, BigDecimal amount, Instant bookedAt, Status status,
+                          Counterparty counterparty, List<String> tags, Map<String, String> attributes) implements Serializable {
+
+    public enum Status {PENDING, BOOKED, REVERSED}
+
+    public record Counterparty(String name, String iban, boolean internal) implements Serializable {
+    }
+
+    public static Transaction sample(long sequence) {
+        return new Transaction(new UUID(sequence, ~sequence), sequence, "DE89370400440532013000", new BigDecimal("1234.56"),
+                Instant.ofEpochSecond(1_700_000_000L + sequence), Status.BOOKED,
+                new Counterparty("Acme GmbH", "DE02120300000000202051", false),
+                List.of("salary", "recurring"), Map.of("channel", "sepa", "reference", "INV-" + sequence));
+    }
+}
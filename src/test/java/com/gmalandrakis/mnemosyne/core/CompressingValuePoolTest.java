@@ -0,0 +1,76 @@
+package com.gmalandrakis.mnemosyne.core;
+
+import com.gmalandrakis.mnemosyne.codec.JavaSerializationCodec;
+import com.gmalandrakis.mnemosyne.memory.Weigher;
+import org.junit.Test;
+
+import java.util.List;
+
+public class CompressingValuePoolTest {
+
+    @Test
+    public void testLargeValuesAreStoredCompressed() {
+        var valuePool = new CompressingValuePool<Integer, String>(new JavaSerializationCodec<>(String.class), 1024);
+        var large = "report line\n".repeat(10_000);
+        valuePool.put(1, large, true);
+        valuePool.put(2, "small", true);
+        valuePool.updateValueOrPutPreemptively(3, null);
+
+        assert (valuePool.getValue(1).equals(large));
+        assert (valuePool.getValue(2).equals("small"));
+        assert (valuePool.getValue(3) == null);
+        assert (valuePool.getAll(List.of(1, 2, 3, 4)).equals(List.of(large, "small")));
+        assert (valuePool.getNumberOfUsesForId(1) == 1);
+
+        var compression = valuePool.getStats().getCompression();
+        assert (compression.getCompressedValues() == 1);
+        assert (compression.getUncompressedBytes() > large.length());
+        assert (compression.getBytesSaved() > compression.getCompressedBytes() * 10);
+        assert (compression.getDecompressions() == 1);
+        assert (compression.getDecompressedCacheHits() == 1);
+
+        var updated = "updated report line\n".repeat(10_000);
+        valuePool.put(1, updated, false);
+        assert (valuePool.getValue(1).equals(updated)); //not the decompressed value of the previous one
+        assert (valuePool.getStats().getCompression().getDecompressions() == 2);
+
+        assert (valuePool.removeOrDecreaseNumberOfUsesForId(1) == 0);
+        assert (valuePool.getValue(1) == null);
+        assert (valuePool.getStats().getCompression().getCompressedValues() == 0);
+    }
+
+    @Test
+    public void testValuesAreWeighedUncompressed() {
+        var valuePool = new CompressingValuePool<Integer, String>(new JavaSerializationCodec<>(String.class), 1024);
+        var compressedBefore = "report line\n".repeat(10_000);
+        valuePool.put(1, compressedBefore, true);
+        valuePool.enableWeighing(LengthWeigher.class);
+        assert (valuePool.getWeight(1) == compressedBefore.length());
+
+        var compressedAfter = "other report line\n".repeat(10_000);
+        valuePool.put(2, compressedAfter, true);
+        valuePool.put(3, "small", true);
+        assert (valuePool.getWeight(2) == compressedAfter.length());
+        assert (valuePool.getWeight(3) == "small".length());
+        assert (valuePool.getTotalWeight() == compressedBefore.length() + compressedAfter.length() + "small".length());
+    }
+
+    @Test
+    public void testOnlyCompressedValuesCountTowardsCompressionTime() {
+        var valuePool = new CompressingValuePool<Integer, String>(new JavaSerializationCodec<>(String.class), 1024);
+        for (int i = 0; i < 100; i++) {
+            valuePool.put(i, "small" + i, true);
+        }
+        assert (valuePool.getStats().getCompression().getCompressionNanos() == 0);
+
+        valuePool.put(100, "report line\n".repeat(10_000), true);
+        assert (valuePool.getStats().getCompression().getCompressionNanos() > 0);
+    }
+
+    public static class LengthWeigher implements Weigher<String> {
+        @Override
+        public long weigh(String value) {
+            return value.length();
+        }
+    }
+}
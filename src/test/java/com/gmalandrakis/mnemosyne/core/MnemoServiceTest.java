@@ -2,16 +2,28 @@ package com.gmalandrakis.mnemosyne.core;
 
 import com.gmalandrakis.mnemosyne.annotations.*;
 import com.gmalandrakis.mnemosyne.cache.AbstractGenericCache;
+import com.gmalandrakis.mnemosyne.codec.JavaSerializationCodec;
 import com.gmalandrakis.mnemosyne.exception.MnemosyneInitializationException;
 import com.gmalandrakis.mnemosyne.exception.MnemosyneRuntimeException;
 import com.gmalandrakis.mnemosyne.structures.AddMode;
 import com.gmalandrakis.mnemosyne.structures.CollectionIdWrapper;
+import com.gmalandrakis.mnemosyne.structures.JournalSyncMode;
 import com.gmalandrakis.mnemosyne.structures.RemoveMode;
+import com.gmalandrakis.mnemosyne.utils.ManualTicker;
+import com.gmalandrakis.mnemosyne.utils.Tickers;
 import org.junit.Test;
 import org.mockito.Mockito;
 
+import java.lang.reflect.Method;
+import java.nio.file.Files;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
 
 import static org.junit.Assert.assertThrows;
 import static org.mockito.ArgumentMatchers.any;
@@ -20,10 +32,22 @@ import static org.mockito.Mockito.verify;
 
 public class MnemoServiceTest {
 
+    static final AtomicInteger secondLevelTierInvocations = new AtomicInteger();
+    static final AtomicInteger expiringTierInvocations = new AtomicInteger();
+    static final AtomicInteger snapshotInvocations = new AtomicInteger();
+    static final AtomicInteger refreshInvocations = new AtomicInteger();
+    static final AtomicInteger staleInvocations = new AtomicInteger();
+    static final AtomicInteger negativeInvocations = new AtomicInteger();
+    static final AtomicInteger batchedInvocations = new AtomicInteger();
+    static final AtomicInteger asyncInvocations = new AtomicInteger();
+    static volatile boolean backendDown;
+    static volatile List<String> refreshedCollection = List.of();
+    static volatile CompletableFuture<String> asyncBackend;
+
     @Test
     public void testValuePools() throws Throwable {
 
-        CollectionIdWrapper c = new CollectionIdWrapper(new HashSet<Integer>(1));
+        var c = new CollectionIdWrapper<>(new HashSet<Integer>(1));
         c.addToCollectionOrUpdate(1);
         c.addToCollectionOrUpdate(2);
 
@@ -77,7 +101,8 @@ public class MnemoServiceTest {
         field3.setAccessible(true); // !!!
 
 
-        var proxies = (ConcurrentHashMap) field.get(spyMnemo);
+        @SuppressWarnings("unchecked")
+        var proxies = (Map<Method, MnemoProxy<?, ?, ?>>) field.get(spyMnemo);
         proxies.put(test10, proxy10);
 
         spyMnemo.fetchFromCacheOrInvokeMethodAndUpdate(test10,  1);
@@ -93,9 +118,9 @@ public class MnemoServiceTest {
             1. Invalidates the cache
             2. Makes sure the values have been evicted from the valuePool too
          */
-        var cache = (AbstractGenericCache) field3.get(proxy10);
-        var valuePools = (ConcurrentHashMap) field2.get(spyMnemo);
-        var valuePool = (ValuePool) valuePools.get("java.lang.String");
+        var cache = (AbstractGenericCache<?, ?, ?>) field3.get(proxy10);
+        var valuePools = (Map<?, ?>) field2.get(spyMnemo);
+        var valuePool = (ValuePool<?, ?>) valuePools.get("java.lang.String");
 
         cache.invalidateCache();
         Thread.sleep(500);
@@ -107,6 +132,367 @@ public class MnemoServiceTest {
 
     }
 
+    @Test
+    public void testEvictedEntriesAreServedFromSecondLevelTier() throws Exception {
+        var mnemoService = new MnemoService();
+        var method = innerClass.class.getDeclaredMethod("testSecondLevelTier", Integer.class);
+        var cache = (AbstractGenericCache<?, ?, ?>) mnemoService.generateForMethod(method, new innerClass()).cache;
+
+        for (int i = 0; i < 50; i++) {
+            assert (mnemoService.fetchFromCacheOrInvokeMethodAndUpdate(method, i).equals("value" + i));
+        }
+        assert (secondLevelTierInvocations.get() == 50);
+        assert (cache.awaitMaintenance(5000)); //the evicted entries are written to the tier asynchronously
+
+        for (int i = 0; i < 50; i++) { //most of them were evicted from the cache
+            assert (mnemoService.fetchFromCacheOrInvokeMethodAndUpdate(method, i).equals("value" + i));
+        }
+        assert (secondLevelTierInvocations.get() == 50);
+
+        var tierStats = mnemoService.getTierStats().get("secondLevelTier");
+        assert (tierStats.size() == 2);
+        assert (tierStats.get(0).getKind().equals("heap") && tierStats.get(1).getKind().equals("mapped"));
+        assert (tierStats.get(1).getHits() > 0);
+        assert (tierStats.get(0).getMisses() == tierStats.get(1).getHits() + tierStats.get(1).getMisses()); //every miss of the cache is a lookup in the tier
+    }
+
+    @Test
+    public void testPromotedEntriesKeepTheirOriginalExpiration() throws Exception {
+        var ticker = new ManualTicker();
+        Tickers.set(ticker);
+        try {
+            var mnemoService = new MnemoService();
+            var method = innerClass.class.getDeclaredMethod("testExpiringTier", Integer.class);
+            var cache = (AbstractGenericCache<?, ?, ?>) mnemoService.generateForMethod(method, new innerClass()).cache;
+
+            for (int i = 0; i < 50; i++) {
+                mnemoService.fetchFromCacheOrInvokeMethodAndUpdate(method, i);
+            }
+            assert (cache.awaitMaintenance(5000));
+            assert (expiringTierInvocations.get() == 50);
+
+            ticker.advance(6000);
+            assert (mnemoService.fetchFromCacheOrInvokeMethodAndUpdate(method, 0).equals("value0")); //promoted from the tier
+            assert (expiringTierInvocations.get() == 50);
+
+            ticker.advance(5000); //past the expiration of the original entry
+            assert (mnemoService.fetchFromCacheOrInvokeMethodAndUpdate(method, 0).equals("value0"));
+            assert (expiringTierInvocations.get() == 51);
+        } finally {
+            Tickers.reset();
+        }
+    }
+
+    @Test
+    public void testOffHeapIsOptedIntoByTheCaches() throws Exception {
+        var offHeapMethod = innerClass.class.getDeclaredMethod("testOffHeap", Integer.class);
+        var heapMethod = innerClass.class.getDeclaredMethod("testSnapshot", Integer.class);
+
+        var mnemoService = new MnemoService();
+        mnemoService.registerValueCodec(new JavaSerializationCodec<>(String.class)); //a registered codec alone keeps the values on the heap
+        mnemoService.generateForMethod(heapMethod, new innerClass());
+        assert (mnemoService.getValuePool(heapMethod) instanceof HeapValuePool);
+        assertThrows(MnemosyneInitializationException.class, () -> mnemoService.generateForMethod(offHeapMethod, new innerClass()));
+
+        var offHeapService = new MnemoService();
+        offHeapService.generateForMethod(offHeapMethod, new innerClass());
+        offHeapService.generateForMethod(heapMethod, new innerClass()); //shares the ValuePool of the type
+        assert (offHeapService.getValuePool(offHeapMethod) instanceof OffHeapValuePool);
+        assert (offHeapService.getValuePool(heapMethod) == offHeapService.getValuePool(offHeapMethod));
+        assert (offHeapService.fetchFromCacheOrInvokeMethodAndUpdate(offHeapMethod, 1).equals("value1"));
+        assert (offHeapService.fetchFromCacheOrInvokeMethodAndUpdate(offHeapMethod, 1).equals("value1"));
+    }
+
+    @Test
+    public void testHotEntriesAreRefreshedAhead() throws Exception {
+        var ticker = new ManualTicker();
+        Tickers.set(ticker);
+        try {
+            var method = innerClass.class.getDeclaredMethod("testRefresh", Integer.class);
+            var mnemoService = new MnemoService();
+            var cache = (AbstractGenericCache<?, ?, ?>) mnemoService.generateForMethod(method, new innerClass()).cache;
+            assert (mnemoService.fetchFromCacheOrInvokeMethodAndUpdate(method, 1).equals("version1"));
+
+            ticker.advance(1500);
+            assert (mnemoService.fetchFromCacheOrInvokeMethodAndUpdate(method, 1).equals("version1")); //served immediately, while reloading
+            assert (cache.awaitMaintenance(5000));
+            assert (refreshInvocations.get() == 2);
+            assert (mnemoService.fetchFromCacheOrInvokeMethodAndUpdate(method, 1).equals("version2"));
+
+            ticker.advance(500); //the countdown started over on the reload
+            assert (mnemoService.fetchFromCacheOrInvokeMethodAndUpdate(method, 1).equals("version2"));
+            assert (cache.awaitMaintenance(5000));
+            assert (refreshInvocations.get() == 2);
+        } finally {
+            Tickers.reset();
+        }
+    }
+
+    @Test
+    public void testRefreshReplacesTheCollectionOfTheKey() throws Exception {
+        var ticker = new ManualTicker();
+        Tickers.set(ticker);
+        try {
+            var method = innerClass.class.getDeclaredMethod("testRefreshCollection", Integer.class);
+            var mnemoService = new MnemoService();
+            var cache = (AbstractGenericCache<?, ?, ?>) mnemoService.generateForMethod(method, new innerClass()).cache;
+            refreshedCollection = List.of("a", "b", "c");
+            assert (Set.copyOf((List<?>) mnemoService.fetchFromCacheOrInvokeMethodAndUpdate(method, 1)).equals(Set.of("a", "b", "c")));
+
+            refreshedCollection = List.of("a", "d"); //"b" and "c" were removed by the backend
+            ticker.advance(1500);
+            assert (Set.copyOf((List<?>) mnemoService.fetchFromCacheOrInvokeMethodAndUpdate(method, 1)).equals(Set.of("a", "b", "c")));
+            assert (cache.awaitMaintenance(5000));
+            assert (Set.copyOf((List<?>) mnemoService.fetchFromCacheOrInvokeMethodAndUpdate(method, 1)).equals(Set.of("a", "d")));
+        } finally {
+            Tickers.reset();
+        }
+    }
+
+    @Test
+    public void testStaleValuesAreServedWhileRevalidatingAndOnError() throws Exception {
+        var ticker = new ManualTicker();
+        Tickers.set(ticker);
+        try {
+            var method = innerClass.class.getDeclaredMethod("testStale", Integer.class);
+            var mnemoService = new MnemoService();
+            var proxy = mnemoService.generateForMethod(method, new innerClass());
+            var cache = (AbstractGenericCache<?, ?, ?>) proxy.cache;
+            assert (mnemoService.fetchFromCacheOrInvokeMethodAndUpdate(method, 1).equals("version1"));
+
+            ticker.advance(1500); //expired, but within the staleWhileRevalidate
+            assert (mnemoService.fetchFromCacheOrInvokeMethodAndUpdate(method, 1).equals("version1"));
+            assert (cache.awaitMaintenance(5000)); //the revalidation runs on the maintenance executor of the cache
+            assert (staleInvocations.get() == 2);
+            assert (mnemoService.fetchFromCacheOrInvokeMethodAndUpdate(method, 1).equals("version2"));
+
+            backendDown = true;
+            ticker.advance(4000); //expired beyond the staleWhileRevalidate, but within the staleIfError
+            assert (mnemoService.fetchFromCacheOrInvokeMethodAndUpdate(method, 1).equals("version2"));
+            assert (proxy.getStaleHitCount() == 2);
+
+            ticker.advance(10_000); //beyond both
+            assertThrows(IllegalStateException.class, () -> mnemoService.fetchFromCacheOrInvokeMethodAndUpdate(method, 1));
+        } finally {
+            backendDown = false;
+            Tickers.reset();
+        }
+    }
+
+    @Test
+    public void testMissingKeysAreRememberedUntilAdded() throws Exception {
+        var ticker = new ManualTicker();
+        Tickers.set(ticker);
+        try {
+            var method = innerClass.class.getDeclaredMethod("testNegative", Integer.class);
+            var updater = innerClass.class.getDeclaredMethod("addToNegative", String.class, Integer.class);
+            var instance = new innerClass();
+            var mnemoService = new MnemoService();
+            var proxy = mnemoService.generateForMethod(method, instance);
+            mnemoService.generateUpdatesForBean(instance);
+
+            assert (mnemoService.fetchFromCacheOrInvokeMethodAndUpdate(method, 1) == null);
+            assert (mnemoService.fetchFromCacheOrInvokeMethodAndUpdate(method, 2) == null);
+            assert (mnemoService.fetchFromCacheOrInvokeMethodAndUpdate(method, 1) == null);
+            assert (negativeInvocations.get() == 2);
+            assert (proxy.getNegativeCache().getHitCount() == 1);
+
+            mnemoService.invokeMethodAndUpdate(updater, instance, "added", 1);
+            assert (mnemoService.fetchFromCacheOrInvokeMethodAndUpdate(method, 1).equals("added"));
+            assert (mnemoService.fetchFromCacheOrInvokeMethodAndUpdate(method, 2) == null); //other keys are still missing
+            assert (negativeInvocations.get() == 2);
+
+            ticker.advance(1500); //beyond the negativeTimeToLive
+            assert (mnemoService.fetchFromCacheOrInvokeMethodAndUpdate(method, 2) == null);
+            assert (negativeInvocations.get() == 3);
+        } finally {
+            Tickers.reset();
+        }
+    }
+
+    @Test
+    public void testConcurrentMissesAreLoadedInOneBatch() throws Exception {
+        var method = innerClass.class.getDeclaredMethod("testBatched", Integer.class);
+        var mnemoService = new MnemoService();
+        var proxy = mnemoService.generateForMethod(method, new innerClass());
+        var executor = Executors.newFixedThreadPool(10);
+        try {
+            var results = new ArrayList<Future<Object>>();
+            for (int i = 0; i < 10; i++) {
+                var key = i;
+                results.add(executor.submit(() -> mnemoService.fetchFromCacheOrInvokeMethodAndUpdate(method, key)));
+            }
+            for (int i = 0; i < 10; i++) {
+                assert (results.get(i).get().equals("value" + i));
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assert (proxy.getBatchLoader().getBatchCount() == 1);
+        assert (batchedInvocations.get() == 0); //the cached method itself is never invoked
+        assert (mnemoService.fetchFromCacheOrInvokeMethodAndUpdate(method, 3).equals("value3"));
+        assert (proxy.getBatchLoader().getBatchCount() == 1);
+    }
+
+    @Test
+    public void testConcurrentMissesShareTheInFlightFuture() throws Exception {
+        var method = innerClass.class.getDeclaredMethod("testAsync", Integer.class);
+        var mnemoService = new MnemoService();
+        mnemoService.generateForMethod(method, new innerClass());
+
+        asyncBackend = new CompletableFuture<>();
+        var first = (CompletableFuture<?>) mnemoService.fetchFromCacheOrInvokeMethodAndUpdate(method, 1);
+        var second = (CompletableFuture<?>) mnemoService.fetchFromCacheOrInvokeMethodAndUpdate(method, 1);
+        assert (!first.isDone() && !second.isDone());
+        assert (asyncInvocations.get() == 1);
+
+        asyncBackend.complete("value");
+        assert (first.get().equals("value1") && second.get().equals("value1"));
+        var hit = (CompletableFuture<?>) mnemoService.fetchFromCacheOrInvokeMethodAndUpdate(method, 1);
+        assert (hit.isDone() && hit.get().equals("value1"));
+        assert (asyncInvocations.get() == 1);
+
+        asyncBackend = CompletableFuture.failedFuture(new IllegalStateException("The backend is down"));
+        var failed = (CompletableFuture<?>) mnemoService.fetchFromCacheOrInvokeMethodAndUpdate(method, 2);
+        var exception = assertThrows(ExecutionException.class, failed::get);
+        assert (exception.getCause() instanceof IllegalStateException);
+
+        asyncBackend = CompletableFuture.completedFuture("value");
+        var retried = (CompletableFuture<?>) mnemoService.fetchFromCacheOrInvokeMethodAndUpdate(method, 2);
+        assert (retried.get().equals("value2")); //the failure was not cached
+        assert (asyncInvocations.get() == 3);
+    }
+
+    @Test
+    public void testRelatedCachesAreUpdatedOncePerLoad() throws Exception {
+        var method = innerClass.class.getDeclaredMethod("testAsyncUpdating", Integer.class);
+        var targetMethod = innerClass.class.getDeclaredMethod("testAsyncTarget", Integer.class);
+        var mnemoService = new MnemoService();
+        mnemoService.generateForMethod(method, new innerClass());
+        var target = Mockito.spy(mnemoService.generateForMethod(targetMethod, new innerClass()));
+        var field = mnemoService.getClass().getDeclaredField("cachesByName");
+        field.setAccessible(true);
+        @SuppressWarnings("unchecked")
+        var cachesByName = (Map<String, MnemoProxy<?, ?, ?>>) field.get(mnemoService);
+        cachesByName.put("asyncTarget", target);
+
+        asyncBackend = new CompletableFuture<>();
+        var first = (CompletableFuture<?>) mnemoService.fetchFromCacheOrInvokeMethodAndUpdate(method, 1);
+        var second = (CompletableFuture<?>) mnemoService.fetchFromCacheOrInvokeMethodAndUpdate(method, 1);
+        assert (first == second); //the shared load itself
+
+        asyncBackend.complete("value");
+        assert (first.get().equals("value1"));
+        verify(target, times(1)).updateCacheViaAnnotation(any(), any(), any(), any(), any());
+        assert (mnemoService.fetchFromCacheOrInvokeMethodAndUpdate(targetMethod, 1).equals("value1")); //added by the load
+    }
+
+    @Test
+    public void testFuturesOfCollectionsAreCached() throws Exception {
+        var method = innerClass.class.getDeclaredMethod("testAsyncList", Integer.class);
+        var mnemoService = new MnemoService();
+        mnemoService.generateForMethod(method, new innerClass());
+
+        var loaded = (CompletableFuture<?>) mnemoService.fetchFromCacheOrInvokeMethodAndUpdate(method, 1);
+        assert (loaded.get() instanceof List<?> list && list.size() == 2 && list.containsAll(List.of("first1", "second1")));
+        var hit = (CompletableFuture<?>) mnemoService.fetchFromCacheOrInvokeMethodAndUpdate(method, 1);
+        assert (hit.isDone() && ((Collection<?>) hit.get()).containsAll(List.of("first1", "second1")));
+    }
+
+    @Test
+    public void testSnapshotIsRestoredWithoutExpiredEntries() throws Exception {
+        var ticker = new ManualTicker();
+        Tickers.set(ticker);
+        var snapshot = Files.createTempFile("mnemosyne", ".snapshot");
+        try {
+            var method = innerClass.class.getDeclaredMethod("testSnapshot", Integer.class);
+            var shortLivedMethod = innerClass.class.getDeclaredMethod("testShortLivedSnapshot", Integer.class);
+            var mnemoService = new MnemoService();
+            mnemoService.generateForMethod(method, new innerClass());
+            mnemoService.generateForMethod(shortLivedMethod, new innerClass());
+            for (int i = 0; i < 20; i++) {
+                mnemoService.fetchFromCacheOrInvokeMethodAndUpdate(method, i);
+                mnemoService.fetchFromCacheOrInvokeMethodAndUpdate(shortLivedMethod, i);
+            }
+            mnemoService.snapshot(snapshot);
+            ticker.advance(10_000); //the short-lived entries expire in the meantime
+
+            var restarted = new MnemoService();
+            restarted.generateForMethod(method, new innerClass());
+            restarted.generateForMethod(shortLivedMethod, new innerClass());
+            assert (restarted.restore(snapshot) == 20);
+            var invocations = snapshotInvocations.get();
+            for (int i = 0; i < 20; i++) {
+                assert (restarted.fetchFromCacheOrInvokeMethodAndUpdate(method, i).equals("value" + i));
+            }
+            assert (snapshotInvocations.get() == invocations);
+            assert (restarted.fetchFromCacheOrInvokeMethodAndUpdate(shortLivedMethod, 0).equals("value0"));
+            assert (snapshotInvocations.get() == invocations + 1);
+        } finally {
+            Tickers.reset();
+            Files.deleteIfExists(snapshot);
+        }
+    }
+
+    @Test
+    public void testJournalIsReplayedOnTopOfSnapshot() throws Exception {
+        var directory = Files.createTempDirectory("mnemosyne-journal");
+        try {
+            var method = innerClass.class.getDeclaredMethod("testSnapshot", Integer.class);
+            var mnemoService = new MnemoService();
+            mnemoService.generateForMethod(method, new innerClass());
+            assert (mnemoService.useJournal(directory, JournalSyncMode.EVERY_COMMIT, 0) == 0);
+            for (int i = 0; i < 10; i++) {
+                mnemoService.fetchFromCacheOrInvokeMethodAndUpdate(method, i);
+            }
+            mnemoService.getJournal().awaitCommit(); //otherwise they may be written to the next file too, and replayed once more
+            mnemoService.compactJournal();
+            for (int i = 10; i < 20; i++) { //only in the journal
+                mnemoService.fetchFromCacheOrInvokeMethodAndUpdate(method, i);
+            }
+            mnemoService.close(); //writes the pending mutations
+
+            var restarted = new MnemoService();
+            restarted.generateForMethod(method, new innerClass());
+            assert (restarted.useJournal(directory, JournalSyncMode.EVERY_COMMIT, 0) == 20); //a value and a key for each of the last ten
+            var invocations = snapshotInvocations.get();
+            for (int i = 0; i < 20; i++) {
+                assert (restarted.fetchFromCacheOrInvokeMethodAndUpdate(method, i).equals("value" + i));
+            }
+            assert (snapshotInvocations.get() == invocations);
+            restarted.close();
+        } finally {
+            try (var files = Files.walk(directory)) {
+                files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+            }
+        }
+    }
+
+    @Test
+    public void testUnserializableMutationsAreRejectedByTheJournal() throws Exception {
+        var directory = Files.createTempDirectory("mnemosyne-journal");
+        try {
+            var method = innerClass.class.getDeclaredMethod("testJournaledKey", Object.class);
+            var mnemoService = new MnemoService();
+            mnemoService.generateForMethod(method, new innerClass());
+            mnemoService.useJournal(directory, JournalSyncMode.EVERY_COMMIT, 0);
+
+            assertThrows(MnemosyneRuntimeException.class, () -> mnemoService.fetchFromCacheOrInvokeMethodAndUpdate(method, new Object()));
+            assert (mnemoService.fetchFromCacheOrInvokeMethodAndUpdate(method, 1).equals("value1"));
+            mnemoService.getJournal().awaitCommit(); //the rejected mutation did not fail the rest
+            mnemoService.close();
+
+            var restarted = new MnemoService();
+            restarted.generateForMethod(method, new innerClass());
+            assert (restarted.useJournal(directory, JournalSyncMode.EVERY_COMMIT, 0) > 0);
+            restarted.close();
+        } finally {
+            try (var files = Files.walk(directory)) {
+                files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+            }
+        }
+    }
+
     @Test
     public void assertThrows_runtime_concreteSepareteCollection() throws NoSuchMethodException {
         MnemoService mnemoService = new MnemoService();
@@ -186,7 +572,7 @@ public class MnemoServiceTest {
         mnemoService.invokeMethodAndUpdate(updater2, instance, "extra string", 1);
       //  Thread.sleep(200);
 
-        List<String> result = (List<String>) mnemoService.fetchFromCacheOrInvokeMethodAndUpdate(function, 1);
+        var result = (List<?>) mnemoService.fetchFromCacheOrInvokeMethodAndUpdate(function, 1);
 
         assert (result.size() == 4);
         assert (result.contains("extra string"));
@@ -194,7 +580,7 @@ public class MnemoServiceTest {
         mnemoService.invokeMethodAndUpdate(updater1, instance, List.of("val3"), 2);
        // Thread.sleep(200);
 
-        result = (List<String>) mnemoService.fetchFromCacheOrInvokeMethodAndUpdate(function, 2);
+        result = (List<?>) mnemoService.fetchFromCacheOrInvokeMethodAndUpdate(function, 2);
 
         assert (result.size() == 4);
         assert (result.contains("val3"));
@@ -265,6 +651,100 @@ public class MnemoServiceTest {
             return Collections.singletonList("Yoy");
         }
 
+        @Cached(cacheName = "secondLevelTier", capacity = 10, secondLevelTierSize = 1 << 16, addMode = AddMode.SINGLE_VALUE, removeMode = RemoveMode.SINGLE_VALUE)
+        public String testSecondLevelTier(Integer i) {
+            secondLevelTierInvocations.incrementAndGet();
+            return "value" + i;
+        }
+
+        @Cached(cacheName = "journaledKey", addMode = AddMode.SINGLE_VALUE, removeMode = RemoveMode.SINGLE_VALUE)
+        public String testJournaledKey(Object key) {
+            return "value" + key;
+        }
+
+        @Cached(cacheName = "expiringTier", capacity = 10, timeToLive = 10_000, countdownFromCreation = true, secondLevelTierSize = 1 << 16, addMode = AddMode.SINGLE_VALUE, removeMode = RemoveMode.SINGLE_VALUE)
+        public String testExpiringTier(Integer i) {
+            expiringTierInvocations.incrementAndGet();
+            return "value" + i;
+        }
+
+        @Cached(cacheName = "refresh", timeToLive = 10_000, refreshAfter = 1000, addMode = AddMode.SINGLE_VALUE, removeMode = RemoveMode.SINGLE_VALUE)
+        public String testRefresh(Integer i) {
+            return "version" + refreshInvocations.incrementAndGet();
+        }
+
+        @Cached(cacheName = "refreshCollection", timeToLive = 10_000, refreshAfter = 1000, addMode = AddMode.ADD_TO_COLLECTION, removeMode = RemoveMode.REMOVE_FROM_COLLECTION)
+        public List<String> testRefreshCollection(Integer i) {
+            return refreshedCollection;
+        }
+
+        @Cached(cacheName = "stale", timeToLive = 1000, staleWhileRevalidate = 1000, staleIfError = 5000, addMode = AddMode.SINGLE_VALUE, removeMode = RemoveMode.SINGLE_VALUE)
+        public String testStale(Integer i) {
+            if (backendDown) {
+                throw new IllegalStateException("The backend is down");
+            }
+            return "version" + staleInvocations.incrementAndGet();
+        }
+
+        @Cached(cacheName = "negative", negativeTimeToLive = 1000, negativeCapacity = 10, addMode = AddMode.SINGLE_VALUE, removeMode = RemoveMode.SINGLE_VALUE)
+        public String testNegative(Integer i) {
+            negativeInvocations.incrementAndGet();
+            return null;
+        }
+
+        @UpdatesCache(name = "negative", annotatedKeys = "negativeKey", addMode = AddMode.SINGLE_VALUE, removeMode = RemoveMode.NONE)
+        public void addToNegative(@UpdatedValue String str, @UpdateKey(keyId = "negativeKey") Integer i) {
+        }
+
+        @Cached(cacheName = "batched", batchLoader = "loadBatch", batchWindow = 5000, maxBatchSize = 10, addMode = AddMode.SINGLE_VALUE, removeMode = RemoveMode.SINGLE_VALUE)
+        public String testBatched(Integer i) {
+            batchedInvocations.incrementAndGet();
+            return "value" + i;
+        }
+
+        public Map<Integer, String> loadBatch(Set<Integer> ids) {
+            return ids.stream().collect(Collectors.toMap(i -> i, i -> "value" + i));
+        }
+
+        @Cached(cacheName = "async", addMode = AddMode.SINGLE_VALUE, removeMode = RemoveMode.SINGLE_VALUE)
+        public CompletableFuture<String> testAsync(Integer i) {
+            asyncInvocations.incrementAndGet();
+            return asyncBackend.thenApply(value -> value + i);
+        }
+
+        @Cached(cacheName = "asyncUpdating", addMode = AddMode.SINGLE_VALUE, removeMode = RemoveMode.SINGLE_VALUE)
+        @UpdatesCache(name = "asyncTarget", annotatedKeys = "asyncKey", addMode = AddMode.SINGLE_VALUE, removeMode = RemoveMode.NONE)
+        public CompletableFuture<String> testAsyncUpdating(@UpdateKey(keyId = "asyncKey") Integer i) {
+            return asyncBackend.thenApply(value -> value + i);
+        }
+
+        @Cached(cacheName = "asyncTarget", addMode = AddMode.SINGLE_VALUE, removeMode = RemoveMode.SINGLE_VALUE)
+        public String testAsyncTarget(Integer i) {
+            return "uncached" + i;
+        }
+
+        @Cached(cacheName = "asyncList", addMode = AddMode.ADD_TO_COLLECTION, removeMode = RemoveMode.REMOVE_FROM_COLLECTION)
+        public CompletableFuture<List<String>> testAsyncList(Integer i) {
+            return CompletableFuture.completedFuture(List.of("first" + i, "second" + i));
+        }
+
+        @Cached(cacheName = "offHeap", offHeap = true, addMode = AddMode.SINGLE_VALUE, removeMode = RemoveMode.SINGLE_VALUE)
+        public String testOffHeap(Integer i) {
+            return "value" + i;
+        }
+
+        @Cached(cacheName = "snapshot", addMode = AddMode.SINGLE_VALUE, removeMode = RemoveMode.SINGLE_VALUE)
+        public String testSnapshot(Integer i) {
+            snapshotInvocations.incrementAndGet();
+            return "value" + i;
+        }
+
+        @Cached(cacheName = "shortLivedSnapshot", timeToLive = 5000, addMode = AddMode.SINGLE_VALUE, removeMode = RemoveMode.SINGLE_VALUE)
+        public String testShortLivedSnapshot(Integer i) {
+            snapshotInvocations.incrementAndGet();
+            return "value" + i;
+        }
+
         @Cached(cacheName = "testPreemptiveUpdate", countdownFromCreation = true,  addMode = AddMode.ADD_TO_COLLECTION, removeMode = RemoveMode.REMOVE_FROM_COLLECTION)
         public List<String> functionForPreemptiveUpdateTest(Integer i) {
             return List.of("val1", "val2", String.valueOf(i));
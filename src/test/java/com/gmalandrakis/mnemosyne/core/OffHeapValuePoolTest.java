@@ -0,0 +1,71 @@
+package com.gmalandrakis.mnemosyne.core;
+
+import com.gmalandrakis.mnemosyne.cache.FIFOCache;
+import com.gmalandrakis.mnemosyne.codec.JavaSerializationCodec;
+import com.gmalandrakis.mnemosyne.structures.CacheParameters;
+import org.junit.Test;
+
+import java.util.List;
+
+public class OffHeapValuePoolTest {
+
+    @Test
+    public void testValuesAndUses() {
+        var valuePool = new OffHeapValuePool<Integer, String>(new JavaSerializationCodec<>(String.class), 1024);
+        valuePool.put(1, "one", true);
+        valuePool.put(1, false);
+        valuePool.put(1, true);
+        valuePool.updateValueOrPutPreemptively(2, "two");
+        valuePool.put(3, null, true);
+
+        assert (valuePool.getValue(1).equals("one"));
+        assert (valuePool.getNumberOfUsesForId(1) == 2);
+        assert (valuePool.getNumberOfUsesForId(2) == 0);
+        assert (valuePool.getValue(3) == null);
+        assert (valuePool.getAll(List.of(1, 2, 3, 4)).equals(List.of("one", "two")));
+        assert (valuePool.getWeight(1) > 0 && valuePool.getTotalWeight() == valuePool.getWeight(1) + valuePool.getWeight(2));
+
+        valuePool.put(1, "uno", false);
+        assert (valuePool.getValue(1).equals("uno"));
+        assert (valuePool.getNumberOfUsesForId(1) == 2);
+
+        assert (valuePool.removeOrDecreaseNumberOfUsesForId(1) == 1);
+        assert (valuePool.removeOrDecreaseNumberOfUsesForId(1) == 0);
+        assert (valuePool.getValue(1) == null);
+        assert (valuePool.getSize() == 2);
+    }
+
+    @Test
+    public void testFreedChunksAreReused() {
+        var valuePool = new OffHeapValuePool<Integer, String>(new JavaSerializationCodec<>(String.class), 1024);
+        for (int i = 0; i < 100; i++) {
+            valuePool.put(i, "value" + i, true);
+        }
+        var reserved = valuePool.getReservedBytes();
+        for (int round = 0; round < 10; round++) {
+            for (int i = 0; i < 100; i++) {
+                valuePool.removeOrDecreaseNumberOfUsesForId(i);
+                valuePool.put(i, "value" + i, true);
+            }
+        }
+        assert (valuePool.getReservedBytes() == reserved);
+        assert (valuePool.getValue(42).equals("value42"));
+        assert (valuePool.getValue(100) == null);
+    }
+
+    @Test
+    public void testCacheOnOffHeapValuePool() {
+        var cacheParameters = new CacheParameters();
+        cacheParameters.setCapacity(100); //below the high watermark, so that no background eviction races with the assertions
+        var valuePool = new OffHeapValuePool<Integer, String>(new JavaSerializationCodec<>(String.class));
+        var cache = new FIFOCache<Integer, Integer, String>(cacheParameters, valuePool);
+        for (int i = 0; i < 50; i++) {
+            valuePool.updateValueOrPutPreemptively(i, String.valueOf(i));
+            cache.put(i, i);
+        }
+        assert (cache.get(7).equals("7"));
+        cache.remove(7);
+        assert (cache.get(7) == null);
+        assert (valuePool.getSize() == 49);
+    }
+}
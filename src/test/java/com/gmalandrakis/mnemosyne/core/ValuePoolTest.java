@@ -0,0 +1,84 @@
+package com.gmalandrakis.mnemosyne.core;
+
+import com.gmalandrakis.mnemosyne.utils.ManualTicker;
+import com.gmalandrakis.mnemosyne.utils.Tickers;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class ValuePoolTest {
+
+    @Test
+    public void testOrphansAreSweptAfterGracePeriod() {
+        var ticker = new ManualTicker();
+        Tickers.set(ticker);
+        try {
+            var valuePool = new HeapValuePool<Integer, String>();
+            valuePool.setOrphanGracePeriod(1000);
+            for (int i = 0; i < 10; i++) {
+                valuePool.updateValueOrPutPreemptively(i, "orphan" + i); //no cache uses them
+            }
+            valuePool.put(100, "used", true);
+
+            assert (valuePool.sweepOrphans(100) == 0); //within the grace period
+            ticker.advance(500);
+            valuePool.increaseNumberOfUsesForId(0, "orphan0"); //adopted by a cache
+            ticker.advance(1000);
+
+            valuePool.sweepOrphans(5);
+            assert (valuePool.getSize() >= 6); //incremental: at most five entries examined
+            valuePool.sweepOrphans(100);
+            assert (valuePool.getSize() == 2);
+            assert (valuePool.getValue(0) != null);
+            assert (valuePool.getValue(100) != null);
+
+            var stats = valuePool.getStats();
+            assert (stats.getOrphansReclaimed() == 9);
+            assert (stats.getSweeps() >= 1);
+        } finally {
+            Tickers.reset();
+        }
+    }
+
+    @Test
+    public void testValuesAdoptedWhileSweepingAreNeverRemoved() throws InterruptedException {
+        var ticker = new ManualTicker();
+        Tickers.set(ticker);
+        try {
+            var valuePool = new HeapValuePool<Integer, String>();
+            valuePool.setOrphanGracePeriod(0);
+            for (int round = 0; round < 50; round++) {
+                for (int i = 0; i < 2000; i++) {
+                    valuePool.updateValueOrPutPreemptively(i, "orphan" + i);
+                }
+                ticker.advance(10); //all of them are orphans from now on
+
+                var started = new CountDownLatch(1);
+                var adopting = new AtomicBoolean(true);
+                var sweeper = new Thread(() -> {
+                    started.countDown();
+                    while (adopting.get()) {
+                        valuePool.sweepOrphans(100);
+                    }
+                });
+                sweeper.start();
+                started.await();
+                for (int i = 0; i < 2000; i++) {
+                    valuePool.increaseNumberOfUsesForId(i, "orphan" + i); //re-added if swept before being adopted
+                }
+                adopting.set(false);
+                sweeper.join();
+
+                for (int i = 0; i < 2000; i++) {
+                    assert (valuePool.getNumberOfUsesForId(i) == 1);
+                    assert (valuePool.getValue(i) != null);
+                    valuePool.removeOrDecreaseNumberOfUsesForId(i);
+                }
+                assert (valuePool.getSize() == 0);
+            }
+        } finally {
+            Tickers.reset();
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.gmalandrakis.mnemosyne.memory;
+
+import com.gmalandrakis.mnemosyne.cache.FIFOCache;
+import com.gmalandrakis.mnemosyne.core.HeapValuePool;
+import com.gmalandrakis.mnemosyne.structures.CacheParameters;
+import org.junit.Test;
+
+public class HeapPressureMonitorTest {
+
+    @Test
+    public void testShrinkAndGrowByPriority() throws InterruptedException {
+        var monitor = new HeapPressureMonitor(80, 60, 25, 50, 1000); //not started: the steps are triggered manually
+        var expendableCache = createCache("expendable");
+        var importantCache = createCache("important");
+        monitor.register(expendableCache, 0);
+        monitor.register(importantCache, 1);
+        fill(expendableCache);
+        fill(importantCache);
+
+        monitor.shrink();
+        assert (expendableCache.awaitMaintenance(5000)); //the shrunk cache evicts asynchronously
+        assert (expendableCache.getCapacityFactor() == 0.75f);
+        assert (importantCache.getCapacityFactor() == 1f);
+        assert (expendableCache.getKeyIdMapper().size() <= 67); //the low watermark, 90, shrunk by 25%
+        assert (importantCache.getKeyIdMapper().size() == 90);
+
+        monitor.shrink();
+        monitor.shrink(); //the expendable cache is already at the minimum
+        assert (expendableCache.getCapacityFactor() == 0.5f);
+        assert (importantCache.getCapacityFactor() == 0.75f);
+
+        monitor.grow();
+        assert (importantCache.getCapacityFactor() == 1f);
+        assert (expendableCache.getCapacityFactor() == 0.5f);
+        monitor.grow();
+        monitor.grow();
+        assert (expendableCache.getCapacityFactor() == 1f);
+        monitor.close();
+    }
+
+    private FIFOCache<Integer, Integer, Integer> createCache(String name) {
+        var parameters = new CacheParameters();
+        parameters.setCacheName(name);
+        parameters.setCapacity(100);
+        parameters.setEvictionStepPercentage((short) 5);
+        return new FIFOCache<>(parameters, new HeapValuePool<Integer, Integer>());
+    }
+
+    private void fill(FIFOCache<Integer, Integer, Integer> cache) {
+        for (int i = 0; i < 90; i++) {
+            cache.getValuePool().updateValueOrPutPreemptively(i, i);
+            cache.put(i, i);
+        }
+    }
+}
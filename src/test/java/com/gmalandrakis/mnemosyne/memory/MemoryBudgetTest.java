@@ -0,0 +1,124 @@
+package com.gmalandrakis.mnemosyne.memory;
+
+import com.gmalandrakis.mnemosyne.cache.FIFOCache;
+import com.gmalandrakis.mnemosyne.core.HeapValuePool;
+import com.gmalandrakis.mnemosyne.structures.CacheParameters;
+import org.junit.Test;
+
+public class MemoryBudgetTest {
+
+    @Test
+    public void testLeastUsefulCacheIsEvictedFirst() throws InterruptedException {
+        var budget = MemoryBudget.ofBytes(1000);
+        var popularCache = createCache("popular");
+        var unpopularCache = createCache("unpopular");
+        budget.register(popularCache, (short) 0, (short) 100);
+        budget.register(unpopularCache, (short) 0, (short) 100);
+
+        fill(popularCache, 0, 40);
+        fill(unpopularCache, 100, 40);
+        for (int i = 0; i < 40; i++) {
+            assert (popularCache.get(i) != null);
+        }
+        assert (budget.getUsed() == 800);
+
+        fill(unpopularCache, 200, 40); //exceeds the budget
+        assert (budget.awaitRebalance(5000));
+
+        assert (budget.getUsed() <= 950);
+        assert (popularCache.getCurrentWeight() == 400);
+        assert (unpopularCache.getCurrentWeight() <= 550);
+    }
+
+    @Test
+    public void testHitsOutlastConsecutiveRebalances() throws InterruptedException {
+        var budget = MemoryBudget.ofBytes(1000);
+        var popularCache = createCache("popular");
+        var unpopularCache = createCache("unpopular");
+        budget.register(popularCache, (short) 0, (short) 100);
+        budget.register(unpopularCache, (short) 0, (short) 100);
+
+        fill(popularCache, 0, 40);
+        fill(unpopularCache, 100, 40);
+        for (int i = 0; i < 40; i++) {
+            assert (popularCache.get(i) != null);
+        }
+        budget.rebalance(); //e.g. one triggered halfway through the next fill
+
+        fill(unpopularCache, 200, 40);
+        assert (budget.awaitRebalance(5000));
+        assert (popularCache.getCurrentWeight() == 400);
+    }
+
+    @Test
+    public void testMinimumAndMaximumShares() throws InterruptedException {
+        var budget = MemoryBudget.ofBytes(1000);
+        var greedyCache = createCache("greedy");
+        var protectedCache = createCache("protected");
+        budget.register(greedyCache, (short) 0, (short) 30);
+        budget.register(protectedCache, (short) 50, (short) 100);
+
+        fill(greedyCache, 0, 40); //more than its' maximum share, although within the budget
+        assert (budget.awaitRebalance(5000));
+        assert (greedyCache.getCurrentWeight() <= 300);
+
+        fill(protectedCache, 100, 60);
+        fill(greedyCache, 200, 30);
+        assert (budget.awaitRebalance(5000));
+        assert (budget.getUsed() <= 1000);
+        assert (protectedCache.getCurrentWeight() >= 500); //never evicted below its' minimum share, although it has no hits
+    }
+
+    @Test
+    public void testValuesAreChargedOncePerValuePool() {
+        var budget = MemoryBudget.ofBytes(1000);
+        var sharedPool = new HeapValuePool<Integer, Integer>();
+        var firstCache = createCache("first", sharedPool);
+        var secondCache = createCache("second", sharedPool);
+        budget.register(firstCache, (short) 0, (short) 100);
+        budget.register(secondCache, (short) 0, (short) 100);
+
+        fill(firstCache, 0, 20);
+        fill(secondCache, 0, 20); //the same values
+        assert (budget.getUsed() == 200);
+        assert (firstCache.getCurrentWeight() == 200 && secondCache.getCurrentWeight() == 200);
+
+        sharedPool.updateValueOrPutPreemptively(100, 100); //used by no cache
+        assert (budget.getUsed() == 210);
+
+        for (int i = 0; i < 20; i++) {
+            firstCache.remove(i);
+        }
+        assert (budget.getUsed() == 210); //still used by the second cache
+        for (int i = 0; i < 20; i++) {
+            secondCache.remove(i);
+        }
+        assert (budget.getUsed() == 10);
+    }
+
+    private FIFOCache<Integer, Integer, Integer> createCache(String name) {
+        return createCache(name, new HeapValuePool<>());
+    }
+
+    private FIFOCache<Integer, Integer, Integer> createCache(String name, HeapValuePool<Integer, Integer> valuePool) {
+        var parameters = new CacheParameters();
+        parameters.setCacheName(name);
+        parameters.setWeigher(TenUnitsWeigher.class);
+        parameters.setEvictionStepPercentage((short) 10);
+        return new FIFOCache<>(parameters, valuePool);
+    }
+
+    private void fill(FIFOCache<Integer, Integer, Integer> cache, int from, int numberOfEntries) {
+        for (int i = from; i < from + numberOfEntries; i++) {
+            cache.getValuePool().updateValueOrPutPreemptively(i, i);
+            cache.put(i, i);
+        }
+    }
+
+    public static class TenUnitsWeigher implements Weigher<Integer> {
+        @Override
+        public long weigh(Integer value) {
+            return 10;
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.gmalandrakis.mnemosyne.memory;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+
+public class ObjectSizeEstimatorTest {
+
+    @Test
+    public void testShallowSizes() {
+        assert (ObjectSizeEstimator.shallowSizeOf(null) == 0);
+        assert (ObjectSizeEstimator.shallowSizeOf(new long[10]) == 96); //16 bytes of header, 80 of elements
+        assert (ObjectSizeEstimator.shallowSizeOf(Integer.valueOf(1)) == 16); //12 bytes of header, 4 of the int, aligned to 8
+        assert (ObjectSizeEstimator.shallowSizeOf(new Holder()) == 24);
+    }
+
+    @Test
+    public void testDeepSizeCountsSharedObjectsOnce() {
+        var holder = new Holder();
+        holder.first = new long[10];
+        holder.second = holder.first;
+        assert (ObjectSizeEstimator.deepSizeOf(holder) == 24 + 96);
+
+        holder.second = new long[10];
+        assert (ObjectSizeEstimator.deepSizeOf(holder) == 24 + 96 + 96);
+    }
+
+    @Test
+    public void testDeepSizeOfOpaqueCollections() {
+        var list = new ArrayList<Integer>();
+        for (int i = 0; i < 1000; i++) {
+            list.add(i + 1000); //outside the Integer cache, so that every element is a distinct object
+        }
+        var deepSize = ObjectSizeEstimator.deepSizeOf(list);
+        assert (deepSize >= ObjectSizeEstimator.shallowSizeOf(list) + 1000 * 16);
+        assert (new DeepSizeWeigher().weigh(list) == deepSize);
+    }
+
+    static class Holder {
+        long[] first;
+        long[] second;
+    }
+}
@@ -0,0 +1,114 @@
+package com.gmalandrakis.mnemosyne.memory;
+
+import com.gmalandrakis.mnemosyne.core.HeapValuePool;
+import com.gmalandrakis.mnemosyne.exception.MnemosyneInitializationException;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class ValueInternerTest {
+
+    @Test
+    public void testEqualSubObjectsAreShared() {
+        var interner = new ValueInterner();
+        interner.register(Seller.class);
+
+        var first = interner.intern(new Order(1, new Seller("ACME", "Athens")));
+        var second = interner.intern(new Order(2, new Seller("ACME", "Athens")));
+        var third = interner.intern(new Order(3, new Seller("Globex", "Patras")));
+        assert (first.seller() == second.seller());
+        assert (first.seller() != third.seller());
+
+        var stats = interner.getStats().get(Seller.class.getName());
+        assert (stats.getCanonicalInstances() == 2);
+        assert (stats.getReplacedInstances() == 1);
+        assert (stats.getBytesSaved() == ObjectSizeEstimator.deepSizeOf(first.seller()));
+    }
+
+    @Test
+    public void testRecordsAreCopiedInsteadOfModified() {
+        var interner = new ValueInterner();
+        interner.register(Seller.class);
+
+        var canonical = interner.intern(new Seller("ACME", "Athens"));
+        var seller = new Seller("ACME", "Athens");
+        var original = new Shipment(7, new Order(1, seller));
+        var interned = interner.intern(original);
+        assert (interned != original);
+        assert (original.order().seller() == seller);
+        assert (interned.order().seller() == canonical);
+        assert (interned.number() == 7);
+        assert (interner.intern(interned) == interned);
+    }
+
+    @Test
+    public void testStringsAreInternedWithinRecords() {
+        var interner = new ValueInterner();
+        interner.register(String.class);
+
+        var first = interner.intern(new Seller(new String("Globex"), "Patras"));
+        var second = interner.intern(new Seller(new String("Globex"), "Chania"));
+        assert (first.name() == second.name());
+        assert (first.city() != second.city());
+    }
+
+    @Test
+    public void testOtherValuesAreNeverModified() {
+        var interner = new ValueInterner();
+        interner.register(Seller.class);
+        interner.intern(new Seller("ACME", "Athens"));
+
+        var seller = new Seller("ACME", "Athens");
+        var order = new MutableOrder(seller);
+        assert (interner.intern(order) == order);
+        assert (order.seller == seller);
+
+        var sellers = new ArrayList<>(List.of(new Seller("ACME", "Athens")));
+        var element = sellers.get(0);
+        assert (interner.intern(sellers) == sellers);
+        assert (sellers.get(0) == element);
+    }
+
+    @Test
+    public void testNothingIsInternedUnlessRegistered() {
+        var interner = new ValueInterner();
+        var order = new Order(1, new Seller("ACME", "Athens"));
+        assert (interner.intern(order) == order);
+        assert (interner.getStats().isEmpty());
+    }
+
+    @Test(expected = MnemosyneInitializationException.class)
+    public void testMutableTypesAreRejected() {
+        new ValueInterner().register(MutableOrder.class);
+    }
+
+    @Test
+    public void testValuePoolInternsOnInsertion() {
+        var interner = new ValueInterner();
+        interner.register(Seller.class);
+        var valuePool = new HeapValuePool<Integer, Order>(Integer.class);
+        valuePool.useInterner(interner);
+
+        valuePool.put(1, new Order(1, new Seller("ACME", "Athens")), true);
+        valuePool.updateValueOrPutPreemptively(2, new Order(2, new Seller("ACME", "Athens")));
+        assert (valuePool.getValue(1).seller() == valuePool.getValue(2).seller());
+    }
+
+    static class MutableOrder {
+        Seller seller;
+
+        MutableOrder(Seller seller) {
+            this.seller = seller;
+        }
+    }
+
+    record Order(int number, Seller seller) {
+    }
+
+    record Shipment(int number, Order order) {
+    }
+
+    record Seller(String name, String city) {
+    }
+}
@@ -0,0 +1,62 @@
+package com.gmalandrakis.mnemosyne.structures;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+
+public class CompactIdSetTest {
+
+    @Test
+    public void testNumericIds() {
+        var set = CompactIdSet.of(List.of(5L, 3L, 5L, -1L));
+        assert (set.size() == 3);
+        assert (set.contains(3L) && set.contains(-1L) && !set.contains(4L));
+        assert (!set.contains(3)); //an Integer is not a Long ID
+        assert (new ArrayList<>(set).equals(List.of(-1L, 3L, 5L)));
+
+        var withAll = set.withAll(List.of(3L, 4L));
+        assert (withAll.size() == 4 && withAll.contains(4L));
+        assert (set.size() == 3); //immutable
+        assert (set.withAll(List.of(3L)) == set);
+        assert (withAll.without(3L).size() == 3 && !withAll.without(3L).contains(3L));
+
+        var integers = CompactIdSet.of(List.of(2, 1));
+        assert (integers.iterator().next().equals(1));
+    }
+
+    @Test
+    public void testObjectIds() {
+        var ids = new HashSet<String>();
+        for (int i = 0; i < 100; i++) {
+            ids.add("id" + i);
+        }
+        var set = CompactIdSet.of(ids);
+        assert (set.size() == 100);
+        for (String id : ids) {
+            assert (set.contains(id));
+        }
+        assert (!set.contains("id100") && !set.contains(null));
+        assert (new HashSet<>(set).equals(ids));
+
+        var mixed = CompactIdSet.<Object>of(List.of(1L, 1, "1"));
+        assert (mixed.size() == 3 && mixed.contains(1) && mixed.contains(1L) && mixed.contains("1"));
+        assert (mixed.without(1).size() == 2 && !mixed.without(1).contains(1));
+    }
+
+    @Test
+    public void testCollectionIdWrapper() {
+        var wrapper = new CollectionIdWrapper<Long>();
+        wrapper.addAllToCollectionOrUpdate(List.of(1L, 2L));
+        var snapshot = wrapper.getIds();
+        assert (wrapper.addToCollectionOrUpdate(3L));
+        assert (!wrapper.addToCollectionOrUpdate(3L));
+        assert (snapshot.size() == 2); //readers keep the set they got
+        assert (wrapper.removeFromCollection(1L) && !wrapper.removeFromCollection(1L));
+        assert (new ArrayList<>(wrapper.peekIds()).equals(List.of(2L, 3L)));
+        wrapper.removeFromCollection(2L);
+        wrapper.removeFromCollection(3L);
+        assert (wrapper.isEmpty());
+    }
+}
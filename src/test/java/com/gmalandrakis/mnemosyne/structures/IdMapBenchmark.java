@@ -0,0 +1,51 @@
+package com.gmalandrakis.mnemosyne.structures;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the lookups of a {@link LongIdMap} with the ones of a ConcurrentHashMap, on four threads reading concurrently.
+ * Not part of the test suite; run the main method from the test classpath, e.g. via the IDE.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(4)
+@Fork(1)
+public class IdMapBenchmark {
+
+    private static final int SIZE = 100_000;
+
+    private final IdMap<Long, Object> idMap = IdMap.forIdType(Long.class);
+    private final ConcurrentHashMap<Long, Object> concurrentHashMap = new ConcurrentHashMap<>();
+
+    @Setup
+    public void fill() {
+        for (long id = 0; id < SIZE; id++) {
+            idMap.put(id, id);
+            concurrentHashMap.put(id, id);
+        }
+    }
+
+    @Benchmark
+    public Object getLongIdMap() {
+        return idMap.get((long) ThreadLocalRandom.current().nextInt(SIZE));
+    }
+
+    @Benchmark
+    public Object getConcurrentHashMap() {
+        return concurrentHashMap.get((long) ThreadLocalRandom.current().nextInt(SIZE));
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(IdMapBenchmark.class.getSimpleName()).build()).run();
+    }
+}
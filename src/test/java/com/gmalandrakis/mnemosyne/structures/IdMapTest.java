@@ -0,0 +1,122 @@
+package com.gmalandrakis.mnemosyne.structures;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class IdMapTest {
+
+    @Test
+    public void testLongIdMapMatchesHashMap() {
+        IdMap<Long, Integer> idMap = IdMap.forIdType(Long.class);
+        assert (idMap instanceof LongIdMap);
+        var expected = new HashMap<Long, Integer>();
+        var random = new Random(7);
+        for (int i = 0; i < 200_000; i++) {
+            var id = (long) random.nextInt(5000);
+            switch (random.nextInt(3)) {
+                case 0 -> {
+                    assert (Objects.equals(idMap.put(id, i), expected.put(id, i)));
+                }
+                case 1 -> {
+                    assert (Objects.equals(idMap.remove(id), expected.remove(id)));
+                }
+                default -> {
+                    assert (Objects.equals(idMap.get(id), expected.get(id)));
+                }
+            }
+        }
+        assert (idMap.size() == expected.size());
+        var iterated = new HashMap<Long, Integer>();
+        idMap.forEach(iterated::put);
+        assert (iterated.equals(expected));
+        iterated.clear();
+        for (var iterator = idMap.entryIterator(); iterator.hasNext(); ) {
+            var entry = iterator.next();
+            iterated.put(entry.getKey(), entry.getValue());
+        }
+        assert (iterated.equals(expected));
+    }
+
+    @Test
+    public void testUuidAndIntegerIds() {
+        IdMap<UUID, String> uuids = IdMap.forIdType(UUID.class);
+        var first = UUID.randomUUID();
+        var second = new UUID(first.getMostSignificantBits(), first.getLeastSignificantBits() + 1);
+        uuids.put(first, "first");
+        uuids.put(second, "second");
+        assert (uuids.get(new UUID(first.getMostSignificantBits(), first.getLeastSignificantBits())).equals("first"));
+        assert (!uuids.remove(second, "not the value"));
+        assert (uuids.remove(second, uuids.get(second)));
+        assert (uuids.get(second) == null && uuids.size() == 1);
+
+        IdMap<Integer, String> integers = IdMap.forIdType(int.class);
+        integers.put(-5, "minus five");
+        var entry = integers.entryIterator().next();
+        assert (entry.getKey().equals(-5) && entry.getValue().equals("minus five"));
+    }
+
+    @Test
+    public void testLookupsDuringConcurrentWritesFindTheStableIds() throws Exception {
+        IdMap<Long, Long> idMap = IdMap.forIdType(Long.class);
+        for (long id = 0; id < 20_000; id += 2) {
+            idMap.put(id, id);
+        }
+        var writing = new AtomicBoolean(true);
+        var executor = Executors.newFixedThreadPool(4);
+        try {
+            var writer = executor.submit(() -> { //the odd IDs grow the segments and shift the probe sequences of the even ones
+                for (int round = 0; round < 20; round++) {
+                    for (long id = 1; id < 20_000; id += 2) {
+                        idMap.put(id, id);
+                    }
+                    for (long id = 1; id < 20_000; id += 2) {
+                        idMap.remove(id);
+                    }
+                }
+                writing.set(false);
+            });
+            var readers = new ArrayList<Future<Boolean>>();
+            for (int i = 0; i < 3; i++) {
+                readers.add(executor.submit(() -> {
+                    do {
+                        for (long id = 0; id < 20_000; id += 2) {
+                            if (!Long.valueOf(id).equals(idMap.get(id))) {
+                                return false;
+                            }
+                        }
+                    } while (writing.get());
+                    return true;
+                }));
+            }
+            writer.get(60, TimeUnit.SECONDS);
+            for (Future<Boolean> reader : readers) {
+                assert (reader.get(60, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testIdsOfAnotherTypeAreKeptAside() {
+        IdMap<Object, String> idMap = IdMap.forIdType(Long.class);
+        idMap.put(1L, "long");
+        idMap.put(1, "integer");
+        idMap.put("1", "string");
+        assert (idMap.size() == 3);
+        assert (idMap.get(1L).equals("long") && idMap.get(1).equals("integer") && idMap.get("1").equals("string"));
+        var iterated = new HashMap<Object, String>();
+        idMap.forEach(iterated::put);
+        assert (iterated.equals(Map.of(1L, "long", 1, "integer", "1", "string")));
+    }
+}
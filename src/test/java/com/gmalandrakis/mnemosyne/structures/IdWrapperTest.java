@@ -0,0 +1,62 @@
+package com.gmalandrakis.mnemosyne.structures;
+
+import com.gmalandrakis.mnemosyne.utils.ManualTicker;
+import com.gmalandrakis.mnemosyne.utils.Tickers;
+import org.junit.Test;
+
+import java.util.ArrayList;
+
+public class IdWrapperTest {
+
+    @Test
+    public void testCompactTimestamps() {
+        var base = 1_700_000_000_000L;
+        assert (CompactTimestamp.decode(base, CompactTimestamp.encode(base, base + 1234)) == base + 1234);
+        var twelveDays = 12L * 24 * 3600 * 1000;
+        assert (CompactTimestamp.decode(base, CompactTimestamp.encode(base, base + twelveDays)) == base + twelveDays);
+        var oneYear = 365L * 24 * 3600 * 1000 + 999;
+        assert (CompactTimestamp.decode(base, CompactTimestamp.encode(base, base + oneYear)) == base + oneYear - 999); //in seconds past about 12 days
+        assert (CompactTimestamp.decode(base, CompactTimestamp.encode(base, base - 5)) == base);
+    }
+
+    @Test
+    public void testWrappersCountHitsOnlyIfAsked() {
+        var ticker = new ManualTicker();
+        Tickers.set(ticker);
+        try {
+            var plain = AbstractSingleIdWrapper.of(1, 0, false);
+            var counting = AbstractSingleIdWrapper.of(1, 0, true);
+            assert (counting instanceof SingleIdWrapper && !(plain instanceof SingleIdWrapper));
+            ticker.advance(250);
+            plain.getId();
+            counting.getId();
+            assert (plain.getHits() == 0 && counting.getHits() == 1);
+            assert (plain.getLastAccessed() == plain.getCreatedOn() + 250);
+
+            plain.restoreTimestamps(1000, 3000);
+            assert (plain.getCreatedOn() == 1000 && plain.getLastAccessed() == 3000);
+        } finally {
+            Tickers.reset();
+        }
+    }
+
+    @Test
+    @SuppressWarnings("deprecation")
+    public void testPublicConstructorCountsHits() throws InterruptedException {
+        var wrapper = new SingleIdWrapper<>(1);
+        var threads = new ArrayList<Thread>();
+        for (int i = 0; i < 4; i++) {
+            threads.add(new Thread(() -> {
+                for (int j = 0; j < 10_000; j++) {
+                    wrapper.getId();
+                    wrapper.increaseHits();
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assert (wrapper.getHits() == 80_000);
+    }
+}
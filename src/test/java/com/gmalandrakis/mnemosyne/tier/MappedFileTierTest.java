@@ -0,0 +1,92 @@
+package com.gmalandrakis.mnemosyne.tier;
+
+import com.gmalandrakis.mnemosyne.codec.JavaSerializationCodec;
+import com.gmalandrakis.mnemosyne.utils.ManualTicker;
+import com.gmalandrakis.mnemosyne.utils.Tickers;
+import org.junit.Test;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+public class MappedFileTierTest {
+
+    private final Path directory = Path.of(System.getProperty("java.io.tmpdir"), "mnemosyne-test");
+
+    @Test
+    public void testPutGetAndRemoveByIds() {
+        try (var tier = new MappedFileTier<String, Integer, String>(directory, "test", 1 << 16, new JavaSerializationCodec<>(String.class))) {
+            tier.put("single", Map.of(1, "one"), Long.MAX_VALUE);
+            tier.put("collection", Map.of(1, "one", 2, "two"), Long.MAX_VALUE);
+            tier.put("other", Map.of(3, "three"), Long.MAX_VALUE);
+
+            assert (tier.get("single").equals(Map.of(1, "one")));
+            assert (tier.get("collection").equals(Map.of(1, "one", 2, "two")));
+            assert (tier.get("absent") == null);
+
+            tier.removeByIds(List.of(1)); //e.g. the value was updated
+            assert (tier.get("single") == null);
+            assert (tier.get("collection") == null);
+            assert (tier.get("other").equals(Map.of(3, "three")));
+            assert (tier.getHitCount() == 3 && tier.getMissCount() == 3);
+        }
+    }
+
+    @Test
+    public void testOldestSegmentIsDropped() {
+        try (var tier = new MappedFileTier<Integer, Integer, String>(directory, "test", MappedFileTier.MIN_SIZE, new JavaSerializationCodec<>(String.class))) {
+            for (int i = 0; i < 1000; i++) {
+                tier.put(i, Map.of(i, "value" + i), Long.MAX_VALUE);
+            }
+            assert (tier.get(0) == null);
+            assert (tier.get(999).equals(Map.of(999, "value999")));
+            assert (tier.getSize() < 1000);
+        }
+    }
+
+    @Test
+    public void testEntriesLargerThanASegmentReplaceThePreviousOnes() {
+        try (var tier = new MappedFileTier<Integer, Integer, String>(directory, "test", MappedFileTier.MIN_SIZE, new JavaSerializationCodec<>(String.class))) {
+            tier.put(1, Map.of(1, "one"), Long.MAX_VALUE);
+            tier.put(1, Map.of(1, "x".repeat(2000)), Long.MAX_VALUE); //larger than the segments of 1KB
+            assert (tier.get(1) == null);
+            assert (tier.getSize() == 0);
+        }
+    }
+
+    @Test
+    public void testRecordsLargerThanTheSegmentsOfTheLowerTierAreHandedFurtherDown() {
+        var codec = new JavaSerializationCodec<>(String.class);
+        try (var upper = new MappedFileTier<Integer, Integer, String>(directory, "upper", 1 << 14, codec);
+             var lower = new DiskTier<Integer, Integer, String>(directory, "lower", DiskTier.MIN_SIZE, codec);
+             var lowest = new DiskTier<Integer, Integer, String>(directory, "lowest", 1 << 16, codec)) {
+            upper.demoteTo(lower);
+            lower.demoteTo(lowest);
+            var large = "x".repeat(2000); //fits in the segments of 4KB of the upper tier, but not in the ones of 1KB of the lower
+            upper.put(-1, Map.of(-1, large), Long.MAX_VALUE);
+            for (int i = 0; i < 1000; i++) {
+                upper.put(i, Map.of(i, "value" + i), Long.MAX_VALUE);
+            }
+            assert (upper.get(-1) == null && lower.get(-1) == null);
+            assert (lowest.get(-1).equals(Map.of(-1, large)));
+            for (int i = 0; i < 1000; i++) {
+                var values = lower.get(i);
+                assert (values == null || values.equals(Map.of(i, "value" + i))); //nothing was written over the next segment
+            }
+        }
+    }
+
+    @Test
+    public void testExpiredEntriesAreMisses() {
+        var ticker = new ManualTicker();
+        Tickers.set(ticker);
+        try (var tier = new MappedFileTier<Integer, Integer, String>(directory, "test", 1 << 16, new JavaSerializationCodec<>(String.class))) {
+            tier.put(1, Map.of(1, "one"), ticker.read() + 1000);
+            assert (tier.get(1) != null);
+            ticker.advance(1001);
+            assert (tier.get(1) == null);
+        } finally {
+            Tickers.reset();
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.gmalandrakis.mnemosyne.tier;
+
+import com.gmalandrakis.mnemosyne.codec.JavaSerializationCodec;
+import com.gmalandrakis.mnemosyne.utils.ManualTicker;
+import com.gmalandrakis.mnemosyne.utils.Tickers;
+import org.junit.Test;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+public class TierChainTest {
+
+    private final Path directory = Path.of(System.getProperty("java.io.tmpdir"), "mnemosyne-test");
+
+    private final JavaSerializationCodec<String> codec = new JavaSerializationCodec<>(String.class);
+
+    @Test
+    public void testEntriesEvictedFromMappedTierAreDemotedToDisk() {
+        var mapped = new MappedFileTier<Integer, Integer, String>(directory, "test", SegmentedFileTier.MIN_SIZE, codec);
+        var disk = new DiskTier<Integer, Integer, String>(directory, "test", 1 << 20, codec);
+        try (var chain = new TierChain<>(List.<Tier<Integer, Integer, String>>of(mapped, disk))) {
+            for (int i = 0; i < 1000; i++) {
+                chain.onEviction(i, Map.of(i, "value" + i), Long.MAX_VALUE);
+            }
+            assert (chain.getDemotedFromCacheCount() == 1000);
+            assert (mapped.getSize() < 1000);
+            assert (mapped.getEvictionCount() == 1000 - mapped.getSize());
+            assert (disk.getSize() == mapped.getEvictionCount()); //nothing is lost between the tiers
+
+            assert (chain.promote(0).getValues().equals(Map.of(0, "value0"))); //from the disk
+            assert (chain.promote(999).getValues().equals(Map.of(999, "value999"))); //from the mapped file
+            assert (chain.promote(0) == null); //promoted entries leave the tiers
+            assert (disk.getHitCount() == 1 && mapped.getHitCount() == 1);
+
+            chain.removeByIds(List.of(1, 998));
+            assert (chain.promote(1) == null && chain.promote(998) == null);
+        }
+    }
+
+    @Test
+    public void testEntriesKeepTheirExpirationThroughEveryTier() {
+        var ticker = new ManualTicker();
+        Tickers.set(ticker);
+        var mapped = new MappedFileTier<Integer, Integer, String>(directory, "test", SegmentedFileTier.MIN_SIZE, codec);
+        var disk = new DiskTier<Integer, Integer, String>(directory, "test", 1 << 20, codec);
+        try (var chain = new TierChain<>(List.<Tier<Integer, Integer, String>>of(mapped, disk))) {
+            var expiresAt = ticker.read() + 1000;
+            chain.onEviction(0, Map.of(0, "value0"), expiresAt);
+            chain.onEviction(1, Map.of(1, "value1"), expiresAt);
+            for (int i = 2; mapped.getEntry(0) != null; i++) {
+                chain.onEviction(i, Map.of(i, "value" + i), Long.MAX_VALUE);
+            }
+            assert (disk.getEntry(0) != null && disk.getEntry(1) != null); //demoted from the mapped file to the disk
+
+            var promoted = chain.promote(0);
+            assert (promoted.getExpiresAt() == expiresAt);
+            chain.onEviction(0, promoted.getValues(), promoted.getExpiresAt()); //evicted again by the cache
+            assert (mapped.getEntry(0).getExpiresAt() == expiresAt);
+            assert (disk.getEntry(0) == null);
+
+            ticker.advance(1001);
+            assert (chain.promote(0) == null);
+            assert (chain.promote(1) == null);
+        } finally {
+            Tickers.reset();
+        }
+    }
+
+    @Test
+    public void testDiskTierStoresAndDropsLikeMappedTier() {
+        try (var disk = new DiskTier<Integer, Integer, String>(directory, "test", SegmentedFileTier.MIN_SIZE, codec)) {
+            for (int i = 0; i < 1000; i++) {
+                disk.put(i, Map.of(i, "value" + i), Long.MAX_VALUE);
+            }
+            assert (disk.get(0) == null);
+            assert (disk.get(999).equals(Map.of(999, "value999")));
+            assert (disk.getEvictionCount() == 1000 - disk.getSize());
+        }
+    }
+}
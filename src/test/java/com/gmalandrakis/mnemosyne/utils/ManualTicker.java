@@ -0,0 +1,19 @@
+package com.gmalandrakis.mnemosyne.utils;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A Ticker for tests, moved forward manually instead of waiting for time to pass.
+ */
+public class ManualTicker implements Ticker {
+    private final AtomicLong now = new AtomicLong(System.currentTimeMillis());
+
+    @Override
+    public long read() {
+        return now.get();
+    }
+
+    public void advance(long millis) {
+        now.addAndGet(millis);
+    }
+}